@@ -0,0 +1,621 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    BoosterBenchmark.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.benchmarks;
+
+import oaidtb.boosters.AdaBoostMH;
+import oaidtb.boosters.Booster;
+import oaidtb.boosters.IterationProfile;
+import oaidtb.boosters.IterativeUpdatableClassifier;
+import oaidtb.boosters.ScoringContext;
+import oaidtb.misc.BoosterAnalyzer;
+import weka.classifiers.Classifier;
+import weka.classifiers.DistributionClassifier;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.core.Utils;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Performance benchmarks of the boosters, to be compared between versions (ie. before and
+ * after upgrading weka or changing a booster):
+ *
+ * <p> nextIterations: nanoseconds per boosting iteration.
+ *
+ * <p> distributionForInstance: nanoseconds per classified instance and, if the virtual
+ * machine can measure it, allocated bytes per classified instance; it's measured through
+ * the method without a context (which uses the context of the thread) and with one
+ * ScoringContext reused for all the instances. The method without a context returns a
+ * copy of the distribution (weka's contract), but once warmed up, scoring with a context
+ * and base classifiers which don't allocate (ie. the default decision stumps, see
+ * oaidtb.boosters.ScoringContext) must not allocate, so any allocation of the latter is
+ * reported as a regression, with or without a baseline.
+ *
+ * <p> updateStatistics: nanoseconds per iteration analyzed by a BoosterAnalyzer.
+ *
+ * Each benchmark is run over every booster and dataset (and the synthetic scale-ups of each
+ * dataset: copies of its instances with their numeric values slightly jittered) after some
+ * warmup rounds, and the median of the measured rounds is reported. A result that can't be
+ * measured (ie. AdaBoostM1 stops at the first iteration of a hard multiclass problem) is
+ * reported as skipped.
+ *
+ * The results can be saved to a file and compared with a previous one: a benchmark slower
+ * than its baseline by more than a tolerance is reported as a regression. If there are
+ * regressions the program exits with status 1.
+ *
+ * Run with -h to see the options.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class BoosterBenchmark{
+
+  /** The boosters benchmarked by default: name, class and options. */
+  private final static String[][] DEFAULT_BOOSTERS = {
+    {"AdaBoostM1", "oaidtb.boosters.AdaBoostM1", ""},
+    {"RealAdaBoost", "oaidtb.boosters.RealAdaBoost", ""},
+    {"AdaBoostMH", "oaidtb.boosters.AdaBoostMH", "-B oaidtb.boosters.RealAdaBoost"},
+    {"AdaBoostOC", "oaidtb.boosters.AdaBoostOC", ""},
+    {"AdaBoostECC", "oaidtb.boosters.AdaBoostECC", ""},
+    {"CSB0", "oaidtb.boosters.costSensitive.CSB0", "-X"},
+    {"CSB1", "oaidtb.boosters.costSensitive.CSB1", "-X"},
+    {"CSB2", "oaidtb.boosters.costSensitive.CSB2", "-X"},
+    {"AdaCost", "oaidtb.boosters.costSensitive.AdaCost", "-X"}
+  };
+
+  /** The unit of the allocation results. */
+  private final static String ALLOCATION_UNIT = "bytes/instance";
+
+  /** The name of the benchmarks which score with a reused context. */
+  private final static String CONTEXT_SCORING = "distributionForInstance.context";
+
+  /** The datasets benchmarked by default (relative to the data directory). */
+  private final static String[] DEFAULT_DATASETS = {
+    "uci/diabetes.arff", "uci/sonar.arff", "uci/iris.arff", "uci/glass.arff",
+    "uci/vehicle.arff", "conus-torus/train.arff"
+  };
+
+  /** The directory of the datasets. */
+  private String m_DataDirectory = "_data_";
+
+  /** The datasets. */
+  private String[] m_Datasets = DEFAULT_DATASETS;
+
+  /** The scale-up factors of the datasets. */
+  private int[] m_ScaleFactors = {1, 10};
+
+  /** The names of the boosters benchmarked (all the default ones if null). */
+  private String[] m_BoosterNames;
+
+  /** The base classifier (and its options). */
+  private String m_BaseClassifier = "weka.classifiers.trees.DecisionStump";
+
+  /** The number of iterations of each round. */
+  private int m_NumIterations = 20;
+
+  /** The number of warmup rounds. */
+  private int m_WarmupRounds = 2;
+
+  /** The number of measured rounds. */
+  private int m_Rounds = 5;
+
+  /** Run only the scoring benchmarks? */
+  private boolean m_OnlyScoring = false;
+
+  /** The results: name -> Result, in the order they are measured. */
+  private LinkedHashMap m_Results = new LinkedHashMap();
+
+  /** A benchmark result. */
+  private static class Result{
+
+    /** The value (ie. nanoseconds per call). */
+    double m_Value;
+
+    /** Its unit. */
+    String m_Unit;
+
+    Result(double value, String unit){
+      m_Value = value;
+      m_Unit = unit;
+    }
+  }
+
+  /**
+   * Run all the benchmarks.
+   *
+   * @throws Exception If a dataset can't be read.
+   */
+  public void run() throws Exception{
+
+    String[][] boosters = boosters();
+
+    for (int d = 0; d < m_Datasets.length; d++){
+
+      Instances original = new Instances(new BufferedReader(new FileReader(new File(m_DataDirectory, m_Datasets[d]))));
+      original.setClassIndex(original.numAttributes() - 1);
+
+      for (int s = 0; s < m_ScaleFactors.length; s++){
+
+        Instances data = scaleUp(original, m_ScaleFactors[s], new Random(1));
+        String dataName = original.relationName() + (m_ScaleFactors[s] > 1 ? "x" + m_ScaleFactors[s] : "");
+
+        for (int b = 0; b < boosters.length; b++){
+          String name = boosters[b][0] + "/" + dataName;
+          try{
+            if (!m_OnlyScoring)
+              benchmarkIterations(boosters[b], data, name);
+            Classifier booster = build(boosters[b], data, m_NumIterations);
+            benchmarkScoring(booster, data, name, null);
+            if (booster instanceof Booster || booster instanceof AdaBoostMH)
+              benchmarkScoring(booster, data, name, new ScoringContext());
+            if (!m_OnlyScoring)
+              benchmarkAnalyzer(booster, data, name);
+          }
+          catch (Exception e){
+            System.out.println(pad(name, 60) + " skipped: " + e.getMessage());
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Measures nextIterations.
+   *
+   * @param booster The booster (name, class and options).
+   * @param data The dataset.
+   * @param name The name of the benchmark.
+   *
+   * @throws Exception If the booster fails or stops before iterating.
+   */
+  private void benchmarkIterations(String[] booster, Instances data, String name) throws Exception{
+
+    double[] times = new double[m_Rounds];
+
+    for (int r = -m_WarmupRounds; r < m_Rounds; r++){
+
+      IterativeUpdatableClassifier classifier = (IterativeUpdatableClassifier) build(booster, data, 0);
+
+      long start = IterationProfile.nanoTime();
+      classifier.nextIterations(m_NumIterations);
+      long time = IterationProfile.nanoTime() - start;
+
+      if (classifier.getNumIterationsPerformed() == 0)
+        throw new Exception("no iterations performed.");
+
+      if (r >= 0)
+        times[r] = (double) time / classifier.getNumIterationsPerformed();
+    }
+
+    report("nextIterations/" + name, median(times), "ns/iteration");
+  }
+
+  /**
+   * Measures distributionForInstance over the training instances.
+   *
+   * @param booster The booster.
+   * @param data The dataset.
+   * @param name The name of the benchmark.
+   * @param context The context reused for all the instances (null to use the method
+   * without a context).
+   *
+   * @throws Exception If an instance can't be classified.
+   */
+  private void benchmarkScoring(Classifier booster, Instances data, String name, ScoringContext context)
+    throws Exception{
+
+    DistributionClassifier classifier = (DistributionClassifier) booster;
+    String benchmark = context == null ? "distributionForInstance" : CONTEXT_SCORING;
+    int numInstances = data.numInstances();
+    double[] times = new double[m_Rounds];
+    double[] allocations = new double[m_Rounds];
+    boolean canMeasureAllocation = IterationProfile.allocatedBytes() >= 0;
+
+    for (int r = -m_WarmupRounds; r < m_Rounds; r++){
+
+      //What a call to allocatedBytes allocates itself is not charged to the instances
+      long before = IterationProfile.allocatedBytes();
+      long meterOverhead = IterationProfile.allocatedBytes() - before;
+
+      //Neither is what nanoTime allocates (it's called by reflection), so it's read outside
+      long start = IterationProfile.nanoTime();
+      long allocated = IterationProfile.allocatedBytes();
+      for (int i = 0; i < numInstances; i++)
+        distributionForInstance(classifier, data.instance(i), context);
+      allocated = Math.max(0, IterationProfile.allocatedBytes() - allocated - meterOverhead);
+      long time = IterationProfile.nanoTime() - start;
+
+      if (r >= 0){
+        times[r] = (double) time / numInstances;
+        allocations[r] = (double) allocated / numInstances;
+      }
+    }
+
+    report(benchmark + "/" + name, median(times), "ns/instance");
+    if (canMeasureAllocation)
+      report(benchmark + ".alloc/" + name, median(allocations), ALLOCATION_UNIT);
+  }
+
+  /**
+   * Classify an instance.
+   *
+   * @param classifier The classifier (a Booster or an AdaBoostMH if there is a context).
+   * @param instance The instance.
+   * @param context The context (null to use the method without a context).
+   *
+   * @return The distribution.
+   *
+   * @throws Exception If the instance can't be classified.
+   */
+  private static double[] distributionForInstance(DistributionClassifier classifier, Instance instance,
+                                                  ScoringContext context) throws Exception{
+    if (context == null)
+      return classifier.distributionForInstance(instance);
+    if (classifier instanceof AdaBoostMH)
+      return ((AdaBoostMH) classifier).distributionForInstance(instance, context);
+    return ((Booster) classifier).distributionForInstance(instance, context);
+  }
+
+  /**
+   * Measures BoosterAnalyzer.updateStatistics over all the iterations of a booster.
+   *
+   * @param booster The booster.
+   * @param data The dataset.
+   * @param name The name of the benchmark.
+   *
+   * @throws Exception If the analyzer fails.
+   */
+  private void benchmarkAnalyzer(Classifier booster, Instances data, String name) throws Exception{
+
+    IterativeUpdatableClassifier classifier = (IterativeUpdatableClassifier) booster;
+    double[] times = new double[m_Rounds];
+
+    for (int r = -m_WarmupRounds; r < m_Rounds; r++){
+
+      BoosterAnalyzer analyzer = new BoosterAnalyzer(classifier, data, null);
+      analyzer.initialize();
+
+      long start = IterationProfile.nanoTime();
+      analyzer.updateStatistics();
+      long time = IterationProfile.nanoTime() - start;
+
+      if (r >= 0)
+        times[r] = (double) time / classifier.getNumIterationsPerformed();
+    }
+
+    report("updateStatistics/" + name, median(times), "ns/iteration");
+  }
+
+  /**
+   * Build a booster.
+   *
+   * @param booster The booster (name, class and options).
+   * @param data The training data (the booster gets a copy).
+   * @param numIterations The number of iterations.
+   *
+   * @return The booster.
+   *
+   * @throws Exception If the booster can't be built.
+   */
+  private Classifier build(String[] booster, Instances data, int numIterations) throws Exception{
+
+    String options = booster[2] + " -I " + numIterations + " -W " + m_BaseClassifier;
+    Classifier classifier = Classifier.forName(booster[1], Utils.splitOptions(options));
+
+    classifier.buildClassifier(new Instances(data));
+    return classifier;
+  }
+
+  /** @return The boosters benchmarked (name, class and options). */
+  private String[][] boosters() throws Exception{
+
+    if (m_BoosterNames == null)
+      return DEFAULT_BOOSTERS;
+
+    String[][] boosters = new String[m_BoosterNames.length][];
+
+    for (int i = 0; i < m_BoosterNames.length; i++){
+      for (int j = 0; j < DEFAULT_BOOSTERS.length; j++)
+        if (DEFAULT_BOOSTERS[j][0].equals(m_BoosterNames[i]))
+          boosters[i] = DEFAULT_BOOSTERS[j];
+      if (boosters[i] == null)
+        throw new Exception("Unknown booster: " + m_BoosterNames[i]);
+    }
+
+    return boosters;
+  }
+
+  /**
+   * Make a bigger dataset from copies of the instances of another one, adding to the
+   * numeric values (but the class) a gaussian noise of 1% of the attribute deviation.
+   *
+   * @param data The dataset.
+   * @param factor The number of copies.
+   * @param random The random numbers used for the noise.
+   *
+   * @return The new dataset (the same one if factor is 1).
+   */
+  public static Instances scaleUp(Instances data, int factor, Random random){
+
+    if (factor <= 1)
+      return data;
+
+    int numAttributes = data.numAttributes();
+    double[] deviations = new double[numAttributes];
+    for (int a = 0; a < numAttributes; a++)
+      if (a != data.classIndex() && data.attribute(a).isNumeric())
+        deviations[a] = Math.sqrt(data.variance(a));
+
+    Instances result = new Instances(data, data.numInstances() * factor);
+
+    for (int copy = 0; copy < factor; copy++)
+      for (int i = 0; i < data.numInstances(); i++){
+        Instance instance = (Instance) data.instance(i).copy();
+        if (copy > 0)
+          for (int a = 0; a < numAttributes; a++)
+            if (deviations[a] > 0 && !instance.isMissing(a))
+              instance.setValue(a, instance.value(a) + 0.01 * deviations[a] * random.nextGaussian());
+        result.add(instance);
+      }
+
+    return result;
+  }
+
+  /**
+   * Get the median of some values.
+   *
+   * @param values The values (they are sorted).
+   *
+   * @return The median.
+   */
+  private static double median(double[] values){
+    Arrays.sort(values);
+    int middle = values.length / 2;
+    return values.length % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+  }
+
+  /** Save and print a result. */
+  private void report(String name, double value, String unit){
+    m_Results.put(name, new Result(value, unit));
+    System.out.println(pad(name, 60) + Utils.padLeft(Utils.doubleToString(value, 1), 14) + " " + unit);
+  }
+
+  /** Pad a string on the right (it isn't truncated). */
+  private static String pad(String text, int length){
+    StringBuffer result = new StringBuffer(text);
+    while (result.length() < length)
+      result.append(' ');
+    return result.toString();
+  }
+
+  /**
+   * Save the results: a line per benchmark with its name, value and unit.
+   *
+   * @param file The file.
+   *
+   * @throws Exception If the file can't be written.
+   */
+  public void save(File file) throws Exception{
+
+    PrintWriter writer = new PrintWriter(new FileWriter(file));
+
+    for (Iterator i = m_Results.entrySet().iterator(); i.hasNext();){
+      Map.Entry entry = (Map.Entry) i.next();
+      Result result = (Result) entry.getValue();
+      writer.println(entry.getKey() + "\t" + result.m_Value + "\t" + result.m_Unit);
+    }
+
+    writer.close();
+  }
+
+  /**
+   * Compare the results with those of a previous run (see save).
+   *
+   * @param file The file of the previous results.
+   * @param tolerance The percentage a result can exceed its baseline.
+   *
+   * @return The number of regressions.
+   *
+   * @throws Exception If the file can't be read.
+   */
+  public int compare(File file, double tolerance) throws Exception{
+
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    int numRegressions = 0;
+    String line;
+
+    System.out.println();
+
+    while ((line = reader.readLine()) != null){
+
+      StringTokenizer tokens = new StringTokenizer(line, "\t");
+      if (tokens.countTokens() < 2)
+        continue;
+
+      String name = tokens.nextToken();
+      double baseline = Double.parseDouble(tokens.nextToken());
+      Result result = (Result) m_Results.get(name);
+
+      if (result == null || baseline <= 0)
+        continue;
+
+      double change = 100 * (result.m_Value - baseline) / baseline;
+      if (change > tolerance){
+        numRegressions++;
+        System.out.println("REGRESSION " + pad(name, 60) + " " + Utils.doubleToString(baseline, 1)
+                           + " -> " + Utils.doubleToString(result.m_Value, 1) + " " + result.m_Unit
+                           + " (+" + Utils.doubleToString(change, 1) + "%)");
+      }
+    }
+
+    reader.close();
+
+    System.out.println(numRegressions + " regressions (tolerance " + tolerance + "%).");
+    return numRegressions;
+  }
+
+  /**
+   * Check that the scoring benchmarks with a reused context didn't allocate memory.
+   *
+   * @return The number of benchmarks which allocated (each one is reported as a regression).
+   */
+  public int checkAllocations(){
+
+    int numRegressions = 0;
+
+    System.out.println();
+
+    for (Iterator i = m_Results.entrySet().iterator(); i.hasNext();){
+      Map.Entry entry = (Map.Entry) i.next();
+      Result result = (Result) entry.getValue();
+      if (((String) entry.getKey()).startsWith(CONTEXT_SCORING + ".alloc/") && result.m_Value > 0){
+        numRegressions++;
+        System.out.println("REGRESSION " + pad((String) entry.getKey(), 60) + " "
+                           + Utils.doubleToString(result.m_Value, 1) + " " + result.m_Unit + " (0 expected)");
+      }
+    }
+
+    System.out.println(numRegressions + " scoring benchmarks with a context allocated memory.");
+    return numRegressions;
+  }
+
+  /**
+   * Split a comma separated list.
+   *
+   * @param list The list.
+   *
+   * @return Its elements.
+   */
+  private static String[] split(String list){
+    StringTokenizer tokens = new StringTokenizer(list, ",");
+    String[] result = new String[tokens.countTokens()];
+    for (int i = 0; i < result.length; i++)
+      result[i] = tokens.nextToken().trim();
+    return result;
+  }
+
+  /**
+   * Runs the benchmarks. Options:<p>
+   *
+   * -d directory <br>
+   * The directory of the datasets (default _data_).<p>
+   *
+   * -t file1,file2... <br>
+   * The datasets, relative to the data directory (default the uci and conus-torus ones).<p>
+   *
+   * -s factor1,factor2... <br>
+   * The scale-up factors of the datasets (default 1,10).<p>
+   *
+   * -b booster1,booster2... <br>
+   * The boosters (default AdaBoostM1, RealAdaBoost, AdaBoostMH, AdaBoostOC, AdaBoostECC,
+   * CSB0, CSB1, CSB2 and AdaCost).<p>
+   *
+   * -W classname [options] <br>
+   * The base classifier, quoted with its options (default weka.classifiers.trees.DecisionStump).<p>
+   *
+   * -I num <br>
+   * The number of iterations of each round (default 20).<p>
+   *
+   * -w num <br>
+   * The number of warmup rounds (default 2).<p>
+   *
+   * -r num <br>
+   * The number of measured rounds (default 5).<p>
+   *
+   * -S <br>
+   * Run only the scoring benchmarks (ie. to check quickly that scoring doesn't allocate).<p>
+   *
+   * -o file <br>
+   * Save the results to a file.<p>
+   *
+   * -c file <br>
+   * Compare the results with those saved in a file.<p>
+   *
+   * -T percentage <br>
+   * The tolerance of the comparison (default 20).<p>
+   *
+   * @param args The options.
+   */
+  public static void main(String[] args){
+
+    try{
+      if (Utils.getFlag('h', args)){
+        System.out.println("Usage: BoosterBenchmark [-d dataDirectory] [-t file1,file2...] [-s factor1,factor2...]\n"
+                           + "  [-b booster1,booster2...] [-W \"classname options\"] [-I iterations] [-w warmupRounds]\n"
+                           + "  [-r rounds] [-S] [-o resultsFile] [-c baselineFile] [-T tolerancePercentage]");
+        return;
+      }
+
+      BoosterBenchmark benchmark = new BoosterBenchmark();
+      String option;
+
+      if ((option = Utils.getOption('d', args)).length() != 0)
+        benchmark.m_DataDirectory = option;
+      if ((option = Utils.getOption('t', args)).length() != 0)
+        benchmark.m_Datasets = split(option);
+      if ((option = Utils.getOption('s', args)).length() != 0){
+        String[] factors = split(option);
+        benchmark.m_ScaleFactors = new int[factors.length];
+        for (int i = 0; i < factors.length; i++)
+          benchmark.m_ScaleFactors[i] = Integer.parseInt(factors[i]);
+      }
+      if ((option = Utils.getOption('b', args)).length() != 0)
+        benchmark.m_BoosterNames = split(option);
+      if ((option = Utils.getOption('W', args)).length() != 0)
+        benchmark.m_BaseClassifier = option;
+      if ((option = Utils.getOption('I', args)).length() != 0)
+        benchmark.m_NumIterations = Integer.parseInt(option);
+      if ((option = Utils.getOption('w', args)).length() != 0)
+        benchmark.m_WarmupRounds = Integer.parseInt(option);
+      if ((option = Utils.getOption('r', args)).length() != 0)
+        benchmark.m_Rounds = Math.max(1, Integer.parseInt(option));
+      benchmark.m_OnlyScoring = Utils.getFlag('S', args);
+
+      String output = Utils.getOption('o', args);
+      String baseline = Utils.getOption('c', args);
+      String tolerance = Utils.getOption('T', args);
+
+      Utils.checkForRemainingOptions(args);
+
+      benchmark.run();
+
+      if (output.length() != 0)
+        benchmark.save(new File(output));
+
+      int numRegressions = benchmark.checkAllocations();
+
+      if (baseline.length() != 0)
+        numRegressions += benchmark.compare(new File(baseline), tolerance.length() != 0 ? Double.parseDouble(tolerance) : 20);
+
+      if (numRegressions > 0)
+        System.exit(1);
+    }
+    catch (Exception e){
+      e.printStackTrace();
+      System.err.println(e.getMessage());
+      System.exit(2);
+    }
+  }
+}
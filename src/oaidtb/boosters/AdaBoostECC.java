@@ -22,6 +22,7 @@
 
 package oaidtb.boosters;
 
+import oaidtb.filters.AbstractNominalToOCFilter;
 import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
 import weka.core.*;
@@ -29,7 +30,6 @@ import weka.core.*;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.Random;
 import java.util.Vector;
 
 /**
@@ -46,12 +46,11 @@ import java.util.Vector;
 public class AdaBoostECC extends AdaBoostOC{
 
   /**
-   * We store the base classifiers and their weights dynamically. I choose this approach
-   * instead of using a faster fixed length array because I want to be able of control
-   * interactively the number of performed iterations (next method...).
-   * @associates Classifier
+   * We store the base classifiers and their weights dynamically because I want to be able
+   * of control interactively the number of performed iterations (next method...).
+   * Their weights (alfa and beta) are stored apart, in m_AlfasAndBetas.
    */
-  private ArrayList m_Classifiers;
+  private WeightedClassifierVector m_Classifiers;
 
   /**
    * Container class for alfa and beta. We provide direct access to its fields for
@@ -73,6 +72,59 @@ public class AdaBoostECC extends AdaBoostOC{
    * @associates AlfaAndBetaContainer*/
   private ArrayList m_AlfasAndBetas;
 
+  /** The votes of the base classifiers compiled into tables (not serialized: they're recompiled when needed). */
+  private transient volatile VoteTables m_VoteTables;
+
+  /**
+   * The votes of an ensemble compiled into two dense tables: the row i of m_IfOne (m_IfZero)
+   * is the vote vector of the base classifier i when it predicts 1 (0), ie. its alfa (beta)
+   * times the code of each class in its coloring. Scoring an instance is then, for each
+   * base classifier, a prediction and the addition of a row.
+   *
+   * The tables are never modified: when the ensemble changes (see isOf), new ones replace
+   * them, so many threads can use them at the same time without locking.
+   */
+  private static class VoteTables{
+
+    /** The ensemble compiled. */
+    private WeightedClassifierVector m_Ensemble;
+
+    /** The modifications of the ensemble when it was compiled. */
+    private int m_Modifications;
+
+    /** The votes when the base classifier predicts 1. {numClassifiers x numClasses} */
+    double[][] m_IfOne;
+
+    /** The votes when the base classifier predicts 0. {numClassifiers x numClasses} */
+    double[][] m_IfZero;
+
+    public VoteTables(WeightedClassifierVector ensemble, ArrayList alfasAndBetas,
+                      AbstractNominalToOCFilter coloring, int numClasses){
+
+      m_Ensemble = ensemble;
+      m_Modifications = ensemble.modifications();
+      m_IfOne = new double[ensemble.size()][numClasses];
+      m_IfZero = new double[ensemble.size()][numClasses];
+
+      for (int i = 0; i < m_IfOne.length; i++){
+        AlfaAndBetaContainer alfaAndBeta = (AlfaAndBetaContainer) alfasAndBetas.get(i);
+        for (int j = 0; j < numClasses; j++){
+          m_IfOne[i][j] = alfaAndBeta.alfa * coloring.getCode(i, j);
+          m_IfZero[i][j] = alfaAndBeta.beta * coloring.getCode(i, j);
+        }
+      }
+    }
+
+    /**
+     * @param ensemble An ensemble.
+     *
+     * @return True if these are the tables of the ensemble as it is now.
+     */
+    public boolean isOf(WeightedClassifierVector ensemble){
+      return ensemble == m_Ensemble && ensemble.modifications() == m_Modifications;
+    }
+  }
+
   /** Use symmetric version to calculate alfa and beta?. Default: no. */
   private boolean m_UseSymmetricVersion = false;
 
@@ -111,6 +163,9 @@ public class AdaBoostECC extends AdaBoostOC{
     if (m_TrainData.numInstances() == 0)
       throw new Exception("No train instances without class missing!");
 
+    //Hold out the validation set if the booster must stop early.
+    m_TrainData = initializeEarlyStopping(m_TrainData);
+
     //Set up the number of classes. Be careful with binary class problems (not use AdaBoostECC).
     if (3 > (m_NumClasses = m_TrainData.numClasses()))
       System.err.println("AdaBoostECC could be not useful with binary class problems.");
@@ -130,6 +185,9 @@ public class AdaBoostECC extends AdaBoostOC{
     //Set up the number of performed iterations.
     m_NumIterations = 0;
 
+    //Restart the resampling random numbers stream.
+    initializeResampleRandom();
+
     //Initialize the coloring.
     m_Coloring.setProcessedAttribute(-1); //So it will take the class attribute.
     m_Coloring.setInputFormat(m_TrainData);
@@ -158,14 +216,10 @@ public class AdaBoostECC extends AdaBoostOC{
     m_TrainData.setClassIndex(classIndex);
 
     //Initialize the classifiers and their weights array.
-    m_Classifiers = new ArrayList();
+    m_Classifiers = new WeightedClassifierVector(m_InitialIterations);
 
     //Initialize the "mislabel distribution".
-    m_MislabelDistribution = new double[m_NumInstances][m_NumClasses];
-    double incorrectLabelWeight = 1.0 / (m_NumInstances * (m_NumClasses - 1));
-    for (int i = 0; i < m_NumInstances; i++)
-      for (int j = 0; j < m_NumClasses; j++)
-        m_MislabelDistribution[i][j] = (m_OriginalDataClasses[i] != j ? incorrectLabelWeight : 0.0);
+    initMislabelDistribution();
 
     //Initialize tha alfas and betas array.
     m_AlfasAndBetas = new ArrayList();
@@ -198,7 +252,6 @@ public class AdaBoostECC extends AdaBoostOC{
 
     AlfaAndBetaContainer alfaAndBeta;
     Classifier baseClassifier;
-    SerializedObject serializedClassifier = new SerializedObject(m_Classifier);
 
     if (m_Debug){
       System.err.println("Boosting without resampling.");
@@ -215,33 +268,47 @@ public class AdaBoostECC extends AdaBoostOC{
         System.err.println("Training classifier " + (m_NumIterations + 1));
 
       //Colororing genetation & U calculation
+      enterPhase(IterationProfile.COLORING, m_NumInstances);
       double u = calculateU();
 
       // Weights redistribution.
+      enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
       reweight(u);
 
       //Coloring application.
+      enterPhase(IterationProfile.COLORING, m_NumInstances);
       relabel();
 
       //Copy the base classifier.
-      baseClassifier = (Classifier) serializedClassifier.getObject();
+      enterPhase(IterationProfile.CLASSIFIER_CREATION, 0);
+      baseClassifier = m_ClassifierFactory.newClassifier();
 
       // Build the classifier.
+      enterPhase(IterationProfile.TRAINING, m_NumInstances);
+      m_DataView.syncWeights();
       baseClassifier.buildClassifier(m_TrainData);
 
+      //Classify the training instances; the predictions are shared by the next steps.
+      enterPhase(IterationProfile.PREDICTION, m_NumInstances);
+      m_DataView.predict(baseClassifier);
+
       // Alfa & Beta calculation.
       // Mislabel distribution computation.
       // Optional training error upper bound calculation.
+      enterPhase(IterationProfile.ERROR, m_NumInstances);
       if (m_UseSymmetricVersion){
         alfaAndBeta = calculateSymmetricVotes(baseClassifier);
         m_AlfasAndBetas.add(m_NumIterations, alfaAndBeta);
+        enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
         calculateMislabelDistribution(baseClassifier, alfaAndBeta.alfa, alfaAndBeta.beta);
+        enterPhase(IterationProfile.UPPER_BOUND, 0);
         if (m_CalculateTrainingErrorUpperBound)
           updateSymmetricTrainingErrorUpperBound(alfaAndBeta.alfa, u);
       }
       else{
         alfaAndBeta = calculateAsymmetricVotes(baseClassifier);
         m_AlfasAndBetas.add(m_NumIterations, alfaAndBeta);
+        enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
         if (m_CalculateTrainingErrorUpperBound)
           calculateMislabelDistribution(baseClassifier, alfaAndBeta.alfa, alfaAndBeta.beta, u);
         else
@@ -254,6 +321,7 @@ public class AdaBoostECC extends AdaBoostOC{
       //"Commit"
       m_Classifiers.add(baseClassifier);
       m_NumIterations++;
+      iterationPerformed();
     }
   }
 
@@ -267,11 +335,9 @@ public class AdaBoostECC extends AdaBoostOC{
    */
   protected void buildClassifierUsingResampling(int numIterations) throws Exception{
 
-    Random randomInstance = new Random(m_ResampleSeed); //Random number generator for resample.
     Instances sample;                                   //The resampled training dataset.
     AlfaAndBetaContainer alfaAndBeta;
     Classifier baseClassifier;
-    SerializedObject serializedClassifier = new SerializedObject(m_Classifier);
 
     if (m_Debug){
       System.err.println("Boosting with resampling.");
@@ -288,36 +354,50 @@ public class AdaBoostECC extends AdaBoostOC{
         System.err.println("Training classifier " + (m_NumIterations + 1));
 
       //Colororing genetation & U calculation
+      enterPhase(IterationProfile.COLORING, m_NumInstances);
       double u = calculateU();
 
       //Weights redistribution.
+      enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
       reweight(u);
 
       //Coloring application.
+      enterPhase(IterationProfile.COLORING, m_NumInstances);
       relabel();
 
       // Resample.
-      sample = m_TrainData.resampleWithWeights(randomInstance);
+      enterPhase(IterationProfile.RESAMPLING, m_NumInstances);
+      sample = m_Resampler.resample(m_DataView, m_ResampleRandom);
 
       //Copy the base classifier.
-      baseClassifier = (Classifier) serializedClassifier.getObject();
+      enterPhase(IterationProfile.CLASSIFIER_CREATION, 0);
+      baseClassifier = m_ClassifierFactory.newClassifier();
 
       // Build the classifier.
+      enterPhase(IterationProfile.TRAINING, sample.numInstances());
       baseClassifier.buildClassifier(sample);
 
+      //Classify the training instances; the predictions are shared by the next steps.
+      enterPhase(IterationProfile.PREDICTION, m_NumInstances);
+      m_DataView.predict(baseClassifier);
+
       // Alfa & Beta calculation.
       // Mislabel distribution computation.
       // Optional training error upper bound calculation.
+      enterPhase(IterationProfile.ERROR, m_NumInstances);
       if (m_UseSymmetricVersion){
         alfaAndBeta = calculateSymmetricVotes(baseClassifier);
         m_AlfasAndBetas.add(m_NumIterations, alfaAndBeta);
+        enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
         calculateMislabelDistribution(baseClassifier, alfaAndBeta.alfa, alfaAndBeta.beta);
+        enterPhase(IterationProfile.UPPER_BOUND, 0);
         if (m_CalculateTrainingErrorUpperBound)
           updateSymmetricTrainingErrorUpperBound(alfaAndBeta.alfa, u);
       }
       else{
         alfaAndBeta = calculateAsymmetricVotes(baseClassifier);
         m_AlfasAndBetas.add(m_NumIterations, alfaAndBeta);
+        enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
         if (m_CalculateTrainingErrorUpperBound)
           calculateMislabelDistribution(baseClassifier, alfaAndBeta.alfa, alfaAndBeta.beta, u);
         else
@@ -330,13 +410,14 @@ public class AdaBoostECC extends AdaBoostOC{
       //"Commit"
       m_Classifiers.add(baseClassifier);
       m_NumIterations++;
+      iterationPerformed();
     }
   }
 
   /**
    * Alfa and beta claculation in the case of asymmetric version.
    *
-   * @param baseClassifier The classifier used to calculate the votes.
+   * @param baseClassifier The classifier used to calculate the votes (its predictions must be stored in m_DataView).
    *
    * @return Alfa and beta.
    *
@@ -349,17 +430,19 @@ public class AdaBoostECC extends AdaBoostOC{
     double sumTmpA2 = 0;
     double sumTmpB1 = 0;
     double sumTmpB2 = 0;
+    double[] weights = m_DataView.weights();
+    int[] predictions = m_DataView.predictions();
 
     for (int i = 0; i < m_NumInstances; i++){
-      if (baseClassifier.classifyInstance(m_TrainData.instance(i)) == 1)
+      if (predictions[i] == 1)
         if (m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i]) == 1)
-          sumTmpA1 += m_TrainData.instance(i).weight();
+          sumTmpA1 += weights[i];
         else
-          sumTmpA2 += m_TrainData.instance(i).weight();
+          sumTmpA2 += weights[i];
       else if (m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i]) == 0)
-        sumTmpB1 += m_TrainData.instance(i).weight();
+        sumTmpB1 += weights[i];
       else
-        sumTmpB2 += m_TrainData.instance(i).weight();
+        sumTmpB2 += weights[i];
     }
 
     sumTmpA1 += Booster.NO_DIVISION_BY_ZERO;
@@ -374,7 +457,7 @@ public class AdaBoostECC extends AdaBoostOC{
   /**
    * Alfa and beta calculation in the case of symmetric version.
    *
-   * @param baseClassifier The classifier used to calculate the votes.
+   * @param baseClassifier The classifier used to calculate the votes (its predictions must be stored in m_DataView).
    *
    * @return Alfa and beta (= - alfa).
    *
@@ -385,13 +468,14 @@ public class AdaBoostECC extends AdaBoostOC{
 
     double sumTmpA1 = 0;
     double sumTmpA2 = 0;
+    double[] weights = m_DataView.weights();
+    int[] predictions = m_DataView.predictions();
 
     for (int i = 0; i < m_NumInstances; i++){
-      if (baseClassifier.classifyInstance(m_TrainData.instance(i)) ==
-        m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i]))
-        sumTmpA1 += m_TrainData.instance(i).weight();
+      if (predictions[i] == m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i]))
+        sumTmpA1 += weights[i];
       else
-        sumTmpA2 += m_TrainData.instance(i).weight();
+        sumTmpA2 += weights[i];
     }
 
     sumTmpA1 += Booster.NO_DIVISION_BY_ZERO;
@@ -404,7 +488,7 @@ public class AdaBoostECC extends AdaBoostOC{
    * Update the "mislabel distribution, with respect to the last base cassifier generated
    * and its weights (alfa and beta).
    *
-   * @param baseClassifier The classifier from we obtain the fresh new information.
+   * @param baseClassifier The classifier from we obtain the fresh new information (its predictions must be stored in m_DataView).
    * @param alfa Classifier's alfa
    * @param beta Classifier's beta
    *
@@ -414,30 +498,26 @@ public class AdaBoostECC extends AdaBoostOC{
     throws Exception{
 
     double sumTmp = 0; // Faster than use Utils.normalize
+    int[] codes;
+    double[] factors;
+    int[][] otherCodes = otherClassesCodes(m_NumIterations);
+    int[] predictions = m_DataView.predictions();
 
     //Faster than continously call alfaOrBeta().
-    alfa /= 2;
-    beta /= 2;
-
-    for (int i = 0; i < m_NumInstances; i++){
-      if (baseClassifier.classifyInstance(m_TrainData.instance(i)) == 1)
-        for (int j = 0; j < m_NumClasses; j++)
-          sumTmp +=
-            (m_MislabelDistribution[i][j] = m_MislabelDistribution[i][j] *
-            Math.exp(alfa * m_Coloring.getCode(m_NumIterations, j) -
-                     alfa * m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i])));
-      else
-        for (int j = 0; j < m_NumClasses; j++)
-          sumTmp +=
-            (m_MislabelDistribution[i][j] = m_MislabelDistribution[i][j] *
-            Math.exp(beta * m_Coloring.getCode(m_NumIterations, j) -
-                     beta * m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i])));
+    double[][] alfaFactors = codeFactors(alfa / 2);
+    double[][] betaFactors = codeFactors(beta / 2);
+
+    for (int i = 0, p = 0; i < m_NumInstances; i++){
+      factors = (predictions[i] == 1 ? alfaFactors : betaFactors)
+        [m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i])];
+      codes = otherCodes[m_OriginalDataClasses[i]];
+      for (int k = 0; k < codes.length; k++, p++)
+        sumTmp += (m_MislabelDistribution[p] *= factors[codes[k]]);
     }
 
     //Normalize to 1 (not z).
-    for (int i = 0; i < m_NumInstances; i++)
-      for (int j = 0; j < m_NumClasses; j++)
-        m_MislabelDistribution[i][j] = m_MislabelDistribution[i][j] / sumTmp;
+    for (int p = 0; p < m_MislabelDistribution.length; p++)
+      m_MislabelDistribution[p] /= sumTmp;
   }
 
   /**
@@ -445,7 +525,7 @@ public class AdaBoostECC extends AdaBoostOC{
    * and its weights (alfa and beta). It also updates the theoretically proved training error
    * upper bound in the asymmetric version of the algorithm.
    *
-   * @param baseClassifier The classifier from we obtain the fresh new information.
+   * @param baseClassifier The classifier from we obtain the fresh new information (its predictions must be stored in m_DataView).
    * @param alfa Classifier's alfa
    * @param beta Classifier's beta
    * @param u Current iteration u
@@ -456,37 +536,37 @@ public class AdaBoostECC extends AdaBoostOC{
     throws Exception{
 
     double sumTmp = 0; // Faster than use Utils.normalize
+    int[] codes;
+    double[] factors;
+    int[][] otherCodes = otherClassesCodes(m_NumIterations);
 
     //Faster than continously call alfaOrBeta().
-    final double alfaHalf = alfa / 2;
-    final double betaHalf = beta / 2;
+    final double[][] alfaFactors = codeFactors(alfa / 2);
+    final double[][] betaFactors = codeFactors(beta / 2);
 
     double z = 0;
     double sumOfWeights = 0;
+    double[] weights = m_DataView.weights();
+    int[] predictions = m_DataView.predictions();
 
-    for (int i = 0; i < m_NumInstances; i++){
+    for (int i = 0, p = 0; i < m_NumInstances; i++){
 
-      Instance instance = m_TrainData.instance(i);
-      sumOfWeights += instance.weight();
+      sumOfWeights += weights[i];
 
-      if (baseClassifier.classifyInstance(m_TrainData.instance(i)) == 1){
-        z += instance.weight() *
+      if (predictions[i] == 1){
+        z += weights[i] *
           Math.exp(m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i]) == 0 ? alfa : -alfa);
-        for (int j = 0; j < m_NumClasses; j++)
-          sumTmp +=
-            (m_MislabelDistribution[i][j] = m_MislabelDistribution[i][j] *
-            Math.exp(alfaHalf * m_Coloring.getCode(m_NumIterations, j) -
-                     alfaHalf * m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i])));
+        factors = alfaFactors[m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i])];
       }
       else{
-        z += instance.weight() *
+        z += weights[i] *
           Math.exp(m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i]) == 0 ? beta : -beta);
-        for (int j = 0; j < m_NumClasses; j++)
-          sumTmp +=
-            (m_MislabelDistribution[i][j] = m_MislabelDistribution[i][j] *
-            Math.exp(betaHalf * m_Coloring.getCode(m_NumIterations, j) -
-                     betaHalf * m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i])));
+        factors = betaFactors[m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i])];
       }
+
+      codes = otherCodes[m_OriginalDataClasses[i]];
+      for (int k = 0; k < codes.length; k++, p++)
+        sumTmp += (m_MislabelDistribution[p] *= factors[codes[k]]);
     }
 
     //Deal with the various normalization options.
@@ -501,9 +581,8 @@ public class AdaBoostECC extends AdaBoostOC{
     z *= (m_LastDistributionWeightSumBeforeNormalize / sumOfWeights);
 
     //Normalize to 1 (we don't use z).
-    for (int i = 0; i < m_NumInstances; i++)
-      for (int j = 0; j < m_NumClasses; j++)
-        m_MislabelDistribution[i][j] = m_MislabelDistribution[i][j] / sumTmp;
+    for (int p = 0; p < m_MislabelDistribution.length; p++)
+      m_MislabelDistribution[p] /= sumTmp;
 
     //Update the training error upper bound.
     m_TrainingErrorUpperBound *= (z * u + 1 - u);
@@ -512,6 +591,25 @@ public class AdaBoostECC extends AdaBoostOC{
       System.err.println("\tTEUB--> " + m_TrainingErrorUpperBound);
   }
 
+  /**
+   * The factors by which the "mislabel distribution" is multiplied: a label whose code is
+   * j, of an instance whose class code is i, is multiplied by exp(half * j - half * i).
+   *
+   * @param half The half of alfa or beta.
+   *
+   * @return The factors, indexed by [class code][label code].
+   */
+  private static double[][] codeFactors(double half){
+
+    double[][] factors = new double[2][2];
+
+    for (int i = 0; i < 2; i++)
+      for (int j = 0; j < 2; j++)
+        factors[i][j] = Math.exp(half * j - half * i);
+
+    return factors;
+  }
+
   /**
    * Updates de training error upper bound in the case of the symmetric version.
    *
@@ -529,33 +627,39 @@ public class AdaBoostECC extends AdaBoostOC{
   }
 
   /**
-   * Calculates the class membership probabilities for the given test instance.
+   * Calculates the class membership probabilities for the given test instance using only
+   * the first numIterations base classifiers, without allocating memory: the distribution
+   * returned belongs to the context.
    *
    * @param instance the instance to be classified
+   * @param numIterations number of base classifiers to use
+   * @param context the scoring context of the current thread
    *
    * @return predicted class probability distribution
    *
-   * @exception java.lang.Exception if instance could not be classified successfully
+   * @exception java.lang.Exception if numIterations is incorrect or instance could not be classified successfully
    */
-  public double[] distributionForInstance(Instance instance) throws Exception{
+  public double[] distributionForInstance(Instance instance, int numIterations, ScoringContext context) throws Exception{
 
-    if (m_NumIterations == 0)
+    checkNumIterations(numIterations);
+
+    if (numIterations == 0)
       throw new Exception("No model built");
 
-    double[] sums = new double[m_NumClasses];
-    double alfaOrBeta;
+    double[] sums = context.buffer(0, m_NumClasses);
+    double[] votes;
 
     //Necessary to avoid problems (by example, J48.classifyInstance uses numClasses() instance
     //method, which must return 2 and not the number of data classes in the original dataset).
-    instance = new Instance(instance);
-    instance.setDataset(m_TrainData);
+    instance = context.bind(instance, m_TrainData);
 
-    for (int i = 0; i < m_NumIterations; i++){
-      alfaOrBeta = (((Classifier) m_Classifiers.get(i)).classifyInstance(instance) == 1 ?
-        ((AlfaAndBetaContainer) m_AlfasAndBetas.get(i)).alfa :
-        ((AlfaAndBetaContainer) m_AlfasAndBetas.get(i)).beta);
+    Classifier[] classifiers = m_Classifiers.classifiers();
+    VoteTables tables = voteTables();
+
+    for (int i = 0; i < numIterations; i++){
+      votes = (classifiers[i].classifyInstance(instance) == 1 ? tables.m_IfOne[i] : tables.m_IfZero[i]);
       for (int j = 0; j < m_NumClasses; j++)
-        sums[j] += (alfaOrBeta * m_Coloring.getCode(i, j));
+        sums[j] += votes[j];
     }
 
     //Set all classes probabilities >= 1
@@ -580,6 +684,89 @@ public class AdaBoostECC extends AdaBoostOC{
     return sums;
   }
 
+  /**
+   * Calculates the class membership probabilities of a batch of instances using only the
+   * first numIterations base classifiers; each base classifier classifies the whole batch
+   * before the next one. The instances are bound to the train data format once for the
+   * whole batch.
+   *
+   * @param data The instances to be classified.
+   * @param numIterations Number of base classifiers to use.
+   * @param out The matrix where the distributions are written.
+   *
+   * @throws Exception If the parameters are incorrect or an instance can't be classified.
+   */
+  public void distributionsForInstances(Instances data, int numIterations, double[][] out) throws Exception{
+
+    checkBatch(data, numIterations, out);
+
+    if (numIterations == 0)
+      throw new Exception("No model built");
+
+    int numInstances = data.numInstances();
+    Instance[] instances = bindInstances(data, m_TrainData);
+    Classifier[] classifiers = m_Classifiers.classifiers();
+    VoteTables tables = voteTables();
+
+    for (int j = 0; j < numInstances; j++)
+      java.util.Arrays.fill(out[j], 0, m_NumClasses, 0);
+
+    for (int i = 0; i < numIterations; i++){
+      double[] ifOne = tables.m_IfOne[i];
+      double[] ifZero = tables.m_IfZero[i];
+      for (int j = 0; j < numInstances; j++){
+        double[] votes = classifiers[i].classifyInstance(instances[j]) == 1 ? ifOne : ifZero;
+        double[] sums = out[j];
+        for (int k = 0; k < m_NumClasses; k++)
+          sums[k] += votes[k];
+      }
+    }
+
+    for (int j = 0; j < numInstances; j++){
+      double[] sums = out[j];
+
+      //Set all classes probabilities >= 1
+      double minValue = 0;
+
+      for (int k = 0; k < m_NumClasses; k++)
+        if (sums[k] < minValue)
+          minValue = sums[k];
+
+      minValue = Booster.NO_DIVISION_BY_ZERO - minValue;
+
+      for (int k = 0; k < m_NumClasses; k++)
+        sums[k] += minValue;
+
+      try{
+        Utils.normalize(sums);
+      }
+      catch (IllegalArgumentException e){
+      } // sums[k]==0 para todo k
+    }
+  }
+
+  /**
+   * Get the votes of the base classifiers compiled into tables, compiling them if the
+   * ensemble has changed since the last time.
+   *
+   * @return The tables.
+   */
+  private VoteTables voteTables(){
+
+    VoteTables tables = m_VoteTables;
+
+    if (tables != null && tables.isOf(m_Classifiers))
+      return tables;
+
+    synchronized (this){
+      tables = m_VoteTables;
+      if (tables == null || !tables.isOf(m_Classifiers))
+        m_VoteTables = tables = new VoteTables(m_Classifiers, m_AlfasAndBetas, m_Coloring, m_NumClasses);
+    }
+
+    return tables;
+  }
+
   /**
    * Get the classifier's vote for the instance; the (vectorial) sum of all base classifiers vote vectors must be
    * the final combined hypothesis of the booster.
@@ -598,11 +785,9 @@ public class AdaBoostECC extends AdaBoostOC{
 
     //Necessary to avoid problems (by example, J48.classifyInstance uses numClasses() instance
     //method, which must return 2 and not the number of data classes in the original dataset).
-    instance = new Instance(instance);
-    instance.setDataset(m_TrainData);
-
+    instance = threadContext().bind(instance, m_TrainData);
 
-    alfaOrBeta = (((Classifier) m_Classifiers.get(classifierIndex)).classifyInstance(instance) == 1 ?
+    alfaOrBeta = (m_Classifiers.get(classifierIndex).classifyInstance(instance) == 1 ?
       ((AlfaAndBetaContainer) m_AlfasAndBetas.get(classifierIndex)).alfa :
       ((AlfaAndBetaContainer) m_AlfasAndBetas.get(classifierIndex)).beta);
     for (int j = 0; j < m_NumClasses; j++)
@@ -624,6 +809,17 @@ public class AdaBoostECC extends AdaBoostOC{
     return sums;
   }
 
+  /**
+   * Get the class of a training instance in the original training data.
+   *
+   * @param index The index of the training instance.
+   *
+   * @return The class index.
+   */
+  protected int originalClassValue(int index){
+    return m_OriginalDataClasses[index];
+  }
+
   /**
    * Parses a given list of options. Valid options are:</PRE>
    *
@@ -739,7 +935,33 @@ public class AdaBoostECC extends AdaBoostOC{
     if (numClassifier < 0 || numClassifier >= m_NumIterations)
       throw new Exception("Classifier's number incorrect.");
     //It would be better to return a copy; it's slower too.
-    return (Classifier) m_Classifiers.get(numClassifier);
+    return m_Classifiers.get(numClassifier);
+  }
+
+  /**
+   * Eliminate the last numIterations performed from the final combined hypothesis,
+   * releasing their base classifiers.
+   *
+   * @param numIterations The number of iterations to get rid of
+   * @throws Exception If numIterations parameter is incorrect
+   */
+  public void purgeIterations(int numIterations) throws Exception{
+    super.purgeIterations(numIterations);
+    m_Classifiers.truncate(m_NumIterations);
+    m_AlfasAndBetas.subList(m_NumIterations, m_AlfasAndBetas.size()).clear();
+  }
+
+  /**
+   * Give a frozen copy its own base classifiers vector and votes list.
+   *
+   * @throws Exception If the model can't be copied
+   */
+  protected void copyModel() throws Exception{
+    super.copyModel();
+    if (m_Classifiers != null){
+      m_Classifiers = m_Classifiers.copy();
+      m_AlfasAndBetas = new ArrayList(m_AlfasAndBetas);
+    }
   }
 
   /**
@@ -27,7 +27,6 @@ import weka.classifiers.Evaluation;
 import weka.core.*;
 
 import java.util.Enumeration;
-import java.util.Random;
 import java.util.Vector;
 
 import oaidtb.misc.CustomOrderDefiner;
@@ -52,6 +51,34 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
   /** Base classifiers and the weights of their votes. */
   private WeightedClassifierVector m_Classifiers;
 
+  /** How the stumps leaves vote in confidenceAndSign. */
+  private final static EnsembleCompiler.LeafVote CONFIDENCE_VOTE = new EnsembleCompiler.LeafVote(){
+    public double vote(double weight, double[] distribution){
+      return EnsembleCompiler.classifyAs(distribution) == 0 ? -weight : weight;
+    }
+
+    public int target(double[] distribution){
+      return 0;
+    }
+  };
+
+  /** How the stumps leaves vote in distributionForInstance. */
+  private final static EnsembleCompiler.LeafVote CLASS_VOTE = new EnsembleCompiler.LeafVote(){
+    public double vote(double weight, double[] distribution){
+      return weight;
+    }
+
+    public int target(double[] distribution){
+      return (int) EnsembleCompiler.classifyAs(distribution);
+    }
+  };
+
+  /** Compiled form of the ensemble (if it's made of decision stumps) for confidenceAndSign. */
+  private EnsembleCompiler m_CompiledConfidences = new EnsembleCompiler(CONFIDENCE_VOTE);
+
+  /** Compiled form of the ensemble (if it's made of decision stumps) for distributionForInstance. */
+  private EnsembleCompiler m_CompiledVotes = new EnsembleCompiler(CLASS_VOTE);
+
   /** The theoretical training error upper bound. */
   protected double m_ErrorUpperBound;
 
@@ -105,10 +132,16 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
       m_TrainData.deleteWithMissingClass();
       if (m_TrainData.numInstances() == 0)
         throw new Exception("No train instances without class missing!");
+
+      //Hold out the validation set if the booster must stop early.
+      m_TrainData = initializeEarlyStopping(m_TrainData);
     }
-    else
-    //We entrust to the "caller class" the correctness of the train data instances.
+    else{
+      //We entrust to the "caller class" the correctness of the train data instances
+      //(and the stopping decision).
       m_TrainData = data;
+      m_EarlyStopping = null;
+    }
 
     //Set up the number of classes
     m_NumClasses = data.numClasses();
@@ -123,8 +156,11 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
     //Set up the number of performed iterations.
     m_NumIterations = 0;
 
+    //Restart the resampling random numbers stream.
+    initializeResampleRandom();
+
     //Initialize the classifiers and their weights array.
-    m_Classifiers = new WeightedClassifierVector();
+    m_Classifiers = new WeightedClassifierVector(m_InitialIterations);
 
     //We can now perform new iterations.
     m_BoosterReady = true;
@@ -155,7 +191,6 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
     double beta;
     double epsilon;
     Classifier baseClassifier;
-    SerializedObject serializedClassifier = new SerializedObject(m_Classifier);
 
     if (m_Debug)
       System.err.println("Boosting without resampling.");
@@ -167,12 +202,20 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
         System.err.println("Training classifier " + (m_NumIterations + 1));
 
       //Copy the base classifier.
-      baseClassifier = (Classifier) serializedClassifier.getObject();
+      enterPhase(IterationProfile.CLASSIFIER_CREATION, 0);
+      baseClassifier = m_ClassifierFactory.newClassifier();
 
       // Build the classifier.
+      enterPhase(IterationProfile.TRAINING, m_NumInstances);
+      m_DataView.syncWeights();
       baseClassifier.buildClassifier(m_TrainData);
 
+      //Classify the training instances; the predictions are shared by the next steps.
+      enterPhase(IterationProfile.PREDICTION, m_NumInstances);
+      m_DataView.predict(baseClassifier);
+
       // Calculate the error.
+      enterPhase(IterationProfile.ERROR, m_NumInstances);
       epsilon = calculateError(baseClassifier);
 
       //Apply the stop criterion
@@ -198,14 +241,17 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
         System.err.println("\terror rate = " + epsilon + "  beta = " + beta);
 
       //Assign new instances weights
+      enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
       reweight(baseClassifier, beta);
 
       //Update the theoretical training error upper bound
+      enterPhase(IterationProfile.UPPER_BOUND, 0);
       updateErrorUpperBound(epsilon);
 
       //"Commit"
       m_Classifiers.add(baseClassifier, beta);
       m_NumIterations++;
+      iterationPerformed();
     }
   }
 
@@ -220,10 +266,8 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
   protected void buildClassifierUsingResampling(int numIterations) throws Exception{
 
     double epsilon, beta;          //Base classifier's error and weight.
-    Random randomInstance = new Random(m_ResampleSeed); //Random number generator for resample.
     Instances sample;              //The resampled training dataset.
     Classifier baseClassifier;
-    SerializedObject serializedClassifier = new SerializedObject(m_Classifier);
 
     if (m_Debug)
       System.err.println("Boosting with resampling.");
@@ -236,15 +280,23 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
       }
 
       // Resample.
-      sample = m_TrainData.resampleWithWeights(randomInstance);
+      enterPhase(IterationProfile.RESAMPLING, m_NumInstances);
+      sample = m_Resampler.resample(m_DataView, m_ResampleRandom);
 
       //Copy the base classifier.
-      baseClassifier = (Classifier) serializedClassifier.getObject();
+      enterPhase(IterationProfile.CLASSIFIER_CREATION, 0);
+      baseClassifier = m_ClassifierFactory.newClassifier();
 
       // Build the classifier.
+      enterPhase(IterationProfile.TRAINING, sample.numInstances());
       baseClassifier.buildClassifier(sample);
 
+      //Classify the training instances; the predictions are shared by the next steps.
+      enterPhase(IterationProfile.PREDICTION, m_NumInstances);
+      m_DataView.predict(baseClassifier);
+
       //Calculate base classifier's error
+      enterPhase(IterationProfile.ERROR, m_NumInstances);
       epsilon = calculateError(baseClassifier);
 
       //Apply the stop criterion
@@ -269,19 +321,23 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
         System.err.println("\terror rate = " + epsilon + "  beta = " + beta);
 
       //Assign new instances weights
+      enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
       reweight(baseClassifier, beta);
 
       //Update the theoretical training error upper bound.
+      enterPhase(IterationProfile.UPPER_BOUND, 0);
       updateErrorUpperBound(epsilon);
 
       //"Commit"
       m_Classifiers.add(baseClassifier, beta);
       m_NumIterations++;
+      iterationPerformed();
     }
   }
 
   /**
    * Calculate a classifiers error as the weight percentage of training instances misclassified.
+   * The base classifier predictions are the ones previously stored in m_DataView.
    *
    * @param baseClassifier The base classifier
    *
@@ -293,14 +349,14 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
 
     double epsilon = 0;
     double totalSumOfWeights = 0;
-    Instance instance;
+    double[] weights = m_DataView.weights();
+    int[] labels = m_DataView.labels();
+    int[] predictions = m_DataView.predictions();
 
     for (int i = 0; i < m_NumInstances; i++){
-      instance = m_TrainData.instance(i);
-      double weight = instance.weight();
-      totalSumOfWeights += weight;
-      if (baseClassifier.classifyInstance(instance) != instance.classValue())
-        epsilon += weight;
+      totalSumOfWeights += weights[i];
+      if (predictions[i] != labels[i])
+        epsilon += weights[i];
     }
 
     return epsilon / totalSumOfWeights;
@@ -324,6 +380,8 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
    * We use a "conservative boosting approach", only increasing the weights of misclassified
    * instances. This update will be exp(beta) if beta is &gt 0 or exp (-beta) otherwise.
    *
+   * The base classifier predictions are the ones previously stored in m_DataView.
+   *
    * @param baseClassifier The base classifier
    * @param beta Factor in term of which misclassified training instances weight will be updated
    *
@@ -338,13 +396,16 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
     else  //error > 0.5; we still increase the weights of misclassified instances
       beta = Math.exp(-beta);
 
+    double[] weights = m_DataView.weights();
+    int[] labels = m_DataView.labels();
+    int[] predictions = m_DataView.predictions();
+
     for (int i = 0; i < m_NumInstances; i++){
 
-      Instance instance = m_TrainData.instance(i);
-      double weight = instance.weight();
+      double weight = weights[i];
 
-      if (instance.classValue() != baseClassifier.classifyInstance(instance))
-        instance.setWeight(weight * beta);
+      if (labels[i] != predictions[i])
+        weights[i] = weight * beta;
 
       newWeightsSum += weight;
     }
@@ -363,14 +424,38 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
    * @throws Exception if the instance cant be classified succesfully.
    */
   public double confidenceAndSign(Instance instance) throws Exception{
+    return confidenceAndSign(instance, m_NumIterations, null);
+  }
+
+  /**
+   * Return the class predicted (&lt0 == class 0 and &gt0 == class 1) and the
+   * confidence of this prediction (its absolute value) using only the first numIterations
+   * base classifiers. No scratch memory is needed, so the context is not used.
+   *
+   * @param instance The instance to be classified
+   * @param numIterations Number of base classifiers to use
+   * @param context The scoring context of the current thread (it can be null)
+   *
+   * @return The class predicted and its confidence.
+   *
+   * @throws Exception If numIterations is incorrect or the instance can't be classified.
+   */
+  public double confidenceAndSign(Instance instance, int numIterations, ScoringContext context) throws Exception{
+
+    checkNumIterations(numIterations);
+
+    if (m_CompiledConfidences.compile(m_Classifiers))
+      return m_CompiledConfidences.sumVotes(instance, numIterations);
 
     double confidenceAndSign = 0;
+    Classifier[] classifiers = m_Classifiers.classifiers();
+    double[] weights = m_Classifiers.weights();
 
-    for (int i = 0; i < m_NumIterations; i++)
-      if(m_Classifiers.get(i).classifyInstance(instance) == 0)
-        confidenceAndSign -= m_Classifiers.getWeight(i);
+    for (int i = 0; i < numIterations; i++)
+      if(classifiers[i].classifyInstance(instance) == 0)
+        confidenceAndSign -= weights[i];
       else
-        confidenceAndSign += m_Classifiers.getWeight(i);
+        confidenceAndSign += weights[i];
 
     return confidenceAndSign;
   }
@@ -407,10 +492,37 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
    * @exception Exception if instance could not be classified successfully
    */
   public double[] distributionForInstance(Instance instance) throws Exception{
-    double[] distributionForInstance = new double[m_NumClasses];
+    return (double[]) distributionForInstance(instance, threadContext()).clone();
+  }
+
+  /**
+   * Calculates the class membership probabilities for the given test instance using only
+   * the first numIterations base classifiers, without allocating memory: the distribution
+   * returned belongs to the context.
+   *
+   * @param instance the instance to be classified
+   * @param numIterations number of base classifiers to use
+   * @param context the scoring context of the current thread
+   *
+   * @return predicted class probability distribution
+   *
+   * @exception Exception if numIterations is incorrect or instance could not be classified successfully
+   */
+  public double[] distributionForInstance(Instance instance, int numIterations, ScoringContext context) throws Exception{
+
+    checkNumIterations(numIterations);
 
-    for (int i = 0; i < m_NumIterations; i++)
-      distributionForInstance[(int) m_Classifiers.get(i).classifyInstance(instance)] += m_Classifiers.getWeight(i);
+    double[] distributionForInstance = context.buffer(0, m_NumClasses);
+
+    if (m_CompiledVotes.compile(m_Classifiers))
+      m_CompiledVotes.addVotes(instance, numIterations, distributionForInstance);
+    else{
+      Classifier[] classifiers = m_Classifiers.classifiers();
+      double[] weights = m_Classifiers.weights();
+
+      for (int i = 0; i < numIterations; i++)
+        distributionForInstance[(int) classifiers[i].classifyInstance(instance)] += weights[i];
+    }
 
     //We need to normalize...
     oaidtb.misc.Utils.secureNormalize(distributionForInstance);
@@ -418,6 +530,75 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
     return distributionForInstance;
   }
 
+  /**
+   * Compute confidenceAndSign for a batch of instances using only the first numIterations
+   * base classifiers; each base classifier classifies the whole batch before the next one.
+   *
+   * @param instances The instances to be classified
+   * @param numIterations Number of base classifiers to use
+   * @param out The array where the confidences and signs are written
+   *
+   * @throws Exception if an error happens.
+   */
+  public void confidencesAndSigns(Instance[] instances, int numIterations, double[] out) throws Exception{
+
+    checkNumIterations(numIterations);
+
+    if (m_CompiledConfidences.compile(m_Classifiers)){
+      for (int j = 0; j < instances.length; j++)
+        out[j] = m_CompiledConfidences.sumVotes(instances[j], numIterations);
+      return;
+    }
+
+    Classifier[] classifiers = m_Classifiers.classifiers();
+    double[] weights = m_Classifiers.weights();
+
+    java.util.Arrays.fill(out, 0, instances.length, 0);
+
+    for (int i = 0; i < numIterations; i++)
+      for (int j = 0; j < instances.length; j++)
+        if (classifiers[i].classifyInstance(instances[j]) == 0)
+          out[j] -= weights[i];
+        else
+          out[j] += weights[i];
+  }
+
+  /**
+   * Calculates the class membership probabilities of a batch of instances using only the
+   * first numIterations base classifiers; each base classifier classifies the whole batch
+   * before the next one.
+   *
+   * @param data The instances to be classified.
+   * @param numIterations Number of base classifiers to use.
+   * @param out The matrix where the distributions are written.
+   *
+   * @throws Exception If the parameters are incorrect or an instance can't be classified.
+   */
+  public void distributionsForInstances(Instances data, int numIterations, double[][] out) throws Exception{
+
+    checkBatch(data, numIterations, out);
+
+    int numInstances = data.numInstances();
+
+    for (int j = 0; j < numInstances; j++)
+      java.util.Arrays.fill(out[j], 0, m_NumClasses, 0);
+
+    if (m_CompiledVotes.compile(m_Classifiers))
+      for (int j = 0; j < numInstances; j++)
+        m_CompiledVotes.addVotes(data.instance(j), numIterations, out[j]);
+    else{
+      Classifier[] classifiers = m_Classifiers.classifiers();
+      double[] weights = m_Classifiers.weights();
+
+      for (int i = 0; i < numIterations; i++)
+        for (int j = 0; j < numInstances; j++)
+          out[j][(int) classifiers[i].classifyInstance(data.instance(j))] += weights[i];
+    }
+
+    for (int j = 0; j < numInstances; j++)
+      oaidtb.misc.Utils.secureNormalize(out[j]);
+  }
+
   /**
    * Get the classifier's vote for the instance; the (vectorial) sum of all base classifiers vote vectors must be
    * the final combined hypothesis of the booster (obviously, not normalized).
@@ -439,6 +620,30 @@ public class AdaBoostM1 extends Booster implements MulticlassExtensibleBooster,
     return distributionForInstance;
   }
 
+  /**
+   * Eliminate the last numIterations performed from the final combined hypothesis,
+   * releasing their base classifiers.
+   *
+   * @param numIterations The number of iterations to get rid of
+   * @throws Exception If numIterations parameter is incorrect
+   */
+  public void purgeIterations(int numIterations) throws Exception{
+    super.purgeIterations(numIterations);
+    m_Classifiers.truncate(m_NumIterations);
+  }
+
+  /**
+   * Give a frozen copy its own base classifiers vector and ensemble compilers.
+   *
+   * @throws Exception If the model can't be copied
+   */
+  protected void copyModel() throws Exception{
+    if (m_Classifiers != null)
+      m_Classifiers = m_Classifiers.copy();
+    m_CompiledConfidences = new EnsembleCompiler(CONFIDENCE_VOTE);
+    m_CompiledVotes = new EnsembleCompiler(CLASS_VOTE);
+  }
+
   /** @return The value considered as a "too big error" for base classifiers */
   public double getTooBigError(){
     return m_CustomizedBigError ? m_TooBigError : defaultTooBigErrorValue();
@@ -22,6 +22,7 @@
 
 package oaidtb.boosters;
 
+import oaidtb.misc.SplittableRandom;
 import weka.classifiers.DistributionClassifier;
 import weka.classifiers.Evaluation;
 import weka.core.*;
@@ -51,7 +52,7 @@ import java.util.Vector;
  * @version $Revision: 1.0 $
  */
 public class AdaBoostMH extends DistributionClassifier
-  implements OptionHandler, WeightedInstancesHandler, IterativeUpdatableClassifier{
+  implements OptionHandler, WeightedInstancesHandler, IterativeUpdatableClassifier, Cloneable{
 
   /** The number of different classes in the original dataset. */
   protected int m_NumClasses;
@@ -65,15 +66,30 @@ public class AdaBoostMH extends DistributionClassifier
   /** The training instances. */
   protected Instances m_TrainData;
 
-  /** The instances weights for the nth booster {m_NumClasse x m_NumInstances}-->R. */
-  protected double[][] m_InstanceWeights;
-
   /** The base (MultiClassExtensible) booster. */
   protected Booster m_Booster = new RealAdaBoost();
 
   /** The base (MultiClassExtensible) boosters. */
   protected Booster[] m_Boosters = new Booster[0];
 
+  /** The iteration listeners of the boosters (see addIterationListener). */
+  protected transient Vector m_IterationListeners;
+
+  /** The scoring contexts of the threads which use the single instance methods (see Booster.threadContext). */
+  private transient volatile ScoringContext.PerThread m_ThreadContexts;
+
+  /** Number of boosters trained at the same time (1 means one after another). */
+  protected int m_NumThreads = 1;
+
+  /**
+   * The train instances of each booster: each one has its own labels and weights, but they
+   * share the attribute values of m_TrainData's instances.
+   */
+  protected Instances[] m_ClassData = new Instances[0];
+
+  /** The index of the next booster to be trained by the booster threads. */
+  private int m_NextBooster;
+
   /** Default constructor: inform the base booster it will be used by a meta-algorithm */
   public AdaBoostMH(){
     if (null != m_Booster)
@@ -90,15 +106,52 @@ public class AdaBoostMH extends DistributionClassifier
    * @exception Exception if instance could not be classified successfully
    */
   public double[] distributionForInstance(Instance instance) throws Exception{
+    return (double[]) distributionForInstance(instance, threadContext()).clone();
+  }
 
-    double[] distributionForInstance = new double[m_NumClasses];
+  /**
+   * Calculates the class membership probabilities for the given test instance without
+   * allocating memory: the distribution returned belongs to the context.
+   *
+   * @param instance the instance to be classified
+   * @param context the scoring context of the current thread
+   *
+   * @return predicted class probability distribution
+   *
+   * @exception Exception if instance could not be classified successfully
+   */
+  public double[] distributionForInstance(Instance instance, ScoringContext context) throws Exception{
+    return distributionForInstance(instance, getNumIterationsPerformed(), context);
+  }
+
+  /**
+   * Calculates the class membership probabilities for the given test instance using only
+   * the first numIterations iterations, without allocating memory: the distribution
+   * returned belongs to the context.
+   *
+   * The classifier isn't modified, so many threads (each one with its own context) can call
+   * it at the same time as long as the classifier doesn't change; to classify instances
+   * while it keeps iterating, use a frozen copy (see freeze).
+   *
+   * @param instance the instance to be classified
+   * @param numIterations number of iterations to use
+   * @param context the scoring context of the current thread
+   *
+   * @return predicted class probability distribution
+   *
+   * @exception Exception if numIterations is incorrect or instance could not be classified successfully
+   */
+  public double[] distributionForInstance(Instance instance, int numIterations, ScoringContext context)
+    throws Exception{
+
+    double[] distributionForInstance = context.buffer(0, m_NumClasses);
     double minValue = 0;
 
-    instance = new Instance(instance);
-    instance.setDataset(m_TrainData);
+    instance = context.bind(instance, m_TrainData);
+    ScoringContext boostersContext = context.child();
 
     for (int i = 0; i < m_NumClasses; i++){
-      distributionForInstance[i] = ((MulticlassExtensibleBooster) m_Boosters[i]).confidenceAndSign(instance);
+      distributionForInstance[i] = ((MulticlassExtensibleBooster) m_Boosters[i]).confidenceAndSign(instance, numIterations, boostersContext);
       if (minValue > distributionForInstance[i])
         minValue = distributionForInstance[i];
     }
@@ -117,6 +170,60 @@ public class AdaBoostMH extends DistributionClassifier
     return distributionForInstance;
   }
 
+  /**
+   * Calculates the class membership probabilities of a batch of instances using only the
+   * first numIterations iterations. The distributions are written into the supplied matrix
+   * (a row per instance, as long as the number of classes at least).
+   *
+   * Each booster scores the whole batch before the next one, and the instances are only
+   * copied (once per batch) if the batch hasn't the format of the train data.
+   *
+   * @param data The instances to be classified.
+   * @param numIterations Number of iterations to use.
+   * @param out The matrix where the distributions are written.
+   *
+   * @throws Exception If the parameters are incorrect or an instance can't be classified.
+   */
+  public void distributionsForInstances(Instances data, int numIterations, double[][] out) throws Exception{
+
+    if (numIterations > getNumIterationsPerformed() || numIterations < 0)
+      throw new Exception("Invaled numIterations parameter.");
+
+    int numInstances = data.numInstances();
+
+    if (out.length < numInstances)
+      throw new Exception("The output matrix has less rows than instances.");
+
+    Instance[] instances = Booster.bindInstances(data, m_TrainData);
+    double[] confidences = threadContext().buffer(0, numInstances);
+
+    for (int i = 0; i < m_NumClasses; i++){
+      ((MulticlassExtensibleBooster) m_Boosters[i]).confidencesAndSigns(instances, numIterations, confidences);
+      for (int j = 0; j < numInstances; j++)
+        out[j][i] = confidences[j];
+    }
+
+    for (int j = 0; j < numInstances; j++){
+      double[] distribution = out[j];
+      double minValue = 0;
+
+      for (int i = 0; i < m_NumClasses; i++)
+        if (minValue > distribution[i])
+          minValue = distribution[i];
+
+      //Normalize.
+      double sumTmp = oaidtb.boosters.Booster.NO_DIVISION_BY_ZERO;
+
+      for (int i = 0; i < m_NumClasses; i++){
+        distribution[i] -= minValue;
+        sumTmp += distribution[i];
+      }
+
+      for (int i = 0; i < m_NumClasses; i++)
+        distribution[i] /= sumTmp;
+    }
+  }
+
   /**
    * Get the classifier's vote for the instance; the (vectorial) sum of all base classifiers vote vectors must be
    * the final combined hypothesis of the booster.
@@ -131,8 +238,7 @@ public class AdaBoostMH extends DistributionClassifier
     double[] distributionForInstance = new double[m_NumClasses];
     double minValue = 0;
 
-    instance = new Instance(instance);
-    instance.setDataset(m_TrainData);
+    instance = threadContext().bind(instance, m_TrainData);
 
     for (int i = 0; i < m_NumClasses; i++){
       distributionForInstance[i] = ((MulticlassExtensibleBooster) m_Boosters[i]).confidenceAndSign(instance, classifierIndex);
@@ -157,14 +263,17 @@ public class AdaBoostMH extends DistributionClassifier
    */
   public double classifyInstance(Instance instance) throws Exception{
 
-    instance = new Instance(instance);
-    instance.setDataset(m_TrainData);
+    ScoringContext context = threadContext();
+    int numIterations = getNumIterationsPerformed();
+
+    instance = context.bind(instance, m_TrainData);
+    ScoringContext boostersContext = context.child();
 
-    double maxValue = ((MulticlassExtensibleBooster) m_Boosters[0]).confidenceAndSign(instance);
+    double maxValue = ((MulticlassExtensibleBooster) m_Boosters[0]).confidenceAndSign(instance, numIterations, boostersContext);
     double maxIndex = 0;
 
     for (int i = 1; i < m_NumClasses; i++){
-      double currentValue = ((MulticlassExtensibleBooster) m_Boosters[i]).confidenceAndSign(instance);
+      double currentValue = ((MulticlassExtensibleBooster) m_Boosters[i]).confidenceAndSign(instance, numIterations, boostersContext);
       if (maxValue < currentValue){
         maxIndex = i;
         maxValue = currentValue;
@@ -174,6 +283,27 @@ public class AdaBoostMH extends DistributionClassifier
     return maxIndex;
   }
 
+  /**
+   * Get the scoring context of the current thread for this classifier, which the methods
+   * without a context argument use (see Booster.threadContext).
+   *
+   * @return The context of the current thread.
+   */
+  private ScoringContext threadContext(){
+
+    ScoringContext.PerThread contexts = m_ThreadContexts;
+
+    if (contexts == null){
+      synchronized (this){
+        if (m_ThreadContexts == null)
+          m_ThreadContexts = new ScoringContext.PerThread();
+        contexts = m_ThreadContexts;
+      }
+    }
+
+    return contexts.context();
+  }
+
   /**
    * Boosting method.
    * Reset the model and initialize data.
@@ -224,22 +354,169 @@ public class AdaBoostMH extends DistributionClassifier
     m_TrainData.insertAttributeAt(new Attribute("PseudoClass", my_nominal_values), classIndex);
     m_TrainData.setClassIndex(classIndex);
 
-    //Create the boosters via serialization
+    createBoosters();
+
+    buildBoosters();
+  }
+
+  /**
+   * Create the boosters of the classes via serialization of m_Booster. Each one resamples
+   * with its own random numbers stream, split from the resample seed of m_Booster, so the
+   * boosters don't draw the same samples and the ensembles don't depend on the order (or
+   * the threads) in which they are trained. The boosters don't stop early, since all of them
+   * must have the same number of iterations.
+   *
+   * @throws Exception If m_Booster can't be copied.
+   */
+  protected void createBoosters() throws Exception{
+
     m_Boosters = new Booster[m_NumClasses];
     SerializedObject serializedBooster = new SerializedObject(m_Booster);
-    for (int i = 0; i < m_NumClasses; i++)
+    SplittableRandom streams = new SplittableRandom(m_Booster.getResampleSeed());
+
+    for (int i = 0; i < m_NumClasses; i++){
       m_Boosters[i] = (Booster) serializedBooster.getObject();
+      m_Boosters[i].setResampleSeed(streams.split().nextInt());
+      //All the boosters must perform the same number of iterations.
+      m_Boosters[i].setEarlyStoppingPatience(0);
+      if (m_IterationListeners != null)
+        for (int j = 0; j < m_IterationListeners.size(); j++)
+          m_Boosters[i].addIterationListener((IterationListener) m_IterationListeners.elementAt(j));
+    }
+  }
 
-    m_InstanceWeights = new double[m_NumClasses][m_NumInstances];
+  /**
+   * Build the base boosters, each one over its own instances.
+   *
+   * @throws Exception If a booster can't be built.
+   */
+  protected void buildBoosters() throws Exception{
+
+    m_ClassData = new Instances[m_NumClasses];
+    for (int i = 0; i < m_NumClasses; i++)
+      m_ClassData[i] = pseudoClassData(i);
+
+    trainBoosters(-1);
+  }
+
+  /**
+   * Build or update the base boosters, one after another or concurrently depending on
+   * the number of threads.
+   *
+   * @param numIterations The number of iterations to perform, or a negative number to
+   * build the boosters.
+   *
+   * @throws Exception If a booster can't be trained.
+   */
+  private void trainBoosters(int numIterations) throws Exception{
 
     boolean showDebugInfo = m_Booster.getDebug();
 
-    for (int i = 0; i < m_NumClasses; i++){
+    if (m_NumThreads > 1 && m_NumClasses > 1){
       if (showDebugInfo)
-        System.err.println("\n*-*-*-*-*Building booster for class " + i + "*-*-*-*-*");
-      relabel(i);
-      m_Boosters[i].buildClassifier(m_TrainData);
-      saveBoosterWeights(i);
+        System.err.println("\n*-*-*-*-*Training the boosters with " + m_NumThreads + " threads*-*-*-*-*");
+      runBoosters(numIterations);
+      return;
+    }
+
+    for (int i = 0; i < m_NumClasses; i++){
+      if (numIterations < 0){
+        if (showDebugInfo)
+          System.err.println("\n*-*-*-*-*Building booster for class " + i + "*-*-*-*-*");
+        m_Boosters[i].buildClassifier(m_ClassData[i]);
+      }
+      else{
+        if (showDebugInfo)
+          System.err.println("\n*-*-*-*-*Updating booster for class " + i + "*-*-*-*-*");
+        m_Boosters[i].nextIterations(numIterations);
+      }
+    }
+  }
+
+  /**
+   * Create the train instances for the booster of a class: they share the attribute
+   * values of m_TrainData's instances, with "PseudoClass = 1" for those instances which
+   * originally belongs to class "oldClassValue" and "PseudoClass = 0" for the rest.
+   *
+   * @param oldClassValue The class value index to be set as 1
+   *
+   * @return The instances.
+   */
+  protected Instances pseudoClassData(double oldClassValue){
+
+    Instances data = new Instances(m_TrainData, m_NumInstances);
+    int classIndex = m_TrainData.classIndex();
+
+    for (int i = 0; i < m_NumInstances; i++)
+      data.add(new PseudoClassInstance(m_TrainData.instance(i), classIndex,
+                                       m_OriginalDataClasses[i] == oldClassValue ? 1 : 0));
+    return data;
+  }
+
+  /**
+   * Train all the base boosters concurrently (each one over its own instances), with
+   * at most m_NumThreads threads.
+   *
+   * @param numIterations The number of iterations to perform, or a negative number to
+   * build the boosters.
+   *
+   * @throws Exception The first exception thrown by a booster (lowest class index).
+   */
+  private void runBoosters(int numIterations) throws Exception{
+
+    Exception[] errors = new Exception[m_NumClasses];
+    BoosterThread[] threads = new BoosterThread[Math.min(m_NumThreads, m_NumClasses)];
+
+    m_NextBooster = 0;
+    for (int i = 0; i < threads.length; i++){
+      threads[i] = new BoosterThread(numIterations, errors);
+      threads[i].start();
+    }
+
+    for (int i = 0; i < threads.length; i++)
+      threads[i].join();
+
+    for (int i = 0; i < m_NumClasses; i++)
+      if (errors[i] != null)
+        throw errors[i];
+  }
+
+  /**
+   * Get the index of the next booster to be trained.
+   *
+   * @return The index, or -1 when there are no more boosters.
+   */
+  private synchronized int nextBooster(){
+    return m_NextBooster < m_NumClasses ? m_NextBooster++ : -1;
+  }
+
+  /** A thread which trains boosters until there are no more left. */
+  private class BoosterThread extends Thread{
+
+    /** The number of iterations to perform (negative to build the boosters). */
+    private int m_NumIterations;
+
+    /** The exceptions thrown by each booster. */
+    private Exception[] m_Errors;
+
+    public BoosterThread(int numIterations, Exception[] errors){
+      m_NumIterations = numIterations;
+      m_Errors = errors;
+    }
+
+    public void run(){
+      int i;
+      while ((i = nextBooster()) >= 0){
+        try{
+          if (m_NumIterations < 0)
+            m_Boosters[i].buildClassifier(m_ClassData[i]);
+          else
+            m_Boosters[i].nextIterations(m_NumIterations);
+        }
+        catch (Exception e){
+          m_Errors[i] = e;
+        }
+      }
     }
   }
 
@@ -266,49 +543,40 @@ public class AdaBoostMH extends DistributionClassifier
     if (m_Boosters == null || !m_Boosters[0].isReadyToIterate())
       throw new Exception("Booster is not initialized properly.");
 
-    boolean showDebugInfo = m_Booster.getDebug();
-
-    for (int i = 0; i < m_NumClasses; i++){
-      if (showDebugInfo)
-        System.err.println("\n*-*-*-*-*Updating booster for class " + i + "*-*-*-*-*");
-      loadBoosterWeights(i);
-      relabel(i);
-      m_Boosters[i].nextIterations(numIterations);
-      saveBoosterWeights(i);
-    }
+    trainBoosters(numIterations);
   }
 
   /**
-   * Assign "PseudoClass = 1" to those instances which originally belongs to class
-   * "oldClassValue" and "PseudoClass = 0" to the rest.
+   * Get the profile of each iteration of the boosters of the classes (see
+   * Booster.addIterationListener): the listener is notified once per booster and iteration
+   * (IterationProfile.getBooster tells which booster); if the boosters are trained
+   * concurrently, it is called by several threads.
    *
-   * @param oldClassValue The class value index to be set as 1
+   * @param listener The listener.
    */
-  protected void relabel(double oldClassValue){
-    for (int i = 0; i < m_NumInstances; i++){
-      Instance instance = m_TrainData.instance(i);
-      instance.setClassValue(m_OriginalDataClasses[i] == oldClassValue ? 1 : 0);
-    }
-  }
+  public void addIterationListener(IterationListener listener){
 
-  /**
-   * Load the train instances weights associated to the booster indicated
-   *
-   * @param boosterIndex The booster index to which those weights are related
-   */
-  private void loadBoosterWeights(int boosterIndex){
-    for (int i = 0; i < m_NumInstances; i++)
-      m_TrainData.instance(i).setWeight(m_InstanceWeights[boosterIndex][i]);
+    if (m_IterationListeners == null)
+      m_IterationListeners = new Vector();
+    if (!m_IterationListeners.contains(listener))
+      m_IterationListeners.addElement(listener);
+
+    for (int i = 0; i < m_Boosters.length; i++)
+      m_Boosters[i].addIterationListener(listener);
   }
 
   /**
-   * Save the train instances weights associated to the booster indicated
+   * Stop notifying the iterations of the boosters to a listener.
    *
-   * @param boosterIndex The booster index to which those weights are related
+   * @param listener The listener.
    */
-  protected void saveBoosterWeights(int boosterIndex){
-    for (int i = 0; i < m_NumInstances; i++)
-      m_InstanceWeights[boosterIndex][i] = m_TrainData.instance(i).weight();
+  public void removeIterationListener(IterationListener listener){
+
+    if (m_IterationListeners != null)
+      m_IterationListeners.removeElement(listener);
+
+    for (int i = 0; i < m_Boosters.length; i++)
+      m_Boosters[i].removeIterationListener(listener);
   }
 
   /**
@@ -322,6 +590,7 @@ public class AdaBoostMH extends DistributionClassifier
       m_Boosters[i].purgeTraindata();
 
     m_TrainData = null;
+    m_ClassData = new Instances[0];
   }
 
   /**
@@ -337,6 +606,36 @@ public class AdaBoostMH extends DistributionClassifier
       m_Boosters[i].purgeIterations(numIterations);
   }
 
+  /**
+   * Get a frozen copy of the classifier: a read-only snapshot of the boosters built so far,
+   * which can classify instances from many threads at the same time (each one with its own
+   * ScoringContext) while this classifier keeps iterating. Each booster is frozen (see
+   * Booster.freeze) and only the header of the train data is kept; a frozen copy can't
+   * iterate nor purge iterations.
+   *
+   * It must be called while the classifier is not iterating (ie. by the training thread,
+   * between two calls to nextIterations).
+   *
+   * @return The frozen copy.
+   * @throws Exception If the classifier can't be copied
+   */
+  public AdaBoostMH freeze() throws Exception{
+
+    AdaBoostMH frozen = (AdaBoostMH) clone();
+
+    frozen.m_Boosters = new Booster[m_Boosters.length];
+    for (int i = 0; i < m_Boosters.length; i++)
+      frozen.m_Boosters[i] = m_Boosters[i].freeze();
+
+    if (m_TrainData != null)
+      frozen.m_TrainData = new Instances(m_TrainData, 0);
+    frozen.m_ClassData = new Instances[0];
+    frozen.m_OriginalDataClasses = null;
+    frozen.m_ThreadContexts = null;
+
+    return frozen;
+  }
+
   public void setDebug(boolean debug){
     for (int i = 0; i < m_NumClasses; i++)
       m_Boosters[i].setDebug(debug);
@@ -362,6 +661,11 @@ public class AdaBoostMH extends DistributionClassifier
       + "\n\t(default RealAdaBoost).\n.",
       "B", 1, "-B"));
 
+    newVector.addElement(new Option(
+      "\tNumber of threads used to train the boosters concurrently\n"
+      + "\t(default 1: the boosters are trained one after another).",
+      "K", 1, "-K <threads>"));
+
     if ((m_Booster != null)){
       newVector.addElement(new Option(
         "",
@@ -383,12 +687,22 @@ public class AdaBoostMH extends DistributionClassifier
    * use as the base Booster.
    * <p>
    *
+   * -K num <br>
+   * Number of threads used to train the boosters concurrently (default 1).
+   * <p>
+   *
    * @param options the list of options as an array of strings
    *
    * @exception java.lang.Exception if an option is not supported
    */
   public void setOptions(String[] options) throws Exception{
 
+    String numThreads = Utils.getOption('K', options);
+    if (numThreads.length() != 0)
+      setNumThreads(Integer.parseInt(numThreads));
+    else
+      setNumThreads(1);
+
     String boosterName = Utils.getOption('B', options);
     if (boosterName.length() == 0)
       setBooster((Booster) Utils.forName(MulticlassExtensibleBooster.class,
@@ -411,10 +725,13 @@ public class AdaBoostMH extends DistributionClassifier
     if (m_Booster != null)
       boosterOptions = m_Booster.getOptions();
 
-    String[] options = new String[boosterOptions.length + 3];
+    String[] options = new String[boosterOptions.length + 5];
 
     int current = 0;
 
+    options[current++] = "-K";
+    options[current++] = "" + getNumThreads();
+
     if (m_Booster != null){
       options[current++] = "-B";
       options[current++] = "" + m_Booster.getClass().getName();
@@ -446,6 +763,21 @@ public class AdaBoostMH extends DistributionClassifier
     return m_Booster;
   }
 
+  /**
+   * Set the number of threads used to train the boosters (each thread trains a booster
+   * at a time).
+   *
+   * @param numThreads The number of threads (values lesser than 1 are taken as 1).
+   */
+  public void setNumThreads(int numThreads){
+    m_NumThreads = Math.max(1, numThreads);
+  }
+
+  /** @return The number of threads used to train the boosters. */
+  public int getNumThreads(){
+    return m_NumThreads;
+  }
+
   public Instances getTrainData(){
     return m_TrainData;
   }
@@ -493,8 +825,7 @@ public class AdaBoostMH extends DistributionClassifier
         double[] distributionForInstance = new double[m_NumClasses];
         double minValue = 0;
 
-        instance = new Instance(instance);
-        instance.setDataset(m_TrainData);
+        instance = threadContext().bind(instance, m_TrainData);
 
         for (int i = 0; i < m_NumClasses; i++){
           distributionForInstance[i] = ((MulticlassExtensibleBooster) m_Boosters[i]).confidenceAndSign(instance, itIndex);
@@ -579,6 +910,11 @@ public class AdaBoostMH extends DistributionClassifier
     return "The base (MulticlassExtensibleBooster) booster which will be used.";
   }
 
+  public String numThreadsTipText(){
+
+    return "Number of threads used to train the boosters concurrently (1 to train them one after another).";
+  }
+
   /**
    * Main method for testing this class.
    *
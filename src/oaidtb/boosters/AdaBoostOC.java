@@ -23,12 +23,14 @@
 package oaidtb.boosters;
 
 import oaidtb.filters.AbstractNominalToOCFilter;
+import oaidtb.filters.AbstractNominalToRandomOCFilter;
 import oaidtb.filters.NominalToRandomPermutationOfEvenSplitOCFilter;
 import oaidtb.misc.CustomOrderDefiner;
 import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
 import weka.core.*;
 
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Enumeration;
 import java.util.Random;
@@ -48,8 +50,6 @@ import java.util.Vector;
 public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
 
   // TODO: Implement addTrainingInstance, getTrainingInstance.
-  // TODO: 1/m_NumClasses del espacio en m_MislabelDistribution no se usa (tantos doubles como instancias)
-  //       pensar en alguna alternativa: OC, ECC & M2
   //       Implement a method for faster resize of m_TrainData (abstract in Booster).
   //       Implement Sourcable interface.
   //       boolToInt, inSet, calculateMislabelDistribution -> private if not CSAdaBoostOC...
@@ -58,10 +58,17 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
   protected AbstractNominalToOCFilter m_Coloring = new NominalToRandomPermutationOfEvenSplitOCFilter();
 
   /** Weight distribution indicating wich (incorrect) classes are more or less difficult
-   *  to identify for base classifier.
-   *  {m_NumInstances x m_NumClasses} --> [0,1] ; SUM == 1
+   *  to identify for base classifier. The weight of the true class of an instance is always 0,
+   *  so it isn't stored: the weights of the instance i are the m_NumClasses - 1 elements
+   *  from i * (m_NumClasses - 1) on, in the order of m_OtherClasses[m_OriginalDataClasses[i]].
+   *  {m_NumInstances * (m_NumClasses - 1)} --> [0,1] ; SUM == 1
    */
-  protected double[][] m_MislabelDistribution;
+  protected double[] m_MislabelDistribution;
+
+  /** The incorrect labels of the instances of each class (all the classes but it, in order).
+   *  {m_NumClasses x (m_NumClasses - 1)} --> [0,m_NumClasses)
+   */
+  protected int[][] m_OtherClasses;
 
   /** Original training instance belongs to class...
    *  {m_NumInstances}-->[0,m_NumClasses)
@@ -77,6 +84,9 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
   /** Number of retries in the task of find a good coloring (which maximizes U). */
   protected int m_Max_U_CalculatingIterations = 1;
 
+  /** Draw the m_Max_U_CalculatingIterations colorings at once and keep the best (see searchColoring). */
+  protected boolean m_ParallelColoringSearch = false;
+
   /** The number of classes. */
   protected int m_NumClasses;
 
@@ -125,6 +135,9 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
     if (m_TrainData.numInstances() == 0)
       throw new Exception("No train instances without class missing!");
 
+    //Hold out the validation set if the booster must stop early.
+    m_TrainData = initializeEarlyStopping(m_TrainData);
+
     //Set up the number of classes. Be careful with binary class problems (not use AdaBoostOC).
     if (3 > (m_NumClasses = m_TrainData.numClasses()))
       System.err.println("AdaBoostOC could be not useful with binary class problems.");
@@ -144,6 +157,9 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
     //Set up the number of performed iterations.
     m_NumIterations = 0;
 
+    //Restart the resampling random numbers stream.
+    initializeResampleRandom();
+
     //Initialize the coloring.
     m_Coloring.setProcessedAttribute(-1); //So it will take the class attribute.
     m_Coloring.setInputFormat(m_TrainData);
@@ -172,15 +188,10 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
     m_TrainData.setClassIndex(classIndex);
 
     //Initialize the classifiers and their weights array.
-    m_Classifiers = new WeightedClassifierVector();
+    m_Classifiers = new WeightedClassifierVector(m_InitialIterations);
 
     //Initialize the "mislabel distribution".
-    //TODO: Make it more efficient (two loops)
-    m_MislabelDistribution = new double[m_NumInstances][m_NumClasses];
-    double incorrectLabelWeight = 1.0 / (m_NumInstances * (m_NumClasses - 1));
-    for (int i = 0; i < m_NumInstances; i++)
-      for (int j = 0; j < m_NumClasses; j++)
-        m_MislabelDistribution[i][j] = (m_OriginalDataClasses[i] != j ? incorrectLabelWeight : 0.0);
+    initMislabelDistribution();
 
     //Initialize the training error upper bound.
     m_TrainingErrorUpperBound = 1;
@@ -207,7 +218,6 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
 
     double epsilon, beta;          //Base classifier's error (pseudoloss) and weight.
     Classifier baseClassifier;
-    SerializedObject serializedClassifier = new SerializedObject(m_Classifier);
 
     if (m_Debug)
       System.err.println("Boosting without resampling.");
@@ -219,21 +229,32 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
         System.err.println("Training classifier " + (m_NumIterations + 1));
 
       //Colororing genetation & U calculation.
+      enterPhase(IterationProfile.COLORING, m_NumInstances);
       double u = calculateU();
 
       //Weights redistribution.
+      enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
       reweight(u);
 
       //Coloring application.
+      enterPhase(IterationProfile.COLORING, m_NumInstances);
       relabel();
 
       //Copy the base classifier.
-      baseClassifier = (Classifier) serializedClassifier.getObject();
+      enterPhase(IterationProfile.CLASSIFIER_CREATION, 0);
+      baseClassifier = m_ClassifierFactory.newClassifier();
 
       // Build the classifier.
+      enterPhase(IterationProfile.TRAINING, m_NumInstances);
+      m_DataView.syncWeights();
       baseClassifier.buildClassifier(m_TrainData);
 
+      //Classify the training instances; the predictions are shared by the next steps.
+      enterPhase(IterationProfile.PREDICTION, m_NumInstances);
+      m_DataView.predict(baseClassifier);
+
       //Error (pseudoloss) calculation.
+      enterPhase(IterationProfile.ERROR, m_NumInstances);
       epsilon = calculatePseudoLoss(baseClassifier);
 
       //Determine the weight to assign to this model.
@@ -243,15 +264,18 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
         System.err.println("\terror (pseudoloss) rate = " + epsilon + "  beta = " + beta);
 
       //Mislabel distribution calculation.
+      enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
       calculateMislabelDistribution(baseClassifier, beta);
 
       //Update the training error upper bound.
+      enterPhase(IterationProfile.UPPER_BOUND, 0);
       if (m_CalculateTrainingErrorUpperBound)
         updateTrainingErrorUpperBound(epsilon, u);
 
       //"Commit"
       m_Classifiers.add(baseClassifier, beta);
       m_NumIterations++;
+      iterationPerformed();
     }
   }
 
@@ -266,10 +290,8 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
   protected void buildClassifierUsingResampling(int numIterations) throws Exception{
 
     double epsilon, beta;          //Base classifier's error (pseudoloss) and weight.
-    Random randomInstance = new Random(m_ResampleSeed); //Random number generator for resample.
     Instances sample;              //The resampled training dataset.
     Classifier baseClassifier;
-    SerializedObject serializedClassifier = new SerializedObject(m_Classifier);
 
     if (m_Debug)
       System.err.println("Boosting with resampling.");
@@ -281,24 +303,35 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
         System.err.println("Training classifier " + (m_NumIterations + 1));
 
       //Colororing genetation & U calculation.
+      enterPhase(IterationProfile.COLORING, m_NumInstances);
       double u = calculateU();
 
       //Weights redistribution.
+      enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
       reweight(u);
 
       //Coloring application.
+      enterPhase(IterationProfile.COLORING, m_NumInstances);
       relabel();
 
       // Resample.
-      sample = m_TrainData.resampleWithWeights(randomInstance);
+      enterPhase(IterationProfile.RESAMPLING, m_NumInstances);
+      sample = m_Resampler.resample(m_DataView, m_ResampleRandom);
 
       //Copy the base classifier.
-      baseClassifier = (Classifier) serializedClassifier.getObject();
+      enterPhase(IterationProfile.CLASSIFIER_CREATION, 0);
+      baseClassifier = m_ClassifierFactory.newClassifier();
 
       // Build the classifier.
+      enterPhase(IterationProfile.TRAINING, sample.numInstances());
       baseClassifier.buildClassifier(sample);
 
+      //Classify the training instances; the predictions are shared by the next steps.
+      enterPhase(IterationProfile.PREDICTION, m_NumInstances);
+      m_DataView.predict(baseClassifier);
+
       //Error (pseudoloss) calculation.
+      enterPhase(IterationProfile.ERROR, m_NumInstances);
       epsilon = calculatePseudoLoss(baseClassifier);
 
       // Determine the weight to assign to this model
@@ -308,16 +341,19 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
         System.err.println("\terror (pseudoloss) rate = " + epsilon + "  beta = " + beta);
 
       //Mislabel distribution calculation.
+      enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
       if (m_CalculateTrainingErrorUpperBound)
         calculateMislabelDistribution(baseClassifier, beta);
 
       //Update the training error upper bound.
+      enterPhase(IterationProfile.UPPER_BOUND, 0);
       if (m_CalculateTrainingErrorUpperBound)
         updateTrainingErrorUpperBound(epsilon, u);
 
       //"Commit".
       m_Classifiers.add(baseClassifier, beta);
       m_NumIterations++;
+      iterationPerformed();
     }
   }
 
@@ -333,25 +369,28 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
    */
   protected double calculateU() throws Exception{
 
-    int set;  //Set "each training instance belongs to..." in the new partition.
-    BitSet bestPartition = null; //Partition which maximizes U.
+    int[] codes = new int[m_NumClasses]; //Set "each class belongs to..." in the new partition.
+    long[] bestPartition = null; //Partition which maximizes U.
     double u, bestU = 0;
     int it = 0; //Number of generated partitions.
 
+    //U only depends on the weights summed by true class and label, so each partition
+    //costs m_NumClasses^2 operations instead of a pass over the distribution.
+    double[][] aggregate = aggregateMislabelDistribution();
+
+    if (m_ParallelColoringSearch && m_Coloring instanceof AbstractNominalToRandomOCFilter)
+      return searchColoring(aggregate);
+
     do{
 
       // Lo hacemos 1 vez ms de lo necesario en todo el proceso de entrenamiento
       // (ya se invoca en "m_Coloring.setInputFormat").
       m_Coloring.newPartition(m_TrainData, m_NumIterations);
 
-      u = 0;
-
       //Calculate U.
-      for (int i = 0; i < m_NumInstances; i++){
-        set = m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i]);
-        for (int j = 0; j < m_NumClasses; j++)
-          u += m_MislabelDistribution[i][j] * boolToInt(!inSet(set, j, m_NumIterations));
-      }
+      for (int c = 0; c < m_NumClasses; c++)
+        codes[c] = m_Coloring.getCode(m_NumIterations, c);
+      u = calculateU(aggregate, codes);
 
       //We expect for a value of U greater or equal to 1/2
       if (u >= 0.5)
@@ -359,7 +398,7 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
 
       //Is this coloring the best so far?.
       if (u > bestU){
-        bestPartition = m_Coloring.getPartition(m_NumIterations);
+        bestPartition = m_Coloring.getPartition(m_NumIterations, bestPartition);
         bestU = u;
       }
 
@@ -376,13 +415,143 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
     return u;
   }
 
+  /**
+   * Calculate U for a coloring from the "mislabel distribution" summed by class.
+   *
+   * @param aggregate The distribution summed by class (see aggregateMislabelDistribution).
+   * @param codes The subset (0 or 1) each class belongs to.
+   *
+   * @return U.
+   */
+  protected double calculateU(double[][] aggregate, int[] codes){
+
+    double u = 0;
+    int[] others;
+
+    for (int c = 0; c < m_NumClasses; c++){
+      others = m_OtherClasses[c];
+      for (int k = 0; k < others.length; k++)
+        u += aggregate[c][k] * (codes[others[k]] != codes[c] ? 1 : 0);
+    }
+
+    return u;
+  }
+
+  /**
+   * Draw m_Max_U_CalculatingIterations colorings, score them with up to m_NumThreads threads
+   * and set the best one (the first one if several have the same U) as the coloring of the
+   * current iteration.
+   *
+   * Each candidate is drawn with its own random number generator, seeded from the index of
+   * the candidate and a seed taken from the coloring filter's generator, so the colorings
+   * chosen depend only on the filter seed (not on the number of threads or their timing).
+   *
+   * @param aggregate The "mislabel distribution" summed by class (see aggregateMislabelDistribution).
+   *
+   * @return The U of the coloring chosen.
+   *
+   * @throws java.lang.Exception If a thread is interrupted or the coloring can't be set.
+   */
+  protected double searchColoring(double[][] aggregate) throws Exception{
+
+    AbstractNominalToRandomOCFilter coloring = (AbstractNominalToRandomOCFilter) m_Coloring;
+    ColoringScorer scorer = new ColoringScorer(coloring, coloring.getRandom().nextLong(),
+                                               aggregate, m_Max_U_CalculatingIterations);
+
+    if (m_NumThreads <= 1 || m_Max_U_CalculatingIterations == 1)
+      scorer.run();
+    else{
+      Thread[] threads = new Thread[Math.min(m_NumThreads, m_Max_U_CalculatingIterations)];
+      for (int i = 0; i < threads.length; i++){
+        threads[i] = new Thread(scorer);
+        threads[i].start();
+      }
+      for (int i = 0; i < threads.length; i++)
+        threads[i].join();
+    }
+
+    int best = 0;
+    for (int i = 1; i < scorer.m_U.length; i++)
+      if (scorer.m_U[i] > scorer.m_U[best])
+        best = i;
+
+    if (m_Debug)
+      System.err.println("\tColoring " + (best + 1) + " of " + scorer.m_U.length + " chosen.");
+
+    m_Coloring.setPartition(m_NumIterations, scorer.m_Candidates[best]);
+
+    return scorer.m_U[best];
+  }
+
+  /** Draws and scores the candidate colorings of searchColoring (by one or more threads). */
+  private class ColoringScorer implements Runnable{
+
+    private AbstractNominalToRandomOCFilter m_Filter;
+
+    private long m_Seed;
+
+    private double[][] m_Aggregate;
+
+    /** The candidates (null if not drawn yet). */
+    private BitSet[] m_Candidates;
+
+    /** The U of each candidate. */
+    private double[] m_U;
+
+    /** The next candidate to be drawn. */
+    private int m_Next;
+
+    public ColoringScorer(AbstractNominalToRandomOCFilter filter, long seed, double[][] aggregate, int numCandidates){
+      m_Filter = filter;
+      m_Seed = seed;
+      m_Aggregate = aggregate;
+      m_Candidates = new BitSet[numCandidates];
+      m_U = new double[numCandidates];
+    }
+
+    private synchronized int nextCandidate(){
+      return m_Next < m_Candidates.length ? m_Next++ : -1;
+    }
+
+    public void run(){
+
+      int i;
+      int[] codes = new int[m_NumClasses];
+
+      while ((i = nextCandidate()) >= 0){
+        BitSet candidate = m_Filter.randomPartition(new Random(substreamSeed(m_Seed, i)));
+        for (int c = 0; c < codes.length; c++)
+          codes[c] = candidate.get(c) ? 1 : 0;
+        m_U[i] = calculateU(m_Aggregate, codes);
+        m_Candidates[i] = candidate;
+      }
+    }
+  }
+
+  /**
+   * The seed of the index'th random number generator derived from another seed (a
+   * "splitmix" hash, so generators with consecutive indexes are not correlated).
+   *
+   * @param seed The seed the generators are derived from.
+   * @param index The index of the generator.
+   *
+   * @return The seed.
+   */
+  private static long substreamSeed(long seed, int index){
+
+    long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
   /**
    *  Relabel the training data according to the coloring function calculated in calculateU.
    *  Equivalent to (but more efficient than) m_TrainData=Filter.useFilter(OriginalData, m_Coloring)
    */
   protected void relabel(){
     for (int i = 0; i < m_NumInstances; i++)
-      m_TrainData.instance(i).setClassValue(m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i]));
+      m_DataView.setLabel(i, m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i]));
   }
 
   /**
@@ -395,6 +564,9 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
 
     double sumTmp;
     int clasificadaEn;
+    int[] codes;
+    int[][] otherCodes = otherClassesCodes(m_NumIterations);
+    double[] weights = m_DataView.weights();
     m_LastDistributionWeightSumBeforeNormalize = 0;
 
     if (m_Debug){
@@ -409,20 +581,20 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
 
     u += NO_DIVISION_BY_ZERO;
 
-    for (int i = 0; i < m_NumInstances; i++){
+    for (int i = 0, p = 0; i < m_NumInstances; i++){
 
       //Some weka classifiers fails when passing them instances with a sum of weights of zero.
       //By example, DecisionStump fails when attemps to normalize the distribution of class values.
       sumTmp = 0;
 
       clasificadaEn = m_Coloring.getCode(m_NumIterations, m_OriginalDataClasses[i]);
+      codes = otherCodes[m_OriginalDataClasses[i]];
 
-      for (int j = 0; j < m_NumClasses; j++)
-        sumTmp += m_MislabelDistribution[i][j] *
-          boolToInt(!inSet(clasificadaEn, j, m_NumIterations));
+      for (int k = 0; k < codes.length; k++, p++)
+        sumTmp += m_MislabelDistribution[p] * (codes[k] != clasificadaEn ? 1 : 0);
 
-      m_TrainData.instance(i).setWeight((sumTmp + NO_DIVISION_BY_ZERO) / u);
-      m_LastDistributionWeightSumBeforeNormalize += m_TrainData.instance(i).weight();
+      weights[i] = (sumTmp + NO_DIVISION_BY_ZERO) / u;
+      m_LastDistributionWeightSumBeforeNormalize += weights[i];
     }
 
     normalizeWeights(m_LastDistributionWeightSumBeforeNormalize);
@@ -441,6 +613,8 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
    * set is the set of classes which belongs to the same partition (0 or 1) in which the base
    * classifier predicts each instance is in.
    *
+   * The base classifier predictions are the ones previously stored in m_DataView.
+   *
    * @param baseClassifier From which calculate the error.
    *
    * @return The base classifier error related to the training data.
@@ -451,13 +625,17 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
 
     double sumTmp = 0;
     int clasificadaEn;
-
-    for (int i = 0; i < m_NumInstances; i++){
-      clasificadaEn = (int) baseClassifier.classifyInstance(m_TrainData.instance(i));
-      for (int j = 0; j < m_NumClasses; j++)
-        sumTmp += m_MislabelDistribution[i][j]
-          * (boolToInt(!inSet(clasificadaEn, m_OriginalDataClasses[i], m_NumIterations))
-          + boolToInt(inSet(clasificadaEn, j, m_NumIterations)));
+    int missed; //1 if the true class is not in the plausible set, else 0.
+    int[] codes;
+    int[][] otherCodes = otherClassesCodes(m_NumIterations);
+    int[] predictions = m_DataView.predictions();
+
+    for (int i = 0, p = 0; i < m_NumInstances; i++){
+      clasificadaEn = predictions[i];
+      missed = boolToInt(!inSet(clasificadaEn, m_OriginalDataClasses[i], m_NumIterations));
+      codes = otherCodes[m_OriginalDataClasses[i]];
+      for (int k = 0; k < codes.length; k++, p++)
+        sumTmp += m_MislabelDistribution[p] * (missed + (codes[k] == clasificadaEn ? 1 : 0));
     }
     return sumTmp / 2; // >>1
   }
@@ -480,6 +658,8 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
    * Update the "mislabel distribution, with respect to the last base classifier generated
    * and its weight.
    *
+   * The base classifier predictions are the ones previously stored in m_DataView.
+   *
    * @param baseClassifier The classifier from we obtain the fresh new information.
    * @param beta The weight of the currente classifier.
    *
@@ -489,19 +669,80 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
 
     double sumTmp = 0; // Faster than use Utils.normalize
     int clasificadaEn;
-
-    for (int i = 0; i < m_NumInstances; i++){
-      clasificadaEn = (int) baseClassifier.classifyInstance(m_TrainData.instance(i));
-      for (int j = 0; j < m_NumClasses; j++)
-        sumTmp +=
-          (m_MislabelDistribution[i][j] = m_MislabelDistribution[i][j] *
-          Math.exp(beta * (boolToInt(!inSet(clasificadaEn, m_OriginalDataClasses[i], m_NumIterations))
-                           + boolToInt(inSet(clasificadaEn, j, m_NumIterations)))));
+    int missed;
+    int[] codes;
+    int[][] otherCodes = otherClassesCodes(m_NumIterations);
+    int[] predictions = m_DataView.predictions();
+
+    //The exponent is beta times 0, 1 or 2 (the terms of the pseudoloss): no need of an exp per weight.
+    double[] factors = {Math.exp(beta * 0), Math.exp(beta * 1), Math.exp(beta * 2)};
+
+    for (int i = 0, p = 0; i < m_NumInstances; i++){
+      clasificadaEn = predictions[i];
+      missed = boolToInt(!inSet(clasificadaEn, m_OriginalDataClasses[i], m_NumIterations));
+      codes = otherCodes[m_OriginalDataClasses[i]];
+      for (int k = 0; k < codes.length; k++, p++)
+        sumTmp += (m_MislabelDistribution[p] *= factors[missed + (codes[k] == clasificadaEn ? 1 : 0)]);
     }
     //Normalize.
-    for (int i = 0; i < m_NumInstances; i++)
-      for (int j = 0; j < m_NumClasses; j++)
-        m_MislabelDistribution[i][j] = m_MislabelDistribution[i][j] / sumTmp;
+    for (int p = 0; p < m_MislabelDistribution.length; p++)
+      m_MislabelDistribution[p] /= sumTmp;
+  }
+
+  /**
+   * Initialize m_OtherClasses and the "mislabel distribution", giving the same weight
+   * to every incorrect label of every training instance.
+   */
+  protected void initMislabelDistribution(){
+
+    m_OtherClasses = new int[m_NumClasses][m_NumClasses - 1];
+    for (int c = 0; c < m_NumClasses; c++)
+      for (int j = 0, k = 0; j < m_NumClasses; j++)
+        if (j != c)
+          m_OtherClasses[c][k++] = j;
+
+    m_MislabelDistribution = new double[m_NumInstances * (m_NumClasses - 1)];
+    Arrays.fill(m_MislabelDistribution, 1.0 / (m_NumInstances * (m_NumClasses - 1)));
+  }
+
+  /**
+   * Sum the "mislabel distribution" over the training instances of each class.
+   *
+   * @return {m_NumClasses x (m_NumClasses - 1)} --> [0,1], the element [c][k] is the weight
+   * of the label m_OtherClasses[c][k] summed over the instances of the class c.
+   */
+  protected double[][] aggregateMislabelDistribution(){
+
+    double[][] aggregate = new double[m_NumClasses][m_NumClasses - 1];
+    double[] sums;
+
+    for (int i = 0, p = 0; i < m_NumInstances; i++){
+      sums = aggregate[m_OriginalDataClasses[i]];
+      for (int k = 0; k < sums.length; k++, p++)
+        sums[k] += m_MislabelDistribution[p];
+    }
+
+    return aggregate;
+  }
+
+  /**
+   * Get the subsets of the partition "iteration" in which the incorrect labels of the
+   * instances of each class are, so the loops over the "mislabel distribution" don't need
+   * to ask the coloring for them.
+   *
+   * @param iteration The partition number.
+   *
+   * @return {m_NumClasses x (m_NumClasses - 1)} --> {0,1}, each row in the order of m_OtherClasses.
+   */
+  protected int[][] otherClassesCodes(int iteration){
+
+    int[][] codes = new int[m_NumClasses][m_NumClasses - 1];
+
+    for (int c = 0; c < m_NumClasses; c++)
+      for (int k = 0; k < codes[c].length; k++)
+        codes[c][k] = m_Coloring.getCode(iteration, m_OtherClasses[c][k]);
+
+    return codes;
   }
 
   /**
@@ -579,23 +820,42 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
    * @exception java.lang.Exception if instance could not be classified successfully
    */
   public double[] distributionForInstance(Instance instance) throws Exception{
+    return (double[]) distributionForInstance(instance, threadContext()).clone();
+  }
 
-    if (m_NumIterations == 0)
+  /**
+   * Calculates the class membership probabilities for the given test instance using only
+   * the first numIterations base classifiers, without allocating memory: the distribution
+   * returned belongs to the context.
+   *
+   * @param instance the instance to be classified
+   * @param numIterations number of base classifiers to use
+   * @param context the scoring context of the current thread
+   *
+   * @return predicted class probability distribution
+   *
+   * @exception java.lang.Exception if numIterations is incorrect or instance could not be classified successfully
+   */
+  public double[] distributionForInstance(Instance instance, int numIterations, ScoringContext context) throws Exception{
+
+    checkNumIterations(numIterations);
+
+    if (numIterations == 0)
       throw new Exception("No model built");
 
-    double[] sums = new double[m_NumClasses];
+    double[] sums = context.buffer(0, m_NumClasses);
     int clasificadaEn;
 
     //Necessary to avoid problems (by example, J48.classifyInstance uses numClasses() instance
     //method, which must return 2 and not the number of data classes in the original dataset).
-    instance = new Instance(instance);
-    instance.setDataset(m_TrainData);
-
-    for (int i = 0; i < m_NumIterations; i++){
-      clasificadaEn = (int) m_Classifiers.get(i).classifyInstance(instance);
-      for (int j = 0; j < m_NumClasses; j++)
-        sums[j] += m_Classifiers.getWeight(i) *
-          boolToInt(inSet(clasificadaEn, j, i));
+    instance = context.bind(instance, m_TrainData);
+
+    Classifier[] classifiers = m_Classifiers.classifiers();
+    double[] weights = m_Classifiers.weights();
+
+    for (int i = 0; i < numIterations; i++){
+      clasificadaEn = (int) classifiers[i].classifyInstance(instance);
+      m_Coloring.addVote(i, clasificadaEn, weights[i], sums);
     }
 
     //Do it directly, without using Utils.normalize().
@@ -608,6 +868,47 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
     return sums;
   }
 
+  /**
+   * Calculates the class membership probabilities of a batch of instances using only the
+   * first numIterations base classifiers; each base classifier classifies the whole batch
+   * before the next one. The instances are bound to the train data format once for the
+   * whole batch.
+   *
+   * @param data The instances to be classified.
+   * @param numIterations Number of base classifiers to use.
+   * @param out The matrix where the distributions are written.
+   *
+   * @throws Exception If the parameters are incorrect or an instance can't be classified.
+   */
+  public void distributionsForInstances(Instances data, int numIterations, double[][] out) throws Exception{
+
+    checkBatch(data, numIterations, out);
+
+    if (numIterations == 0)
+      throw new Exception("No model built");
+
+    int numInstances = data.numInstances();
+    Instance[] instances = bindInstances(data, m_TrainData);
+    Classifier[] classifiers = m_Classifiers.classifiers();
+    double[] weights = m_Classifiers.weights();
+
+    for (int j = 0; j < numInstances; j++)
+      java.util.Arrays.fill(out[j], 0, m_NumClasses, 0);
+
+    for (int i = 0; i < numIterations; i++)
+      for (int j = 0; j < numInstances; j++){
+        int clasificadaEn = (int) classifiers[i].classifyInstance(instances[j]);
+        m_Coloring.addVote(i, clasificadaEn, weights[i], out[j]);
+      }
+
+    for (int j = 0; j < numInstances; j++)
+      try{
+        Utils.normalize(out[j]);
+      }
+      catch (IllegalArgumentException e){
+      } // out[j][k]==0 para todo k
+  }
+
   /**
    * Get the classifier's vote for the instance; the (vectorial) sum of all base classifiers vote vectors must be
    * the final combined hypothesis of the booster.
@@ -626,8 +927,7 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
 
     //Necessary to avoid problems (by example, J48.classifyInstance uses numClasses() instance
     //method, which must return 2 and not the number of data classes in the original dataset).
-    instance = new Instance(instance);
-    instance.setDataset(m_TrainData);
+    instance = threadContext().bind(instance, m_TrainData);
 
     clasificadaEn = (int) m_Classifiers.get(classifierIndex).classifyInstance(instance);
     for (int j = 0; j < m_NumClasses; j++)
@@ -636,6 +936,17 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
     return sums;
   }
 
+  /**
+   * Get the class of a training instance in the original training data.
+   *
+   * @param index The index of the training instance.
+   *
+   * @return The class index.
+   */
+  protected int originalClassValue(int index){
+    return m_OriginalDataClasses[index];
+  }
+
   /**
    * Safely (and thus slower) inputs a new training instance.
    * Not implemented yet.
@@ -675,6 +986,11 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
    * (default 1)
    *
    *
+   * -G
+   * Draw the -U colorings at once, score them with -P threads and keep the best one
+   * (only with random coloring filters; default false).
+   *
+   *
    * -B
    * Calculate the training error upper bound (default false).
    *
@@ -692,6 +1008,8 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
 
     setCalculateErrorUpperBound(Utils.getFlag('B', options));
 
+    setParallelColoringSearch(Utils.getFlag('G', options));
+
     String U_Iterations = Utils.getOption('U', options);
     if (U_Iterations.length() != 0)
       setMax_U_CalculatingIterations(Integer.parseInt(U_Iterations));
@@ -715,12 +1033,14 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
 
     String[] otherOptions = super.getOptions();
 
-    String[] options = new String[otherOptions.length + 5];
+    String[] options = new String[otherOptions.length + 6];
 
     int current = 0;
 
     if (getCalculateErrorUpperBound())
       options[current++] = "-B";
+    if (getParallelColoringSearch())
+      options[current++] = "-G";
     if(null!=m_Coloring){
       options[current++] = "-F";
       options[current++] = "" + getColoring().getClass().getName();
@@ -758,6 +1078,11 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
       + "\t(default 1)",
       "U", 1, "-U <num>"));
 
+    newVector.addElement(new Option(
+      "\tDraw the -U colorings at once, score them with -P threads and keep the best one\n"
+      + "\t(only with random coloring filters).",
+      "G", 0, "-G"));
+
     newVector.addElement(new Option(
       "\tCalculate the training error upper bound.\n",
       "B", 0, "-B"));
@@ -789,6 +1114,24 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
     return m_Max_U_CalculatingIterations;
   }
 
+  /**
+   * Set whether the colorings are drawn at once and the best one is kept (see searchColoring).
+   *
+   * @param parallelColoringSearch true to search in parallel.
+   */
+  public void setParallelColoringSearch(boolean parallelColoringSearch){
+    m_ParallelColoringSearch = parallelColoringSearch;
+  }
+
+  /**
+   * Get whether the colorings are drawn at once and the best one is kept.
+   *
+   * @return true if they are.
+   */
+  public boolean getParallelColoringSearch(){
+    return m_ParallelColoringSearch;
+  }
+
   /**
    * Set the filter used to compute the coloring.
    *
@@ -824,6 +1167,38 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
     return m_Classifiers.get(numClassifier);
   }
 
+  /**
+   * Eliminate the last numIterations performed from the final combined hypothesis,
+   * releasing their base classifiers.
+   *
+   * @param numIterations The number of iterations to get rid of
+   * @throws Exception If numIterations parameter is incorrect
+   */
+  public void purgeIterations(int numIterations) throws Exception{
+    super.purgeIterations(numIterations);
+    //AdaBoostECC stores its own classifiers.
+    if (m_Classifiers != null)
+      m_Classifiers.truncate(m_NumIterations);
+  }
+
+  /**
+   * Give a frozen copy its own base classifiers vector and coloring (the training
+   * structures are not kept).
+   *
+   * @throws Exception If the model can't be copied
+   */
+  protected void copyModel() throws Exception{
+    //AdaBoostECC stores its own classifiers.
+    if (m_Classifiers != null)
+      m_Classifiers = m_Classifiers.copy();
+    //The partitions of the next iterations are generated into the coloring filter.
+    if (m_Coloring != null)
+      m_Coloring = (AbstractNominalToOCFilter) new SerializedObject(m_Coloring).getObject();
+    m_MislabelDistribution = null;
+    m_OtherClasses = null;
+    m_OriginalDataClasses = null;
+  }
+
   /**
    * Get the weight of the base classifier built on specified iteration.
    *
@@ -941,6 +1316,13 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
       "See Schapire's paper.";
   }
 
+  public static String parallelColoringSearchTipText(){
+
+    return "Draw all the colorings at once (with independent seeds), score them with several threads\n" +
+      "(see numThreads) and keep the one with the greatest U, instead of stopping at the first one with U>=1/2.\n" +
+      "Only for random coloring filters.";
+  }
+
   /**
    * Defines a "visual" order to the bean's properties of this booster.
    *
@@ -951,6 +1333,7 @@ public class AdaBoostOC extends Booster implements ErrorUpperBoundComputer{
     CustomOrderDefiner cod = new CustomOrderDefiner();
     cod.add("coloring");
     cod.add("max_U_CalculatingIterations");
+    cod.add("parallelColoringSearch");
     cod.add("calculateErrorUpperBound");
 
     CustomOrderDefiner otherOptions = super.getPropertiesOrder();
@@ -0,0 +1,305 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    AttributeBinning.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Quantization of the attribute values of a dataset into at most 255 bins per attribute,
+ * so each value of an instance fits in an (unsigned) byte: the bin 0 is for the missing
+ * values, a nominal value v goes to the bin v + 1 and a numeric value goes to the bin
+ * 1 + (number of bin edges less or equal than the value).
+ *
+ * The edges of a numeric attribute are its quantiles over a sample of the instances
+ * (see Sampler); if the sample has no more distinct values than bins, each one gets its
+ * own bin, so the binning of small datasets is exact.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class AttributeBinning implements Serializable{
+
+  /** The bin of the missing values. */
+  public final static int MISSING_BIN = 0;
+
+  /** The maximum number of bins (without the missing one) of an attribute. */
+  public final static int MAX_BINS = 255;
+
+  /** The format of the instances (without instances). */
+  private Instances m_Header;
+
+  /** The bin edges of each numeric attribute (null for the nominal ones). */
+  private double[][] m_Edges;
+
+  /** The number of bins (without the missing one) of each attribute. */
+  private int[] m_NumBins;
+
+  /**
+   * Constructor.
+   *
+   * @param header The format of the instances.
+   * @param edges The (ascending) bin edges of each numeric attribute (null for the nominal ones).
+   *
+   * @throws Exception If an attribute is neither nominal nor numeric or has too many bins.
+   */
+  public AttributeBinning(Instances header, double[][] edges) throws Exception{
+
+    int numAttributes = header.numAttributes();
+
+    m_Header = new Instances(header, 0);
+    m_Edges = edges;
+    m_NumBins = new int[numAttributes];
+
+    for (int i = 0; i < numAttributes; i++){
+      if (header.attribute(i).isNominal())
+        m_NumBins[i] = header.attribute(i).numValues();
+      else if (header.attribute(i).isNumeric())
+        m_NumBins[i] = edges[i].length + 1;
+      else
+        throw new Exception("Attribute " + header.attribute(i).name() + " is neither nominal nor numeric.");
+      if (m_NumBins[i] > MAX_BINS)
+        throw new Exception("Attribute " + header.attribute(i).name() + " has more than " + MAX_BINS + " values.");
+    }
+  }
+
+  /** @return The format of the instances (without instances). */
+  public Instances getHeader(){
+    return m_Header;
+  }
+
+  /** @return The number of attributes. */
+  public int numAttributes(){
+    return m_NumBins.length;
+  }
+
+  /**
+   * @param attIndex The attribute index.
+   *
+   * @return The number of bins (without the missing one) of the attribute.
+   */
+  public int numBins(int attIndex){
+    return m_NumBins[attIndex];
+  }
+
+  /**
+   * @param attIndex The attribute index.
+   *
+   * @return True if the attribute is numeric (its bins are ordered).
+   */
+  public boolean isNumeric(int attIndex){
+    return m_Edges[attIndex] != null;
+  }
+
+  /**
+   * The lower edge of a bin of a numeric attribute: the values of the bins 1..bin - 1 are
+   * less than it.
+   *
+   * @param attIndex The attribute index.
+   * @param bin The bin (greater than 1).
+   *
+   * @return The lower edge.
+   */
+  public double lowerEdge(int attIndex, int bin){
+    return m_Edges[attIndex][bin - 2];
+  }
+
+  /**
+   * Get the bin of a value of an instance.
+   *
+   * @param instance The instance (with the format of the binned data).
+   * @param attIndex The attribute index.
+   *
+   * @return The bin.
+   */
+  public int bin(Instance instance, int attIndex){
+
+    if (instance.isMissing(attIndex))
+      return MISSING_BIN;
+
+    double value = instance.value(attIndex);
+    double[] edges = m_Edges[attIndex];
+
+    if (edges == null)
+      return (int) value + 1;
+
+    //Number of edges less or equal than the value.
+    int low = 0, high = edges.length;
+    while (low < high){
+      int middle = (low + high) >>> 1;
+      if (edges[middle] <= value)
+        low = middle + 1;
+      else
+        high = middle;
+    }
+
+    return low + 1;
+  }
+
+  /**
+   * Get the bins of all the values of an instance.
+   *
+   * @param instance The instance (with the format of the binned data).
+   * @param row The array where the bins are written (as unsigned bytes).
+   * @param offset The position of the first attribute's bin in row.
+   */
+  public void binRow(Instance instance, byte[] row, int offset){
+    for (int i = 0; i < m_NumBins.length; i++)
+      row[offset + i] = (byte) bin(instance, i);
+  }
+
+  /**
+   * Builds the binning of a dataset from a uniform sample of its instances (reservoir
+   * sampling), looking at each instance only once: the instances can be read from a
+   * file bigger than the memory.
+   */
+  public static class Sampler{
+
+    /** The format of the instances. */
+    private Instances m_Header;
+
+    /** The maximum number of bins of the numeric attributes. */
+    private int m_MaxBins;
+
+    /** The values of the numeric attributes of the sampled instances (NaN if missing). */
+    private double[][] m_Values;
+
+    /** The maximum number of instances sampled. */
+    private int m_SampleSize;
+
+    /** The number of instances seen. */
+    private int m_NumInstances;
+
+    /** The random numbers used to choose the sampled instances. */
+    private Random m_Random;
+
+    /**
+     * Constructor.
+     *
+     * @param header The format of the instances.
+     * @param sampleSize The number of instances sampled.
+     * @param maxBins The maximum number of bins of the numeric attributes.
+     * @param seed The seed of the random numbers.
+     */
+    public Sampler(Instances header, int sampleSize, int maxBins, long seed){
+
+      m_Header = header;
+      m_MaxBins = Math.max(2, Math.min(MAX_BINS, maxBins));
+      m_SampleSize = Math.max(1, sampleSize);
+      m_Values = new double[header.numAttributes()][];
+      m_Random = new Random(seed);
+
+      for (int i = 0; i < m_Values.length; i++)
+        if (header.attribute(i).isNumeric())
+          m_Values[i] = new double[m_SampleSize];
+    }
+
+    /**
+     * See an instance.
+     *
+     * @param instance The instance.
+     */
+    public void add(Instance instance){
+
+      int position = m_NumInstances++;
+
+      //The instance replaces a sampled one with probability sampleSize / numInstances.
+      if (position >= m_SampleSize)
+        if ((position = m_Random.nextInt(m_NumInstances)) >= m_SampleSize)
+          return;
+
+      for (int i = 0; i < m_Values.length; i++)
+        if (m_Values[i] != null)
+          m_Values[i][position] = instance.isMissing(i) ? Double.NaN : instance.value(i);
+    }
+
+    /** @return The number of instances seen. */
+    public int numInstances(){
+      return m_NumInstances;
+    }
+
+    /**
+     * Get the binning of the instances seen.
+     *
+     * @return The binning.
+     *
+     * @throws Exception If an attribute is neither nominal nor numeric or has too many values.
+     */
+    public AttributeBinning binning() throws Exception{
+
+      double[][] edges = new double[m_Values.length][];
+
+      for (int i = 0; i < m_Values.length; i++)
+        if (m_Values[i] != null)
+          edges[i] = edges(m_Values[i], Math.min(m_NumInstances, m_SampleSize));
+
+      return new AttributeBinning(m_Header, edges);
+    }
+
+    /**
+     * Get the bin edges of the sampled values of an attribute.
+     *
+     * @param sample The sampled values (the missing ones are NaN).
+     * @param size The number of values sampled.
+     *
+     * @return The edges.
+     */
+    private double[] edges(double[] sample, int size){
+
+      double[] values = new double[size];
+      int numValues = 0;
+
+      for (int i = 0; i < size; i++)
+        if (!Double.isNaN(sample[i]))
+          values[numValues++] = sample[i];
+
+      Arrays.sort(values, 0, numValues);
+
+      double[] edges = new double[m_MaxBins - 1];
+      int numEdges = 0;
+
+      //Few distinct values: each one (but the lowest) is an edge.
+      for (int i = 1; i < numValues && numEdges <= edges.length; i++)
+        if (values[i] != values[i - 1] && numEdges++ < edges.length)
+          edges[numEdges - 1] = values[i];
+
+      //Too many: the quantiles (without the repeated ones) are the edges.
+      if (numEdges > edges.length){
+        numEdges = 0;
+        for (int i = 1; i < m_MaxBins; i++){
+          double edge = values[(int) ((long) i * numValues / m_MaxBins)];
+          if (edge > values[0] && (numEdges == 0 || edge > edges[numEdges - 1]))
+            edges[numEdges++] = edge;
+        }
+      }
+
+      double[] result = new double[numEdges];
+      System.arraycopy(edges, 0, result, 0, numEdges);
+      return result;
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    BaseClassifierFactory.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.classifiers.Classifier;
+import weka.core.OptionHandler;
+import weka.core.SerializedObject;
+import weka.core.Utils;
+
+import java.util.HashMap;
+
+/**
+ * Makes the copies of the base classifier (the "template" configured by the user) which
+ * are trained at each boosting iteration.
+ *
+ * Copying the template by serialization costs more than training a cheap base classifier
+ * (ie. a decision stump), so the classifiers whose whole configuration are their options
+ * are created by a Creator (with their constructor, without reflection) and configured
+ * with the template options. Creators for the most used weka classifiers are registered
+ * by default; more can be added with register. The rest of classifiers are deserialized
+ * copies of the template.
+ *
+ * Before using its creator, the factory checks that a copy made this way is serialized
+ * exactly as the template is; if not (ie. the template has been built, it has some state
+ * which is not an option or its options can't be set back), the copies are deserialized.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class BaseClassifierFactory{
+
+  /** Creates new (not configured) classifiers of a class. */
+  public interface Creator{
+
+    /** @return A new classifier with the default options. */
+    Classifier newClassifier();
+  }
+
+  /** The creator of each classifier class. */
+  private final static HashMap m_Creators = new HashMap();
+
+  static{
+    register(weka.classifiers.trees.DecisionStump.class, new Creator(){
+      public Classifier newClassifier(){
+        return new weka.classifiers.trees.DecisionStump();
+      }
+    });
+    register(weka.classifiers.trees.j48.J48.class, new Creator(){
+      public Classifier newClassifier(){
+        return new weka.classifiers.trees.j48.J48();
+      }
+    });
+    register(weka.classifiers.bayes.NaiveBayes.class, new Creator(){
+      public Classifier newClassifier(){
+        return new weka.classifiers.bayes.NaiveBayes();
+      }
+    });
+    register(weka.classifiers.rules.OneR.class, new Creator(){
+      public Classifier newClassifier(){
+        return new weka.classifiers.rules.OneR();
+      }
+    });
+    register(PresortedStump.class, new Creator(){
+      public Classifier newClassifier(){
+        return new PresortedStump();
+      }
+    });
+    register(HistogramTree.class, new Creator(){
+      public Classifier newClassifier(){
+        return new HistogramTree();
+      }
+    });
+  }
+
+  /** The template creator, or null if the copies are deserialized. */
+  private Creator m_Creator;
+
+  /** The template options (null if it isn't an option handler). */
+  private String[] m_Options;
+
+  /** The serialized template. */
+  private SerializedObject m_SerializedTemplate;
+
+  /** The number of copies made. */
+  private int m_NumCopies;
+
+  /** The time spent making the copies (nanoseconds). */
+  private long m_CopyTime;
+
+  /**
+   * Constructor.
+   *
+   * @param template The classifier to copy.
+   *
+   * @throws Exception If the template can't be serialized.
+   */
+  public BaseClassifierFactory(Classifier template) throws Exception{
+
+    m_SerializedTemplate = new SerializedObject(template);
+
+    synchronized (m_Creators){
+      m_Creator = (Creator) m_Creators.get(template.getClass());
+    }
+
+    if (m_Creator != null){
+      if (template instanceof OptionHandler)
+        m_Options = ((OptionHandler) template).getOptions();
+      try{
+        if (!m_SerializedTemplate.equals(new SerializedObject(copy())))
+          m_Creator = null;
+      }
+      catch (Exception e){
+        m_Creator = null;
+      }
+    }
+  }
+
+  /**
+   * Register the creator of a classifier class, so the templates of that class are copied
+   * with it and their options.
+   *
+   * @param classifierClass The classifier class.
+   * @param creator The creator.
+   */
+  public static void register(Class classifierClass, Creator creator){
+    synchronized (m_Creators){
+      m_Creators.put(classifierClass, creator);
+    }
+  }
+
+  /**
+   * Get a new copy of the template.
+   *
+   * @return The copy.
+   *
+   * @throws Exception If the copy can't be configured.
+   */
+  public Classifier newClassifier() throws Exception{
+
+    long start = IterationProfile.nanoTime();
+    Classifier classifier = copy();
+
+    m_CopyTime += IterationProfile.nanoTime() - start;
+    m_NumCopies++;
+
+    return classifier;
+  }
+
+  /**
+   * Copy the template.
+   *
+   * @return The copy.
+   *
+   * @throws Exception If the copy can't be configured.
+   */
+  private Classifier copy() throws Exception{
+
+    if (m_Creator == null)
+      return (Classifier) m_SerializedTemplate.getObject();
+
+    Classifier classifier = m_Creator.newClassifier();
+    if (m_Options != null)
+      //setOptions empties the array.
+      ((OptionHandler) classifier).setOptions((String[]) m_Options.clone());
+
+    return classifier;
+  }
+
+  /** @return True if the copies are made without serialization. */
+  public boolean isCopyingByOptions(){
+    return m_Creator != null;
+  }
+
+  /** @return The number of copies made. */
+  public int getNumCopies(){
+    return m_NumCopies;
+  }
+
+  /** @return The time spent making the copies (nanoseconds). */
+  public long getCopyTime(){
+    return m_CopyTime;
+  }
+
+  /**
+   * Description of the copies made, for the debug output.
+   *
+   * @return The description.
+   */
+  public String toString(){
+    return "Base classifier copies (" + (isCopyingByOptions() ? "by options" : "by serialization") + "): "
+      + m_NumCopies + ", " + Utils.doubleToString(m_CopyTime / 1e6, 3) + " ms"
+      + (m_NumCopies > 0 ? " (" + Utils.doubleToString(m_CopyTime / 1e6 / m_NumCopies, 3) + " ms per iteration)" : "");
+  }
+}
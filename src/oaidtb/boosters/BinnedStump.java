@@ -0,0 +1,290 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    BinnedStump.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.Serializable;
+
+/**
+ * A decision stump over binned attributes (see AttributeBinning): like weka's DecisionStump
+ * it has three branches, one for the missing values and two for the rest (bin &lt;= split
+ * and bin &gt; split for numeric attributes, bin == split and bin != split for nominal ones),
+ * but it is chosen from the weighted class counts of each bin, its sufficient statistics,
+ * so it can be built without the instances (see best).
+ *
+ * The split thresholds are the bin edges, not the midpoints between values.
+ *
+ * It isn't a weka classifier (it can't be built from a set of instances): it's the model
+ * of each iteration of StreamingAdaBoost.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+class BinnedStump implements Serializable{
+
+  /** The index of the branch of the bins at the left of the split. */
+  public final static int LEFT = 0;
+
+  /** The index of the branch of the bins at the right of the split. */
+  public final static int RIGHT = 1;
+
+  /** The index of the branch of the missing values. */
+  public final static int MISSING = 2;
+
+  /** The binning of the attributes. */
+  private AttributeBinning m_Binning;
+
+  /** The attribute used to split. */
+  private int m_Attribute;
+
+  /** The split bin. */
+  private int m_Split;
+
+  /** Is the attribute numeric? */
+  private boolean m_Numeric;
+
+  /** The class distribution of each branch. */
+  private double[][] m_Distributions;
+
+  /** The class predicted by each branch. */
+  private int[] m_Predictions;
+
+  /** The weight of the training instances misclassified by the stump. */
+  private double m_Error;
+
+  /**
+   * Constructor.
+   *
+   * @param binning The binning of the attributes.
+   * @param attribute The attribute used to split.
+   * @param split The split bin.
+   * @param counts The weighted class counts of each branch (LEFT, RIGHT and MISSING).
+   * @param totals The weighted class counts of all the instances, used by the empty branches.
+   */
+  private BinnedStump(AttributeBinning binning, int attribute, int split, double[][] counts, double[] totals){
+
+    m_Binning = binning;
+    m_Attribute = attribute;
+    m_Split = split;
+    m_Numeric = binning.isNumeric(attribute);
+    m_Distributions = new double[3][];
+    m_Predictions = new int[3];
+
+    for (int i = 0; i < 3; i++){
+      double[] distribution = (double[]) (Utils.sum(counts[i]) > 0 ? counts[i] : totals).clone();
+      m_Predictions[i] = Utils.maxIndex(distribution);
+      m_Error += Utils.sum(counts[i]) - counts[i][m_Predictions[i]];
+      if (Utils.sum(distribution) > 0)
+        Utils.normalize(distribution);
+      m_Distributions[i] = distribution;
+    }
+  }
+
+  /**
+   * Choose the stump which misclassifies the least weight of instances.
+   *
+   * @param binning The binning of the attributes.
+   * @param counts The weighted class counts: counts[attribute][bin][class] is the weight of
+   * the instances of the class with the attribute value in the bin (counts[classIndex] is
+   * not used).
+   * @param classIndex The index of the class attribute.
+   *
+   * @return The stump.
+   *
+   * @throws Exception If there are no attributes but the class.
+   */
+  public static BinnedStump best(AttributeBinning binning, double[][][] counts, int classIndex) throws Exception{
+
+    BinnedStump best = null;
+    int numAttributes = binning.numAttributes();
+
+    for (int i = 0; i < numAttributes; i++){
+      if (i == classIndex)
+        continue;
+      BinnedStump stump = best(binning, counts[i], i);
+      if (best == null || stump.m_Error < best.m_Error)
+        best = stump;
+    }
+
+    if (best == null)
+      throw new Exception("There are no attributes to split on.");
+
+    return best;
+  }
+
+  /**
+   * Choose the stump over an attribute which misclassifies the least weight of instances.
+   *
+   * @param binning The binning of the attributes.
+   * @param counts The weighted class counts of each bin of the attribute.
+   * @param attribute The attribute index.
+   *
+   * @return The stump.
+   */
+  private static BinnedStump best(AttributeBinning binning, double[][] counts, int attribute){
+
+    int numClasses = counts[0].length;
+    int numBins = binning.numBins(attribute);
+    boolean numeric = binning.isNumeric(attribute);
+    double[] totals = new double[numClasses];
+    double[] known = new double[numClasses];
+    double[] left = new double[numClasses];
+    double missingHits = counts[AttributeBinning.MISSING_BIN][Utils.maxIndex(counts[AttributeBinning.MISSING_BIN])];
+    double bestHits = -1;
+    int bestSplit = 1;
+
+    for (int bin = 0; bin <= numBins; bin++)
+      for (int k = 0; k < numClasses; k++){
+        totals[k] += counts[bin][k];
+        if (bin != AttributeBinning.MISSING_BIN)
+          known[k] += counts[bin][k];
+      }
+
+    //A numeric split leaves the bins 1..split at the left; a nominal one only the bin split.
+    for (int split = 1; split <= numBins; split++){
+
+      if (numeric && split == numBins && numBins > 1)
+        break;
+
+      double leftHits = 0, rightHits = 0;
+
+      for (int k = 0; k < numClasses; k++){
+        if (numeric)
+          left[k] += counts[split][k];
+        else
+          left[k] = counts[split][k];
+        leftHits = Math.max(leftHits, left[k]);
+        rightHits = Math.max(rightHits, known[k] - left[k]);
+      }
+
+      if (leftHits + rightHits > bestHits){
+        bestHits = leftHits + rightHits;
+        bestSplit = split;
+      }
+    }
+
+    double[][] branches = new double[3][numClasses];
+
+    for (int bin = 1; bin <= numBins; bin++){
+      boolean isLeft = numeric ? bin <= bestSplit : bin == bestSplit;
+      for (int k = 0; k < numClasses; k++)
+        branches[isLeft ? LEFT : RIGHT][k] += counts[bin][k];
+    }
+    System.arraycopy(counts[AttributeBinning.MISSING_BIN], 0, branches[MISSING], 0, numClasses);
+
+    return new BinnedStump(binning, attribute, bestSplit, branches, totals);
+  }
+
+  /**
+   * Get the branch of a bin of the split attribute.
+   *
+   * @param bin The bin.
+   *
+   * @return LEFT, RIGHT or MISSING.
+   */
+  public int branch(int bin){
+    if (bin == AttributeBinning.MISSING_BIN)
+      return MISSING;
+    if (m_Numeric)
+      return bin <= m_Split ? LEFT : RIGHT;
+    return bin == m_Split ? LEFT : RIGHT;
+  }
+
+  /**
+   * Get the class predicted for a binned instance.
+   *
+   * @param row The bins of the instance's values (as unsigned bytes).
+   * @param offset The position of the first attribute's bin in row.
+   *
+   * @return The class index.
+   */
+  public int predict(byte[] row, int offset){
+    return m_Predictions[branch(row[offset + m_Attribute] & 0xff)];
+  }
+
+  /**
+   * Get the class predicted for an instance.
+   *
+   * @param instance The instance (with the format of the binned data).
+   *
+   * @return The class index.
+   */
+  public int predict(Instance instance){
+    return m_Predictions[branch(m_Binning.bin(instance, m_Attribute))];
+  }
+
+  /**
+   * Get the class distribution of the branch of an instance.
+   *
+   * @param instance The instance (with the format of the binned data).
+   *
+   * @return The class distribution.
+   */
+  public double[] distributionForInstance(Instance instance){
+    return (double[]) m_Distributions[branch(m_Binning.bin(instance, m_Attribute))].clone();
+  }
+
+  /** @return The weight of the training instances misclassified by the stump. */
+  public double getError(){
+    return m_Error;
+  }
+
+  /** @return The attribute used to split. */
+  public int getAttribute(){
+    return m_Attribute;
+  }
+
+  /**
+   * Returns a description of the stump.
+   *
+   * @return A description of the stump.
+   */
+  public String toString(){
+
+    Instances header = m_Binning.getHeader();
+    String name = header.attribute(m_Attribute).name();
+    String left, right;
+
+    if (m_Numeric){
+      if (m_Split < m_Binning.numBins(m_Attribute)){
+        double threshold = m_Binning.lowerEdge(m_Attribute, m_Split + 1);
+        left = name + " < " + Utils.doubleToString(threshold, 6);
+        right = name + " >= " + Utils.doubleToString(threshold, 6);
+      }
+      else
+        left = right = name + " is not missing";
+    }
+    else{
+      String value = header.attribute(m_Attribute).value(m_Split - 1);
+      left = name + " = " + value;
+      right = name + " != " + value;
+    }
+
+    return left + " : " + header.classAttribute().value(m_Predictions[LEFT]) + "\n"
+      + right + " : " + header.classAttribute().value(m_Predictions[RIGHT]) + "\n"
+      + name + " is missing : " + header.classAttribute().value(m_Predictions[MISSING]) + "\n";
+  }
+}
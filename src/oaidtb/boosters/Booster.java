@@ -23,12 +23,14 @@
 package oaidtb.boosters;
 
 import oaidtb.misc.CustomOrderDefiner;
+import oaidtb.misc.SplittableRandom;
 import weka.classifiers.Classifier;
 import weka.classifiers.DistributionClassifier;
 import weka.core.*;
 
 import java.beans.PropertyDescriptor;
 import java.util.Enumeration;
+import java.util.Random;
 import java.util.Vector;
 
 /**
@@ -37,11 +39,21 @@ import java.util.Vector;
  *
  * Partially based in "AdaBoostM1" weka class.
  *
+ * A booster can be frozen (see freeze) to get a read-only copy of its combined hypothesis,
+ * which many threads can use to classify instances while the booster keeps iterating.
+ *
+ * A booster can stop iterating by itself when its error over a validation set stops
+ * improving, rolling back to the best iteration (see nextIterations and EarlyStopping).
+ *
+ * The time spent in each phase of the iterations can be measured by iteration listeners
+ * (see addIterationListener and IterationProfile); the subclasses mark the phases of their
+ * iterations with enterPhase and the end of each iteration with iterationPerformed.
+ *
  * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
  * @version $Revision: 1.0 $
  */
 public abstract class Booster extends DistributionClassifier
-  implements OptionHandler, WeightedInstancesHandler, IterativeUpdatableClassifier{
+  implements OptionHandler, WeightedInstancesHandler, IterativeUpdatableClassifier, Cloneable{
 
   //TODO Implement setMaxNumberTrainingInstances (method for faster resize of m_TrainData).
 
@@ -57,6 +69,9 @@ public abstract class Booster extends DistributionClassifier
   /** Is the booster ready to iterate? (Have we successffully called buildClassifier?). */
   protected boolean m_BoosterReady;
 
+  /** Is this booster a frozen copy of another one? (see freeze). */
+  protected boolean m_Frozen;
+
   /** Debugging mode, gives extra output if true
    *  Para mejorar la eficiencia, eliminarlo de las opciones y hacerlo una constante para que el
    *  compilador pueda optimizarlo eliminando o aadiendo el cdigo.
@@ -69,12 +84,61 @@ public abstract class Booster extends DistributionClassifier
   /** Seed for boosting with resampling. */
   protected int m_ResampleSeed = 1;
 
+  /**
+   * The random numbers stream used to resample. It's part of the model, so each call to
+   * nextIterations goes on with the stream left by the previous one (see
+   * initializeResampleRandom).
+   */
+  protected SplittableRandom m_ResampleRandom;
+
   /** The number of instances in the original training set.*/
   protected int m_NumInstances;
 
   /** The training instance set. */
   protected Instances m_TrainData;
 
+  /** Columnar view (weights, class labels, predictions) of the training instance set.
+   *  It's scratch memory, so it isn't saved with the model: it's created (and loaded) by
+   *  loadDataView when the booster is going to iterate.
+   */
+  protected transient BoostingDataView m_DataView;
+
+  /** Makes the copies of the base classifier trained at each iteration (see nextIterations).
+   *  It's created the first time the booster iterates with the current base classifier, and
+   *  discarded when the base classifier is changed (see setClassifier).
+   */
+  protected transient BaseClassifierFactory m_ClassifierFactory;
+
+  /** Draws the samples of the training instances when boosting with resampling. */
+  protected transient WeightedResampler m_Resampler;
+
+  /** Number of threads used to classify the training instances at each iteration. */
+  protected int m_NumThreads = 1;
+
+  /** Number of iterations without improvement of the validation error before stopping (0 == never stop). */
+  protected int m_EarlyStoppingPatience = 0;
+
+  /** The minimum decrease of the validation error considered an improvement. */
+  protected double m_EarlyStoppingMinDelta = 0;
+
+  /** Percentage of the training data held out for validation (0 == use the out-of-bag instances). */
+  protected double m_ValidationPercent = 20;
+
+  /** The early stopping state (null if the booster doesn't stop by itself), see nextIterations. */
+  protected EarlyStopping m_EarlyStopping;
+
+  /** The margin trackers which follow the booster (see attachMarginTracker). */
+  protected transient Vector m_MarginTrackers;
+
+  /** The iteration listeners (see addIterationListener). */
+  protected transient Vector m_IterationListeners;
+
+  /** The profile of the current iteration (null if there are no iteration listeners). */
+  protected transient IterationProfile m_Profile;
+
+  /** The scoring contexts of the threads which use the single instance methods (see threadContext). */
+  private transient volatile ScoringContext.PerThread m_ThreadContexts;
+
   /** A small constant used to avoid degenerated cases (division by zero error). */
   protected final static double NO_DIVISION_BY_ZERO = weka.core.Utils.SMALL;
 
@@ -98,7 +162,7 @@ public abstract class Booster extends DistributionClassifier
    */
   public Enumeration listOptions(){
 
-    Vector newVector = new Vector(7);
+    Vector newVector = new Vector(11);
 
     newVector.addElement(new Option(
       "\tTurn on debugging output.",
@@ -130,6 +194,25 @@ public abstract class Booster extends DistributionClassifier
       + "\n (default == 0).",
       "N", 1, "-N <normFactor>"));
 
+    newVector.addElement(new Option(
+      "\tNumber of threads used to classify the training instances at each iteration.\n"
+      + "\tThe base classifier must support concurrent classifications. (default 1)",
+      "P", 1, "-P <threads>"));
+
+    newVector.addElement(new Option(
+      "\tStop when the validation error hasn't improved in this number of iterations,\n"
+      + "\trolling back to the best iteration. (default 0, never stop)",
+      "L", 1, "-L <patience>"));
+
+    newVector.addElement(new Option(
+      "\tMinimum decrease of the validation error considered an improvement. (default 0)",
+      "Z", 1, "-Z <minDelta>"));
+
+    newVector.addElement(new Option(
+      "\tPercentage of the training data held out for validation when stopping early.\n"
+      + "\tIf 0, the out-of-bag instances are used (boosting with resampling only). (default 20)",
+      "H", 1, "-H <percent>"));
+
     if ((m_Classifier != null) &&
       (m_Classifier instanceof OptionHandler)){
       newVector.addElement(new Option(
@@ -172,6 +255,20 @@ public abstract class Booster extends DistributionClassifier
    *   - If >0  --> Sum of weights at each iteration will be normFactor
    * </PRE>
    *
+   * -P threads <br>
+   * Number of threads used to classify the training instances at each iteration (default 1).<p>
+   *
+   * -L patience <br>
+   * Stop when the validation error hasn't improved in patience iterations, rolling back to the
+   * best iteration (default 0, never stop).<p>
+   *
+   * -Z minDelta <br>
+   * Minimum decrease of the validation error considered an improvement (default 0).<p>
+   *
+   * -H percent <br>
+   * Percentage of the training data held out for validation; if 0, the out-of-bag instances
+   * are used (default 20).<p>
+   *
    * Options after -- are passed to the designated classifier.<p>
    *
    * @param options the list of options as an array of strings
@@ -210,6 +307,30 @@ public abstract class Booster extends DistributionClassifier
     String normFactor = Utils.getOption('N', options);
     if (normFactor.length() != 0)
       setNormFactor(Double.parseDouble(normFactor));
+
+    String numThreads = Utils.getOption('P', options);
+    if (numThreads.length() != 0)
+      setNumThreads(Integer.parseInt(numThreads));
+    else
+      setNumThreads(1);
+
+    String patience = Utils.getOption('L', options);
+    if (patience.length() != 0)
+      setEarlyStoppingPatience(Integer.parseInt(patience));
+    else
+      setEarlyStoppingPatience(0);
+
+    String minDelta = Utils.getOption('Z', options);
+    if (minDelta.length() != 0)
+      setEarlyStoppingMinDelta(Double.parseDouble(minDelta));
+    else
+      setEarlyStoppingMinDelta(0);
+
+    String validationPercent = Utils.getOption('H', options);
+    if (validationPercent.length() != 0)
+      setValidationPercent(Double.parseDouble(validationPercent));
+    else
+      setValidationPercent(20);
   }
 
   /**
@@ -224,7 +345,7 @@ public abstract class Booster extends DistributionClassifier
       classifierOptions = ((OptionHandler) m_Classifier).getOptions();
 
 
-    String[] options = new String[classifierOptions.length + 12];
+    String[] options = new String[classifierOptions.length + 20];
     int current = 0;
     if (getDebug()){
       options[current++] = "-D";
@@ -243,6 +364,14 @@ public abstract class Booster extends DistributionClassifier
       options[current++] = "" + -1;
     else
       options[current++] = "" + getNormFactor();
+    options[current++] = "-P";
+    options[current++] = "" + getNumThreads();
+    options[current++] = "-L";
+    options[current++] = "" + getEarlyStoppingPatience();
+    options[current++] = "-Z";
+    options[current++] = "" + getEarlyStoppingMinDelta();
+    options[current++] = "-H";
+    options[current++] = "" + getValidationPercent();
 
 
     if (getClassifier() != null){
@@ -269,6 +398,7 @@ public abstract class Booster extends DistributionClassifier
   public void setClassifier(Classifier newClassifier){
 
     m_Classifier = newClassifier;
+    m_ClassifierFactory = null;
   }
 
   /**
@@ -321,7 +451,7 @@ public abstract class Booster extends DistributionClassifier
   }
 
   /**
-   * Set seed for resampling.
+   * Set seed for resampling (it's used from the next call to buildClassifier).
    *
    * @param seed the seed for resampling
    */
@@ -330,6 +460,16 @@ public abstract class Booster extends DistributionClassifier
     m_ResampleSeed = seed;
   }
 
+  /**
+   * Restart the random numbers stream used to resample from the resample seed. It must
+   * be called when the model is reset (buildClassifier), so the samples drawn don't depend
+   * on how the iterations are split between calls to nextIterations: making 10 iterations
+   * with one call or with 10 calls gives the same ensemble.
+   */
+  protected void initializeResampleRandom(){
+    m_ResampleRandom = new SplittableRandom(m_ResampleSeed);
+  }
+
   /**
    * Get seed for resampling.
    *
@@ -360,6 +500,148 @@ public abstract class Booster extends DistributionClassifier
     return m_Debug;
   }
 
+  /**
+   * Set the number of threads used to classify the training instances at each iteration.
+   *
+   * @param numThreads The number of threads.
+   */
+  public void setNumThreads(int numThreads){
+
+    m_NumThreads = Math.max(1, numThreads);
+  }
+
+  /**
+   * Get the number of threads used to classify the training instances at each iteration.
+   *
+   * @return The number of threads.
+   */
+  public int getNumThreads(){
+
+    return m_NumThreads;
+  }
+
+  /**
+   * Set the number of iterations without improvement of the validation error after which
+   * the booster stops (it's used from the next call to buildClassifier).
+   *
+   * @param patience The number of iterations (0 == never stop).
+   */
+  public void setEarlyStoppingPatience(int patience){
+
+    m_EarlyStoppingPatience = Math.max(0, patience);
+  }
+
+  /**
+   * Get the number of iterations without improvement of the validation error after which
+   * the booster stops.
+   *
+   * @return The number of iterations (0 == never stop).
+   */
+  public int getEarlyStoppingPatience(){
+
+    return m_EarlyStoppingPatience;
+  }
+
+  /**
+   * Set the minimum decrease of the validation error considered an improvement.
+   *
+   * @param minDelta The minimum decrease.
+   */
+  public void setEarlyStoppingMinDelta(double minDelta){
+
+    m_EarlyStoppingMinDelta = minDelta;
+  }
+
+  /**
+   * Get the minimum decrease of the validation error considered an improvement.
+   *
+   * @return The minimum decrease.
+   */
+  public double getEarlyStoppingMinDelta(){
+
+    return m_EarlyStoppingMinDelta;
+  }
+
+  /**
+   * Set the percentage of the training data held out for validation when stopping early
+   * (it's used from the next call to buildClassifier).
+   *
+   * @param percent The percentage, at most 50 (0 == use the out-of-bag instances).
+   */
+  public void setValidationPercent(double percent){
+
+    m_ValidationPercent = Math.max(0, Math.min(percent, 50));
+  }
+
+  /**
+   * Get the percentage of the training data held out for validation when stopping early.
+   *
+   * @return The percentage (0 == use the out-of-bag instances).
+   */
+  public double getValidationPercent(){
+
+    return m_ValidationPercent;
+  }
+
+  /**
+   * Get the early stopping state (validation errors, best iteration...).
+   *
+   * @return The state, or null if the booster doesn't stop by itself.
+   */
+  public EarlyStopping getEarlyStopping(){
+
+    return m_EarlyStopping;
+  }
+
+  /**
+   * Reset the early stopping state. If the validation set is held out from the training
+   * data, a stratified fold of the data (as near to the validation percentage as possible)
+   * is taken out of it; so it must be called by buildClassifier before the training data
+   * is used, and only over the booster's own copy of the data.
+   *
+   * @param data The training data.
+   *
+   * @return The training data left.
+   *
+   * @throws Exception If there are too few instances to hold out the validation set.
+   */
+  protected Instances initializeEarlyStopping(Instances data) throws Exception{
+
+    m_EarlyStopping = null;
+
+    if (m_EarlyStoppingPatience == 0)
+      return data;
+
+    if (m_ValidationPercent == 0){
+      m_EarlyStopping = new EarlyStopping(m_EarlyStoppingPatience, m_EarlyStoppingMinDelta);
+      return data;
+    }
+
+    int numFolds = (int) Math.round(100 / m_ValidationPercent);
+    if (data.numInstances() < numFolds)
+      throw new Exception("Not enough training instances to hold out the validation set.");
+
+    data.randomize(new Random(m_ResampleSeed));
+    if (data.classAttribute().isNominal())
+      data.stratify(numFolds);
+
+    m_EarlyStopping = new EarlyStopping(data.testCV(numFolds, 0), m_EarlyStoppingPatience, m_EarlyStoppingMinDelta);
+
+    return data.trainCV(numFolds, 0);
+  }
+
+  /**
+   * Get the class of a training instance in the original training data (the boosters which
+   * change the class of their training data must override it).
+   *
+   * @param index The index of the training instance.
+   *
+   * @return The class index.
+   */
+  protected int originalClassValue(int index){
+    return (int) m_TrainData.instance(index).classValue();
+  }
+
   /**
    * Is the Booster ready to iterate?.
    *
@@ -456,26 +738,46 @@ public abstract class Booster extends DistributionClassifier
 
   /** Initializes the weights if they must sum a custom number. */
   protected void initializeWeights(){
-    if (m_NormFactorUsed == CUSTOM_NORM_FACTOR)
-      normalizeWeights(m_TrainData.sumOfWeights());
+    if (m_NormFactorUsed == CUSTOM_NORM_FACTOR){
+      loadDataView();
+      normalizeWeights(m_DataView.sumOfWeights());
+      m_DataView.syncWeights();
+    }
+  }
+
+  /**
+   * Load the train data into m_DataView, creating it if needed (ie. after the booster has
+   * been deserialized).
+   *
+   * @return The view.
+   */
+  protected final BoostingDataView loadDataView(){
+    if (m_DataView == null)
+      m_DataView = new BoostingDataView();
+    m_DataView.load(m_TrainData);
+    return m_DataView;
   }
 
   /**
    * Normalize the weight sum of the train data following the predefined directives.
+   * It works over the weights stored in m_DataView.
    *
    * @param weightSum The actual sum of weights of the train data.
    */
   protected final void normalizeWeights(double weightSum){
     if (m_NormFactorUsed != Booster.NOT_NORMALIZE){
 
+      int phase = enterPhase(IterationProfile.NORMALIZATION, m_NumInstances);
+
       weightSum /= m_NormFactor;
       weightSum += Booster.NO_DIVISION_BY_ZERO;
 
       //Normalize (it isnt usually necessary for properly work of the classifiers).
-      for (int i = 0; i < m_NumInstances; i++){
-        Instance instance = m_TrainData.instance(i);
-        instance.setWeight((instance.weight() + Booster.NO_DIVISION_BY_ZERO) / weightSum);
-      }
+      double[] weights = m_DataView.weights();
+      for (int i = 0; i < m_NumInstances; i++)
+        weights[i] = (weights[i] + Booster.NO_DIVISION_BY_ZERO) / weightSum;
+
+      enterPhase(phase, 0);
     }
   }
 
@@ -504,6 +806,12 @@ public abstract class Booster extends DistributionClassifier
   /**
    * Make numIterations iterations.
    *
+   * If the early stopping is enabled (see setEarlyStoppingPatience), the error over the
+   * validation set is updated after each iteration; when it hasn't improved in "patience"
+   * iterations, the booster stops and the iterations after the best one are purged (so
+   * less than numIterations iterations can be left). Each call gets the whole patience
+   * again, going on from the best iteration.
+   *
    * @param numIterations The number of iterations to perform.
    *
    * @throws Exception If an error occurs (ej. Booster not initialized).
@@ -511,10 +819,172 @@ public abstract class Booster extends DistributionClassifier
   public void nextIterations(int numIterations) throws Exception{
     if (!m_BoosterReady)
       throw new Exception("Booster is not initialized properly.");
-    if ((!m_UseResampling) && (m_Classifier instanceof WeightedInstancesHandler))
-      buildClassifierWithWeights(numIterations);
+
+    //The train data could have been changed since the last call (new instances, weights...).
+    loadDataView().setNumThreads(m_NumThreads);
+
+    //ie. the base classifier has been changed, or the model has been deserialized.
+    if (m_ClassifierFactory == null)
+      m_ClassifierFactory = new BaseClassifierFactory(m_Classifier);
+
+    //ie. a model saved by a version without the stream.
+    if (m_ResampleRandom == null)
+      initializeResampleRandom();
+
+    boolean usingResampling = m_UseResampling || !(m_Classifier instanceof WeightedInstancesHandler);
+
+    //Its buffers are kept for the next calls.
+    if (usingResampling && m_Resampler == null)
+      m_Resampler = new WeightedResampler();
+
+    if (m_EarlyStopping != null && m_EarlyStopping.isOutOfBag() && !usingResampling)
+      throw new Exception("The out-of-bag instances can only be used to validate when boosting with resampling.");
+
+    if (m_EarlyStopping != null && m_EarlyStopping.isOutOfBag() && !votesAddUp())
+      throw new Exception("The out-of-bag instances can't be used to validate a booster whose prediction "
+                          + "isn't the sum of the base classifiers votes: hold out a validation set.");
+
+    //Profile the iterations only if someone is listening.
+    if (m_IterationListeners == null || m_IterationListeners.isEmpty())
+      m_Profile = null;
+    else if (m_Profile == null)
+      m_Profile = new IterationProfile(this);
     else
+      m_Profile.reset();
+
+    try{
+      if (m_EarlyStopping == null)
+        iterate(numIterations, usingResampling);
+      else{
+        //One iteration at a time: the out-of-bag instances change with each sample.
+        m_EarlyStopping.restart();
+        for (; numIterations > 0; numIterations--){
+          iterate(1, usingResampling);
+          if (m_EarlyStopping.update(this)){
+            if (m_Debug)
+              System.err.println("/**** Early stop ****/ ==> best iteration = " + m_EarlyStopping.getBestIteration()
+                                 + "  validation error = " + m_EarlyStopping.getBestError());
+            m_EarlyStopping.rollback(this);
+            break;
+          }
+          if (m_Debug)
+            System.err.println("\tvalidation error = " + m_EarlyStopping.getLastError());
+        }
+      }
+    }
+    finally{
+      //Let the instances reflect the current weights distribution.
+      m_DataView.syncWeights();
+
+      if (m_Debug)
+        System.err.println(m_ClassifierFactory);
+    }
+
+    if (m_MarginTrackers != null)
+      for (int i = 0; i < m_MarginTrackers.size(); i++)
+        ((MarginTracker) m_MarginTrackers.elementAt(i)).update(this);
+  }
+
+  /**
+   * Keep the combined hypothesis over a dataset (ie. the test data) up to date as the booster
+   * iterates: the tracker gets the votes of the new iterations at the end of each call to
+   * nextIterations (after a purge of iterations, it can be brought up to date with update).
+   * The trackers are not saved with the booster.
+   *
+   * @param data The instances (with the format of the original training data).
+   *
+   * @return The tracker, with the votes of the iterations already performed.
+   *
+   * @throws Exception If an instance can't be classified.
+   */
+  public MarginTracker attachMarginTracker(Instances data) throws Exception{
+
+    MarginTracker tracker = new MarginTracker(data);
+    tracker.update(this);
+
+    if (m_MarginTrackers == null)
+      m_MarginTrackers = new Vector();
+    m_MarginTrackers.addElement(tracker);
+
+    return tracker;
+  }
+
+  /**
+   * Stop updating a margin tracker.
+   *
+   * @param tracker The tracker.
+   */
+  public void detachMarginTracker(MarginTracker tracker){
+    if (m_MarginTrackers != null)
+      m_MarginTrackers.removeElement(tracker);
+  }
+
+  /**
+   * Get the profile of each iteration (see IterationListener). The listeners are not saved
+   * with the booster; while there are none, the iterations are not profiled.
+   *
+   * @param listener The listener.
+   */
+  public void addIterationListener(IterationListener listener){
+    if (m_IterationListeners == null)
+      m_IterationListeners = new Vector();
+    if (!m_IterationListeners.contains(listener))
+      m_IterationListeners.addElement(listener);
+  }
+
+  /**
+   * Stop notifying the iterations to a listener.
+   *
+   * @param listener The listener.
+   */
+  public void removeIterationListener(IterationListener listener){
+    if (m_IterationListeners != null)
+      m_IterationListeners.removeElement(listener);
+  }
+
+  /**
+   * Enter a phase of the current iteration (see IterationProfile); it does nothing if there
+   * are no iteration listeners.
+   *
+   * @param phase The phase (one of the IterationProfile constants, or -1 to leave the current one).
+   * @param numInstances The number of training instances the phase touches.
+   *
+   * @return The phase left (-1 if none or if there are no iteration listeners).
+   */
+  protected final int enterPhase(int phase, int numInstances){
+    if (m_Profile == null)
+      return -1;
+    return m_Profile.enter(phase, numInstances);
+  }
+
+  /**
+   * End the profile of the iteration just performed (m_NumIterations must count it) and
+   * notify it to the iteration listeners.
+   */
+  protected final void iterationPerformed(){
+
+    if (m_Profile == null)
+      return;
+
+    m_Profile.finish(m_NumIterations - 1);
+    for (int i = 0; i < m_IterationListeners.size(); i++)
+      ((IterationListener) m_IterationListeners.elementAt(i)).iterationPerformed(m_Profile);
+    m_Profile.reset();
+  }
+
+  /**
+   * Perform iterations with the boosting method which fits the base classifier.
+   *
+   * @param numIterations The number of iterations to perform.
+   * @param usingResampling Must the booster use resampling?
+   *
+   * @throws Exception If the classifier could not be built successfully
+   */
+  private void iterate(int numIterations, boolean usingResampling) throws Exception{
+    if (usingResampling)
       buildClassifierUsingResampling(numIterations);
+    else
+      buildClassifierWithWeights(numIterations);
   }
 
   /**
@@ -585,7 +1055,7 @@ public abstract class Booster extends DistributionClassifier
    * @exception Exception if an error occurred during the prediction
    */
   public double classifyInstance(Instance instance) throws Exception{
-    return (oaidtb.misc.Utils.maxIndex(distributionForInstance(instance)));
+    return classifyInstance(instance, m_NumIterations, threadContext());
   }
 
   /**
@@ -596,6 +1066,9 @@ public abstract class Booster extends DistributionClassifier
    */
   public void purgeTraindata(){
     m_TrainData = null;
+    m_DataView = null;
+    m_Resampler = null;
+    m_EarlyStopping = null;
     m_BoosterReady = false;
   }
 
@@ -609,6 +1082,9 @@ public abstract class Booster extends DistributionClassifier
    * @throws Exception If numIterations parameter is incorrect
    */
   public void purgeIterations(int numIterations) throws Exception{
+    if (m_Frozen)
+      throw new Exception("A frozen booster can't be modified.");
+
     if (m_NumIterations < numIterations || numIterations < 0)
       throw new Exception("There aren't so many iterations.");
 
@@ -624,22 +1100,7 @@ public abstract class Booster extends DistributionClassifier
    * @throws Exception If an error happens
    */
   public double[] distributionForInstance(Instance instance, int numIterationsToUse) throws Exception{
-
-    if (numIterationsToUse > m_NumIterations || numIterationsToUse < 0)
-      throw new Exception("Invaled numIterations parameter.");
-
-    int swapTmp = m_NumIterations;
-    m_NumIterations = numIterationsToUse;
-
-    try{
-      double[] distributionForInstance = distributionForInstance(instance);
-      m_NumIterations = swapTmp;
-      return distributionForInstance;
-    }
-    catch (Exception e){
-      m_NumIterations = swapTmp;
-      throw e;
-    }
+    return (double[]) distributionForInstance(instance, numIterationsToUse, threadContext()).clone();
   }
 
   /**
@@ -651,22 +1112,219 @@ public abstract class Booster extends DistributionClassifier
    * @throws Exception If an error happens
    */
   public double classifyInstance(Instance instance, int numIterationsToUse) throws Exception{
+    return classifyInstance(instance, numIterationsToUse, threadContext());
+  }
 
-    if (numIterationsToUse > m_NumIterations || numIterationsToUse < 0)
-      throw new Exception("Invaled numIterations parameter.");
+  /**
+   * Get the scoring context of the current thread for this booster, which the methods
+   * without a context argument (ie. distributionForInstance(instance)) use for their
+   * scratch memory once the thread has classified its first instance.
+   *
+   * Those methods keep weka's contract: the distribution they return is a copy which
+   * belongs to the caller (its only allocation); classifyInstance doesn't allocate. To
+   * classify without allocating at all, use the methods with a context argument.
+   *
+   * @return The context of the current thread.
+   */
+  protected final ScoringContext threadContext(){
 
-    int swapTmp = m_NumIterations;
-    m_NumIterations = numIterationsToUse;
+    ScoringContext.PerThread contexts = m_ThreadContexts;
 
-    try{
-      double classForInstance = classifyInstance(instance);
-      m_NumIterations = swapTmp;
-      return classForInstance;
+    if (contexts == null){
+      synchronized (this){
+        if (m_ThreadContexts == null)
+          m_ThreadContexts = new ScoringContext.PerThread();
+        contexts = m_ThreadContexts;
+      }
+    }
+
+    return contexts.context();
+  }
+
+  /**
+   * Calculates the class membership probabilities for the given test instance without
+   * allocating memory: the distribution returned belongs to the context (see ScoringContext).
+   *
+   * @param instance The instance to be classified
+   * @param context The scoring context of the current thread
+   * @return The instance clasification distribution
+   * @throws Exception If an error happens
+   */
+  public double[] distributionForInstance(Instance instance, ScoringContext context) throws Exception{
+    return distributionForInstance(instance, m_NumIterations, context);
+  }
+
+  /**
+   * Calculates the class membership probabilities for the given test instance using only
+   * the first numIterations base classifiers, without allocating memory: the distribution
+   * returned belongs to the context (see ScoringContext).
+   *
+   * The booster isn't modified, so many threads (each one with its own context) can call
+   * it at the same time as long as the booster doesn't change; to classify instances while
+   * the booster keeps iterating, use a frozen copy (see freeze).
+   *
+   * @param instance The instance to be classified
+   * @param numIterations Number of base classifiers to use
+   * @param context The scoring context of the current thread
+   * @return The instance clasification distribution
+   * @throws Exception If numIterations is incorrect or the instance can't be classified
+   */
+  public abstract double[] distributionForInstance(Instance instance, int numIterations, ScoringContext context)
+    throws Exception;
+
+  /**
+   * Classify the given instance using only the first numIterations base classifiers, with
+   * the memory of the context (see distributionForInstance(instance, numIterations, context)).
+   *
+   * @param instance The instance to be classified
+   * @param numIterations Number of base classifiers to use
+   * @param context The scoring context of the current thread
+   * @return The instance clasification
+   * @throws Exception If numIterations is incorrect or the instance can't be classified
+   */
+  public double classifyInstance(Instance instance, int numIterations, ScoringContext context) throws Exception{
+    return oaidtb.misc.Utils.maxIndex(distributionForInstance(instance, numIterations, context));
+  }
+
+  /**
+   * Get a frozen copy of the booster: a read-only snapshot of the combined hypothesis built
+   * so far, which can classify instances from many threads at the same time (each one with
+   * its own ScoringContext) while this booster keeps iterating or purging iterations.
+   *
+   * The copy shares the base classifiers (they are never modified once built) but not the
+   * structures which change when the booster iterates, and it keeps only the header of the
+   * train data, so it costs far less memory than a copy of the whole booster. A frozen
+   * copy can't iterate nor purge iterations. As the base classifiers are shared, they must
+   * be able to classify instances from many threads at the same time, as DecisionStump, J48
+   * or NaiveBayes do (but not the ones which filter each instance, ie. LinearRegression).
+   *
+   * It must be called while the booster is not iterating (ie. by the training thread, between
+   * two calls to nextIterations), and the copy must be handed to the scoring threads safely
+   * (ie. before starting them).
+   *
+   * @return The frozen copy.
+   * @throws Exception If the booster can't be copied
+   */
+  public Booster freeze() throws Exception{
+
+    Booster frozen = (Booster) clone();
+
+    frozen.m_Frozen = true;
+    frozen.m_BoosterReady = false;
+    if (m_TrainData != null)
+      frozen.m_TrainData = new Instances(m_TrainData, 0);
+    frozen.m_DataView = null;
+    frozen.m_Resampler = null;
+    frozen.m_ResampleRandom = null;
+    frozen.m_EarlyStopping = null;
+    frozen.m_MarginTrackers = null;
+    frozen.m_ThreadContexts = null;
+    frozen.copyModel();
+
+    return frozen;
+  }
+
+  /**
+   * Is this booster a frozen copy of another one?.
+   *
+   * @return True if the booster is frozen (see freeze).
+   */
+  public boolean isFrozen(){
+    return m_Frozen;
+  }
+
+  /**
+   * Give a frozen copy (see freeze) its own copy of every structure of the model which can
+   * change when the original booster iterates or purges iterations; the copy has been made
+   * with clone, so until then it shares them with the original booster.
+   *
+   * @throws Exception If the model can't be copied
+   */
+  protected abstract void copyModel() throws Exception;
+
+  /**
+   * Calculates the class membership probabilities of a batch of instances using only the
+   * first numIterations base classifiers. The distributions are written into the supplied
+   * matrix (a row per instance, as long as the number of classes at least), so nothing
+   * is allocated per instance.
+   *
+   * This implementation classifies the instances one by one; the boosters override it
+   * looping over the base classifiers in the outer loop (so each base classifier classifies
+   * the whole batch before the next one is used).
+   *
+   * @param data The instances to be classified.
+   * @param numIterations Number of base classifiers to use.
+   * @param out The matrix where the distributions are written.
+   *
+   * @throws Exception If the parameters are incorrect or an instance can't be classified.
+   */
+  public void distributionsForInstances(Instances data, int numIterations, double[][] out) throws Exception{
+
+    checkBatch(data, numIterations, out);
+
+    ScoringContext context = new ScoringContext();
+
+    for (int i = 0; i < data.numInstances(); i++){
+      double[] distribution = distributionForInstance(data.instance(i), numIterations, context);
+      System.arraycopy(distribution, 0, out[i], 0, distribution.length);
     }
-    catch (Exception e){
-      m_NumIterations = swapTmp;
-      throw e;
+  }
+
+  /**
+   * Check the parameters of a batch classification.
+   *
+   * @param data The instances to be classified.
+   * @param numIterations Number of base classifiers to use.
+   * @param out The matrix where the distributions are written.
+   *
+   * @throws Exception If the parameters are incorrect.
+   */
+  protected void checkBatch(Instances data, int numIterations, double[][] out) throws Exception{
+
+    checkNumIterations(numIterations);
+
+    if (out.length < data.numInstances())
+      throw new Exception("The output matrix has less rows than instances.");
+  }
+
+  /**
+   * Check that a number of base classifiers to use is not greater than the number of
+   * iterations performed.
+   *
+   * @param numIterations Number of base classifiers to use.
+   *
+   * @throws Exception If the number is incorrect.
+   */
+  protected void checkNumIterations(int numIterations) throws Exception{
+    if (numIterations > m_NumIterations || numIterations < 0)
+      throw new Exception("Invaled numIterations parameter.");
+  }
+
+  /**
+   * Get the instances of a batch as instances of a dataset. If the batch hasn't the same
+   * header than the dataset, each instance is replaced by a shallow copy (its attribute
+   * values are shared) which belongs to the dataset; this way the copies are made once
+   * per batch and not once per instance and call.
+   *
+   * @param data The batch.
+   * @param dataset The dataset the instances must belong to.
+   *
+   * @return The instances.
+   */
+  protected static Instance[] bindInstances(Instances data, Instances dataset){
+
+    Instance[] instances = new Instance[data.numInstances()];
+    boolean copy = dataset != null && !dataset.equalHeaders(data);
+
+    for (int i = 0; i < instances.length; i++){
+      instances[i] = data.instance(i);
+      if (copy){
+        instances[i] = (Instance) instances[i].copy();
+        instances[i].setDataset(dataset);
+      }
     }
+
+    return instances;
   }
 
   /**
@@ -680,6 +1338,19 @@ public abstract class Booster extends DistributionClassifier
    */
   public abstract double[] getClassifierVote(Instance instance, int classifierIndex) throws Exception;
 
+  /**
+   * Does the sum of the base classifiers votes (see getClassifierVote) predict the same class
+   * as the booster? If not (ie. when the booster transforms the sum before predicting), the
+   * predictions over a dataset have to be computed with distributionForInstance (see
+   * MarginTracker), and the out-of-bag instances can't be used to validate.
+   *
+   * @return True; the boosters whose prediction isn't the class with the biggest sum of votes
+   * override it.
+   */
+  public boolean votesAddUp(){
+    return true;
+  }
+
   //--------------------------------------*************************************
   //--------------------- Configure the "GUI side" methods ********************
   //--------------------------------------*************************************
@@ -719,6 +1390,29 @@ public abstract class Booster extends DistributionClassifier
     return "Set the number of iterations to perform in the first call.";
   }
 
+  public static String numThreadsTipText(){
+
+    return "Set the number of threads used to classify the training instances at each iteration "
+      + "(the base classifier must support concurrent classifications).";
+  }
+
+  public static String earlyStoppingPatienceTipText(){
+
+    return "Stop when the validation error hasn't improved in this number of iterations, rolling back "
+      + "to the best iteration (0 == never stop).";
+  }
+
+  public static String earlyStoppingMinDeltaTipText(){
+
+    return "Set the minimum decrease of the validation error considered an improvement.";
+  }
+
+  public static String validationPercentTipText(){
+
+    return "Set the percentage of the training data held out for validation when stopping early "
+      + "(0 == use the out-of-bag instances, only when boosting with resampling).";
+  }
+
   /**
    * Defines a "visual" order to the bean's properties of this booster.
    *
@@ -733,6 +1427,10 @@ public abstract class Booster extends DistributionClassifier
     index.add("useResampling");
     index.add("resampleSeed");
     index.add("normFactor");
+    index.add("numThreads");
+    index.add("earlyStoppingPatience");
+    index.add("earlyStoppingMinDelta");
+    index.add("validationPercent");
     index.add("debug");
 
     return index;
@@ -0,0 +1,260 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    BoosterMetrics.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.core.Utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * An iteration listener which adds up the profiles of the iterations of one or more
+ * boosters, phase by phase, and publishes them as a JMX MBean (see register), ie.:
+ *
+ * <pre>
+ *   BoosterMetrics metrics = new BoosterMetrics();
+ *   booster.addIterationListener(metrics);
+ *   metrics.register("myBooster");
+ * </pre>
+ *
+ * It can be shared by several boosters (or threads). The JMX classes (Java 5) are reached by
+ * reflection, so the metrics can be added up on any virtual machine; only register and
+ * unregister need them.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class BoosterMetrics implements IterationListener, BoosterMetricsMBean{
+
+  /** The number of iterations measured. */
+  private long m_Iterations;
+
+  /** The nanoseconds spent in each phase. */
+  private long[] m_Times = new long[IterationProfile.NUM_PHASES];
+
+  /** The number of instances touched in each phase. */
+  private long[] m_Instances = new long[IterationProfile.NUM_PHASES];
+
+  /** The bytes allocated in each phase. */
+  private long[] m_Bytes = new long[IterationProfile.NUM_PHASES];
+
+  /** The nanoseconds of the last iteration. */
+  private long m_LastIterationTime;
+
+  /** The name under which it is registered, a javax.management.ObjectName (null if it isn't). */
+  private Object m_Name;
+
+  /**
+   * Add the profile of an iteration.
+   *
+   * @param profile The profile.
+   */
+  public synchronized void iterationPerformed(IterationProfile profile){
+
+    m_Iterations++;
+    m_LastIterationTime = profile.getTotalTime();
+
+    for (int i = 0; i < IterationProfile.NUM_PHASES; i++){
+      m_Times[i] += profile.getTime(i);
+      m_Instances[i] += profile.getInstances(i);
+      m_Bytes[i] += profile.getBytes(i);
+    }
+  }
+
+  public synchronized long getIterations(){
+    return m_Iterations;
+  }
+
+  public String[] getPhaseNames(){
+    String[] names = new String[IterationProfile.NUM_PHASES];
+    for (int i = 0; i < names.length; i++)
+      names[i] = IterationProfile.phaseName(i);
+    return names;
+  }
+
+  public synchronized long[] getPhaseTimes(){
+    return (long[]) m_Times.clone();
+  }
+
+  public synchronized long[] getPhaseInstances(){
+    return (long[]) m_Instances.clone();
+  }
+
+  public synchronized long[] getPhaseBytes(){
+    return (long[]) m_Bytes.clone();
+  }
+
+  public synchronized double getMeanIterationMillis(){
+
+    if (m_Iterations == 0)
+      return 0;
+
+    long total = 0;
+    for (int i = 0; i < m_Times.length; i++)
+      total += m_Times[i];
+
+    return total / 1e6 / m_Iterations;
+  }
+
+  public synchronized double getLastIterationMillis(){
+    return m_LastIterationTime / 1e6;
+  }
+
+  public synchronized void reset(){
+    m_Iterations = m_LastIterationTime = 0;
+    for (int i = 0; i < IterationProfile.NUM_PHASES; i++)
+      m_Times[i] = m_Instances[i] = m_Bytes[i] = 0;
+  }
+
+  /**
+   * Publish the metrics in the platform MBean server, under the name
+   * "oaidtb:type=BoosterMetrics,name=" + name.
+   *
+   * @param name The name of the metrics (ie. of the booster).
+   *
+   * @return The object name (a javax.management.ObjectName).
+   *
+   * @throws Exception If the metrics can't be registered (ie. the name is already used or
+   * the virtual machine hasn't got a platform MBean server).
+   */
+  public synchronized Object register(String name) throws Exception{
+
+    if (m_Name != null)
+      throw new Exception("The metrics are already registered as " + m_Name + ".");
+
+    Class objectNameClass = jmxClass("javax.management.ObjectName");
+    String quotedName = (String) invoke(objectNameClass, null, "quote", new Class[]{String.class}, new Object[]{name});
+    Object objectName = objectNameClass.getConstructor(new Class[]{String.class})
+      .newInstance(new Object[]{"oaidtb:type=BoosterMetrics,name=" + quotedName});
+
+    invoke(jmxClass("javax.management.MBeanServer"), platformMBeanServer(), "registerMBean",
+           new Class[]{Object.class, objectNameClass}, new Object[]{this, objectName});
+    m_Name = objectName;
+
+    return objectName;
+  }
+
+  /**
+   * Remove the metrics from the platform MBean server (if they are registered).
+   *
+   * @throws Exception If the metrics can't be unregistered.
+   */
+  public synchronized void unregister() throws Exception{
+
+    if (m_Name == null)
+      return;
+
+    Class serverClass = jmxClass("javax.management.MBeanServer");
+    Class[] types = new Class[]{jmxClass("javax.management.ObjectName")};
+    Object server = platformMBeanServer();
+    Object[] arguments = new Object[]{m_Name};
+
+    if (((Boolean) invoke(serverClass, server, "isRegistered", types, arguments)).booleanValue())
+      invoke(serverClass, server, "unregisterMBean", types, arguments);
+    m_Name = null;
+  }
+
+  /**
+   * Get the platform MBean server (java.lang.management.ManagementFactory.getPlatformMBeanServer).
+   *
+   * @return The server, a javax.management.MBeanServer.
+   *
+   * @throws Exception If the virtual machine hasn't got it (ie. before Java 5).
+   */
+  private static Object platformMBeanServer() throws Exception{
+    return invoke(jmxClass("java.lang.management.ManagementFactory"), null, "getPlatformMBeanServer",
+                  new Class[0], new Object[0]);
+  }
+
+  /**
+   * Load a class of the JMX or management APIs.
+   *
+   * @param name The class name.
+   *
+   * @return The class.
+   *
+   * @throws Exception If the virtual machine hasn't got it (ie. before Java 5).
+   */
+  private static Class jmxClass(String name) throws Exception{
+    try{
+      return Class.forName(name);
+    }
+    catch (ClassNotFoundException e){
+      throw new Exception("The metrics can't be published: " + name + " not found (Java 5 or later is needed).");
+    }
+  }
+
+  /**
+   * Invoke a method, throwing the exception thrown by the method itself if it fails.
+   *
+   * @param declaringClass The class (or interface) which declares the method.
+   * @param target The object (null for a static method).
+   * @param name The method name.
+   * @param types The parameter types.
+   * @param arguments The arguments.
+   *
+   * @return The value returned by the method.
+   *
+   * @throws Exception If the method can't be invoked or if it fails.
+   */
+  private static Object invoke(Class declaringClass, Object target, String name, Class[] types, Object[] arguments)
+    throws Exception{
+
+    Method method = declaringClass.getMethod(name, types);
+
+    try{
+      return method.invoke(target, arguments);
+    }
+    catch (InvocationTargetException e){
+      if (e.getTargetException() instanceof Exception)
+        throw (Exception) e.getTargetException();
+      throw e;
+    }
+  }
+
+  /** @return A table with the metrics of each phase. */
+  public String getSummary(){
+    return toString();
+  }
+
+  /** @return A table with the metrics of each phase. */
+  public synchronized String toString(){
+
+    StringBuffer text = new StringBuffer(m_Iterations + " iterations, "
+                                         + Utils.doubleToString(getMeanIterationMillis(), 3) + " ms per iteration\n");
+
+    long total = 0;
+    for (int i = 0; i < m_Times.length; i++)
+      total += m_Times[i];
+
+    for (int i = 0; i < IterationProfile.NUM_PHASES; i++)
+      if (m_Times[i] > 0 || m_Instances[i] > 0)
+        text.append(Utils.padRight(IterationProfile.phaseName(i), 20)
+                    + Utils.padLeft(Utils.doubleToString(m_Times[i] / 1e6, 3), 14) + " ms"
+                    + Utils.padLeft(Utils.doubleToString(total == 0 ? 0 : 100.0 * m_Times[i] / total, 1), 7) + " %"
+                    + Utils.padLeft("" + m_Instances[i], 14) + " instances"
+                    + Utils.padLeft("" + m_Bytes[i], 16) + " bytes\n");
+
+    return text.toString();
+  }
+}
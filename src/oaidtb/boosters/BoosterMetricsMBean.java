@@ -0,0 +1,60 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    BoosterMetricsMBean.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+/**
+ * The management interface of BoosterMetrics (a JMX standard MBean). The arrays have an
+ * element per phase, in the order of getPhaseNames (see IterationProfile).
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public interface BoosterMetricsMBean{
+
+  /** @return The number of iterations measured. */
+  long getIterations();
+
+  /** @return The names of the phases. */
+  String[] getPhaseNames();
+
+  /** @return The nanoseconds spent in each phase. */
+  long[] getPhaseTimes();
+
+  /** @return The number of training instances touched in each phase. */
+  long[] getPhaseInstances();
+
+  /** @return The bytes allocated in each phase. */
+  long[] getPhaseBytes();
+
+  /** @return The mean milliseconds per iteration. */
+  double getMeanIterationMillis();
+
+  /** @return The milliseconds of the last iteration. */
+  double getLastIterationMillis();
+
+  /** @return A table with the metrics of each phase. */
+  String getSummary();
+
+  /** Forget the iterations measured. */
+  void reset();
+}
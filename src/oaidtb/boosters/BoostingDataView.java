@@ -0,0 +1,387 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    BoostingDataView.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.DistributionClassifier;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.Serializable;
+
+/**
+ * Columnar (primitive arrays) view of the training data of a booster: the instances weights,
+ * their class labels and the predictions of the last base classifier are stored in contiguous
+ * arrays, so the error and reweight loops don't have to walk through weka Instance objects.
+ * The predictions (and the class distributions, for DistributionClassifiers, or the real
+ * values, for the regressors of GentleAdaBoost) are computed once per iteration and shared
+ * by all the steps which need them.
+ *
+ * The predictions can be computed by several threads, each one classifying a contiguous
+ * chunk of instances; the base classifiers must allow concurrent calls to classifyInstance
+ * and distributionForInstance (most weka classifiers do, since they don't change their
+ * state when classifying). The reductions (sums of weights...) are done by the boosters
+ * over the stored predictions in the same order than with one thread, so the results
+ * don't depend on the number of threads.
+ *
+ * The Instances remain the "official" store between calls to nextIterations: the view is
+ * loaded from them before iterating (they could have been changed, ie. by AdaBoostMH or
+ * by addTrainingInstance) and the weights are synced back only when needed (before
+ * building or resampling a base classifier and when the iterations finish).
+ *
+ * There is no parameter checking; speed is its only purpouse.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class BoostingDataView implements Serializable{
+
+  /** The instances viewed. */
+  private Instances m_Data;
+
+  /** The number of instances viewed. */
+  private int m_NumInstances;
+
+  /** The weights of the instances. */
+  private double[] m_Weights = new double[0];
+
+  /** The class labels of the instances. */
+  private int[] m_Labels = new int[0];
+
+  /** The predictions of the last base classifier for each instance. */
+  private int[] m_Predictions = new int[0];
+
+  /** The class distributions predicted by the last base classifier for each instance. */
+  private double[][] m_Distributions = new double[0][];
+
+  /** The values predicted by the last base classifier for each instance (see predictValues). */
+  private double[] m_Values = new double[0];
+
+  /** Classification modes (see classify): predictions, distributions or real values. */
+  private final static int PREDICTIONS = 0, DISTRIBUTIONS = 1, VALUES = 2;
+
+  /** Number of threads used to classify the instances. */
+  private int m_NumThreads = 1;
+
+  /** Minimum number of instances classified by each thread (below it, threads don't pay). */
+  private final static int MIN_INSTANCES_PER_THREAD = 256;
+
+  /**
+   * Load the weights and the class labels from a dataset; the arrays are only reallocated
+   * when they are too small.
+   *
+   * @param data The dataset.
+   */
+  public void load(Instances data){
+
+    m_Data = data;
+    m_NumInstances = data.numInstances();
+
+    if (m_Weights.length < m_NumInstances){
+      m_Weights = new double[m_NumInstances];
+      m_Labels = new int[m_NumInstances];
+      m_Predictions = new int[m_NumInstances];
+      m_Distributions = new double[m_NumInstances][];
+      m_Values = new double[m_NumInstances];
+    }
+
+    for (int i = 0; i < m_NumInstances; i++){
+      m_Weights[i] = data.instance(i).weight();
+      m_Labels[i] = (int) data.instance(i).classValue();
+    }
+  }
+
+  /**
+   * Reload the class labels from the dataset (needed when it has been relabeled).
+   */
+  public void loadLabels(){
+    for (int i = 0; i < m_NumInstances; i++)
+      m_Labels[i] = (int) m_Data.instance(i).classValue();
+  }
+
+  /**
+   * Set the class label of an instance, both in the view and in the dataset.
+   *
+   * @param index The instance index.
+   * @param label The new class label.
+   */
+  public void setLabel(int index, int label){
+    m_Labels[index] = label;
+    m_Data.instance(index).setClassValue(label);
+  }
+
+  /** Copy the weights to the instances of the dataset. */
+  public void syncWeights(){
+    for (int i = 0; i < m_NumInstances; i++)
+      m_Data.instance(i).setWeight(m_Weights[i]);
+  }
+
+  /**
+   * Store the predictions of a classifier for each instance (-1 when the classifier
+   * doesn't predict any class).
+   *
+   * @param classifier The classifier.
+   *
+   * @return The predictions array (the view's one, not a copy).
+   *
+   * @throws Exception If an instance can't be classified.
+   */
+  public int[] predict(Classifier classifier) throws Exception{
+    classify(classifier, PREDICTIONS);
+    return m_Predictions;
+  }
+
+  /**
+   * Store the predictions of a classifier for the instances in [from, to).
+   *
+   * @param classifier The classifier.
+   * @param from The first instance.
+   * @param to The last instance (exclusive).
+   *
+   * @throws Exception If an instance can't be classified.
+   */
+  private void predict(Classifier classifier, int from, int to) throws Exception{
+    for (int i = from; i < to; i++){
+      double prediction = classifier.classifyInstance(m_Data.instance(i));
+      m_Predictions[i] = Instance.isMissingValue(prediction) ? -1 : (int) prediction;
+    }
+  }
+
+  /**
+   * Store the class distributions predicted by a classifier for each instance, and the
+   * predictions (the index of the maximum of each distribution) too.
+   *
+   * @param classifier The classifier.
+   *
+   * @return The distributions array (the view's one, not a copy).
+   *
+   * @throws Exception If an instance can't be classified.
+   */
+  public double[][] predictDistributions(DistributionClassifier classifier) throws Exception{
+    classify(classifier, DISTRIBUTIONS);
+    return m_Distributions;
+  }
+
+  /**
+   * Store the class distributions predicted by a classifier for the instances in [from, to).
+   *
+   * @param classifier The classifier.
+   * @param from The first instance.
+   * @param to The last instance (exclusive).
+   *
+   * @throws Exception If an instance can't be classified.
+   */
+  private void predictDistributions(DistributionClassifier classifier, int from, int to) throws Exception{
+    for (int i = from; i < to; i++){
+      m_Distributions[i] = classifier.distributionForInstance(m_Data.instance(i));
+      m_Predictions[i] = oaidtb.misc.Utils.maxIndex(m_Distributions[i]);
+    }
+  }
+
+  /**
+   * Store the values predicted by a classifier (ie. a regressor) for each instance, as
+   * returned by classifyInstance.
+   *
+   * @param classifier The classifier.
+   *
+   * @return The values array (the view's one, not a copy).
+   *
+   * @throws Exception If an instance can't be classified.
+   */
+  public double[] predictValues(Classifier classifier) throws Exception{
+    classify(classifier, VALUES);
+    return m_Values;
+  }
+
+  /**
+   * Store the values predicted by a classifier for the instances in [from, to).
+   *
+   * @param classifier The classifier.
+   * @param from The first instance.
+   * @param to The last instance (exclusive).
+   *
+   * @throws Exception If an instance can't be classified.
+   */
+  private void predictValues(Classifier classifier, int from, int to) throws Exception{
+    for (int i = from; i < to; i++)
+      m_Values[i] = classifier.classifyInstance(m_Data.instance(i));
+  }
+
+  /**
+   * Classify the instances in [from, to).
+   *
+   * @param classifier The classifier.
+   * @param mode What is computed: PREDICTIONS, DISTRIBUTIONS or VALUES.
+   * @param from The first instance.
+   * @param to The last instance (exclusive).
+   *
+   * @throws Exception If an instance can't be classified.
+   */
+  private void classify(Classifier classifier, int mode, int from, int to) throws Exception{
+    if (mode == DISTRIBUTIONS)
+      predictDistributions((DistributionClassifier) classifier, from, to);
+    else if (mode == VALUES)
+      predictValues(classifier, from, to);
+    else
+      predict(classifier, from, to);
+  }
+
+  /**
+   * Classify all the instances, splitting them in contiguous chunks between the threads.
+   *
+   * @param classifier The classifier.
+   * @param mode What is computed: PREDICTIONS, DISTRIBUTIONS or VALUES.
+   *
+   * @throws Exception If an instance can't be classified.
+   */
+  private void classify(Classifier classifier, int mode) throws Exception{
+
+    int numThreads = Math.min(m_NumThreads, m_NumInstances / MIN_INSTANCES_PER_THREAD);
+
+    if (numThreads <= 1){
+      classify(classifier, mode, 0, m_NumInstances);
+      return;
+    }
+
+    //The current thread classifies the first chunk.
+    ClassifierThread[] threads = new ClassifierThread[numThreads - 1];
+    int chunkSize = (m_NumInstances + numThreads - 1) / numThreads;
+
+    for (int i = 0; i < threads.length; i++){
+      int from = (i + 1) * chunkSize;
+      threads[i] = new ClassifierThread(classifier, mode, from, Math.min(from + chunkSize, m_NumInstances));
+      threads[i].start();
+    }
+
+    Exception error = null;
+    try{
+      classify(classifier, mode, 0, chunkSize);
+    }
+    catch (Exception e){
+      error = e;
+    }
+
+    for (int i = 0; i < threads.length; i++){
+      threads[i].join();
+      if (error == null)
+        error = threads[i].m_Error;
+    }
+
+    if (error != null)
+      throw error;
+  }
+
+  /** A thread which classifies a chunk of instances. */
+  private class ClassifierThread extends Thread{
+
+    private Classifier m_Classifier;
+    private int m_Mode;
+    private int m_From, m_To;
+
+    /** The exception thrown when classifying, if any. */
+    private Exception m_Error;
+
+    public ClassifierThread(Classifier classifier, int mode, int from, int to){
+      m_Classifier = classifier;
+      m_Mode = mode;
+      m_From = from;
+      m_To = to;
+    }
+
+    public void run(){
+      try{
+        classify(m_Classifier, m_Mode, m_From, m_To);
+      }
+      catch (Exception e){
+        m_Error = e;
+      }
+    }
+  }
+
+  /**
+   * Get the sum of the weights.
+   *
+   * @return The sum of the weights.
+   */
+  public double sumOfWeights(){
+    double sum = 0;
+    for (int i = 0; i < m_NumInstances; i++)
+      sum += m_Weights[i];
+    return sum;
+  }
+
+  /** Free the memory used by the view. */
+  public void clear(){
+    m_Data = null;
+    m_NumInstances = 0;
+    m_Weights = new double[0];
+    m_Labels = new int[0];
+    m_Predictions = new int[0];
+    m_Distributions = new double[0][];
+    m_Values = new double[0];
+  }
+
+  /**
+   * Set the number of threads used to classify the instances.
+   *
+   * @param numThreads The number of threads (values lesser than 1 are taken as 1).
+   */
+  public void setNumThreads(int numThreads){
+    m_NumThreads = Math.max(1, numThreads);
+  }
+
+  /** @return The number of threads used to classify the instances. */
+  public int getNumThreads(){
+    return m_NumThreads;
+  }
+
+  /** @return The instances viewed. */
+  public Instances getData(){
+    return m_Data;
+  }
+
+  /** @return The number of instances viewed. */
+  public int numInstances(){
+    return m_NumInstances;
+  }
+
+  /** @return The weights array (it can be bigger than the number of instances). */
+  public double[] weights(){
+    return m_Weights;
+  }
+
+  /** @return The class labels array (it can be bigger than the number of instances). */
+  public int[] labels(){
+    return m_Labels;
+  }
+
+  /** @return The last predictions array (it can be bigger than the number of instances). */
+  public int[] predictions(){
+    return m_Predictions;
+  }
+
+  /** @return The last distributions array (it can be bigger than the number of instances). */
+  public double[][] distributions(){
+    return m_Distributions;
+  }
+}
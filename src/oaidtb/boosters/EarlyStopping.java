@@ -0,0 +1,215 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    EarlyStopping.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.core.Instances;
+
+import java.io.Serializable;
+
+/**
+ * Decides when a booster must stop iterating, watching the error of its combined hypothesis
+ * over a validation set: the instances held out from the training data or, when boosting
+ * with resampling, the out-of-bag ones (each training instance is validated only with the
+ * base classifiers whose sample didn't draw it).
+ *
+ * The votes of the validation instances are kept by a MarginTracker, so each iteration only
+ * adds the vote of the new base classifier: the validation costs O(number of validation
+ * instances) per iteration, whatever the number of iterations performed.
+ *
+ * An iteration improves the ensemble if the validation error is less than the best one minus
+ * the minimum delta; after "patience" iterations without improvement the booster must stop,
+ * and it's rolled back (with purgeIterations) to the best iteration.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class EarlyStopping implements Serializable{
+
+  /** Number of iterations without improvement before stopping. */
+  private int m_Patience;
+
+  /** The minimum decrease of the validation error considered an improvement. */
+  private double m_MinDelta;
+
+  /** Are the out-of-bag instances the validation set? */
+  private boolean m_OutOfBag;
+
+  /** The votes of the validation instances (in out-of-bag mode, null until the first update). */
+  private MarginTracker m_Tracker;
+
+  /** The number of iterations of the booster at the last update. */
+  private int m_NumScored;
+
+  /** The validation error of the last iteration scored. */
+  private double m_LastError = Double.NaN;
+
+  /** The best validation error. */
+  private double m_BestError = Double.MAX_VALUE;
+
+  /** The number of iterations of the best ensemble. */
+  private int m_BestIteration;
+
+  /** The number of iterations without improvement. */
+  private int m_Wait;
+
+  /**
+   * Constructor for a validation set held out from the training data.
+   *
+   * @param validationData The validation instances (with the format of the original training data).
+   * @param patience Number of iterations without improvement before stopping.
+   * @param minDelta The minimum decrease of the validation error considered an improvement.
+   */
+  public EarlyStopping(Instances validationData, int patience, double minDelta){
+
+    this(patience, minDelta);
+
+    m_OutOfBag = false;
+    m_Tracker = new MarginTracker(validationData);
+  }
+
+  /**
+   * Constructor for the out-of-bag validation (the booster must boost with resampling).
+   *
+   * @param patience Number of iterations without improvement before stopping.
+   * @param minDelta The minimum decrease of the validation error considered an improvement.
+   */
+  public EarlyStopping(int patience, double minDelta){
+    m_Patience = patience;
+    m_MinDelta = minDelta;
+    m_OutOfBag = true;
+  }
+
+  /** @return True if the out-of-bag instances are the validation set. */
+  public boolean isOutOfBag(){
+    return m_OutOfBag;
+  }
+
+  /** @return The votes of the validation instances (null if none has been validated yet). */
+  public MarginTracker getMarginTracker(){
+    return m_Tracker;
+  }
+
+  /** @return The validation error of the last iteration scored (NaN if none has been scored yet). */
+  public double getLastError(){
+    return m_LastError;
+  }
+
+  /** @return The best validation error. */
+  public double getBestError(){
+    return m_BestError;
+  }
+
+  /** @return The number of iterations of the best ensemble. */
+  public int getBestIteration(){
+    return m_BestIteration;
+  }
+
+  /** Start a new call to nextIterations: the booster gets the whole patience again. */
+  public void restart(){
+    m_Wait = 0;
+  }
+
+  /**
+   * Add the votes of the iterations performed since the last call and check the stop rule.
+   * In out-of-bag mode it must be called after each iteration, before the next sample is
+   * drawn (the iterations not scored in time are not validated).
+   *
+   * @param booster The booster.
+   *
+   * @return True if the booster must stop (see rollback).
+   *
+   * @throws Exception If a validation instance can't be classified.
+   */
+  public boolean update(Booster booster) throws Exception{
+
+    int numIterations = booster.m_NumIterations;
+
+    //The best iteration has been purged.
+    if (numIterations < m_BestIteration){
+      m_BestError = Double.MAX_VALUE;
+      m_BestIteration = 0;
+    }
+
+    //The training instances have changed: restart without votes.
+    if (m_OutOfBag && (m_Tracker == null || m_Tracker.numInstances() != booster.m_NumInstances)){
+      m_Tracker = new MarginTracker(booster);
+      m_BestError = Double.MAX_VALUE;
+      m_BestIteration = 0;
+    }
+
+    track(booster);
+
+    if (numIterations == m_NumScored)
+      return false;
+    m_NumScored = numIterations;
+
+    //No instance has been validated yet (ie. all the instances were in the bag).
+    if (Double.isNaN(m_LastError = m_Tracker.getError()))
+      return false;
+
+    if (m_LastError < m_BestError - m_MinDelta){
+      m_BestError = m_LastError;
+      m_BestIteration = numIterations;
+      m_Tracker.checkpoint();
+      m_Wait = 0;
+      return false;
+    }
+
+    return ++m_Wait >= m_Patience;
+  }
+
+  /**
+   * Roll the booster back to the best iteration.
+   *
+   * @param booster The booster.
+   *
+   * @throws Exception If the iterations can't be purged.
+   */
+  public void rollback(Booster booster) throws Exception{
+
+    int numIterations = booster.m_NumIterations;
+
+    if (numIterations > m_BestIteration){
+      booster.purgeIterations(numIterations - m_BestIteration);
+      //The votes of the best iteration are restored.
+      track(booster);
+      m_NumScored = m_BestIteration;
+      m_LastError = m_BestError;
+    }
+    m_Wait = 0;
+  }
+
+  /**
+   * Bring the votes up to date with the booster.
+   *
+   * @param booster The booster.
+   *
+   * @throws Exception If a validation instance can't be classified.
+   */
+  private void track(Booster booster) throws Exception{
+    if (m_OutOfBag)
+      m_Tracker.nextOutOfBag(booster);
+    else
+      m_Tracker.update(booster);
+  }
+}
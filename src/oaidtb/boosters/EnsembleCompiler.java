@@ -0,0 +1,344 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    EnsembleCompiler.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.trees.DecisionStump;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+
+/**
+ * Flattens an ensemble of decision stumps (weka.classifiers.trees.DecisionStump, the default
+ * base classifier of the boosters, or PresortedStump) into arrays, so a booster can compute
+ * the votes of all its base classifiers for an instance with a tight loop instead of a
+ * classifyInstance call per base classifier.
+ *
+ * Each stump is stored as its attribute index, its split point and, for each of its three
+ * leaves (value <= split point or equal to it for nominal attributes, the rest, and missing
+ * value), a vote and the index of the votes array where that vote is added. How the leaves
+ * vote is defined by the booster (see LeafVote).
+ *
+ * The ensemble is recompiled only when it has changed (a base classifier has been added or
+ * purged, or its weight has been modified). When the ensemble is not made only of decision
+ * stumps, compile returns false and the booster must use the base classifiers as usual.
+ *
+ * The compiled arrays are never modified: a recompilation replaces them all at once, so
+ * many threads can use a compiler at the same time (ie. the frozen copy of a booster, whose
+ * ensemble doesn't change, see Booster.freeze) without locking once it's compiled.
+ *
+ * The DecisionStumps are read by reflection; if the security manager doesn't allow it, no
+ * ensemble with them is compiled.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class EnsembleCompiler implements Serializable{
+
+  /** The vote of a stump leaf. */
+  public interface LeafVote extends Serializable{
+
+    /**
+     * Get the vote of a leaf.
+     *
+     * @param weight The vote weight of the stump in the ensemble.
+     * @param distribution The class distribution predicted by the stump at that leaf.
+     *
+     * @return The vote.
+     */
+    double vote(double weight, double[] distribution);
+
+    /**
+     * Get the index of the votes array where the vote of a leaf is added.
+     *
+     * @param distribution The class distribution predicted by the stump at that leaf.
+     *
+     * @return The index.
+     */
+    int target(double[] distribution);
+  }
+
+  /** The leaf of the instances with value <= split point (equal to it for nominal attributes). */
+  private final static int LEFT = 0;
+
+  /** The leaf of the instances with value > split point (different for nominal attributes). */
+  private final static int RIGHT = 1;
+
+  /** The leaf of the instances with missing value. */
+  private final static int MISSING = 2;
+
+  /** DecisionStump private fields, or null if they can't be accessed. */
+  private static Field m_AttIndexField, m_SplitPointField, m_DistributionField, m_InstancesField;
+
+  static{
+    try{
+      m_AttIndexField = DecisionStump.class.getDeclaredField("m_AttIndex");
+      m_SplitPointField = DecisionStump.class.getDeclaredField("m_SplitPoint");
+      m_DistributionField = DecisionStump.class.getDeclaredField("m_Distribution");
+      m_InstancesField = DecisionStump.class.getDeclaredField("m_Instances");
+      m_AttIndexField.setAccessible(true);
+      m_SplitPointField.setAccessible(true);
+      m_DistributionField.setAccessible(true);
+      m_InstancesField.setAccessible(true);
+    }
+    catch (Exception e){
+      m_AttIndexField = null;
+    }
+  }
+
+  /** How the leaves vote. */
+  private LeafVote m_LeafVote;
+
+  /** The last ensemble compiled (not serialized: it's recompiled when needed). */
+  private transient volatile Compilation m_Compilation;
+
+  /**
+   * Constructor.
+   *
+   * @param leafVote How the leaves vote.
+   */
+  public EnsembleCompiler(LeafVote leafVote){
+    m_LeafVote = leafVote;
+  }
+
+  /**
+   * Compile an ensemble, if it's made only of decision stumps. Nothing is done if it's
+   * the same ensemble last compiled and it hasn't been modified since then.
+   *
+   * @param ensemble The ensemble.
+   *
+   * @return True if the ensemble is compiled (so addVotes can be used).
+   */
+  public boolean compile(WeightedClassifierVector ensemble){
+
+    Compilation compilation = m_Compilation;
+
+    if (compilation != null && compilation.isOf(ensemble))
+      return compilation.m_Stumps;
+
+    synchronized (this){
+      compilation = m_Compilation;
+      if (compilation == null || !compilation.isOf(ensemble))
+        m_Compilation = compilation = new Compilation(ensemble, m_LeafVote);
+    }
+
+    return compilation.m_Stumps;
+  }
+
+  /**
+   * Add the votes of the first numClassifiers stumps for an instance to the votes array.
+   * The ensemble must have been compiled.
+   *
+   * @param instance The instance.
+   * @param numClassifiers The number of stumps to use.
+   * @param votes The votes array.
+   */
+  public void addVotes(Instance instance, int numClassifiers, double[] votes){
+
+    Compilation compilation = m_Compilation;
+    double[] leafVotes = compilation.m_Votes;
+    int[] targets = compilation.m_Targets;
+
+    for (int i = 0; i < numClassifiers; i++){
+      int leaf = compilation.leaf(instance, i);
+      votes[targets[leaf]] += leafVotes[leaf];
+    }
+  }
+
+  /**
+   * Get the sum of the votes of the first numClassifiers stumps for an instance, whatever
+   * their targets are (for ensembles whose votes are all added to the same place).
+   * The ensemble must have been compiled.
+   *
+   * @param instance The instance.
+   * @param numClassifiers The number of stumps to use.
+   *
+   * @return The sum of the votes.
+   */
+  public double sumVotes(Instance instance, int numClassifiers){
+
+    Compilation compilation = m_Compilation;
+    double[] leafVotes = compilation.m_Votes;
+    double sum = 0;
+
+    for (int i = 0; i < numClassifiers; i++)
+      sum += leafVotes[compilation.leaf(instance, i)];
+
+    return sum;
+  }
+
+  /**
+   * The class predicted from a class distribution (nominal class) as in
+   * DistributionClassifier.classifyInstance.
+   *
+   * @param distribution The class distribution.
+   *
+   * @return The index of the maximum (the first one), or missing value if all are 0.
+   */
+  public static double classifyAs(double[] distribution){
+
+    double max = 0;
+    int maxIndex = 0;
+
+    for (int i = 0; i < distribution.length; i++)
+      if (distribution[i] > max){
+        maxIndex = i;
+        max = distribution[i];
+      }
+
+    return max > 0 ? maxIndex : Instance.missingValue();
+  }
+
+  /** The arrays of a compiled ensemble; they are never modified once built. */
+  private static class Compilation{
+
+    /** The ensemble compiled. */
+    private final WeightedClassifierVector m_Ensemble;
+
+    /** The modifications of the ensemble when it was compiled. */
+    private final int m_Modifications;
+
+    /** Is the ensemble a stumps ensemble? (if not, the arrays are null). */
+    private final boolean m_Stumps;
+
+    /** The attribute index of each stump. */
+    private final int[] m_AttIndex;
+
+    /** The split point of each stump. */
+    private final double[] m_SplitPoint;
+
+    /** Is the attribute of each stump nominal?. */
+    private final boolean[] m_Nominal;
+
+    /** The votes of the leaves {3 x number of stumps}. */
+    private final double[] m_Votes;
+
+    /** Where the votes of the leaves are added {3 x number of stumps}. */
+    private final int[] m_Targets;
+
+    /**
+     * Compile an ensemble.
+     *
+     * @param ensemble The ensemble.
+     * @param leafVote How the leaves vote.
+     */
+    public Compilation(WeightedClassifierVector ensemble, LeafVote leafVote){
+
+      m_Ensemble = ensemble;
+      m_Modifications = ensemble.modifications();
+
+      int size = ensemble.size();
+      Classifier[] classifiers = ensemble.classifiers();
+      double[] weights = ensemble.weights();
+      boolean stumps = true;
+
+      for (int i = 0; stumps && i < size; i++)
+        stumps = classifiers[i].getClass() == PresortedStump.class
+          || (m_AttIndexField != null && classifiers[i].getClass() == DecisionStump.class);
+
+      int[] attIndex = null;
+      double[] splitPoint = null;
+      boolean[] nominal = null;
+      double[] votes = null;
+      int[] targets = null;
+
+      if (stumps){
+        attIndex = new int[size];
+        splitPoint = new double[size];
+        nominal = new boolean[size];
+        votes = new double[3 * size];
+        targets = new int[3 * size];
+
+        try{
+          for (int i = 0; i < size; i++){
+            double[][] distribution;
+            if (classifiers[i] instanceof PresortedStump){
+              PresortedStump stump = (PresortedStump) classifiers[i];
+              attIndex[i] = stump.getAttIndex();
+              splitPoint[i] = stump.getSplitPoint();
+              nominal[i] = stump.isNominalSplit();
+              distribution = stump.getDistribution();
+            }
+            else{
+              attIndex[i] = m_AttIndexField.getInt(classifiers[i]);
+              splitPoint[i] = m_SplitPointField.getDouble(classifiers[i]);
+              nominal[i] = ((Instances) m_InstancesField.get(classifiers[i])).attribute(attIndex[i]).isNominal();
+              distribution = (double[][]) m_DistributionField.get(classifiers[i]);
+            }
+            for (int j = LEFT; j <= MISSING; j++){
+              votes[3 * i + j] = leafVote.vote(weights[i], distribution[j]);
+              targets[3 * i + j] = leafVote.target(distribution[j]);
+            }
+          }
+        }
+        catch (Exception e){
+          stumps = false;
+        }
+      }
+
+      m_Stumps = stumps;
+      m_AttIndex = attIndex;
+      m_SplitPoint = splitPoint;
+      m_Nominal = nominal;
+      m_Votes = votes;
+      m_Targets = targets;
+    }
+
+    /**
+     * Is this the compilation of the ensemble as it is now?.
+     *
+     * @param ensemble The ensemble.
+     *
+     * @return True if it's the ensemble compiled and it hasn't been modified since then.
+     */
+    public boolean isOf(WeightedClassifierVector ensemble){
+      return ensemble == m_Ensemble && ensemble.modifications() == m_Modifications;
+    }
+
+    /**
+     * Get the leaf of a stump where an instance falls.
+     *
+     * @param instance The instance.
+     * @param classifierIndex The index of the stump.
+     *
+     * @return The index of the leaf in the votes and targets arrays.
+     */
+    public int leaf(Instance instance, int classifierIndex){
+
+      double value = instance.value(m_AttIndex[classifierIndex]);
+      int leaf;
+
+      //The same as DecisionStump.whichSubset
+      if (Instance.isMissingValue(value))
+        leaf = MISSING;
+      else if (m_Nominal[classifierIndex])
+        leaf = (int) value == m_SplitPoint[classifierIndex] ? LEFT : RIGHT;
+      else
+        leaf = value - m_SplitPoint[classifierIndex] < weka.core.Utils.SMALL ? LEFT : RIGHT;
+
+      return leaf + 3 * classifierIndex;
+    }
+  }
+}
@@ -27,10 +27,6 @@ import weka.classifiers.Evaluation;
 import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
-import weka.core.SerializedObject;
-
-import java.util.ArrayList;
-import java.util.Random;
 
 /**
  * Class for boosting using GentleAdaBoost. For more information see: <p>
@@ -48,9 +44,39 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
   /** Must this booster use its own train data copy?. */
   private boolean m_UseOwnTrainData = true;
 
-  /** Base classifiers used for boosting. 
-   * @associates Classifier*/
-  private ArrayList m_Classifiers;
+  /** Base classifiers used for boosting (they have no vote weight). */
+  private WeightedClassifierVector m_Classifiers;
+
+  /** How the stumps leaves vote in confidenceAndSign. */
+  private final static EnsembleCompiler.LeafVote CONFIDENCE_VOTE = new EnsembleCompiler.LeafVote(){
+    public double vote(double weight, double[] distribution){
+      return distribution[0];  //The stumps predict the numeric pseudo class
+    }
+
+    public int target(double[] distribution){
+      return 0;
+    }
+  };
+
+  /**
+   * How the stumps leaves vote in distributionForInstance: the negative votes are added to
+   * the class 0 and the positive ones to the class 1.
+   */
+  private final static EnsembleCompiler.LeafVote CLASS_VOTE = new EnsembleCompiler.LeafVote(){
+    public double vote(double weight, double[] distribution){
+      return Math.abs(distribution[0]);
+    }
+
+    public int target(double[] distribution){
+      return distribution[0] < 0 ? 0 : 1;
+    }
+  };
+
+  /** Compiled form of the ensemble (if it's made of decision stumps) for confidenceAndSign. */
+  private EnsembleCompiler m_CompiledConfidences = new EnsembleCompiler(CONFIDENCE_VOTE);
+
+  /** Compiled form of the ensemble (if it's made of decision stumps) for distributionForInstance. */
+  private EnsembleCompiler m_CompiledVotes = new EnsembleCompiler(CLASS_VOTE);
 
   /**
    * Boosting method.
@@ -85,10 +111,19 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
       m_TrainData.deleteWithMissingClass();
       if (m_TrainData.numInstances() == 0)
         throw new Exception("No train instances without class missing!");
+
+      //Hold out the validation set if the booster must stop early.
+      m_TrainData = initializeEarlyStopping(m_TrainData);
+    }
+    else{
+      //We entrust to the "caller class" the correctness of the train data instances, but
+      //we are going to change their format, so we work over a copy of their values
+      //(the instances can share them with other boosters' ones, ie. in AdaBoostMH).
+      m_TrainData = new Instances(data, data.numInstances());
+      for (int i = 0; i < data.numInstances(); i++)
+        m_TrainData.add(new Instance(data.instance(i).weight(), data.instance(i).toDoubleArray()));
+      m_EarlyStopping = null;
     }
-    else
-    //We entrust to the "caller class" the correctness of the train data instances.
-      m_TrainData = data;
 
     //Set up the number of instances.
     m_NumInstances = m_TrainData.numInstances();
@@ -103,9 +138,9 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
     int classIndex = m_TrainData.classIndex();
     m_TrainData.insertAttributeAt(newNumericClass, classIndex);
 
-    //Set the new class values.
-    for (int i = 0,k = 0; i < m_NumInstances; i++, k++)
-      if (data.instance(k).classValue() == 0)
+    //Set the new class values (the old class is now the next attribute).
+    for (int i = 0; i < m_NumInstances; i++)
+      if (m_TrainData.instance(i).value(classIndex + 1) == 0)
         m_TrainData.instance(i).setValue(classIndex, -1);
       else
         m_TrainData.instance(i).setValue(classIndex, 1);
@@ -121,8 +156,11 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
     //Set up the number of performed iterations.
     m_NumIterations = 0;
 
+    //Restart the resampling random numbers stream.
+    initializeResampleRandom();
+
     //Initialize the classifier array.
-    m_Classifiers = new ArrayList(m_InitialIterations);
+    m_Classifiers = new WeightedClassifierVector(m_InitialIterations);
 
     //We can now perform new iterations.
     m_BoosterReady = true;
@@ -142,7 +180,6 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
   protected void buildClassifierWithWeights(int numIterations) throws Exception{
 
     Classifier baseClassifier;
-    SerializedObject serializedClassifier = new SerializedObject(m_Classifier);
 
     if (m_Debug)
       System.err.println("Boosting without resampling.");
@@ -154,17 +191,22 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
         System.err.println("Training classifier " + (m_NumIterations + 1));
 
       //Copy the base classifier.
-      baseClassifier = (Classifier) serializedClassifier.getObject();
+      enterPhase(IterationProfile.CLASSIFIER_CREATION, 0);
+      baseClassifier = m_ClassifierFactory.newClassifier();
 
       // Build the classifier.
+      enterPhase(IterationProfile.TRAINING, m_NumInstances);
+      m_DataView.syncWeights();
       baseClassifier.buildClassifier(m_TrainData);
 
       //Update instance weights.
+      enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
       reweight(baseClassifier);
 
       //"Commit"
       m_Classifiers.add(baseClassifier);
       m_NumIterations++;
+      iterationPerformed();
     }
   }
 
@@ -178,10 +220,8 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
    */
   protected void buildClassifierUsingResampling(int numIterations) throws Exception{
 
-    Random randomInstance = new Random(m_ResampleSeed); //Random number generator for resample.
     Instances sample;              //The resampled training dataset.
     Classifier baseClassifier;
-    SerializedObject serializedClassifier = new SerializedObject(m_Classifier);
 
     if (m_Debug)
       System.err.println("Boosting with resampling.");
@@ -194,20 +234,25 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
       }
 
       // Resample.
-      sample = m_TrainData.resampleWithWeights(randomInstance);
+      enterPhase(IterationProfile.RESAMPLING, m_NumInstances);
+      sample = m_Resampler.resample(m_DataView, m_ResampleRandom);
 
       //Copy the base classifier.
-      baseClassifier = (Classifier) serializedClassifier.getObject();
+      enterPhase(IterationProfile.CLASSIFIER_CREATION, 0);
+      baseClassifier = m_ClassifierFactory.newClassifier();
 
       // Build the classifier.
+      enterPhase(IterationProfile.TRAINING, sample.numInstances());
       baseClassifier.buildClassifier(sample);
 
       //Update instance weights.
+      enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
       reweight(baseClassifier);
 
       //"Commit"
       m_Classifiers.add(baseClassifier);
       m_NumIterations++;
+      iterationPerformed();
     }
   }
 
@@ -223,14 +268,14 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
    */
   private void reweight(Classifier baseClassifier) throws Exception{
 
-    Instance instance;
     double newWeightsSum = 0;
+    double[] weights = m_DataView.weights();
+    int[] labels = m_DataView.labels();  //The pseudoclass: -1 or 1
+    double[] values = m_DataView.predictValues(baseClassifier);
 
     for (int i = 0; i < m_NumInstances; i++){
-      instance = m_TrainData.instance(i);
-      instance.setWeight(instance.weight() *
-                         Math.exp(-instance.classValue() * baseClassifier.classifyInstance(instance)));
-      newWeightsSum += instance.weight();
+      weights[i] *= Math.exp(-labels[i] * values[i]);
+      newWeightsSum += weights[i];
     }
 
     normalizeWeights(newWeightsSum);
@@ -247,14 +292,36 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
    * @throws Exception if the instance cant be classified succesfully.
    */
   public double confidenceAndSign(Instance instance) throws Exception{
+    return confidenceAndSign(instance, m_NumIterations, threadContext());
+  }
+
+  /**
+   * Return the class predicted (<0 == class 0 and >0 == class 1) and the
+   * confidence of this prediction (its absolute value) using only the first numIterations
+   * base classifiers, without allocating memory.
+   *
+   * @param instance The instance to be classified
+   * @param numIterations Number of base classifiers to use
+   * @param context The scoring context of the current thread
+   *
+   * @return The class predicted and its confidence.
+   *
+   * @throws Exception If numIterations is incorrect or the instance can't be classified.
+   */
+  public double confidenceAndSign(Instance instance, int numIterations, ScoringContext context) throws Exception{
+
+    checkNumIterations(numIterations);
+
+    if (m_CompiledConfidences.compile(m_Classifiers))
+      return m_CompiledConfidences.sumVotes(instance, numIterations);
 
     double confidenceAndSign = 0;
+    Classifier[] classifiers = m_Classifiers.classifiers();
 
-    instance = (Instance) instance.copy();
-    instance.setDataset(m_TrainData);
+    instance = context.bind(instance, m_TrainData);
 
-    for (int i = 0; i < m_NumIterations; i++)
-      confidenceAndSign += ((Classifier) m_Classifiers.get(i)).classifyInstance(instance);
+    for (int i = 0; i < numIterations; i++)
+      confidenceAndSign += classifiers[i].classifyInstance(instance);
 
     return confidenceAndSign;
   }
@@ -279,7 +346,7 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
     instance = (Instance) instance.copy();
     instance.setDataset(m_TrainData);
 
-    return ((Classifier) m_Classifiers.get(classifierIndex)).classifyInstance(instance);
+    return m_Classifiers.get(classifierIndex).classifyInstance(instance);
   }
 
   /**
@@ -292,14 +359,40 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
    * @exception Exception if instance could not be classified successfully
    */
   public double[] distributionForInstance(Instance instance) throws Exception{
+    return (double[]) distributionForInstance(instance, threadContext()).clone();
+  }
 
-    double[] distributionForInstance = new double[2];
+  /**
+   * Calculates the class membership probabilities for the given test instance using only
+   * the first numIterations base classifiers, without allocating memory: the distribution
+   * returned belongs to the context.
+   *
+   * @param instance the instance to be classified
+   * @param numIterations number of base classifiers to use
+   * @param context the scoring context of the current thread
+   *
+   * @return predicted class probability distribution
+   *
+   * @exception Exception if numIterations is incorrect or instance could not be classified successfully
+   */
+  public double[] distributionForInstance(Instance instance, int numIterations, ScoringContext context) throws Exception{
 
-    instance = (Instance) instance.copy();
-    instance.setDataset(m_TrainData);
+    checkNumIterations(numIterations);
+
+    double[] distributionForInstance = context.buffer(0, 2);
 
-    for (int i = 0; i < m_NumIterations; i++){
-      double classifiedAs = ((Classifier) m_Classifiers.get(i)).classifyInstance(instance);
+    if (m_CompiledVotes.compile(m_Classifiers)){
+      m_CompiledVotes.addVotes(instance, numIterations, distributionForInstance);
+      oaidtb.misc.Utils.secureNormalize(distributionForInstance);
+      return distributionForInstance;
+    }
+
+    Classifier[] classifiers = m_Classifiers.classifiers();
+
+    instance = context.bind(instance, m_TrainData);
+
+    for (int i = 0; i < numIterations; i++){
+      double classifiedAs = classifiers[i].classifyInstance(instance);
       if (classifiedAs < 0)
         distributionForInstance[0] -= classifiedAs;
       else
@@ -311,6 +404,83 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
     return distributionForInstance;
   }
 
+  /**
+   * Compute confidenceAndSign for a batch of instances using only the first numIterations
+   * base classifiers; each base classifier classifies the whole batch before the next one.
+   *
+   * @param instances The instances to be classified
+   * @param numIterations Number of base classifiers to use
+   * @param out The array where the confidences and signs are written
+   *
+   * @throws Exception if an error happens.
+   */
+  public void confidencesAndSigns(Instance[] instances, int numIterations, double[] out) throws Exception{
+
+    checkNumIterations(numIterations);
+
+    if (m_CompiledConfidences.compile(m_Classifiers)){
+      for (int j = 0; j < instances.length; j++)
+        out[j] = m_CompiledConfidences.sumVotes(instances[j], numIterations);
+      return;
+    }
+
+    //The instances are copied once for the whole batch.
+    Instance[] copies = new Instance[instances.length];
+    for (int j = 0; j < instances.length; j++){
+      copies[j] = (Instance) instances[j].copy();
+      copies[j].setDataset(m_TrainData);
+    }
+
+    Classifier[] classifiers = m_Classifiers.classifiers();
+
+    java.util.Arrays.fill(out, 0, instances.length, 0);
+
+    for (int i = 0; i < numIterations; i++)
+      for (int j = 0; j < copies.length; j++)
+        out[j] += classifiers[i].classifyInstance(copies[j]);
+  }
+
+  /**
+   * Calculates the class membership probabilities of a batch of instances using only the
+   * first numIterations base classifiers; each base classifier classifies the whole batch
+   * before the next one.
+   *
+   * @param data The instances to be classified.
+   * @param numIterations Number of base classifiers to use.
+   * @param out The matrix where the distributions are written.
+   *
+   * @throws Exception If the parameters are incorrect or an instance can't be classified.
+   */
+  public void distributionsForInstances(Instances data, int numIterations, double[][] out) throws Exception{
+
+    checkBatch(data, numIterations, out);
+
+    int numInstances = data.numInstances();
+
+    for (int j = 0; j < numInstances; j++)
+      out[j][0] = out[j][1] = 0;
+
+    if (m_CompiledVotes.compile(m_Classifiers))
+      for (int j = 0; j < numInstances; j++)
+        m_CompiledVotes.addVotes(data.instance(j), numIterations, out[j]);
+    else{
+      Instance[] instances = bindInstances(data, m_TrainData);
+      Classifier[] classifiers = m_Classifiers.classifiers();
+
+      for (int i = 0; i < numIterations; i++)
+        for (int j = 0; j < numInstances; j++){
+          double classifiedAs = classifiers[i].classifyInstance(instances[j]);
+          if (classifiedAs < 0)
+            out[j][0] -= classifiedAs;
+          else
+            out[j][1] += classifiedAs;
+        }
+    }
+
+    for (int j = 0; j < numInstances; j++)
+      oaidtb.misc.Utils.secureNormalize(out[j]);
+  }
+
   /**
    * Get the classifier's vote for the instance; the (vectorial) sum of all base classifiers vote vectors must be
    * the final combined hypothesis of the booster (obviously, not normalized).
@@ -330,7 +500,7 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
     instance = (Instance) instance.copy();
     instance.setDataset(m_TrainData);
 
-    double classifiedAs = ((Classifier) m_Classifiers.get(classifierIndex)).classifyInstance(instance);
+    double classifiedAs = m_Classifiers.get(classifierIndex).classifyInstance(instance);
     if (classifiedAs < 0)
       distributionForInstance[0] = -classifiedAs;
     else
@@ -339,6 +509,18 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
     return distributionForInstance;
   }
 
+  /**
+   * Get the class of a training instance in the original training data (the train data
+   * class is numeric: -1 for class 0 and 1 for class 1).
+   *
+   * @param index The index of the training instance.
+   *
+   * @return The class index.
+   */
+  protected int originalClassValue(int index){
+    return m_TrainData.instance(index).classValue() < 0 ? 0 : 1;
+  }
+
   /**
    * Classifies the given test instance. The instance has to belong to a
    * dataset when it's being classified.
@@ -353,6 +535,20 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
     return confidenceAndSign(instance) < 0 ? 0 : 1;
   }
 
+  /**
+   * Classify the given instance using only the first numIterations base classifiers.
+   *
+   * @param instance the instance to be classified
+   * @param numIterations number of base classifiers to use
+   * @param context the scoring context of the current thread
+   * @return the predicted class for the instance
+   * @exception Exception if numIterations is incorrect or the instance can't be classified
+   */
+  public double classifyInstance(Instance instance, int numIterations, ScoringContext context) throws Exception{
+
+    return confidenceAndSign(instance, numIterations, context) < 0 ? 0 : 1;
+  }
+
   /**
    * Safely (and thus slower) inputs a new training instance.
    * Not implemented yet.
@@ -430,7 +626,31 @@ public class GentleAdaBoost extends Booster implements MulticlassExtensibleBoost
     if (numClassifier < 0 || numClassifier >= m_NumIterations)
       throw new Exception("Classifier's number incorrect.");
     //It would be better to return a copy; it's slower too.
-    return (Classifier) m_Classifiers.get(numClassifier);
+    return m_Classifiers.get(numClassifier);
+  }
+
+  /**
+   * Eliminate the last numIterations performed from the final combined hypothesis,
+   * releasing their base classifiers.
+   *
+   * @param numIterations The number of iterations to get rid of
+   * @throws Exception If numIterations parameter is incorrect
+   */
+  public void purgeIterations(int numIterations) throws Exception{
+    super.purgeIterations(numIterations);
+    m_Classifiers.truncate(m_NumIterations);
+  }
+
+  /**
+   * Give a frozen copy its own base classifiers vector and ensemble compilers.
+   *
+   * @throws Exception If the model can't be copied
+   */
+  protected void copyModel() throws Exception{
+    if (m_Classifiers != null)
+      m_Classifiers = m_Classifiers.copy();
+    m_CompiledConfidences = new EnsembleCompiler(CONFIDENCE_VOTE);
+    m_CompiledVotes = new EnsembleCompiler(CLASS_VOTE);
   }
 
   /**
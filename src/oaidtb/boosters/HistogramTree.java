@@ -0,0 +1,794 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    HistogramTree.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.classifiers.DistributionClassifier;
+import weka.classifiers.Evaluation;
+import weka.core.*;
+
+import java.util.Enumeration;
+import java.util.Vector;
+import java.util.WeakHashMap;
+
+/**
+ * A shallow decision tree (a decision stump by default) built from weighted histograms of
+ * binned attributes, for boosting over many instances.
+ *
+ * The first time a tree is built over a dataset, each attribute is quantized into at most
+ * 255 bins (see AttributeBinning) and its bins are stored as a byte column; the columns are
+ * shared by all the trees built over the same instances (ie. all the base classifiers of a
+ * booster), which only read their current weights and classes. Each level of the tree is
+ * then built with a single pass over the columns, adding the weight (the weighted class
+ * values for a numeric class) of each instance to the histogram of its node and bin; the
+ * best split of each node is found from the histograms, O(bins) per attribute and node.
+ *
+ * As weka's DecisionStump, each node has three branches: the values &lt;= split (== split for
+ * nominal attributes), the rest and the missing values; the splits minimize the class
+ * entropy conditioned on the branches (the class variance within the branches for a
+ * numeric class, ie. GentleAdaBoost's pseudo class). The split points are the bin edges.
+ * A node is split while it's above the maximum depth and some split lowers its impurity.
+ *
+ * The binned columns are checked against the number of instances and the identity of each
+ * one, so they are computed again if instances are added, removed or replaced; the values
+ * of an instance must not be modified in place between two trees. The classes and weights
+ * can change freely (ie. AdaBoostOC relabels the instances at each iteration).
+ *
+ * The histograms of the attributes can be built by several threads; the tree doesn't
+ * depend on their number.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class HistogramTree extends DistributionClassifier
+  implements OptionHandler, WeightedInstancesHandler{
+
+  /** The binned columns of the datasets the trees have been built over (Instances -> BinnedColumns). */
+  private final static WeakHashMap m_BinnedData = new WeakHashMap();
+
+  /** The maximum depth of the tree. */
+  private int m_MaxDepth = 1;
+
+  /** The maximum number of bins of the numeric attributes. */
+  private int m_MaxBins = AttributeBinning.MAX_BINS;
+
+  /** The number of instances sampled to find the bin edges. */
+  private int m_SampleSize = 100000;
+
+  /** Number of threads used to build the histograms. */
+  private int m_NumThreads = 1;
+
+  /** The binning of the attributes. */
+  private AttributeBinning m_Binning;
+
+  /** The attribute used to split each node (-1 for the leaves). */
+  private int[] m_Attribute;
+
+  /** The split bin of each node. */
+  private int[] m_Split;
+
+  /** The children (3 per node: left, right and missing) of each node. */
+  private int[] m_Children;
+
+  /** The class distribution (or the mean class value) of each node. */
+  private double[][] m_Distribution;
+
+  /** The number of nodes. */
+  private int m_NumNodes;
+
+  /**
+   * Builds the tree.
+   *
+   * @param data The training instances.
+   *
+   * @exception Exception If the tree can't be built.
+   */
+  public void buildClassifier(Instances data) throws Exception{
+
+    BinnedColumns binned;
+
+    synchronized (m_BinnedData){
+      binned = (BinnedColumns) m_BinnedData.get(data);
+    }
+
+    if (binned == null || !binned.isOf(data, m_MaxBins, m_SampleSize)){
+      binned = new BinnedColumns(data, m_MaxBins, m_SampleSize);
+      synchronized (m_BinnedData){
+        m_BinnedData.put(data, binned);
+      }
+    }
+
+    m_Binning = binned.m_Binning;
+
+    int numInstances = data.numInstances();
+    boolean nominalClass = data.classAttribute().isNominal();
+    int numStats = nominalClass ? data.numClasses() : 3;
+    double[] weights = new double[numInstances];
+    double[] classes = new double[numInstances];
+    int[] nodes = new int[numInstances];
+
+    m_Attribute = new int[1];
+    m_Split = new int[1];
+    m_Children = new int[3];
+    m_Distribution = new double[1][];
+    m_NumNodes = 1;
+
+    //The node stats: class counts (or weight, sum and sum of squares of the class values).
+    double[][] nodeStats = new double[1][numStats];
+
+    for (int i = 0; i < numInstances; i++){
+      Instance instance = data.instance(i);
+      if (instance.classIsMissing()){
+        nodes[i] = -1;
+        continue;
+      }
+      weights[i] = instance.weight();
+      classes[i] = instance.classValue();
+      addStats(nodeStats[0], 0, classes[i], weights[i], nominalClass);
+    }
+
+    int firstNode = 0;
+
+    //A level at a time.
+    for (int depth = 0; firstNode < m_NumNodes; depth++){
+
+      int numLevelNodes = m_NumNodes - firstNode;
+
+      for (int n = firstNode; n < m_NumNodes; n++){
+        m_Attribute[n] = -1;
+        m_Distribution[n] = distribution(nodeStats[n], n == 0 ? null : m_Distribution[parent(n)], nominalClass);
+      }
+
+      if (depth >= m_MaxDepth)
+        break;
+
+      //The best split of each attribute for each node of the level.
+      SplitFinder finder = new SplitFinder(data, binned.m_Columns, nodes, firstNode, numLevelNodes,
+                                           weights, classes, numStats, nodeStats);
+      finder.find(m_NumThreads);
+
+      int nextNode = m_NumNodes;
+
+      for (int n = firstNode; n < firstNode + numLevelNodes; n++){
+
+        //The first attribute, unless a later one is smaller.
+        int bestAttribute = -1;
+        double impurity = impurity(new double[][]{nodeStats[n]}, nominalClass);
+
+        for (int a = 0; a < data.numAttributes(); a++){
+          Split split = finder.m_Splits[a] == null ? null : finder.m_Splits[a][n - firstNode];
+          if (split != null && Utils.sm(split.m_Value, impurity)
+              && (bestAttribute < 0 || Utils.sm(split.m_Value, finder.m_Splits[bestAttribute][n - firstNode].m_Value)))
+            bestAttribute = a;
+        }
+
+        if (bestAttribute < 0)
+          continue;
+
+        Split split = finder.m_Splits[bestAttribute][n - firstNode];
+        m_Attribute[n] = bestAttribute;
+        m_Split[n] = split.m_Bin;
+
+        ensureCapacity(nextNode + 3);
+        if (nodeStats.length < nextNode + 3){
+          double[][] stats = new double[m_Attribute.length][];
+          System.arraycopy(nodeStats, 0, stats, 0, nodeStats.length);
+          nodeStats = stats;
+        }
+        for (int b = 0; b < 3; b++){
+          m_Children[3 * n + b] = nextNode;
+          nodeStats[nextNode++] = split.m_Stats[b];
+        }
+      }
+
+      if (nextNode == m_NumNodes)
+        break;
+
+      //Move the instances to the children of their nodes.
+      for (int i = 0; i < numInstances; i++){
+        int n = nodes[i];
+        if (n < 0)
+          continue;
+        if (m_Attribute[n] < 0)
+          nodes[i] = -1;
+        else
+          nodes[i] = m_Children[3 * n + branch(n, binned.m_Columns[m_Attribute[n]][i] & 0xff)];
+      }
+
+      firstNode = m_NumNodes;
+      m_NumNodes = nextNode;
+    }
+  }
+
+  /**
+   * Add an instance to the stats of a node (or a bin).
+   *
+   * @param stats The stats.
+   * @param offset The position of the first stat.
+   * @param classValue The class value of the instance.
+   * @param weight The weight of the instance.
+   * @param nominalClass Is the class nominal?
+   */
+  private static void addStats(double[] stats, int offset, double classValue, double weight, boolean nominalClass){
+    if (nominalClass)
+      stats[offset + (int) classValue] += weight;
+    else{
+      stats[offset] += weight;
+      stats[offset + 1] += weight * classValue;
+      stats[offset + 2] += weight * classValue * classValue;
+    }
+  }
+
+  /**
+   * The class distribution (or the mean class value) of a node.
+   *
+   * @param stats The stats of the node.
+   * @param parent The distribution of its parent (used if the node is empty; null for the root).
+   * @param nominalClass Is the class nominal?
+   *
+   * @return The distribution.
+   */
+  private static double[] distribution(double[] stats, double[] parent, boolean nominalClass){
+
+    double weight = nominalClass ? Utils.sum(stats) : stats[0];
+
+    if (Utils.eq(weight, 0) && parent != null)
+      return parent;
+
+    if (!nominalClass)
+      return new double[]{Utils.eq(weight, 0) ? 0 : stats[1] / weight};
+
+    double[] distribution = (double[]) stats.clone();
+    if (weight > 0)
+      Utils.normalize(distribution, weight);
+    return distribution;
+  }
+
+  /**
+   * The impurity of the branches of a node: the class entropy conditioned on the branches
+   * (nominal class) or the class variance within the branches (numeric class).
+   *
+   * @param branches The stats of the branches.
+   * @param nominalClass Is the class nominal?
+   *
+   * @return The impurity.
+   */
+  private static double impurity(double[][] branches, boolean nominalClass){
+
+    if (nominalClass)
+      return ContingencyTables.entropyConditionedOnRows(branches);
+
+    double variance = 0;
+    for (int i = 0; i < branches.length; i++)
+      if (Utils.gr(branches[i][0], 0))
+        variance += branches[i][2] - branches[i][1] * branches[i][1] / branches[i][0];
+
+    return variance;
+  }
+
+  /** @return The parent of a node. */
+  private int parent(int node){
+    for (int i = 0; i < 3 * node; i++)
+      if (m_Children[i] == node)
+        return i / 3;
+    return -1;
+  }
+
+  /**
+   * Get the branch of a bin at a node.
+   *
+   * @param node The node.
+   * @param bin The bin of the value of the node's attribute.
+   *
+   * @return 0 (bin &lt;= split or == split for nominal attributes), 1 (the rest) or 2 (missing value).
+   */
+  private int branch(int node, int bin){
+    if (bin == AttributeBinning.MISSING_BIN)
+      return 2;
+    if (m_Binning.isNumeric(m_Attribute[node]))
+      return bin <= m_Split[node] ? 0 : 1;
+    return bin == m_Split[node] ? 0 : 1;
+  }
+
+  /** Make room for a number of nodes. */
+  private void ensureCapacity(int numNodes){
+
+    if (m_Attribute.length >= numNodes)
+      return;
+
+    int capacity = Math.max(numNodes, 2 * m_Attribute.length);
+    int[] attribute = new int[capacity];
+    int[] split = new int[capacity];
+    int[] children = new int[3 * capacity];
+    double[][] distribution = new double[capacity][];
+
+    System.arraycopy(m_Attribute, 0, attribute, 0, m_Attribute.length);
+    System.arraycopy(m_Split, 0, split, 0, m_Split.length);
+    System.arraycopy(m_Children, 0, children, 0, m_Children.length);
+    System.arraycopy(m_Distribution, 0, distribution, 0, m_Distribution.length);
+
+    m_Attribute = attribute;
+    m_Split = split;
+    m_Children = children;
+    m_Distribution = distribution;
+  }
+
+  /** The best split over an attribute at a node. */
+  private static class Split{
+
+    /** The impurity of the branches. */
+    double m_Value;
+
+    /** The split bin. */
+    int m_Bin;
+
+    /** The stats of the branches. */
+    double[][] m_Stats;
+  }
+
+  /**
+   * Builds the histograms of the attributes, taken one at a time (by one or more threads),
+   * for the nodes of a level, and finds their best splits.
+   */
+  private class SplitFinder implements Runnable{
+
+    private Instances m_Data;
+
+    private byte[][] m_Columns;
+
+    private int[] m_Nodes;
+
+    private int m_FirstNode, m_NumLevelNodes;
+
+    private double[] m_Weights, m_Classes;
+
+    private int m_NumStats;
+
+    private double[][] m_NodeStats;
+
+    /** The best split of each attribute (null for the class) for each node of the level. */
+    Split[][] m_Splits;
+
+    /** The next attribute. */
+    private int m_Next;
+
+    public SplitFinder(Instances data, byte[][] columns, int[] nodes, int firstNode, int numLevelNodes,
+                       double[] weights, double[] classes, int numStats, double[][] nodeStats){
+      m_Data = data;
+      m_Columns = columns;
+      m_Nodes = nodes;
+      m_FirstNode = firstNode;
+      m_NumLevelNodes = numLevelNodes;
+      m_Weights = weights;
+      m_Classes = classes;
+      m_NumStats = numStats;
+      m_NodeStats = nodeStats;
+      m_Splits = new Split[data.numAttributes()][];
+    }
+
+    /**
+     * Find the splits.
+     *
+     * @param numThreads The number of threads.
+     *
+     * @throws Exception If a thread is interrupted.
+     */
+    public void find(int numThreads) throws Exception{
+
+      if (numThreads <= 1 || m_Data.numAttributes() <= 2){
+        run();
+        return;
+      }
+
+      Thread[] threads = new Thread[Math.min(numThreads, m_Data.numAttributes() - 1)];
+      for (int i = 0; i < threads.length; i++){
+        threads[i] = new Thread(this);
+        threads[i].start();
+      }
+      for (int i = 0; i < threads.length; i++)
+        threads[i].join();
+    }
+
+    private synchronized int nextAttribute(){
+      if (m_Next == m_Data.classIndex())
+        m_Next++;
+      return m_Next < m_Splits.length ? m_Next++ : -1;
+    }
+
+    public void run(){
+      int a;
+      while ((a = nextAttribute()) >= 0)
+        m_Splits[a] = splits(a);
+    }
+
+    /**
+     * Build the histograms of an attribute and find its best split at each node.
+     *
+     * @param attribute The attribute.
+     *
+     * @return The splits (null for the nodes which can't be split over the attribute).
+     */
+    private Split[] splits(int attribute){
+
+      boolean nominalClass = m_Data.classAttribute().isNominal();
+      int numBins = m_Binning.numBins(attribute) + 1;
+      int numStats = m_NumStats;
+      double[][] histograms = new double[m_NumLevelNodes][numBins * numStats];
+      byte[] column = m_Columns[attribute];
+
+      for (int i = 0; i < column.length; i++){
+        int n = m_Nodes[i];
+        if (n >= m_FirstNode)
+          addStats(histograms[n - m_FirstNode], (column[i] & 0xff) * numStats, m_Classes[i], m_Weights[i], nominalClass);
+      }
+
+      Split[] splits = new Split[m_NumLevelNodes];
+      boolean numeric = m_Binning.isNumeric(attribute);
+
+      for (int n = 0; n < m_NumLevelNodes; n++){
+
+        double[] histogram = histograms[n];
+        double[] total = m_NodeStats[m_FirstNode + n];
+        double[][] branches = new double[3][numStats];
+        double[] left = branches[0], right = branches[1];
+
+        System.arraycopy(histogram, 0, branches[2], 0, numStats);
+
+        for (int bin = 1; bin < numBins; bin++){
+
+          for (int s = 0; s < numStats; s++){
+            left[s] = numeric ? left[s] + histogram[bin * numStats + s] : histogram[bin * numStats + s];
+            right[s] = total[s] - branches[2][s] - left[s];
+          }
+
+          //Both branches must have instances.
+          double leftWeight = nominalClass ? Utils.sum(left) : left[0];
+          double rightWeight = nominalClass ? Utils.sum(right) : right[0];
+          if (!Utils.gr(leftWeight, 0) || !Utils.gr(rightWeight, 0))
+            continue;
+
+          double value = impurity(branches, nominalClass);
+          if (splits[n] == null || Utils.sm(value, splits[n].m_Value)){
+            if (splits[n] == null)
+              splits[n] = new Split();
+            splits[n].m_Value = value;
+            splits[n].m_Bin = bin;
+            splits[n].m_Stats = new double[][]{(double[]) left.clone(), (double[]) right.clone(), (double[]) branches[2].clone()};
+          }
+        }
+      }
+
+      return splits;
+    }
+  }
+
+  /** The binned columns of a dataset. */
+  private static class BinnedColumns{
+
+    /** The binning. */
+    AttributeBinning m_Binning;
+
+    /** The bins of the values of each attribute. */
+    byte[][] m_Columns;
+
+    /** The identity hash code of each instance. */
+    private int[] m_Identities;
+
+    /** The settings of the binning. */
+    private int m_MaxBins, m_SampleSize;
+
+    /**
+     * Bin a dataset.
+     *
+     * @param data The dataset.
+     * @param maxBins The maximum number of bins of the numeric attributes.
+     * @param sampleSize The number of instances sampled to find the bin edges.
+     *
+     * @throws Exception If an attribute is neither nominal nor numeric or has too many values.
+     */
+    public BinnedColumns(Instances data, int maxBins, int sampleSize) throws Exception{
+
+      int numInstances = data.numInstances();
+      AttributeBinning.Sampler sampler = new AttributeBinning.Sampler(data, sampleSize, maxBins, 1);
+
+      for (int i = 0; i < numInstances; i++)
+        sampler.add(data.instance(i));
+
+      m_Binning = sampler.binning();
+      m_Columns = new byte[data.numAttributes()][numInstances];
+      m_Identities = new int[numInstances];
+      m_MaxBins = maxBins;
+      m_SampleSize = sampleSize;
+
+      for (int i = 0; i < numInstances; i++){
+        Instance instance = data.instance(i);
+        m_Identities[i] = System.identityHashCode(instance);
+        for (int a = 0; a < m_Columns.length; a++)
+          m_Columns[a][i] = (byte) m_Binning.bin(instance, a);
+      }
+    }
+
+    /**
+     * Are these the columns of a dataset?
+     *
+     * @param data The dataset.
+     * @param maxBins The maximum number of bins of the numeric attributes.
+     * @param sampleSize The number of instances sampled to find the bin edges.
+     *
+     * @return True if the dataset has the same instances and format, and the binning the same settings.
+     */
+    public boolean isOf(Instances data, int maxBins, int sampleSize){
+
+      if (maxBins != m_MaxBins || sampleSize != m_SampleSize || !m_Binning.getHeader().equalHeaders(data)
+          || data.numInstances() != m_Identities.length)
+        return false;
+
+      for (int i = 0; i < m_Identities.length; i++)
+        if (System.identityHashCode(data.instance(i)) != m_Identities[i])
+          return false;
+
+      return true;
+    }
+  }
+
+  /**
+   * Calculates the class membership probabilities for the given test instance (for a
+   * numeric class, the predicted value).
+   *
+   * @param instance the instance to be classified
+   *
+   * @return predicted class probability distribution
+   *
+   * @exception Exception if the tree has not been built
+   */
+  public double[] distributionForInstance(Instance instance) throws Exception{
+
+    if (m_Binning == null)
+      throw new Exception("No model built yet.");
+
+    int node = 0;
+
+    while (m_Attribute[node] >= 0)
+      node = m_Children[3 * node + branch(node, m_Binning.bin(instance, m_Attribute[node]))];
+
+    return m_Distribution[node];
+  }
+
+  /**
+   * Returns a description of the tree.
+   *
+   * @return A description of the tree.
+   */
+  public String toString(){
+
+    if (m_Binning == null)
+      return "Histogram tree: No model built yet.";
+
+    StringBuffer text = new StringBuffer("Histogram tree\n\n");
+
+    if (m_Attribute[0] < 0)
+      leafToString(0, text);
+    else
+      toString(0, 0, text);
+
+    return text.toString();
+  }
+
+  /**
+   * Describe a subtree.
+   *
+   * @param node The root of the subtree.
+   * @param depth Its depth.
+   * @param text Where the description is written.
+   */
+  private void toString(int node, int depth, StringBuffer text){
+
+    Instances header = m_Binning.getHeader();
+    int attribute = m_Attribute[node];
+    String name = header.attribute(attribute).name();
+    String[] branches = new String[3];
+
+    if (m_Binning.isNumeric(attribute)){
+      String edge = m_Split[node] < m_Binning.numBins(attribute)
+        ? Utils.doubleToString(m_Binning.lowerEdge(attribute, m_Split[node] + 1), 6) : "" + Double.POSITIVE_INFINITY;
+      branches[0] = name + " < " + edge;
+      branches[1] = name + " >= " + edge;
+    }
+    else{
+      branches[0] = name + " = " + header.attribute(attribute).value(m_Split[node] - 1);
+      branches[1] = name + " != " + header.attribute(attribute).value(m_Split[node] - 1);
+    }
+    branches[2] = name + " is missing";
+
+    for (int b = 0; b < 3; b++){
+      int child = m_Children[3 * node + b];
+      for (int i = 0; i < depth; i++)
+        text.append("|   ");
+      text.append(branches[b]);
+      if (m_Attribute[child] < 0)
+        leafToString(child, text);
+      else{
+        text.append("\n");
+        toString(child, depth + 1, text);
+      }
+    }
+  }
+
+  /**
+   * Describe the prediction of a leaf.
+   *
+   * @param node The leaf.
+   * @param text Where the description is written.
+   */
+  private void leafToString(int node, StringBuffer text){
+
+    Attribute classAttribute = m_Binning.getHeader().classAttribute();
+
+    text.append(" : ");
+    if (classAttribute.isNominal())
+      text.append(classAttribute.value(Utils.maxIndex(m_Distribution[node])));
+    else
+      text.append(Utils.doubleToString(m_Distribution[node][0], 6));
+    text.append("\n");
+  }
+
+  /**
+   * Returns an enumeration of all the available options.
+   *
+   * @return an enumeration of all available options
+   */
+  public Enumeration listOptions(){
+
+    Vector newVector = new Vector(4);
+
+    newVector.addElement(new Option(
+      "\tMaximum depth of the tree.\n"
+      + "\t(default 1, a decision stump)",
+      "L", 1, "-L <depth>"));
+
+    newVector.addElement(new Option(
+      "\tMaximum number of bins of the numeric attributes.\n"
+      + "\t(default " + AttributeBinning.MAX_BINS + ")",
+      "B", 1, "-B <num>"));
+
+    newVector.addElement(new Option(
+      "\tNumber of instances sampled to find the bin edges.\n"
+      + "\t(default 100000)",
+      "R", 1, "-R <num>"));
+
+    newVector.addElement(new Option(
+      "\tNumber of threads used to build the histograms.\n"
+      + "\t(default 1)",
+      "P", 1, "-P <threads>"));
+
+    return newVector.elements();
+  }
+
+  /**
+   * Parses a given list of options. Valid options are:<p>
+   *
+   * -L depth <br>
+   * Maximum depth of the tree (default 1, a decision stump).<p>
+   *
+   * -B num <br>
+   * Maximum number of bins of the numeric attributes (default 255).<p>
+   *
+   * -R num <br>
+   * Number of instances sampled to find the bin edges (default 100000).<p>
+   *
+   * -P threads <br>
+   * Number of threads used to build the histograms (default 1).<p>
+   *
+   * @param options the list of options as an array of strings
+   * @exception Exception if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception{
+
+    String option = Utils.getOption('L', options);
+    setMaxDepth(option.length() != 0 ? Integer.parseInt(option) : 1);
+
+    option = Utils.getOption('B', options);
+    setMaxBins(option.length() != 0 ? Integer.parseInt(option) : AttributeBinning.MAX_BINS);
+
+    option = Utils.getOption('R', options);
+    setSampleSize(option.length() != 0 ? Integer.parseInt(option) : 100000);
+
+    option = Utils.getOption('P', options);
+    setNumThreads(option.length() != 0 ? Integer.parseInt(option) : 1);
+  }
+
+  /**
+   * Gets the current settings of the Classifier.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  public String[] getOptions(){
+    return new String[]{"-L", "" + getMaxDepth(), "-B", "" + getMaxBins(),
+                        "-R", "" + getSampleSize(), "-P", "" + getNumThreads()};
+  }
+
+  /** @param maxDepth The maximum depth of the tree (at least 1). */
+  public void setMaxDepth(int maxDepth){
+    m_MaxDepth = Math.max(1, maxDepth);
+  }
+
+  public int getMaxDepth(){
+    return m_MaxDepth;
+  }
+
+  /** @param maxBins The maximum number of bins of the numeric attributes (2..255). */
+  public void setMaxBins(int maxBins){
+    m_MaxBins = Math.max(2, Math.min(AttributeBinning.MAX_BINS, maxBins));
+  }
+
+  public int getMaxBins(){
+    return m_MaxBins;
+  }
+
+  public void setSampleSize(int sampleSize){
+    m_SampleSize = Math.max(1, sampleSize);
+  }
+
+  public int getSampleSize(){
+    return m_SampleSize;
+  }
+
+  /** @param numThreads The number of threads used to build the histograms (values lesser than 1 are taken as 1). */
+  public void setNumThreads(int numThreads){
+    m_NumThreads = Math.max(1, numThreads);
+  }
+
+  public int getNumThreads(){
+    return m_NumThreads;
+  }
+
+  public static String maxDepthTipText(){
+    return "Set the maximum depth of the tree (1 for a decision stump).";
+  }
+
+  public static String maxBinsTipText(){
+    return "Set the maximum number of bins (2..255) of the numeric attributes.";
+  }
+
+  public static String sampleSizeTipText(){
+    return "Set the number of instances sampled to find the bin edges of the numeric attributes.";
+  }
+
+  public static String numThreadsTipText(){
+    return "Set the number of threads used to build the histograms.";
+  }
+
+  /**
+   * Main method for testing this class.
+   *
+   * @param argv the options
+   */
+  public static void main(String[] argv){
+
+    try{
+      System.out.println(Evaluation.evaluateModel(new HistogramTree(), argv));
+    }
+    catch (Exception e){
+      System.err.println(e.getMessage());
+    }
+  }
+}
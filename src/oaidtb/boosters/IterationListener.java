@@ -0,0 +1,44 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    IterationListener.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import java.util.EventListener;
+
+/**
+ * Listens to the iterations of a booster (see Booster.addIterationListener and
+ * AdaBoostMH.addIterationListener).
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public interface IterationListener extends EventListener{
+
+  /**
+   * Called by the booster's thread after each iteration (the iterations interrupted by an
+   * exception, ie. AdaBoostM1's stop criterion, are not notified). The listeners of an
+   * AdaBoostMH which trains its boosters with several threads are called by all of them.
+   *
+   * @param profile The profile of the iteration (reused by the booster for the next one).
+   */
+  void iterationPerformed(IterationProfile profile);
+}
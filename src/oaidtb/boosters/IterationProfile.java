@@ -0,0 +1,344 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    IterationProfile.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.core.Utils;
+
+import java.lang.reflect.Method;
+
+/**
+ * Where the time of a boosting iteration goes: for each phase of the iteration (the copy
+ * of the base classifier, its training, the reweighting...), the wall time spent, the
+ * number of training instances touched and the bytes allocated by the booster's thread.
+ *
+ * The booster switches from one phase to another as it iterates (see enter); the time and
+ * the bytes between two switches are charged to the phase left, so a phase nested in
+ * another one (ie. the normalization of the weights, done while reweighting) is not
+ * charged to the outer one too. A booster doesn't go through every phase, and it can go
+ * through one more than once per iteration (their costs are added).
+ *
+ * The bytes allocated are measured only if the virtual machine can tell the bytes
+ * allocated by a thread (see allocatedBytes), and they are approximate: the threads
+ * started by the booster (ie. to classify the training instances) are not measured, and
+ * the bytes allocated by the measure itself are estimated and discounted. The time is
+ * measured in nanoseconds if the virtual machine can (see nanoTime), or else with the
+ * precision of System.currentTimeMillis. The Java 5 APIs used for both are reached by
+ * reflection, so this class (as the rest of the boosters) runs on older virtual machines.
+ *
+ * The booster reuses its profile for every iteration: a listener must copy what it keeps.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class IterationProfile{
+
+  /** Copy of the base classifier template. */
+  public final static int CLASSIFIER_CREATION = 0;
+
+  /** Resampling of the training data. */
+  public final static int RESAMPLING = 1;
+
+  /** Training of the base classifier. */
+  public final static int TRAINING = 2;
+
+  /** Classification of the training instances by the base classifier. */
+  public final static int PREDICTION = 3;
+
+  /** Error (or pseudoloss) and vote weight of the base classifier. */
+  public final static int ERROR = 4;
+
+  /** Update of the weights (or of the mislabel distribution). */
+  public final static int REWEIGHTING = 5;
+
+  /** Normalization of the weights. */
+  public final static int NORMALIZATION = 6;
+
+  /** Update of the training error upper bound. */
+  public final static int UPPER_BOUND = 7;
+
+  /** Search and application of the coloring (output codes boosters). */
+  public final static int COLORING = 8;
+
+  /** The number of phases. */
+  public final static int NUM_PHASES = 9;
+
+  /** The names of the phases. */
+  private final static String[] PHASE_NAMES = {
+    "classifier creation", "resampling", "training", "prediction", "error",
+    "reweighting", "normalization", "upper bound", "coloring"
+  };
+
+  /** The booster. */
+  private Booster m_Booster;
+
+  /** The index of the iteration. */
+  private int m_Iteration;
+
+  /** The nanoseconds spent in each phase. */
+  private long[] m_Time = new long[NUM_PHASES];
+
+  /** The number of instances touched in each phase. */
+  private long[] m_Instances = new long[NUM_PHASES];
+
+  /** The bytes allocated in each phase. */
+  private long[] m_Bytes = new long[NUM_PHASES];
+
+  /** The current phase (-1 if none). */
+  private int m_Phase = -1;
+
+  /** When the current phase was entered. */
+  private long m_PhaseStart;
+
+  /** The bytes allocated by the thread when the current phase was entered. */
+  private long m_PhaseStartBytes;
+
+  /** The method which returns the bytes allocated by a thread (null if not known yet). */
+  private static Method m_AllocatedBytesMethod;
+
+  /** The thread management bean (null if the allocated bytes can't be measured). */
+  private static Object m_ThreadBean;
+
+  /** Has the virtual machine been asked for the thread management bean? */
+  private static boolean m_ThreadBeanLookedUp;
+
+  /** The bytes allocated by a call to allocatedBytes and another one to nanoTime themselves. */
+  private static long m_MeterOverhead;
+
+  /** The method which returns the id of a thread (null if not known yet). */
+  private static Method m_ThreadIdMethod;
+
+  /** The arguments of m_AllocatedBytesMethod for each thread (its id). */
+  private final static ThreadLocal m_ThreadIdArguments = new ThreadLocal(){
+    protected Object initialValue(){
+      try{
+        return new Object[]{m_ThreadIdMethod.invoke(Thread.currentThread(), NO_ARGUMENTS)};
+      }
+      catch (Throwable e){
+        return null;
+      }
+    }
+  };
+
+  /** The method System.nanoTime (null if the virtual machine hasn't got it). */
+  private static Method m_NanoTimeMethod;
+
+  /** The arguments of the methods without parameters. */
+  private final static Object[] NO_ARGUMENTS = new Object[0];
+
+  static{
+    try{
+      m_NanoTimeMethod = System.class.getMethod("nanoTime", new Class[0]);
+    }
+    catch (Throwable e){
+      m_NanoTimeMethod = null;
+    }
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param booster The booster profiled.
+   */
+  public IterationProfile(Booster booster){
+    m_Booster = booster;
+  }
+
+  /**
+   * Leave the current phase (charging it the time and bytes spent since it was entered)
+   * and enter another one.
+   *
+   * @param phase The new phase (-1 to leave the current one without entering another).
+   * @param numInstances The number of training instances the new phase touches.
+   *
+   * @return The phase left (-1 if none).
+   */
+  public int enter(int phase, int numInstances){
+
+    long bytes = allocatedBytes();
+    long now = nanoTime();
+    int previous = m_Phase;
+
+    if (previous >= 0){
+      m_Time[previous] += now - m_PhaseStart;
+      if (bytes >= 0)
+        m_Bytes[previous] += Math.max(0, bytes - m_PhaseStartBytes - m_MeterOverhead);
+    }
+
+    if (phase >= 0)
+      m_Instances[phase] += numInstances;
+
+    m_Phase = phase;
+    m_PhaseStart = now;
+    m_PhaseStartBytes = bytes;
+
+    return previous;
+  }
+
+  /**
+   * Leave the current phase and end the iteration.
+   *
+   * @param iteration The index of the iteration.
+   */
+  public void finish(int iteration){
+    enter(-1, 0);
+    m_Iteration = iteration;
+  }
+
+  /** Forget the phases (ie. before a new iteration). */
+  public void reset(){
+    m_Phase = -1;
+    for (int i = 0; i < NUM_PHASES; i++)
+      m_Time[i] = m_Instances[i] = m_Bytes[i] = 0;
+  }
+
+  /** @return The booster profiled. */
+  public Booster getBooster(){
+    return m_Booster;
+  }
+
+  /** @return The index of the iteration (0 for the first one). */
+  public int getIteration(){
+    return m_Iteration;
+  }
+
+  /**
+   * @param phase The phase.
+   *
+   * @return The nanoseconds spent in the phase.
+   */
+  public long getTime(int phase){
+    return m_Time[phase];
+  }
+
+  /**
+   * @param phase The phase.
+   *
+   * @return The number of training instances touched in the phase.
+   */
+  public long getInstances(int phase){
+    return m_Instances[phase];
+  }
+
+  /**
+   * @param phase The phase.
+   *
+   * @return The bytes allocated in the phase (0 if they can't be measured).
+   */
+  public long getBytes(int phase){
+    return m_Bytes[phase];
+  }
+
+  /** @return The nanoseconds spent in all the phases. */
+  public long getTotalTime(){
+    long total = 0;
+    for (int i = 0; i < NUM_PHASES; i++)
+      total += m_Time[i];
+    return total;
+  }
+
+  /**
+   * @param phase The phase.
+   *
+   * @return The name of the phase.
+   */
+  public static String phaseName(int phase){
+    return PHASE_NAMES[phase];
+  }
+
+  /**
+   * Get the current value of the most precise timer of the virtual machine (System.nanoTime
+   * since Java 5), to measure elapsed times.
+   *
+   * @return The nanoseconds elapsed since some fixed but arbitrary time.
+   */
+  public static long nanoTime(){
+
+    if (m_NanoTimeMethod != null){
+      try{
+        return ((Long) m_NanoTimeMethod.invoke(null, NO_ARGUMENTS)).longValue();
+      }
+      catch (Throwable e){
+      }
+    }
+
+    return System.currentTimeMillis() * 1000000;
+  }
+
+  /**
+   * Get the bytes allocated so far by the current thread, if the virtual machine can tell
+   * them (through com.sun.management.ThreadMXBean).
+   *
+   * @return The bytes, or -1 if they can't be measured.
+   */
+  public static long allocatedBytes(){
+
+    if (!m_ThreadBeanLookedUp){
+      try{
+        Object bean = Class.forName("java.lang.management.ManagementFactory")
+          .getMethod("getThreadMXBean", new Class[0]).invoke(null, NO_ARGUMENTS);
+        m_AllocatedBytesMethod = Class.forName("com.sun.management.ThreadMXBean")
+          .getMethod("getThreadAllocatedBytes", new Class[]{long.class});
+        m_ThreadIdMethod = Thread.class.getMethod("getId", new Class[0]);
+        m_ThreadBean = bean;
+      }
+      catch (Throwable e){
+        m_ThreadBean = null;
+      }
+      m_ThreadBeanLookedUp = true;
+
+      //What a call allocates (with the nanoTime call after it) is not charged to the phases;
+      //nanoTime is called once before, so what its first call allocates isn't taken as usual.
+      nanoTime();
+      long bytes = allocatedBytes();
+      nanoTime();
+      m_MeterOverhead = Math.max(0, allocatedBytes() - bytes);
+    }
+
+    if (m_ThreadBean == null)
+      return -1;
+
+    try{
+      return ((Long) m_AllocatedBytesMethod.invoke(m_ThreadBean, (Object[]) m_ThreadIdArguments.get())).longValue();
+    }
+    catch (Throwable e){
+      return -1;
+    }
+  }
+
+  /** @return A line per phase with its time, instances touched and bytes allocated. */
+  public String toString(){
+
+    StringBuffer text = new StringBuffer("Iteration " + (m_Iteration + 1) + " of "
+                                         + m_Booster.getClass().getName() + ": "
+                                         + Utils.doubleToString(getTotalTime() / 1e6, 3) + " ms\n");
+
+    for (int i = 0; i < NUM_PHASES; i++)
+      if (m_Time[i] > 0 || m_Instances[i] > 0)
+        text.append("\t" + Utils.padRight(PHASE_NAMES[i], 20)
+                    + Utils.padLeft(Utils.doubleToString(m_Time[i] / 1e6, 3), 12) + " ms"
+                    + Utils.padLeft("" + m_Instances[i], 12) + " instances"
+                    + Utils.padLeft("" + m_Bytes[i], 14) + " bytes\n");
+
+    return text.toString();
+  }
+}
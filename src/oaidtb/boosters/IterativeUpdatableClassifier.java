@@ -23,6 +23,7 @@
 package oaidtb.boosters;
 
 import weka.core.Instance;
+import weka.core.Instances;
 
 /**
  * Interface for classifiers that can be updated (refined) at any time by performing
@@ -60,4 +61,17 @@ public interface IterativeUpdatableClassifier{
    * @throws Exception if an error occurs
    */
   double[] getClassifierVote(Instance instance, int iterationIndex) throws Exception;
+
+  /**
+   * Calculates the class membership probabilities of a batch of instances using only the
+   * first numIterations iterations, writing them into the supplied matrix (a row per
+   * instance, as long as the number of classes at least).
+   *
+   * @param data The instances to be classified.
+   * @param numIterations Number of iterations to use.
+   * @param out The matrix where the distributions are written.
+   *
+   * @throws Exception If the parameters are incorrect or an instance can't be classified.
+   */
+  void distributionsForInstances(Instances data, int numIterations, double[][] out) throws Exception;
 }
\ No newline at end of file
@@ -0,0 +1,466 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    MarginTracker.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.Serializable;
+
+/**
+ * Keeps the combined hypothesis of a booster over a dataset (ie. the train or the test data)
+ * as the booster iterates: the sum of the votes of the base classifiers (see
+ * IterativeUpdatableClassifier.getClassifierVote) for each instance, and the error after
+ * each iteration.
+ *
+ * Each new iteration only adds the vote of its base classifier, so following the booster
+ * costs O(number of instances) per iteration instead of classifying every instance again
+ * with all the base classifiers (which costs O(number of iterations) per instance and
+ * iteration). The error curve is kept, so the error with any number of iterations is
+ * read in O(1).
+ *
+ * If the booster loses iterations (see purgeIterations), the votes are computed again
+ * from the first iteration, unless the booster is back to the checkpoint (see checkpoint),
+ * whose votes are restored.
+ *
+ * If the booster's prediction isn't the sum of the votes (see Booster.votesAddUp, ie. the
+ * minimum expected cost criteria of the cost sensitive boosters), the "votes" of an
+ * instance are the distribution predicted by the booster with the iterations added, which
+ * is computed again for each iteration (so it costs O(number of iterations) per instance
+ * and iteration).
+ *
+ * A tracker can follow the booster by itself (see Booster.attachMarginTracker) or be
+ * updated when its results are needed (see update and next).
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class MarginTracker implements Serializable{
+
+  /** The instances. */
+  private Instance[] m_Instances;
+
+  /** The class of each instance. */
+  private int[] m_Classes;
+
+  /** The weight of each instance. */
+  private double[] m_Weights;
+
+  /** The sum of the base classifiers votes for each instance (null until the first vote). */
+  private double[][] m_Votes;
+
+  /** The number of votes received by each instance. */
+  private int[] m_NumVotes;
+
+  /** The number of iterations whose votes have been added. */
+  private int m_NumIterations;
+
+  /** The error after each iteration (NaN if no instance had been voted). */
+  private double[] m_Errors = new double[16];
+
+  /** The number of iterations of the checkpoint (-1 if there is no checkpoint). */
+  private int m_CheckpointIterations = -1;
+
+  /** The votes at the checkpoint. */
+  private double[][] m_CheckpointVotes;
+
+  /** The number of votes of each instance at the checkpoint. */
+  private int[] m_CheckpointNumVotes;
+
+  /** The context to classify the instances when the votes don't add up (created on demand). */
+  private transient ScoringContext m_Context;
+
+  /**
+   * Constructor.
+   *
+   * @param data The instances (with the format of the booster's original training data).
+   */
+  public MarginTracker(Instances data){
+
+    int numInstances = data.numInstances();
+
+    m_Instances = new Instance[numInstances];
+    m_Classes = new int[numInstances];
+    m_Weights = new double[numInstances];
+    for (int i = 0; i < numInstances; i++){
+      m_Instances[i] = data.instance(i);
+      m_Classes[i] = (int) m_Instances[i].classValue();
+      m_Weights[i] = m_Instances[i].weight();
+    }
+    m_NumVotes = new int[numInstances];
+  }
+
+  /**
+   * Constructor for a booster's training instances (their class can be different from the
+   * original one, ie. in AdaBoostOC).
+   *
+   * @param booster The booster.
+   */
+  MarginTracker(Booster booster){
+
+    Instances data = booster.m_TrainData;
+    int numInstances = booster.m_NumInstances;
+
+    m_Instances = new Instance[numInstances];
+    m_Classes = new int[numInstances];
+    m_Weights = new double[numInstances];
+    for (int i = 0; i < numInstances; i++){
+      m_Instances[i] = data.instance(i);
+      m_Classes[i] = booster.originalClassValue(i);
+      m_Weights[i] = 1;
+    }
+    m_NumVotes = new int[numInstances];
+  }
+
+  /** @return The number of instances. */
+  public int numInstances(){
+    return m_Instances.length;
+  }
+
+  /** @return The number of iterations whose votes have been added. */
+  public int numIterations(){
+    return m_NumIterations;
+  }
+
+  /**
+   * Add the votes of all the iterations performed by the booster since the last update.
+   *
+   * @param booster The booster.
+   *
+   * @throws Exception If an instance can't be classified.
+   */
+  public void update(IterativeUpdatableClassifier booster) throws Exception{
+    while (next(booster))
+      ;
+  }
+
+  /**
+   * Add the votes of the next iteration performed by the booster, if any.
+   *
+   * @param booster The booster.
+   *
+   * @return False if all the iterations performed had been added.
+   *
+   * @throws Exception If an instance can't be classified.
+   */
+  public boolean next(IterativeUpdatableClassifier booster) throws Exception{
+
+    rewind(booster.getNumIterationsPerformed(), booster);
+
+    if (m_NumIterations == booster.getNumIterationsPerformed())
+      return false;
+
+    if (votesAddUp(booster))
+      for (int i = 0; i < m_Instances.length; i++)
+        addVote(i, booster.getClassifierVote(m_Instances[i], m_NumIterations));
+    else{
+      if (m_Context == null)
+        m_Context = new ScoringContext();
+      for (int i = 0; i < m_Instances.length; i++)
+        setPrediction(i, ((Booster) booster).distributionForInstance(m_Instances[i], m_NumIterations + 1, m_Context));
+    }
+    iterationAdded();
+
+    return true;
+  }
+
+  /**
+   * @param booster The booster.
+   *
+   * @return True if the sum of the booster's votes is its prediction (see Booster.votesAddUp).
+   */
+  private static boolean votesAddUp(IterativeUpdatableClassifier booster){
+    return !(booster instanceof Booster) || ((Booster) booster).votesAddUp();
+  }
+
+  /**
+   * Add the vote of the last iteration of a booster which boosts with resampling only to the
+   * instances its sample hasn't drawn (out of bag); the iterations not added in time (before
+   * the next sample is drawn) are skipped. The tracker must follow the booster's training
+   * instances.
+   *
+   * @param booster The booster.
+   *
+   * @throws Exception If an instance can't be classified.
+   */
+  void nextOutOfBag(Booster booster) throws Exception{
+
+    int numIterations = booster.m_NumIterations;
+
+    //The votes of the lost iterations can't be computed again.
+    if (numIterations < m_NumIterations && numIterations != m_CheckpointIterations)
+      clear(numIterations);
+    rewind(numIterations, booster);
+
+    if (m_NumIterations == numIterations)
+      return;
+
+    while (m_NumIterations < numIterations - 1){
+      m_NumIterations++;
+      recordError(error());
+    }
+
+    WeightedResampler resampler = booster.m_Resampler;
+    for (int i = 0; i < m_Instances.length; i++)
+      if (resampler != null && !resampler.isInBag(i))
+        addVote(i, booster.getClassifierVote(m_Instances[i], m_NumIterations));
+    iterationAdded();
+  }
+
+  /**
+   * Keep a copy of the current votes, so if the booster goes back to this iteration
+   * they are restored instead of computed again.
+   */
+  public void checkpoint(){
+
+    m_CheckpointIterations = m_NumIterations;
+
+    if (m_Votes == null){
+      m_CheckpointVotes = null;
+      m_CheckpointNumVotes = null;
+      return;
+    }
+
+    if (m_CheckpointVotes == null){
+      m_CheckpointVotes = new double[m_Votes.length][];
+      m_CheckpointNumVotes = new int[m_NumVotes.length];
+    }
+    for (int i = 0; i < m_Votes.length; i++)
+      if (m_CheckpointVotes[i] == null)
+        m_CheckpointVotes[i] = (double[]) m_Votes[i].clone();
+      else
+        System.arraycopy(m_Votes[i], 0, m_CheckpointVotes[i], 0, m_Votes[i].length);
+    System.arraycopy(m_NumVotes, 0, m_CheckpointNumVotes, 0, m_NumVotes.length);
+  }
+
+  /**
+   * Go back to the number of iterations of the booster if it has lost iterations: restore
+   * the checkpoint or add the votes again from the first iteration.
+   *
+   * @param numIterations The number of iterations of the booster.
+   * @param booster The booster.
+   *
+   * @throws Exception If an instance can't be classified.
+   */
+  private void rewind(int numIterations, IterativeUpdatableClassifier booster) throws Exception{
+
+    if (numIterations >= m_NumIterations)
+      return;
+
+    if (numIterations == m_CheckpointIterations){
+      if (m_CheckpointVotes == null){
+        m_Votes = null;
+        java.util.Arrays.fill(m_NumVotes, 0);
+      }
+      else{
+        if (m_Votes == null)
+          m_Votes = new double[m_Instances.length][m_CheckpointVotes[0].length];
+        for (int i = 0; i < m_Votes.length; i++)
+          System.arraycopy(m_CheckpointVotes[i], 0, m_Votes[i], 0, m_Votes[i].length);
+        System.arraycopy(m_CheckpointNumVotes, 0, m_NumVotes, 0, m_NumVotes.length);
+      }
+      m_NumIterations = numIterations;
+      return;
+    }
+
+    if (m_CheckpointIterations > numIterations)
+      m_CheckpointIterations = -1;
+
+    //The prediction with numIterations is enough (the errors of the first ones are kept).
+    if (!votesAddUp(booster) && numIterations > 0){
+      m_NumIterations = numIterations - 1;
+      next(booster);
+      return;
+    }
+
+    clear(0);
+    while (m_NumIterations < numIterations)
+      next(booster);
+  }
+
+  /**
+   * Forget all the votes.
+   *
+   * @param numIterations The number of iterations considered added.
+   */
+  private void clear(int numIterations){
+
+    m_Votes = null;
+    java.util.Arrays.fill(m_NumVotes, 0);
+    m_NumIterations = numIterations;
+    for (int i = 0; i < numIterations; i++)
+      m_Errors[i] = Double.NaN;
+    if (m_CheckpointIterations > numIterations)
+      m_CheckpointIterations = -1;
+  }
+
+  /**
+   * Add a base classifier vote to the votes of an instance.
+   *
+   * @param index The index of the instance.
+   * @param vote The vote.
+   */
+  private void addVote(int index, double[] vote){
+
+    if (m_Votes == null)
+      m_Votes = new double[m_Instances.length][vote.length];
+
+    double[] votes = m_Votes[index];
+    for (int k = 0; k < vote.length; k++)
+      votes[k] += vote[k];
+    m_NumVotes[index]++;
+  }
+
+  /**
+   * Replace the votes of an instance with the distribution predicted by the booster (when
+   * its votes don't add up).
+   *
+   * @param index The index of the instance.
+   * @param distribution The distribution.
+   */
+  private void setPrediction(int index, double[] distribution){
+
+    if (m_Votes == null)
+      m_Votes = new double[m_Instances.length][distribution.length];
+
+    System.arraycopy(distribution, 0, m_Votes[index], 0, distribution.length);
+    m_NumVotes[index] = m_NumIterations + 1;
+  }
+
+  /** Count the iteration whose votes have just been added. */
+  private void iterationAdded(){
+    m_NumIterations++;
+    recordError(error());
+  }
+
+  /**
+   * Store the error of the last iteration added.
+   *
+   * @param error The error.
+   */
+  private void recordError(double error){
+
+    if (m_NumIterations > m_Errors.length){
+      double[] errors = new double[Math.max(m_NumIterations, 2 * m_Errors.length)];
+      System.arraycopy(m_Errors, 0, errors, 0, m_Errors.length);
+      m_Errors = errors;
+    }
+    m_Errors[m_NumIterations - 1] = error;
+  }
+
+  /**
+   * The weighted error of the votes over the instances with at least one vote.
+   *
+   * @return The error in [0,1], or NaN if no instance has been voted.
+   */
+  private double error(){
+
+    double errors = 0, sumOfWeights = 0;
+
+    if (m_Votes == null)
+      return Double.NaN;
+
+    for (int i = 0; i < m_Instances.length; i++)
+      if (m_NumVotes[i] > 0){
+        sumOfWeights += m_Weights[i];
+        if (oaidtb.misc.Utils.maxIndex(m_Votes[i]) != m_Classes[i])
+          errors += m_Weights[i];
+      }
+
+    return sumOfWeights > 0 ? errors / sumOfWeights : Double.NaN;
+  }
+
+  /**
+   * Get the error with the iterations added.
+   *
+   * @return The weighted error over the instances with at least one vote (NaN if none).
+   */
+  public double getError(){
+    return m_NumIterations == 0 ? Double.NaN : m_Errors[m_NumIterations - 1];
+  }
+
+  /**
+   * Get the error with the first iterations.
+   *
+   * @param numIterations The number of iterations (at most the number of iterations added).
+   *
+   * @return The weighted error over the instances with at least one vote (NaN if none).
+   *
+   * @throws Exception If numIterations is incorrect.
+   */
+  public double getError(int numIterations) throws Exception{
+
+    if (numIterations > m_NumIterations || numIterations < 1)
+      throw new Exception("Invaled numIterations parameter.");
+
+    return m_Errors[numIterations - 1];
+  }
+
+  /**
+   * Get the sum of the votes for an instance (the combined hypothesis, not normalized).
+   *
+   * @param index The index of the instance.
+   *
+   * @return The votes (they belong to the tracker), or null if the instance has no votes.
+   */
+  public double[] getVotes(int index){
+    return m_Votes == null || m_NumVotes[index] == 0 ? null : m_Votes[index];
+  }
+
+  /**
+   * Get the class predicted for an instance.
+   *
+   * @param index The index of the instance.
+   *
+   * @return The class, or -1 if the instance has no votes.
+   */
+  public int classifiedAs(int index){
+    return m_Votes == null || m_NumVotes[index] == 0 ? -1 : oaidtb.misc.Utils.maxIndex(m_Votes[index]);
+  }
+
+  /**
+   * Get the margin of an instance: the votes for its class minus the biggest votes for
+   * another class, divided by the sum of the votes (so it's in [-1,1] when the votes are
+   * positive); it's positive if the instance is well classified.
+   *
+   * @param index The index of the instance.
+   *
+   * @return The margin (0 if the instance has no votes).
+   */
+  public double getMargin(int index){
+
+    double[] votes = getVotes(index);
+    if (votes == null)
+      return 0;
+
+    int trueClass = m_Classes[index];
+    double maxOther = -Double.MAX_VALUE, sum = 0;
+    for (int k = 0; k < votes.length; k++){
+      sum += Math.abs(votes[k]);
+      if (k != trueClass && votes[k] > maxOther)
+        maxOther = votes[k];
+    }
+
+    return sum == 0 ? 0 : (votes[trueClass] - maxOther) / sum;
+  }
+}
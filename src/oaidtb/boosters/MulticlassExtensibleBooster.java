@@ -52,6 +52,22 @@ public interface MulticlassExtensibleBooster{
    */
   double confidenceAndSign(Instance instance) throws Exception;
 
+  /**
+   * Return the class predicted (<0 == class 0 and >0 == class 1) and the
+   * confidence of this prediction (its absolute value) using only the first numIterations
+   * base classifiers, without allocating memory. It doesn't modify the booster, so many
+   * threads (each one with its own context) can call it at the same time.
+   *
+   * @param instance The instance to be classified
+   * @param numIterations Number of base classifiers to use
+   * @param context The scoring context of the current thread
+   *
+   * @return The class predicted and its confidence.
+   *
+   * @throws Exception If numIterations is incorrect or the instance can't be classified.
+   */
+  double confidenceAndSign(Instance instance, int numIterations, ScoringContext context) throws Exception;
+
   /**
    * Return the class predicted (<0 == class 0 and >0 == class 1) and the
    * confidence of this prediction (its absolute value) of the classifier indicated.
@@ -65,4 +81,17 @@ public interface MulticlassExtensibleBooster{
    * @throws Exception if an error happens.
    */
   double confidenceAndSign(Instance instance, int classifierIndex) throws Exception;
+
+  /**
+   * Compute confidenceAndSign for a batch of instances using only the first numIterations
+   * base classifiers. The results are written into the supplied array.
+   *
+   * @param instances The instances to be classified (they must belong to a dataset with the
+   * format of the train data).
+   * @param numIterations Number of base classifiers to use.
+   * @param out The array where the confidences and signs are written.
+   *
+   * @throws Exception If numIterations is incorrect or an instance can't be classified.
+   */
+  void confidencesAndSigns(Instance[] instances, int numIterations, double[] out) throws Exception;
 }
\ No newline at end of file
@@ -0,0 +1,758 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    PresortedStump.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.classifiers.DistributionClassifier;
+import weka.classifiers.Evaluation;
+import weka.core.*;
+
+import java.util.Enumeration;
+import java.util.Vector;
+import java.util.WeakHashMap;
+
+/**
+ * A decision stump which builds the same stumps than weka's DecisionStump (the same splitting
+ * criteria, split points and distributions) without sorting the instances at each call.
+ *
+ * The boosters build a stump per iteration over the same instances, only their weights (or
+ * the class, in AdaBoostOC) change. DecisionStump copies and sorts them by each numeric
+ * attribute at each call, O(d&middot;N&middot;log N); this stump keeps, for each dataset it
+ * has been built over, the order of its instances by each numeric attribute (the index arrays
+ * are shared by all the stumps, see SortedAttributes), so after the first call each numeric
+ * attribute costs a single sweep over the instances in that order, accumulating the weighted
+ * class counts, O(d&middot;N).
+ *
+ * The orders are checked while sweeping (instances with missing values or out of order mean
+ * the dataset has been modified), and computed again if needed. They are kept while the
+ * dataset is referenced.
+ *
+ * The attributes can be swept by several threads; the stump doesn't depend on their number.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class PresortedStump extends DistributionClassifier
+  implements OptionHandler, WeightedInstancesHandler{
+
+  /** The orders of the datasets the stumps have been built over (Instances -> SortedAttributes). */
+  private final static WeakHashMap m_SortedData = new WeakHashMap();
+
+  /** The attribute used for splitting. */
+  private int m_AttIndex;
+
+  /** The split point (the value index for nominal attributes). */
+  private double m_SplitPoint;
+
+  /**
+   * The class distributions of the branches: value &lt;= split point (== for nominal
+   * attributes), the rest and missing value. For a numeric class, the mean class value.
+   */
+  private double[][] m_Distribution;
+
+  /** The format of the training instances. */
+  private Instances m_Instances;
+
+  /** Number of threads used to sweep the attributes. */
+  private int m_NumThreads = 1;
+
+  /**
+   * Generates the stump.
+   *
+   * @param data The training instances.
+   *
+   * @exception Exception If the stump can't be built.
+   */
+  public void buildClassifier(Instances data) throws Exception{
+
+    if (data.checkForStringAttributes())
+      throw new UnsupportedAttributeTypeException("Can't handle string attributes!");
+
+    SortedAttributes sorted;
+
+    synchronized (m_SortedData){
+      sorted = (SortedAttributes) m_SortedData.get(data);
+    }
+
+    Split[] splits = null;
+
+    if (sorted != null && sorted.isOf(data))
+      splits = findSplits(data, sorted);
+
+    //First call over the dataset or it has been modified: sort it (again).
+    if (splits == null){
+      sorted = new SortedAttributes(data);
+      synchronized (m_SortedData){
+        m_SortedData.put(data, sorted);
+      }
+      if ((splits = findSplits(data, sorted)) == null)
+        throw new Exception("The instances have been modified while building the stump.");
+    }
+
+    //The first attribute, unless a later one is smaller (as DecisionStump does).
+    int bestAttribute = -1;
+
+    for (int i = 0; i < splits.length; i++)
+      if (i != data.classIndex())
+        if (bestAttribute < 0 || Utils.sm(splits[i].m_Value, splits[bestAttribute].m_Value))
+          bestAttribute = i;
+
+    m_AttIndex = bestAttribute;
+    m_SplitPoint = splits[bestAttribute].m_SplitPoint;
+    m_Distribution = splits[bestAttribute].m_Distribution;
+
+    if (data.classAttribute().isNominal())
+      for (int i = 0; i < m_Distribution.length; i++)
+        Utils.normalize(m_Distribution[i]);
+
+    m_Instances = new Instances(data, 0);
+  }
+
+  /**
+   * Find the best split over each attribute.
+   *
+   * @param data The training instances.
+   * @param sorted The order of the instances by each numeric attribute.
+   *
+   * @return The splits, or null if the instances are not in the given order.
+   *
+   * @throws Exception If a thread is interrupted.
+   */
+  private Split[] findSplits(Instances data, SortedAttributes sorted) throws Exception{
+
+    Split[] splits = new Split[data.numAttributes()];
+    SplitFinder finder = new SplitFinder(data, sorted, splits);
+
+    if (m_NumThreads <= 1 || data.numAttributes() <= 2)
+      finder.run();
+    else{
+      Thread[] threads = new Thread[Math.min(m_NumThreads, data.numAttributes() - 1)];
+      for (int i = 0; i < threads.length; i++){
+        threads[i] = new Thread(finder);
+        threads[i].start();
+      }
+      for (int i = 0; i < threads.length; i++)
+        threads[i].join();
+    }
+
+    for (int i = 0; i < splits.length; i++)
+      if (i != data.classIndex() && splits[i] == null)
+        return null;
+
+    return splits;
+  }
+
+  /** Finds the splits of the attributes taken one at a time (by one or more threads). */
+  private static class SplitFinder implements Runnable{
+
+    private Instances m_Data;
+
+    private SortedAttributes m_Sorted;
+
+    /** The splits found (null if not found yet or if the order was wrong). */
+    private Split[] m_Splits;
+
+    /** The next attribute to be swept. */
+    private int m_Next;
+
+    public SplitFinder(Instances data, SortedAttributes sorted, Split[] splits){
+      m_Data = data;
+      m_Sorted = sorted;
+      m_Splits = splits;
+    }
+
+    private synchronized int nextAttribute(){
+      if (m_Next == m_Data.classIndex())
+        m_Next++;
+      return m_Next < m_Splits.length ? m_Next++ : -1;
+    }
+
+    public void run(){
+      int i;
+      while ((i = nextAttribute()) >= 0){
+        Split split;
+        if (m_Data.attribute(i).isNominal())
+          split = m_Data.classAttribute().isNominal() ? splitNominalNominal(m_Data, i) : splitNominalNumeric(m_Data, i);
+        else
+          split = m_Data.classAttribute().isNominal()
+            ? splitNumericNominal(m_Data, i, m_Sorted.order(i), m_Sorted.numKnown(i))
+            : splitNumericNumeric(m_Data, i, m_Sorted.order(i), m_Sorted.numKnown(i));
+        m_Splits[i] = split;
+      }
+    }
+  }
+
+  /** The best split over an attribute. */
+  private static class Split{
+
+    /** The value of the splitting criterion (the lower the better). */
+    double m_Value = Double.MAX_VALUE;
+
+    /** The split point. */
+    double m_SplitPoint;
+
+    /** The (not normalized) distributions of the branches. */
+    double[][] m_Distribution;
+  }
+
+  /**
+   * Split over a nominal attribute with a nominal class: value == v against the rest,
+   * minimizing the class entropy conditioned on the branches.
+   *
+   * @param data The training instances.
+   * @param index The attribute index.
+   *
+   * @return The split.
+   */
+  private static Split splitNominalNominal(Instances data, int index){
+
+    int numValues = data.attribute(index).numValues();
+    int numClasses = data.numClasses();
+    double[][] counts = new double[numValues + 1][numClasses];
+    double[] sumCounts = new double[numClasses];
+    double[][] distribution = new double[3][numClasses];
+    Split split = new Split();
+    int numMissing = 0;
+
+    split.m_Distribution = new double[3][numClasses];
+
+    for (int i = 0; i < data.numInstances(); i++){
+      Instance instance = data.instance(i);
+      if (instance.classIsMissing())
+        continue;
+      if (instance.isMissing(index)){
+        numMissing++;
+        counts[numValues][(int) instance.classValue()] += instance.weight();
+      }
+      else
+        counts[(int) instance.value(index)][(int) instance.classValue()] += instance.weight();
+    }
+
+    for (int v = 0; v < numValues; v++)
+      for (int k = 0; k < numClasses; k++)
+        sumCounts[k] += counts[v][k];
+
+    System.arraycopy(counts[numValues], 0, distribution[2], 0, numClasses);
+
+    for (int v = 0; v < numValues; v++){
+      for (int k = 0; k < numClasses; k++){
+        distribution[0][k] = counts[v][k];
+        distribution[1][k] = sumCounts[k] - counts[v][k];
+      }
+      double value = ContingencyTables.entropyConditionedOnRows(distribution);
+      if (Utils.sm(value, split.m_Value)){
+        split.m_Value = value;
+        split.m_SplitPoint = v;
+        for (int j = 0; j < 3; j++)
+          System.arraycopy(distribution[j], 0, split.m_Distribution[j], 0, numClasses);
+      }
+    }
+
+    if (numMissing == 0)
+      System.arraycopy(sumCounts, 0, split.m_Distribution[2], 0, numClasses);
+
+    return split;
+  }
+
+  /**
+   * Split over a numeric attribute with a nominal class: value &lt;= split point against
+   * the rest, minimizing the class entropy conditioned on the branches. The split points are
+   * the midpoints between consecutive values, taken in the given order.
+   *
+   * @param data The training instances.
+   * @param index The attribute index.
+   * @param order The instances indexes sorted by the attribute (those with missing value at the end).
+   * @param numKnown The number of instances without missing value.
+   *
+   * @return The split, or null if the instances are not in the given order.
+   */
+  private static Split splitNumericNominal(Instances data, int index, int[] order, int numKnown){
+
+    int numClasses = data.numClasses();
+    double[][] distribution = new double[3][numClasses];
+    double[] sumCounts = new double[numClasses];
+    Split split = new Split();
+    int numMissing = 0;
+
+    split.m_Distribution = new double[3][numClasses];
+
+    for (int i = numKnown; i < order.length; i++){
+      Instance instance = data.instance(order[i]);
+      if (!instance.isMissing(index))
+        return null;
+      if (!instance.classIsMissing()){
+        numMissing++;
+        distribution[2][(int) instance.classValue()] += instance.weight();
+      }
+    }
+
+    for (int i = 0; i < numKnown; i++){
+      Instance instance = data.instance(order[i]);
+      if (!instance.classIsMissing())
+        distribution[1][(int) instance.classValue()] += instance.weight();
+    }
+
+    System.arraycopy(distribution[1], 0, sumCounts, 0, numClasses);
+
+    Instance previous = null;
+    for (int i = 0; i < numKnown; i++){
+      Instance instance = data.instance(order[i]);
+      if (instance.isMissing(index) || (previous != null && instance.value(index) < previous.value(index)))
+        return null;
+      if (instance.classIsMissing())
+        continue;
+      if (previous != null){
+        int label = (int) previous.classValue();
+        distribution[0][label] += previous.weight();
+        distribution[1][label] -= previous.weight();
+        if (Utils.sm(previous.value(index), instance.value(index))){
+          double value = ContingencyTables.entropyConditionedOnRows(distribution);
+          if (Utils.sm(value, split.m_Value)){
+            split.m_Value = value;
+            split.m_SplitPoint = (previous.value(index) + instance.value(index)) / 2.0;
+            for (int j = 0; j < 3; j++)
+              System.arraycopy(distribution[j], 0, split.m_Distribution[j], 0, numClasses);
+          }
+        }
+      }
+      previous = instance;
+    }
+
+    if (numMissing == 0)
+      System.arraycopy(sumCounts, 0, split.m_Distribution[2], 0, numClasses);
+
+    return split;
+  }
+
+  /**
+   * Split over a nominal attribute with a numeric class: value == v against the rest,
+   * minimizing the class variance within the branches.
+   *
+   * @param data The training instances.
+   * @param index The attribute index.
+   *
+   * @return The split.
+   */
+  private static Split splitNominalNumeric(Instances data, int index){
+
+    int numValues = data.attribute(index).numValues();
+    double[] sums = new double[numValues + 1];
+    double[] sumsSquared = new double[numValues + 1];
+    double[] sumsOfWeights = new double[numValues + 1];
+    double[][] branchSums = new double[3][1];
+    double[] branchSquared = new double[3];
+    double[] branchWeights = new double[3];
+    double totalSum = 0, totalWeight = 0;
+    Split split = new Split();
+
+    split.m_Distribution = new double[3][1];
+
+    for (int i = 0; i < data.numInstances(); i++){
+      Instance instance = data.instance(i);
+      if (instance.classIsMissing())
+        continue;
+      int v = instance.isMissing(index) ? numValues : (int) instance.value(index);
+      double y = instance.classValue(), w = instance.weight();
+      sums[v] += y * w;
+      sumsSquared[v] += y * y * w;
+      sumsOfWeights[v] += w;
+      totalWeight += w;
+      totalSum += y * w;
+    }
+
+    if (Utils.eq(totalWeight, 0))
+      return split;
+
+    double knownSum = 0, knownSquared = 0, knownWeight = 0;
+    for (int v = 0; v < numValues; v++){
+      knownWeight += sumsOfWeights[v];
+      knownSquared += sumsSquared[v];
+      knownSum += sums[v];
+    }
+
+    branchSums[2][0] = sums[numValues];
+    branchSquared[2] = sumsSquared[numValues];
+    branchWeights[2] = sumsOfWeights[numValues];
+
+    for (int v = 0; v < numValues; v++){
+      branchSums[0][0] = sums[v];
+      branchSquared[0] = sumsSquared[v];
+      branchWeights[0] = sumsOfWeights[v];
+      branchSums[1][0] = knownSum - sums[v];
+      branchSquared[1] = knownSquared - sumsSquared[v];
+      branchWeights[1] = knownWeight - sumsOfWeights[v];
+      double value = variance(branchSums, branchSquared, branchWeights);
+      if (Utils.sm(value, split.m_Value)){
+        split.m_Value = value;
+        split.m_SplitPoint = v;
+        means(split.m_Distribution, branchSums, branchWeights, totalSum / totalWeight);
+      }
+    }
+
+    return split;
+  }
+
+  /**
+   * Split over a numeric attribute with a numeric class: value &lt;= split point against the
+   * rest, minimizing the class variance within the branches. The split points are the
+   * midpoints between consecutive values, taken in the given order.
+   *
+   * @param data The training instances.
+   * @param index The attribute index.
+   * @param order The instances indexes sorted by the attribute (those with missing value at the end).
+   * @param numKnown The number of instances without missing value.
+   *
+   * @return The split, or null if the instances are not in the given order.
+   */
+  private static Split splitNumericNumeric(Instances data, int index, int[] order, int numKnown){
+
+    double[][] branchSums = new double[3][1];
+    double[] branchSquared = new double[3];
+    double[] branchWeights = new double[3];
+    double totalSum = 0, totalWeight = 0;
+    Split split = new Split();
+
+    split.m_Distribution = new double[3][1];
+
+    for (int i = 0; i < order.length; i++){
+      Instance instance = data.instance(order[i]);
+      if (instance.isMissing(index) != (i >= numKnown))
+        return null;
+      if (instance.classIsMissing())
+        continue;
+      int branch = i < numKnown ? 1 : 2;
+      double y = instance.classValue(), w = instance.weight();
+      branchSums[branch][0] += y * w;
+      branchSquared[branch] += y * y * w;
+      branchWeights[branch] += w;
+      totalWeight += w;
+      totalSum += y * w;
+    }
+
+    if (Utils.eq(totalWeight, 0))
+      return split;
+
+    Instance previous = null;
+    for (int i = 0; i < numKnown; i++){
+      Instance instance = data.instance(order[i]);
+      if (previous != null && instance.value(index) < previous.value(index))
+        return null;
+      if (instance.classIsMissing())
+        continue;
+      if (previous != null){
+        double y = previous.classValue(), w = previous.weight();
+        branchSums[0][0] += y * w;
+        branchSquared[0] += y * y * w;
+        branchWeights[0] += w;
+        branchSums[1][0] -= y * w;
+        branchSquared[1] -= y * y * w;
+        branchWeights[1] -= w;
+        if (Utils.sm(previous.value(index), instance.value(index))){
+          double value = variance(branchSums, branchSquared, branchWeights);
+          if (Utils.sm(value, split.m_Value)){
+            split.m_Value = value;
+            split.m_SplitPoint = (previous.value(index) + instance.value(index)) / 2.0;
+            means(split.m_Distribution, branchSums, branchWeights, totalSum / totalWeight);
+          }
+        }
+      }
+      previous = instance;
+    }
+
+    return split;
+  }
+
+  /**
+   * The weighted sum of the class variances of the branches.
+   *
+   * @param sums The sums of the weighted class values of each branch.
+   * @param sumsSquared The sums of the weighted squared class values of each branch.
+   * @param sumsOfWeights The sums of the weights of each branch.
+   *
+   * @return The variance.
+   */
+  private static double variance(double[][] sums, double[] sumsSquared, double[] sumsOfWeights){
+
+    double variance = 0;
+
+    for (int i = 0; i < sums.length; i++)
+      if (Utils.gr(sumsOfWeights[i], 0))
+        variance += sumsSquared[i] - ((sums[i][0] * sums[i][0]) / sumsOfWeights[i]);
+
+    return variance;
+  }
+
+  /**
+   * The mean class value of each branch (the overall mean for the empty branches).
+   *
+   * @param means Where the means are written.
+   * @param sums The sums of the weighted class values of each branch.
+   * @param sumsOfWeights The sums of the weights of each branch.
+   * @param mean The overall mean.
+   */
+  private static void means(double[][] means, double[][] sums, double[] sumsOfWeights, double mean){
+    for (int i = 0; i < 3; i++)
+      means[i][0] = !Utils.eq(sumsOfWeights[i], 0) ? sums[i][0] / sumsOfWeights[i] : mean;
+  }
+
+  /**
+   * The order of the instances of a dataset by each numeric attribute.
+   */
+  private static class SortedAttributes{
+
+    /** The number of instances. */
+    private int m_NumInstances;
+
+    /** The indexes of the instances sorted by each numeric attribute (null for the nominal ones). */
+    private int[][] m_Order;
+
+    /** The number of instances without missing value of each numeric attribute. */
+    private int[] m_NumKnown;
+
+    /**
+     * Sort the instances by each numeric attribute, with the missing values at the end.
+     *
+     * @param data The instances.
+     */
+    public SortedAttributes(Instances data){
+
+      int numInstances = data.numInstances();
+
+      m_NumInstances = numInstances;
+      m_Order = new int[data.numAttributes()][];
+      m_NumKnown = new int[data.numAttributes()];
+
+      double[] values = new double[numInstances];
+      int[] known = new int[numInstances];
+
+      for (int i = 0; i < m_Order.length; i++){
+
+        if (!data.attribute(i).isNumeric())
+          continue;
+
+        int numKnown = 0, numMissing = 0;
+        int[] order = new int[numInstances];
+
+        for (int j = 0; j < numInstances; j++)
+          if (data.instance(j).isMissing(i))
+            order[numInstances - ++numMissing] = j;
+          else{
+            known[numKnown] = j;
+            values[numKnown++] = data.instance(j).value(i);
+          }
+
+        double[] knownValues = new double[numKnown];
+        System.arraycopy(values, 0, knownValues, 0, numKnown);
+        int[] sorted = Utils.sort(knownValues);
+
+        for (int j = 0; j < numKnown; j++)
+          order[j] = known[sorted[j]];
+
+        m_Order[i] = order;
+        m_NumKnown[i] = numKnown;
+      }
+    }
+
+    /**
+     * Can the orders be used with a dataset? (the values are checked while sweeping)
+     *
+     * @param data The dataset.
+     *
+     * @return True if it has the same number of instances and numeric attributes.
+     */
+    public boolean isOf(Instances data){
+
+      if (data.numInstances() != m_NumInstances || data.numAttributes() != m_Order.length)
+        return false;
+
+      for (int i = 0; i < m_Order.length; i++)
+        if (data.attribute(i).isNumeric() != (m_Order[i] != null))
+          return false;
+
+      return true;
+    }
+
+    public int[] order(int attIndex){
+      return m_Order[attIndex];
+    }
+
+    public int numKnown(int attIndex){
+      return m_NumKnown[attIndex];
+    }
+  }
+
+  /**
+   * Get the branch of an instance (the same as DecisionStump).
+   *
+   * @param instance The instance.
+   *
+   * @return 0 (value &lt;= split point or == for nominal attributes), 1 (the rest) or 2 (missing value).
+   */
+  private int whichSubset(Instance instance){
+
+    if (instance.isMissing(m_AttIndex))
+      return 2;
+
+    if (instance.attribute(m_AttIndex).isNominal())
+      return (int) instance.value(m_AttIndex) == m_SplitPoint ? 0 : 1;
+
+    return Utils.smOrEq(instance.value(m_AttIndex), m_SplitPoint) ? 0 : 1;
+  }
+
+  /**
+   * Calculates the class membership probabilities for the given test instance (for a
+   * numeric class, the predicted value).
+   *
+   * @param instance the instance to be classified
+   *
+   * @return predicted class probability distribution
+   */
+  public double[] distributionForInstance(Instance instance){
+    return m_Distribution[whichSubset(instance)];
+  }
+
+  /** @return The attribute used for splitting. */
+  public int getAttIndex(){
+    return m_AttIndex;
+  }
+
+  /** @return The split point (the value index for nominal attributes). */
+  public double getSplitPoint(){
+    return m_SplitPoint;
+  }
+
+  /** @return True if the attribute used for splitting is nominal. */
+  public boolean isNominalSplit(){
+    return m_Instances.attribute(m_AttIndex).isNominal();
+  }
+
+  /** @return The distributions of the branches (see whichSubset); they must not be modified. */
+  public double[][] getDistribution(){
+    return m_Distribution;
+  }
+
+  /**
+   * Returns a description of the stump.
+   *
+   * @return A description of the stump.
+   */
+  public String toString(){
+
+    if (m_Instances == null)
+      return "Presorted stump: No model built yet.";
+
+    Attribute attribute = m_Instances.attribute(m_AttIndex);
+    String[] branches = new String[3];
+
+    if (attribute.isNominal()){
+      branches[0] = attribute.name() + " = " + attribute.value((int) m_SplitPoint);
+      branches[1] = attribute.name() + " != " + attribute.value((int) m_SplitPoint);
+    }
+    else{
+      branches[0] = attribute.name() + " <= " + m_SplitPoint;
+      branches[1] = attribute.name() + " > " + m_SplitPoint;
+    }
+    branches[2] = attribute.name() + " is missing";
+
+    StringBuffer text = new StringBuffer("Presorted Stump\n\nClassifications\n\n");
+
+    for (int i = 0; i < 3; i++){
+      text.append(branches[i] + " : ");
+      if (m_Instances.classAttribute().isNominal())
+        text.append(m_Instances.classAttribute().value(Utils.maxIndex(m_Distribution[i])));
+      else
+        text.append(m_Distribution[i][0]);
+      text.append("\n");
+    }
+
+    return text.toString();
+  }
+
+  /**
+   * Returns an enumeration of all the available options.
+   *
+   * @return an enumeration of all available options
+   */
+  public Enumeration listOptions(){
+
+    Vector newVector = new Vector(1);
+
+    newVector.addElement(new Option(
+      "\tNumber of threads used to sweep the attributes.\n"
+      + "\t(default 1)",
+      "P", 1, "-P <threads>"));
+
+    return newVector.elements();
+  }
+
+  /**
+   * Parses a given list of options. Valid options are:<p>
+   *
+   * -P threads <br>
+   * Number of threads used to sweep the attributes (default 1).<p>
+   *
+   * @param options the list of options as an array of strings
+   * @exception Exception if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception{
+
+    String numThreads = Utils.getOption('P', options);
+    setNumThreads(numThreads.length() != 0 ? Integer.parseInt(numThreads) : 1);
+  }
+
+  /**
+   * Gets the current settings of the Classifier.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  public String[] getOptions(){
+    return new String[]{"-P", "" + getNumThreads()};
+  }
+
+  /** @param numThreads The number of threads used to sweep the attributes (values lesser than 1 are taken as 1). */
+  public void setNumThreads(int numThreads){
+    m_NumThreads = Math.max(1, numThreads);
+  }
+
+  public int getNumThreads(){
+    return m_NumThreads;
+  }
+
+  public static String numThreadsTipText(){
+    return "Set the number of threads used to sweep the attributes.";
+  }
+
+  /**
+   * Main method for testing this class.
+   *
+   * @param argv the options
+   */
+  public static void main(String[] argv){
+
+    try{
+      System.out.println(Evaluation.evaluateModel(new PresortedStump(), argv));
+    }
+    catch (Exception e){
+      System.err.println(e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    PseudoClassInstance.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.core.Instance;
+
+/**
+ * An instance which shares the attribute values of another one but has its own class value
+ * (the "pseudo class") and its own weight. It's used by AdaBoostMH to give each binary
+ * booster its own labels and weights over the same attribute values storage, so the
+ * boosters can be trained at the same time and no attribute vector is copied when the
+ * instances are relabeled.
+ *
+ * The class index is fixed at construction time: the dataset of the instance must not
+ * change its format (ie. GentleAdaBoost, which inserts a new class attribute, works over
+ * its own copy of the instances when it is used by a meta-algorithm).
+ *
+ * Setting the value of an attribute other than the class copies the attribute values
+ * (as weka's Instance does), so the shared values are never modified.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class PseudoClassInstance extends Instance{
+
+  /** The class value of this instance. */
+  private double m_PseudoClass;
+
+  /** The index of the class attribute. */
+  private int m_ClassIndex;
+
+  /**
+   * Constructor: the instance shares the attribute values of the given one (and its dataset
+   * and weight) but with the pseudo class as the class value.
+   *
+   * @param instance The instance whose attribute values will be shared.
+   * @param classIndex The index of the class attribute.
+   * @param pseudoClass The class value.
+   */
+  public PseudoClassInstance(Instance instance, int classIndex, double pseudoClass){
+    super(instance);
+    m_Dataset = instance.dataset();
+    m_ClassIndex = classIndex;
+    m_PseudoClass = pseudoClass;
+  }
+
+  public double value(int attIndex){
+    if (attIndex == m_ClassIndex)
+      return m_PseudoClass;
+    return m_AttValues[attIndex];
+  }
+
+  public double valueSparse(int indexOfIndex){
+    return value(indexOfIndex);
+  }
+
+  public boolean isMissing(int attIndex){
+    return Instance.isMissingValue(value(attIndex));
+  }
+
+  public boolean isMissingSparse(int indexOfIndex){
+    return isMissing(indexOfIndex);
+  }
+
+  public void setValue(int attIndex, double value){
+    if (attIndex == m_ClassIndex)
+      m_PseudoClass = value;
+    else
+      super.setValue(attIndex, value);
+  }
+
+  public void setValueSparse(int indexOfIndex, double value){
+    setValue(indexOfIndex, value);
+  }
+
+  public double[] toDoubleArray(){
+    double[] values = super.toDoubleArray();
+    values[m_ClassIndex] = m_PseudoClass;
+    return values;
+  }
+
+  /**
+   * Share the attribute values of another instance, with another class value and weight
+   * (so this instance can be reused, see WeightedResampler).
+   *
+   * @param attValues The attribute values.
+   * @param pseudoClass The class value.
+   * @param weight The weight.
+   */
+  void share(double[] attValues, double pseudoClass, double weight){
+    m_AttValues = attValues;
+    m_PseudoClass = pseudoClass;
+    m_Weight = weight;
+  }
+
+  /**
+   * Produces a shallow copy of this instance: the attribute values are still shared.
+   *
+   * @return The copy.
+   */
+  public Object copy(){
+    return new PseudoClassInstance(this, m_ClassIndex, m_PseudoClass);
+  }
+}
@@ -27,10 +27,6 @@ import weka.classifiers.DistributionClassifier;
 import weka.classifiers.Evaluation;
 import weka.core.Instance;
 import weka.core.Instances;
-import weka.core.SerializedObject;
-
-import java.util.ArrayList;
-import java.util.Random;
 
 /**
  * Class for boosting using RealAdaBoost; it uses class probability estimates
@@ -50,9 +46,39 @@ public class RealAdaBoost extends Booster implements MulticlassExtensibleBooster
   /** Must this booster use its own train data copy?. */
   private boolean m_UseOwnTrainData = true;
 
-  /** Base classifiers used for boosting. 
-   * @associates DistributionClassifier*/
-  private ArrayList m_Classifiers;
+  /** Base classifiers used for boosting (they have no vote weight). */
+  private WeightedClassifierVector m_Classifiers;
+
+  /** How the stumps leaves vote in confidenceAndSign. */
+  private final static EnsembleCompiler.LeafVote CONFIDENCE_VOTE = new EnsembleCompiler.LeafVote(){
+    public double vote(double weight, double[] distribution){
+      return realValuedClassifierContribution(distribution[1]);
+    }
+
+    public int target(double[] distribution){
+      return 0;
+    }
+  };
+
+  /**
+   * How the stumps leaves vote in distributionForInstance: the negative votes are added to
+   * the class 0 and the positive ones to the class 1.
+   */
+  private final static EnsembleCompiler.LeafVote CLASS_VOTE = new EnsembleCompiler.LeafVote(){
+    public double vote(double weight, double[] distribution){
+      return Math.abs(realValuedClassifierContribution(distribution[1]));
+    }
+
+    public int target(double[] distribution){
+      return realValuedClassifierContribution(distribution[1]) > 0 ? 1 : 0;
+    }
+  };
+
+  /** Compiled form of the ensemble (if it's made of decision stumps) for confidenceAndSign. */
+  private EnsembleCompiler m_CompiledConfidences = new EnsembleCompiler(CONFIDENCE_VOTE);
+
+  /** Compiled form of the ensemble (if it's made of decision stumps) for distributionForInstance. */
+  private EnsembleCompiler m_CompiledVotes = new EnsembleCompiler(CLASS_VOTE);
 
   /**
    * Boosting method.
@@ -87,10 +113,16 @@ public class RealAdaBoost extends Booster implements MulticlassExtensibleBooster
       m_TrainData.deleteWithMissingClass();
       if (m_TrainData.numInstances() == 0)
         throw new Exception("No train instances without class missing!");
+
+      //Hold out the validation set if the booster must stop early.
+      m_TrainData = initializeEarlyStopping(m_TrainData);
     }
-    else
-    //We entrust to the "caller class" the correctness of the train data instances.
+    else{
+      //We entrust to the "caller class" the correctness of the train data instances
+      //(and the stopping decision).
       m_TrainData = data;
+      m_EarlyStopping = null;
+    }
 
     //Set up the number of instances.
     m_NumInstances = m_TrainData.numInstances();
@@ -102,8 +134,11 @@ public class RealAdaBoost extends Booster implements MulticlassExtensibleBooster
     //Set up the number of performed iterations.
     m_NumIterations = 0;
 
+    //Restart the resampling random numbers stream.
+    initializeResampleRandom();
+
     //Initialize the classifiers array.
-    m_Classifiers = new ArrayList(m_InitialIterations);
+    m_Classifiers = new WeightedClassifierVector(m_InitialIterations);
 
     //We can now perform new iterations.
     m_BoosterReady = true;
@@ -123,7 +158,6 @@ public class RealAdaBoost extends Booster implements MulticlassExtensibleBooster
   protected void buildClassifierWithWeights(int numIterations) throws Exception{
 
     DistributionClassifier baseClassifier;
-    SerializedObject serializedClassifier = new SerializedObject(m_Classifier);
 
     if (m_Debug)
       System.err.println("Boosting without resampling.");
@@ -135,17 +169,26 @@ public class RealAdaBoost extends Booster implements MulticlassExtensibleBooster
         System.err.println("Training classifier " + (m_NumIterations + 1));
 
       //Copy the base classifier.
-      baseClassifier = (DistributionClassifier) serializedClassifier.getObject();
+      enterPhase(IterationProfile.CLASSIFIER_CREATION, 0);
+      baseClassifier = (DistributionClassifier) m_ClassifierFactory.newClassifier();
 
       // Build the classifier.
+      enterPhase(IterationProfile.TRAINING, m_NumInstances);
+      m_DataView.syncWeights();
       baseClassifier.buildClassifier(m_TrainData);
 
+      //Classify the training instances.
+      enterPhase(IterationProfile.PREDICTION, m_NumInstances);
+      m_DataView.predictDistributions(baseClassifier);
+
       //Weights redistribution.
+      enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
       reweight(baseClassifier);
 
       //"Commit".
       m_Classifiers.add(baseClassifier);
       m_NumIterations++;
+      iterationPerformed();
     }
   }
 
@@ -159,10 +202,8 @@ public class RealAdaBoost extends Booster implements MulticlassExtensibleBooster
    */
   protected void buildClassifierUsingResampling(int numIterations) throws Exception{
 
-    Random randomInstance = new Random(m_ResampleSeed); //Random number generator for resample.
     Instances sample;              //The resampled training dataset.
     DistributionClassifier baseClassifier;
-    SerializedObject serializedClassifier = new SerializedObject(m_Classifier);
 
     if (m_Debug)
       System.err.println("Boosting with resampling.");
@@ -175,20 +216,29 @@ public class RealAdaBoost extends Booster implements MulticlassExtensibleBooster
       }
 
       // Resample.
-      sample = m_TrainData.resampleWithWeights(randomInstance);
+      enterPhase(IterationProfile.RESAMPLING, m_NumInstances);
+      sample = m_Resampler.resample(m_DataView, m_ResampleRandom);
 
       //Copy the base classifier.
-      baseClassifier = (DistributionClassifier) serializedClassifier.getObject();
+      enterPhase(IterationProfile.CLASSIFIER_CREATION, 0);
+      baseClassifier = (DistributionClassifier) m_ClassifierFactory.newClassifier();
 
       // Build the classifier.
+      enterPhase(IterationProfile.TRAINING, sample.numInstances());
       baseClassifier.buildClassifier(sample);
 
+      //Classify the training instances.
+      enterPhase(IterationProfile.PREDICTION, m_NumInstances);
+      m_DataView.predictDistributions(baseClassifier);
+
       //Weights redistribution.
+      enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
       reweight(baseClassifier);
 
       //"Commit"
       m_Classifiers.add(baseClassifier);
       m_NumIterations++;
+      iterationPerformed();
     }
   }
 
@@ -208,8 +258,18 @@ public class RealAdaBoost extends Booster implements MulticlassExtensibleBooster
   private double realValuedClassifierContribution(Instance instance, DistributionClassifier classifier)
     throws Exception{
 
-    double probOfOne = classifier.distributionForInstance(instance)[1];
+    return realValuedClassifierContribution(classifier.distributionForInstance(instance)[1]);
+  }
 
+  /**
+   * Compute the contribution/vote of a classifier to the classification of an instance, using
+   * the probability estimate for the class 1 returned by that classifier.
+   *
+   * @param probOfOne The probability of the class 1.
+   *
+   * @return The vote of the classifier: <0 --> Class 0, otherwise class 1; absolute value, the confidence.
+   */
+  private static double realValuedClassifierContribution(double probOfOne){
     return Math.log((probOfOne + NO_DIVISION_BY_ZERO) / (1 - probOfOne + NO_DIVISION_BY_ZERO)) / 2;
   }
 
@@ -218,19 +278,21 @@ public class RealAdaBoost extends Booster implements MulticlassExtensibleBooster
    *
    * w(i) = w(i)*exp(-y(i)rvc(x(i))
    *
+   * The classifier's distributions are the ones previously stored in m_DataView.
+   *
    * @param classifier The classifier to be used to calculate new instances weights.
    */
   private void reweight(DistributionClassifier classifier) throws Exception{
 
-    Instance instance;
     double newWeightsSum = 0;
+    double[] weights = m_DataView.weights();
+    int[] labels = m_DataView.labels();
+    double[][] distributions = m_DataView.distributions();
 
     for (int i = 0; i < m_NumInstances; i++){
-      instance = m_TrainData.instance(i);
-      instance.setWeight(instance.weight() *
-                         Math.exp((instance.classValue() == 0 ? 1 : -1) *
-                                  realValuedClassifierContribution(instance, classifier)));
-      newWeightsSum += instance.weight();
+      weights[i] *= Math.exp((labels[i] == 0 ? 1 : -1) *
+                             realValuedClassifierContribution(distributions[i][1]));
+      newWeightsSum += weights[i];
     }
 
     normalizeWeights(newWeightsSum);
@@ -247,11 +309,34 @@ public class RealAdaBoost extends Booster implements MulticlassExtensibleBooster
    * @throws Exception if the instance cant be classified succesfully.
    */
   public double confidenceAndSign(Instance instance) throws Exception{
+    return confidenceAndSign(instance, m_NumIterations, null);
+  }
+
+  /**
+   * Return the class predicted (<0 == class 0 and >0 == class 1) and the
+   * confidence of this prediction (its absolute value) using only the first numIterations
+   * base classifiers. No scratch memory is needed, so the context is not used.
+   *
+   * @param instance The instance to be classified
+   * @param numIterations Number of base classifiers to use
+   * @param context The scoring context of the current thread (it can be null)
+   *
+   * @return The class predicted and its confidence.
+   *
+   * @throws Exception If numIterations is incorrect or the instance can't be classified.
+   */
+  public double confidenceAndSign(Instance instance, int numIterations, ScoringContext context) throws Exception{
+
+    checkNumIterations(numIterations);
+
+    if (m_CompiledConfidences.compile(m_Classifiers))
+      return m_CompiledConfidences.sumVotes(instance, numIterations);
 
     double sumTmp = 0;
+    Classifier[] classifiers = m_Classifiers.classifiers();
 
-    for (int i = 0; i < m_NumIterations; i++)
-      sumTmp += realValuedClassifierContribution(instance, (DistributionClassifier) m_Classifiers.get(i));
+    for (int i = 0; i < numIterations; i++)
+      sumTmp += realValuedClassifierContribution(instance, (DistributionClassifier) classifiers[i]);
 
     return sumTmp;
   }
@@ -285,23 +370,125 @@ public class RealAdaBoost extends Booster implements MulticlassExtensibleBooster
    * @exception Exception if instance could not be classified successfully
    */
   public double[] distributionForInstance(Instance instance) throws Exception{
+    return (double[]) distributionForInstance(instance, threadContext()).clone();
+  }
+
+  /**
+   * Calculates the class membership probabilities for the given test instance using only
+   * the first numIterations base classifiers, without allocating memory: the distribution
+   * returned belongs to the context.
+   *
+   * @param instance the instance to be classified
+   * @param numIterations number of base classifiers to use
+   * @param context the scoring context of the current thread
+   *
+   * @return predicted class probability distribution
+   *
+   * @exception Exception if numIterations is incorrect or instance could not be classified successfully
+   */
+  public double[] distributionForInstance(Instance instance, int numIterations, ScoringContext context) throws Exception{
+
+    checkNumIterations(numIterations);
+
+    double[] distributionForInstance = context.buffer(0, 2);
+
+    if (m_CompiledVotes.compile(m_Classifiers)){
+      m_CompiledVotes.addVotes(instance, numIterations, distributionForInstance);
+      weka.core.Utils.normalize(distributionForInstance, distributionForInstance[0] + distributionForInstance[1]);
+      return distributionForInstance;
+    }
 
     double sumOfPositives = 0;
     double sumOfNegatives = 0;
+    Classifier[] classifiers = m_Classifiers.classifiers();
 
-    for (int i = 0; i < m_NumIterations; i++){
-      double rvcc = realValuedClassifierContribution(instance, (DistributionClassifier) m_Classifiers.get(i));
+    for (int i = 0; i < numIterations; i++){
+      double rvcc = realValuedClassifierContribution(instance, (DistributionClassifier) classifiers[i]);
       if (rvcc > 0)
         sumOfPositives += rvcc;
       else
         sumOfNegatives -= rvcc;
     }
 
-    double[] distributionForInstance = new double[]{sumOfNegatives, sumOfPositives};
+    distributionForInstance[0] = sumOfNegatives;
+    distributionForInstance[1] = sumOfPositives;
     weka.core.Utils.normalize(distributionForInstance, sumOfPositives + sumOfNegatives);
     return distributionForInstance;
   }
 
+  /**
+   * Compute confidenceAndSign for a batch of instances using only the first numIterations
+   * base classifiers; each base classifier classifies the whole batch before the next one.
+   *
+   * @param instances The instances to be classified
+   * @param numIterations Number of base classifiers to use
+   * @param out The array where the confidences and signs are written
+   *
+   * @throws Exception if an error happens.
+   */
+  public void confidencesAndSigns(Instance[] instances, int numIterations, double[] out) throws Exception{
+
+    checkNumIterations(numIterations);
+
+    if (m_CompiledConfidences.compile(m_Classifiers)){
+      for (int j = 0; j < instances.length; j++)
+        out[j] = m_CompiledConfidences.sumVotes(instances[j], numIterations);
+      return;
+    }
+
+    Classifier[] classifiers = m_Classifiers.classifiers();
+
+    java.util.Arrays.fill(out, 0, instances.length, 0);
+
+    for (int i = 0; i < numIterations; i++){
+      DistributionClassifier classifier = (DistributionClassifier) classifiers[i];
+      for (int j = 0; j < instances.length; j++)
+        out[j] += realValuedClassifierContribution(instances[j], classifier);
+    }
+  }
+
+  /**
+   * Calculates the class membership probabilities of a batch of instances using only the
+   * first numIterations base classifiers; each base classifier classifies the whole batch
+   * before the next one.
+   *
+   * @param data The instances to be classified.
+   * @param numIterations Number of base classifiers to use.
+   * @param out The matrix where the distributions are written.
+   *
+   * @throws Exception If the parameters are incorrect or an instance can't be classified.
+   */
+  public void distributionsForInstances(Instances data, int numIterations, double[][] out) throws Exception{
+
+    checkBatch(data, numIterations, out);
+
+    int numInstances = data.numInstances();
+
+    for (int j = 0; j < numInstances; j++)
+      out[j][0] = out[j][1] = 0;
+
+    if (m_CompiledVotes.compile(m_Classifiers))
+      for (int j = 0; j < numInstances; j++)
+        m_CompiledVotes.addVotes(data.instance(j), numIterations, out[j]);
+    else{
+      Classifier[] classifiers = m_Classifiers.classifiers();
+
+      for (int i = 0; i < numIterations; i++){
+        DistributionClassifier classifier = (DistributionClassifier) classifiers[i];
+        for (int j = 0; j < numInstances; j++){
+          double rvcc = realValuedClassifierContribution(data.instance(j), classifier);
+          if (rvcc > 0)
+            out[j][1] += rvcc;
+          else
+            out[j][0] -= rvcc;
+        }
+      }
+    }
+
+    for (int j = 0; j < numInstances; j++)
+      weka.core.Utils.normalize(out[j], out[j][0] + out[j][1]);
+  }
+
   /**
    * Get the classifier's vote for the instance; the (vectorial) sum of all base classifiers vote vectors must be
    * the final combined hypothesis of the booster (obviously, not normalized).
@@ -341,6 +528,20 @@ public class RealAdaBoost extends Booster implements MulticlassExtensibleBooster
     return confidenceAndSign(instance) < 0 ? 0 : 1;
   }
 
+  /**
+   * Classify the given instance using only the first numIterations base classifiers.
+   *
+   * @param instance the instance to be classified
+   * @param numIterations number of base classifiers to use
+   * @param context the scoring context of the current thread
+   * @return the predicted class for the instance
+   * @exception Exception if numIterations is incorrect or the instance can't be classified
+   */
+  public double classifyInstance(Instance instance, int numIterations, ScoringContext context) throws Exception{
+
+    return confidenceAndSign(instance, numIterations, context) < 0 ? 0 : 1;
+  }
+
   /**
    * Returns description of the boosted classifier.
    *
@@ -392,7 +593,31 @@ public class RealAdaBoost extends Booster implements MulticlassExtensibleBooster
     if (numClassifier < 0 || numClassifier >= m_NumIterations)
       throw new Exception("Classifier's number incorrect.");
     //It would be better to return a copy; it's slower too.
-    return (Classifier) m_Classifiers.get(numClassifier);
+    return m_Classifiers.get(numClassifier);
+  }
+
+  /**
+   * Eliminate the last numIterations performed from the final combined hypothesis,
+   * releasing their base classifiers.
+   *
+   * @param numIterations The number of iterations to get rid of
+   * @throws Exception If numIterations parameter is incorrect
+   */
+  public void purgeIterations(int numIterations) throws Exception{
+    super.purgeIterations(numIterations);
+    m_Classifiers.truncate(m_NumIterations);
+  }
+
+  /**
+   * Give a frozen copy its own base classifiers vector and ensemble compilers.
+   *
+   * @throws Exception If the model can't be copied
+   */
+  protected void copyModel() throws Exception{
+    if (m_Classifiers != null)
+      m_Classifiers = m_Classifiers.copy();
+    m_CompiledConfidences = new EnsembleCompiler(CONFIDENCE_VOTE);
+    m_CompiledVotes = new EnsembleCompiler(CLASS_VOTE);
   }
 
   /**
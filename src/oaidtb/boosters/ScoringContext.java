@@ -0,0 +1,196 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ScoringContext.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.lang.reflect.Field;
+
+/**
+ * Scratch storage to classify instances without allocating memory. The boosters take from
+ * it the arrays they need to compute a prediction (the distribution returned included) and
+ * an instance which is "bound" to the test instance attribute values and to the format of
+ * their train data, instead of copying the test instance.
+ *
+ * Once the first call has allocated the buffers, the following ones (with the same
+ * classifier) don't allocate anything in the boosters; the base classifiers can still do
+ * (ie. weka's DistributionClassifier.classifyInstance allocates the distribution), but the
+ * decision stumps ensembles, which are compiled (see EnsembleCompiler), don't.
+ *
+ * A context must be used only by one thread: each scoring thread needs its own one. The
+ * arrays returned by the boosters belong to the context and they are overwritten by the
+ * next call which uses it. Meta-boosters (ie. AdaBoostMH) give the child context to the
+ * boosters they use, so the buffers of each level don't overlap. The methods without a
+ * context argument (ie. distributionForInstance(instance)) use a context per thread and
+ * classifier (see PerThread and Booster.threadContext), but they return a copy of the
+ * distribution, as weka's classifiers do.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class ScoringContext{
+
+  /** Number of double buffers of a context. */
+  public final static int NUM_BUFFERS = 4;
+
+  /** Instance attribute values field, or null if it can't be accessed. */
+  private static Field m_AttValuesField;
+
+  static{
+    try{
+      m_AttValuesField = Instance.class.getDeclaredField("m_AttValues");
+      m_AttValuesField.setAccessible(true);
+    }
+    catch (Exception e){
+      m_AttValuesField = null;
+    }
+  }
+
+  /** The double buffers (created on demand). */
+  private double[][] m_Buffers;
+
+  /** The int buffer. */
+  private int[] m_Indexes;
+
+  /** The instance bound to the test instances. */
+  private BoundInstance m_Instance;
+
+  /** The context for the classifiers used by the one using this context. */
+  private ScoringContext m_Child;
+
+  /**
+   * Get a double buffer filled with zeros.
+   *
+   * @param index The buffer index (0 to NUM_BUFFERS - 1).
+   * @param length The buffer length.
+   *
+   * @return The buffer; it's reallocated only if its length changes.
+   */
+  public double[] buffer(int index, int length){
+
+    if (m_Buffers == null)
+      m_Buffers = new double[NUM_BUFFERS][];
+
+    double[] buffer = m_Buffers[index];
+
+    if (buffer == null || buffer.length != length)
+      m_Buffers[index] = buffer = new double[length];
+    else
+      java.util.Arrays.fill(buffer, 0);
+
+    return buffer;
+  }
+
+  /**
+   * Get the int buffer (not cleared).
+   *
+   * @param length The buffer length.
+   *
+   * @return The buffer; it's reallocated only if its length changes.
+   */
+  public int[] indexes(int length){
+
+    if (m_Indexes == null || m_Indexes.length != length)
+      m_Indexes = new int[length];
+
+    return m_Indexes;
+  }
+
+  /**
+   * Get an instance with the attribute values and the weight of the given one which belongs
+   * to the given dataset. The context instance is reused (it shares the attribute values of
+   * the given instance) until the next call; if the values can't be shared (ie. sparse
+   * instances), a copy is returned.
+   *
+   * @param instance The instance.
+   * @param dataset The dataset.
+   *
+   * @return The instance bound to the dataset.
+   */
+  public Instance bind(Instance instance, Instances dataset){
+
+    if (instance.dataset() == dataset)
+      return instance;
+
+    if (m_AttValuesField != null && instance.getClass() == Instance.class){
+      if (m_Instance == null)
+        m_Instance = new BoundInstance();
+      try{
+        m_Instance.bind(instance, dataset);
+        return m_Instance;
+      }
+      catch (IllegalAccessException e){
+      }
+    }
+
+    instance = (Instance) instance.copy();
+    instance.setDataset(dataset);
+    return instance;
+  }
+
+  /** @return The context for the classifiers used by the one using this context. */
+  public ScoringContext child(){
+
+    if (m_Child == null)
+      m_Child = new ScoringContext();
+
+    return m_Child;
+  }
+
+  /**
+   * The contexts of the threads which classify with a classifier through the methods
+   * without a context argument (ie. distributionForInstance(instance)): each thread gets
+   * its own context, created the first time it's asked for.
+   */
+  public static class PerThread extends ThreadLocal{
+
+    /** @return A new context for the thread which hasn't got one yet. */
+    protected Object initialValue(){
+      return new ScoringContext();
+    }
+
+    /** @return The context of the current thread. */
+    public ScoringContext context(){
+      return (ScoringContext) get();
+    }
+  }
+
+  /** An instance which can be bound to the attribute values of other instances. */
+  private static class BoundInstance extends Instance{
+
+    /**
+     * Share the attribute values and the weight of an instance and set the dataset.
+     *
+     * @param instance The instance.
+     * @param dataset The dataset.
+     *
+     * @throws IllegalAccessException If the attribute values can't be accessed.
+     */
+    public void bind(Instance instance, Instances dataset) throws IllegalAccessException{
+      m_AttValues = (double[]) m_AttValuesField.get(instance);
+      m_Weight = instance.weight();
+      m_Dataset = dataset;
+    }
+  }
+}
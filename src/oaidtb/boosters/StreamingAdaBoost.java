@@ -0,0 +1,900 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    StreamingAdaBoost.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.classifiers.DistributionClassifier;
+import weka.classifiers.Evaluation;
+import weka.core.*;
+
+import java.io.*;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Enumeration;
+import java.util.Vector;
+
+/**
+ * AdaBoostM1 with decision stumps for datasets which don't fit in memory: the training
+ * instances are never loaded into an Instances object, they are read (from an ARFF file
+ * or, for the weka tools, from an Instances object) once to sample the bin edges of the
+ * attributes (see AttributeBinning) and once more to write them, binned to a byte per
+ * value, to a temporary file. From then on each iteration is a sequential scan of that
+ * file which, for each instance:
+ *
+ * <ul>
+ * <li>applies the reweighting of the previous iteration, predicting its class with the
+ * previous stump from the binned values (so no prediction is cached), and</li>
+ * <li>adds its weight to the class counts of its bins, the sufficient statistics of
+ * the next stump (see BinnedStump.best).</li>
+ * </ul>
+ *
+ * Only the instance weights are kept per instance, in a double array or, when there are
+ * more instances than the maximum allowed in memory, in a memory-mapped temporary file.
+ * The labels are read from the binned file together with the attribute values.
+ *
+ * The weights are normalized during the scan, so their sum doesn't change: if e is the
+ * error of a stump, the instances it misclassifies get their weight multiplied by
+ * 1 / (2 * e) and the rest by 1 / (2 * (1 - e)), which is the AdaBoostM1 reweighting
+ * (see AdaBoostM1.reweight) followed by the normalization.
+ *
+ * From the command line, the option "-F file" trains over the ARFF file (with the class
+ * given by -C) and prints the model; without it the weka evaluation options are used.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class StreamingAdaBoost extends DistributionClassifier
+  implements OptionHandler, WeightedInstancesHandler, IterativeUpdatableClassifier{
+
+  /** Number of iterations performed by buildClassifier. */
+  protected int m_InitialIterations = 10;
+
+  /** The maximum number of bins of the numeric attributes. */
+  protected int m_MaxBins = AttributeBinning.MAX_BINS;
+
+  /** The number of instances sampled to find the bin edges. */
+  protected int m_SampleSize = 20000;
+
+  /** The maximum number of instances whose weights are kept in memory (and not mapped). */
+  protected int m_MaxInMemoryInstances = 1000000;
+
+  /** The seed of the sampling of the bin edges. */
+  protected int m_Seed = 1;
+
+  /** The class index (1 based, 0 means the last attribute) of the ARFF files. */
+  protected int m_ClassIndex = 0;
+
+  /** Send or not debug information to the error stream. */
+  protected boolean m_Debug = false;
+
+  /** The binning of the attributes. */
+  protected AttributeBinning m_Binning;
+
+  /** The number of classes. */
+  protected int m_NumClasses;
+
+  /** The stumps (the first m_NumStumps). */
+  private BinnedStump[] m_Stumps = new BinnedStump[10];
+
+  /** The stumps' vote weights. */
+  private double[] m_StumpWeights = new double[10];
+
+  /** The number of stumps. */
+  private int m_NumStumps;
+
+  /** The temporary file with the binned training instances. */
+  protected transient File m_RowsFile;
+
+  /** The number of training instances. */
+  protected transient int m_NumInstances;
+
+  /** The weights of the training instances. */
+  protected transient InstanceWeights m_Weights;
+
+  /** The sum of the weights of the training instances. */
+  protected transient double m_SumOfWeights;
+
+  /** The last stump, whose reweighting will be applied by the next scan (null if none). */
+  private transient BinnedStump m_Pending;
+
+  /** The weight factors of the instances classified right and wrong by the pending stump. */
+  protected transient double m_RightFactor, m_WrongFactor;
+
+  /** Has a stump with a too big (or null) error stopped the boosting? */
+  protected transient boolean m_Stopped;
+
+  /**
+   * Boosting method. The instances are read without being copied.
+   *
+   * @param data the training data to be used for generating the boosted classifier.
+   *
+   * @exception Exception if the classifier could not be built successfully
+   */
+  public void buildClassifier(Instances data) throws Exception{
+    buildClassifier(new InstancesSource(data));
+  }
+
+  /**
+   * Boosting method. The instances are read from an ARFF file, with the class given by
+   * the class index option, without being loaded into memory.
+   *
+   * @param arffFile The ARFF file with the training data.
+   *
+   * @exception Exception if the file can't be read or the classifier could not be built successfully
+   */
+  public void buildClassifier(File arffFile) throws Exception{
+    buildClassifier(new ArffSource(arffFile, m_ClassIndex - 1));
+  }
+
+  /**
+   * Boosting method: sample the bin edges, write the binned instances and iterate.
+   *
+   * @param source The training instances.
+   *
+   * @exception Exception if the classifier could not be built successfully
+   */
+  protected void buildClassifier(InstanceSource source) throws Exception{
+
+    purgeTrainData();
+    m_Stumps = new BinnedStump[10];
+    m_StumpWeights = new double[10];
+    m_NumStumps = 0;
+
+    Instances header = source.open();
+
+    if (!header.classAttribute().isNominal())
+      throw new Exception("StreamingAdaBoost can't handle a numeric class!");
+
+    m_NumClasses = header.numClasses();
+
+    //First scan: the bin edges.
+    AttributeBinning.Sampler sampler = new AttributeBinning.Sampler(header, m_SampleSize, m_MaxBins, m_Seed);
+    Instance instance;
+
+    while ((instance = source.next()) != null)
+      if (!instance.classIsMissing())
+        sampler.add(instance);
+    source.close();
+
+    if ((m_NumInstances = sampler.numInstances()) == 0)
+      throw new Exception("No train instances without class missing!");
+
+    m_Binning = sampler.binning();
+    m_Weights = new InstanceWeights(m_NumInstances, m_NumInstances > m_MaxInMemoryInstances);
+
+    if (m_Debug)
+      System.err.println("Binning " + m_NumInstances + " instances"
+                         + (m_Weights.isMapped() ? " (weights mapped to a file)." : "."));
+
+    //Second scan: the binned instances.
+    m_RowsFile = File.createTempFile("oaidtb", ".rows");
+    m_RowsFile.deleteOnExit();
+
+    int rowLength = header.numAttributes();
+    byte[] row = new byte[rowLength];
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(m_RowsFile), 1 << 16);
+
+    try{
+      source.open();
+      for (int i = 0; (instance = source.next()) != null;){
+        if (instance.classIsMissing())
+          continue;
+        m_Binning.binRow(instance, row, 0);
+        out.write(row);
+        m_Weights.set(i++, instance.weight());
+        m_SumOfWeights += instance.weight();
+      }
+    }
+    finally{
+      out.close();
+      source.close();
+    }
+
+    nextIterations(m_InitialIterations);
+  }
+
+  /**
+   * Make numIterations iterations, each one a scan of the binned instances. It stops
+   * (without error) if a stump misclassifies half of the weight or more, or none.
+   *
+   * @param numIterations The number of iterations to perform.
+   *
+   * @throws Exception If the classifier is not initialized or the instances can't be read.
+   */
+  public void nextIterations(int numIterations) throws Exception{
+
+    if (m_RowsFile == null)
+      throw new Exception("Booster is not initialized properly.");
+
+    for (; numIterations > 0 && !m_Stopped; numIterations--){
+
+      if (m_Debug)
+        System.err.println("Training classifier " + (m_NumStumps + 1));
+
+      BinnedStump stump = BinnedStump.best(m_Binning, scan(), m_Binning.getHeader().classIndex());
+      double epsilon = stump.getError() / m_SumOfWeights;
+
+      if (epsilon >= 0.5 || epsilon <= 0){
+        if (m_Debug)
+          System.err.println("/**** Exit because of stop criterion ****/ ==> error rate = " + epsilon);
+        m_Stopped = true;
+        //Use the first stump built (it's the only vote, so its weight doesn't matter).
+        if (m_NumStumps == 0)
+          addStump(stump, 1);
+        else if (epsilon <= 0)
+          addStump(stump, calculateBeta(epsilon));
+        return;
+      }
+
+      double beta = calculateBeta(epsilon);
+
+      if (m_Debug)
+        System.err.println("\terror rate = " + epsilon + "  beta = " + beta);
+
+      addStump(stump, beta);
+      m_Pending = stump;
+      m_RightFactor = 1 / (2 * (1 - epsilon));
+      m_WrongFactor = 1 / (2 * epsilon);
+    }
+  }
+
+  /**
+   * Read the binned instances, applying the reweighting of the pending stump and adding
+   * their weights to the class counts of their bins.
+   *
+   * @return The class counts: counts[attribute][bin][class].
+   *
+   * @throws IOException If the binned instances can't be read.
+   */
+  protected double[][][] scan() throws IOException{
+
+    Instances header = m_Binning.getHeader();
+    int numAttributes = header.numAttributes();
+    int classIndex = header.classIndex();
+    double[][][] counts = new double[numAttributes][][];
+
+    for (int i = 0; i < numAttributes; i++)
+      if (i != classIndex)
+        counts[i] = new double[m_Binning.numBins(i) + 1][m_NumClasses];
+
+    int rowsPerBlock = Math.max(1, (1 << 16) / numAttributes);
+    byte[] block = new byte[rowsPerBlock * numAttributes];
+    DataInputStream in = new DataInputStream(new FileInputStream(m_RowsFile));
+
+    try{
+      for (int first = 0; first < m_NumInstances; first += rowsPerBlock){
+
+        int numRows = Math.min(rowsPerBlock, m_NumInstances - first);
+        in.readFully(block, 0, numRows * numAttributes);
+
+        for (int j = 0, offset = 0; j < numRows; j++, offset += numAttributes){
+
+          int label = (block[offset + classIndex] & 0xff) - 1;
+          double weight = m_Weights.get(first + j);
+
+          if (m_Pending != null){
+            weight *= m_Pending.predict(block, offset) == label ? m_RightFactor : m_WrongFactor;
+            m_Weights.set(first + j, weight);
+          }
+
+          for (int i = 0; i < numAttributes; i++)
+            if (i != classIndex)
+              counts[i][block[offset + i] & 0xff][label] += weight;
+        }
+      }
+    }
+    finally{
+      in.close();
+    }
+
+    m_Pending = null;
+    return counts;
+  }
+
+  /**
+   * Calculate the classifier's vote weight in the final combined hypothesis based on its error
+   *
+   * @param error The training error of the base classifier.
+   *
+   * @return The classifier's vote weight in the final combined hypothesis
+   */
+  protected double calculateBeta(double error){
+    return Math.log((1 - error + Booster.NO_DIVISION_BY_ZERO) / (error + Booster.NO_DIVISION_BY_ZERO));
+  }
+
+  /**
+   * Add a stump to the combined hypothesis.
+   *
+   * @param stump The stump.
+   * @param weight The stump's vote weight.
+   */
+  private void addStump(BinnedStump stump, double weight){
+
+    if (m_NumStumps == m_Stumps.length){
+      BinnedStump[] stumps = new BinnedStump[2 * m_NumStumps];
+      double[] weights = new double[2 * m_NumStumps];
+      System.arraycopy(m_Stumps, 0, stumps, 0, m_NumStumps);
+      System.arraycopy(m_StumpWeights, 0, weights, 0, m_NumStumps);
+      m_Stumps = stumps;
+      m_StumpWeights = weights;
+    }
+
+    m_Stumps[m_NumStumps] = stump;
+    m_StumpWeights[m_NumStumps] = weight;
+    m_NumStumps++;
+  }
+
+  /**
+   * Free the temporary files and the memory reserved to the training instances.
+   *
+   * WARNING: After a call to this function the booster will not be ready to perform more
+   *          iterations.
+   */
+  public void purgeTrainData(){
+    if (m_RowsFile != null)
+      m_RowsFile.delete();
+    if (m_Weights != null)
+      m_Weights.release();
+    m_RowsFile = null;
+    m_Weights = null;
+    m_Pending = null;
+    m_Stopped = false;
+    m_SumOfWeights = 0;
+  }
+
+  /**
+   * Calculates the class membership probabilities for the given test instance.
+   *
+   * @param instance the instance to be classified
+   *
+   * @return predicted class probability distribution
+   *
+   * @exception Exception if the classifier has not been built
+   */
+  public double[] distributionForInstance(Instance instance) throws Exception{
+    double[] distribution = new double[m_NumClasses];
+    distributionForInstance(instance, m_NumStumps, distribution);
+    return distribution;
+  }
+
+  /**
+   * Calculates the class membership probabilities of a batch of instances using only the
+   * first numIterations iterations, writing them into the supplied matrix (a row per
+   * instance, as long as the number of classes at least).
+   *
+   * @param data The instances to be classified.
+   * @param numIterations Number of iterations to use.
+   * @param out The matrix where the distributions are written.
+   *
+   * @throws Exception If the parameters are incorrect.
+   */
+  public void distributionsForInstances(Instances data, int numIterations, double[][] out) throws Exception{
+
+    if (numIterations > m_NumStumps || numIterations < 0)
+      throw new Exception("Invaled numIterations parameter.");
+
+    if (out.length < data.numInstances())
+      throw new Exception("The output matrix has less rows than instances.");
+
+    for (int i = 0; i < data.numInstances(); i++){
+      for (int k = 0; k < m_NumClasses; k++)
+        out[i][k] = 0;
+      distributionForInstance(data.instance(i), numIterations, out[i]);
+    }
+  }
+
+  /**
+   * Add the votes of the first numIterations stumps to a (zeroed) distribution and normalize it.
+   *
+   * @param instance The instance to be classified.
+   * @param numIterations Number of iterations to use.
+   * @param distribution The distribution.
+   *
+   * @throws Exception If the classifier has not been built.
+   */
+  private void distributionForInstance(Instance instance, int numIterations, double[] distribution) throws Exception{
+
+    if (m_Binning == null)
+      throw new Exception("No model built yet.");
+
+    for (int i = 0; i < numIterations; i++)
+      distribution[m_Stumps[i].predict(instance)] += m_StumpWeights[i];
+
+    if (Utils.sum(distribution) > 0)
+      Utils.normalize(distribution);
+  }
+
+  /**
+   * Get the classifier's vote for the instance; the (vectorial) sum of all stumps' vote
+   * vectors is the final combined hypothesis of the booster (not normalized).
+   *
+   * @param instance The instance to be classified
+   * @param iterationIndex The iteration index
+   * @return The vote of the stump to the overall classifier
+   * @throws Exception if the index is invalid
+   */
+  public double[] getClassifierVote(Instance instance, int iterationIndex) throws Exception{
+
+    if (iterationIndex >= m_NumStumps || iterationIndex < 0)
+      throw new Exception("Classifier index is invalid");
+
+    double[] vote = new double[m_NumClasses];
+    vote[m_Stumps[iterationIndex].predict(instance)] = m_StumpWeights[iterationIndex];
+
+    return vote;
+  }
+
+  /**
+   * Get the number of iterations performed.
+   *
+   * @return The number of iterations performed.
+   */
+  public int getNumIterationsPerformed(){
+    return m_NumStumps;
+  }
+
+  /**
+   * Returns description of the boosted classifier.
+   *
+   * @return description of the boosted classifier as a string
+   */
+  public String toString(){
+
+    StringBuffer text = new StringBuffer();
+
+    if (m_NumStumps == 0)
+      return "StreamingAdaBoost: No model built yet.\n";
+
+    text.append("StreamingAdaBoost: Stumps and their weights: \n\n");
+    for (int i = 0; i < m_NumStumps; i++){
+      text.append(m_Stumps[i].toString() + "\n");
+      text.append("**Weight: " + m_StumpWeights[i] + "\n\n");
+    }
+    text.append("Number of performed Iterations: " + m_NumStumps + "\n");
+
+    return text.toString();
+  }
+
+  /**
+   * Returns an enumeration of all the available options.
+   *
+   * @return an enumeration of all available options
+   */
+  public Enumeration listOptions(){
+
+    Vector newVector = new Vector(7);
+
+    newVector.addElement(new Option(
+      "\tTurn on debugging output.",
+      "D", 0, "-D"));
+
+    newVector.addElement(new Option(
+      "\tNumber of boost iterations on first call.\n"
+      + "\t(default 10)",
+      "I", 1, "-I <num>"));
+
+    newVector.addElement(new Option(
+      "\tMaximum number of bins of the numeric attributes.\n"
+      + "\t(default " + AttributeBinning.MAX_BINS + ")",
+      "B", 1, "-B <num>"));
+
+    newVector.addElement(new Option(
+      "\tNumber of instances sampled to find the bin edges.\n"
+      + "\t(default 20000)",
+      "R", 1, "-R <num>"));
+
+    newVector.addElement(new Option(
+      "\tMaximum number of instances whose weights are kept in memory;\n"
+      + "\tthe weights of bigger datasets are mapped to a temporary file.\n"
+      + "\t(default 1000000)",
+      "M", 1, "-M <num>"));
+
+    newVector.addElement(new Option(
+      "\tSeed for the sampling of the bin edges. (Default 1)",
+      "S", 1, "-S <num>"));
+
+    newVector.addElement(new Option(
+      "\tClass index of the ARFF files read by buildClassifier(File).\n"
+      + "\t(default 0, the last attribute)",
+      "C", 1, "-C <index>"));
+
+    return newVector.elements();
+  }
+
+  /**
+   * Parses a given list of options. Valid options are:<p>
+   *
+   * -D <br>
+   * Turn on debugging output.<p>
+   *
+   * -I num <br>
+   * Set the number of boost iterations on first call (default 10). <p>
+   *
+   * -B num <br>
+   * Maximum number of bins of the numeric attributes (default 255). <p>
+   *
+   * -R num <br>
+   * Number of instances sampled to find the bin edges (default 20000). <p>
+   *
+   * -M num <br>
+   * Maximum number of instances whose weights are kept in memory (default 1000000). <p>
+   *
+   * -S seed <br>
+   * Random number seed for the sampling of the bin edges (default 1).<p>
+   *
+   * -C index <br>
+   * Class index (1 based) of the ARFF files read by buildClassifier(File)
+   * (default 0, the last attribute).<p>
+   *
+   * @param options the list of options as an array of strings
+   * @exception Exception if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception{
+
+    setDebug(Utils.getFlag('D', options));
+
+    String option = Utils.getOption('I', options);
+    setInitialIterations(option.length() != 0 ? Integer.parseInt(option) : 10);
+
+    option = Utils.getOption('B', options);
+    setMaxBins(option.length() != 0 ? Integer.parseInt(option) : AttributeBinning.MAX_BINS);
+
+    option = Utils.getOption('R', options);
+    setSampleSize(option.length() != 0 ? Integer.parseInt(option) : 20000);
+
+    option = Utils.getOption('M', options);
+    setMaxInMemoryInstances(option.length() != 0 ? Integer.parseInt(option) : 1000000);
+
+    option = Utils.getOption('S', options);
+    setSeed(option.length() != 0 ? Integer.parseInt(option) : 1);
+
+    option = Utils.getOption('C', options);
+    setClassIndex(option.length() != 0 ? Integer.parseInt(option) : 0);
+  }
+
+  /**
+   * Gets the current settings of the Classifier.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  public String[] getOptions(){
+
+    String[] options = new String[13];
+    int current = 0;
+
+    if (getDebug())
+      options[current++] = "-D";
+
+    options[current++] = "-I";
+    options[current++] = "" + getInitialIterations();
+    options[current++] = "-B";
+    options[current++] = "" + getMaxBins();
+    options[current++] = "-R";
+    options[current++] = "" + getSampleSize();
+    options[current++] = "-M";
+    options[current++] = "" + getMaxInMemoryInstances();
+    options[current++] = "-S";
+    options[current++] = "" + getSeed();
+    options[current++] = "-C";
+    options[current++] = "" + getClassIndex();
+
+    while (current < options.length)
+      options[current++] = "";
+
+    return options;
+  }
+
+  public void setDebug(boolean debug){
+    m_Debug = debug;
+  }
+
+  public boolean getDebug(){
+    return m_Debug;
+  }
+
+  public void setInitialIterations(int numIterations){
+    m_InitialIterations = numIterations;
+  }
+
+  public int getInitialIterations(){
+    return m_InitialIterations;
+  }
+
+  /** @param maxBins The maximum number of bins of the numeric attributes (2..255). */
+  public void setMaxBins(int maxBins){
+    m_MaxBins = Math.max(2, Math.min(AttributeBinning.MAX_BINS, maxBins));
+  }
+
+  public int getMaxBins(){
+    return m_MaxBins;
+  }
+
+  public void setSampleSize(int sampleSize){
+    m_SampleSize = Math.max(1, sampleSize);
+  }
+
+  public int getSampleSize(){
+    return m_SampleSize;
+  }
+
+  public void setMaxInMemoryInstances(int maxInMemoryInstances){
+    m_MaxInMemoryInstances = Math.max(0, maxInMemoryInstances);
+  }
+
+  public int getMaxInMemoryInstances(){
+    return m_MaxInMemoryInstances;
+  }
+
+  public void setSeed(int seed){
+    m_Seed = seed;
+  }
+
+  public int getSeed(){
+    return m_Seed;
+  }
+
+  /** @param classIndex The class index (1 based, 0 means the last attribute) of the ARFF files. */
+  public void setClassIndex(int classIndex){
+    m_ClassIndex = Math.max(0, classIndex);
+  }
+
+  public int getClassIndex(){
+    return m_ClassIndex;
+  }
+
+  //--------------------------------------*************************************
+  //--------------------- Configure the "GUI side" methods ********************
+  //--------------------------------------*************************************
+
+  /**
+   * Returns a string describing this classifier.
+   *
+   * @return a description of the filter suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public static String globalInfo(){
+    return "AdaBoostM1 with decision stumps over binned attributes, scanning a temporary file "
+      + "with the training instances at each iteration (for datasets bigger than the memory).";
+  }
+
+  public static String debugTipText(){
+    return "Send or not debug information to the error stream.";
+  }
+
+  public static String initialIterationsTipText(){
+    return "Set the number of iterations performed by buildClassifier.";
+  }
+
+  public static String maxBinsTipText(){
+    return "Set the maximum number of bins (2..255) of the numeric attributes.";
+  }
+
+  public static String sampleSizeTipText(){
+    return "Set the number of instances sampled to find the bin edges of the numeric attributes.";
+  }
+
+  public static String maxInMemoryInstancesTipText(){
+    return "Set the maximum number of instances whose weights are kept in memory; the weights "
+      + "of bigger datasets are mapped to a temporary file.";
+  }
+
+  public static String seedTipText(){
+    return "Set the seed of the sampling of the bin edges.";
+  }
+
+  public static String classIndexTipText(){
+    return "Set the class index (1 based, 0 means the last attribute) of the ARFF files.";
+  }
+
+  /** The training instances, read sequentially (once per scan). */
+  protected interface InstanceSource{
+
+    /**
+     * Start a scan.
+     *
+     * @return The format of the instances (with the class index set).
+     *
+     * @throws Exception If the instances can't be read.
+     */
+    Instances open() throws Exception;
+
+    /**
+     * @return The next instance, or null at the end of the scan.
+     *
+     * @throws Exception If the instances can't be read.
+     */
+    Instance next() throws Exception;
+
+    /**
+     * End a scan.
+     *
+     * @throws Exception If the instances can't be closed.
+     */
+    void close() throws Exception;
+  }
+
+  /** Instances already in memory. */
+  protected static class InstancesSource implements InstanceSource{
+
+    private Instances m_Data;
+
+    private int m_Next;
+
+    public InstancesSource(Instances data){
+      m_Data = data;
+    }
+
+    public Instances open() throws Exception{
+      if (m_Data.classIndex() < 0)
+        throw new Exception("The class index is not set.");
+      m_Next = 0;
+      return m_Data;
+    }
+
+    public Instance next(){
+      return m_Next < m_Data.numInstances() ? m_Data.instance(m_Next++) : null;
+    }
+
+    public void close(){
+    }
+  }
+
+  /** Instances of an ARFF file, read one at a time. */
+  protected static class ArffSource implements InstanceSource{
+
+    private File m_File;
+
+    private int m_ClassIndex;
+
+    private Reader m_Reader;
+
+    /** The header, with the last instance read. */
+    private Instances m_Data;
+
+    /**
+     * Constructor.
+     *
+     * @param file The ARFF file.
+     * @param classIndex The class index (negative for the last attribute).
+     */
+    public ArffSource(File file, int classIndex){
+      m_File = file;
+      m_ClassIndex = classIndex;
+    }
+
+    public Instances open() throws Exception{
+      close();
+      m_Reader = new BufferedReader(new FileReader(m_File), 1 << 16);
+      m_Data = new Instances(m_Reader, 1);
+      if (m_ClassIndex >= m_Data.numAttributes())
+        throw new Exception("Invalid class index.");
+      m_Data.setClassIndex(m_ClassIndex < 0 ? m_Data.numAttributes() - 1 : m_ClassIndex);
+      return m_Data;
+    }
+
+    public Instance next() throws Exception{
+      if (m_Data.numInstances() > 0)
+        m_Data.delete(0);
+      return m_Data.readInstance(m_Reader) ? m_Data.instance(0) : null;
+    }
+
+    public void close() throws Exception{
+      if (m_Reader != null)
+        m_Reader.close();
+      m_Reader = null;
+    }
+  }
+
+  /**
+   * The weights of the training instances, in memory or in a memory-mapped temporary file
+   * (up to 2^28 instances).
+   */
+  protected static class InstanceWeights{
+
+    private double[] m_Array;
+
+    private DoubleBuffer m_Buffer;
+
+    private RandomAccessFile m_File;
+
+    private File m_Path;
+
+    /**
+     * Constructor.
+     *
+     * @param size The number of instances.
+     * @param mapped Map the weights to a file?
+     *
+     * @throws Exception If there are too many instances or the file can't be mapped.
+     */
+    public InstanceWeights(int size, boolean mapped) throws Exception{
+
+      if (!mapped){
+        m_Array = new double[size];
+        return;
+      }
+
+      if (size > Integer.MAX_VALUE / 8)
+        throw new Exception("Too many instances to map their weights.");
+
+      m_Path = File.createTempFile("oaidtb", ".weights");
+      m_Path.deleteOnExit();
+      m_File = new RandomAccessFile(m_Path, "rw");
+      m_File.setLength(8L * size);
+      m_Buffer = m_File.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 8L * size).asDoubleBuffer();
+    }
+
+    public boolean isMapped(){
+      return m_Buffer != null;
+    }
+
+    public double get(int index){
+      return m_Array != null ? m_Array[index] : m_Buffer.get(index);
+    }
+
+    public void set(int index, double weight){
+      if (m_Array != null)
+        m_Array[index] = weight;
+      else
+        m_Buffer.put(index, weight);
+    }
+
+    /** Free the memory and the file. */
+    public void release(){
+      m_Array = null;
+      m_Buffer = null;
+      try{
+        if (m_File != null)
+          m_File.close();
+      }
+      catch (IOException e){
+      }
+      if (m_Path != null)
+        m_Path.delete();
+      m_File = null;
+    }
+  }
+
+  /**
+   * Main method for testing this class. With "-F file" the booster is trained over the
+   * ARFF file, which is never loaded into memory, and the model is printed.
+   *
+   * @param argv the options
+   */
+  public static void main(String[] argv){
+
+    try{
+      String fileName = Utils.getOption('F', argv);
+      if (fileName.length() == 0)
+        System.out.println(Evaluation.evaluateModel(new StreamingAdaBoost(), argv));
+      else{
+        StreamingAdaBoost booster = new StreamingAdaBoost();
+        booster.setOptions(argv);
+        booster.buildClassifier(new File(fileName));
+        System.out.println(booster);
+      }
+    }
+    catch (Exception e){
+      System.err.println(e.getMessage());
+    }
+  }
+}
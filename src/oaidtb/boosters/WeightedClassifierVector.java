@@ -24,64 +24,48 @@ package oaidtb.boosters;
 
 import weka.classifiers.Classifier;
 
-import java.util.ArrayList;
 import java.io.Serializable;
 
 /**
  * Container class, type-conscious, to store classifiers with its vote weights.
  * It's a more ironclad solution than simply use an ArrayList in the client class.
- * Legibility is its main objective. It doesnt make any error check, so be careful.
+ * It doesnt make any error check, so be careful.
+ *
+ * The classifiers and their weights are stored in two parallel arrays, which grow
+ * (doubling its capacity) when needed; the prediction loops of the boosters can
+ * work directly over them (see classifiers() and weights()).
  *
  * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
  * @version $Revision: 1.0 $
  */
 public class WeightedClassifierVector implements Serializable{
 
-  /** The classifiers list. 
-   * @associates ClassifierAndWeight*/
-  private ArrayList classifierList = new ArrayList();
+  /** The classifiers. */
+  private Classifier[] m_Classifiers;
+
+  /** The classifiers' vote weights. */
+  private double[] m_Weights;
+
+  /** The number of classifiers stored. */
+  private int m_Size = 0;
+
+  /** Number of modifications (additions, truncations and weight changes) made. */
+  private int m_Modifications = 0;
+
+  /** Constructs an empty vector. */
+  public WeightedClassifierVector(){
+    this(10);
+  }
 
   /**
-   * Inner class. It stores a classifier with it's vote weight.
-   * Another solution could be use two ArrayList, one for classifiers and other for weights.
+   * Constructs an empty vector with the specified capacity.
    *
-   * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+   * @param initialCapacity The number of classifiers that can be stored before growing.
    */
-  private static class ClassifierAndWeight implements Serializable{
-
-    //Friendly members; not a good object oriented approach, if efficiency is not a relevant issue,
-    //set them private and supply getter and setter methods?.
-    Classifier classifier;
-    double weight;
-
-    /**
-     * Constructs with specified parameters.
-     *
-     * @param classifier The classifier to be stored.
-     * @param weight The weight of the classifier's vote.
-     */
-    public ClassifierAndWeight(Classifier classifier, double weight){
-      this.classifier = classifier;
-      this.weight = weight;
-    }
-
-    /**
-     * Constructs with specified parameters. Weight is equal to zero.
-     *
-     * @param classifier The classifier to be stored.
-     */
-    public ClassifierAndWeight(Classifier classifier){
-      this.classifier = classifier;
-    }
-
-    /**
-     * Set the classifier's vote weight.
-     *
-     * @param weight The weight.
-     */
-    public void setWeight(double weight){
-      this.weight = weight;
-    }
+  public WeightedClassifierVector(int initialCapacity){
+    initialCapacity = Math.max(1, initialCapacity);
+    m_Classifiers = new Classifier[initialCapacity];
+    m_Weights = new double[initialCapacity];
   }
 
   /**
@@ -90,7 +74,7 @@ public class WeightedClassifierVector implements Serializable{
    * @param c The classifier to addMemberName to the array.
    */
   public void add(Classifier c){
-    classifierList.add(new ClassifierAndWeight(c));
+    add(c, 0);
   }
 
   /**
@@ -100,7 +84,20 @@ public class WeightedClassifierVector implements Serializable{
    * @param w The classifier's weight.
    */
   public void add(Classifier c, double w){
-    classifierList.add(new ClassifierAndWeight(c, w));
+
+    if (m_Size == m_Classifiers.length){
+      Classifier[] classifiers = new Classifier[2 * m_Size];
+      double[] weights = new double[2 * m_Size];
+      System.arraycopy(m_Classifiers, 0, classifiers, 0, m_Size);
+      System.arraycopy(m_Weights, 0, weights, 0, m_Size);
+      m_Classifiers = classifiers;
+      m_Weights = weights;
+    }
+
+    m_Classifiers[m_Size] = c;
+    m_Weights[m_Size] = w;
+    m_Size++;
+    m_Modifications++;
   }
 
   /**
@@ -111,7 +108,8 @@ public class WeightedClassifierVector implements Serializable{
    * @param weight The classifier's vote weight.
    */
   public void setWeight(int index, double weight){
-    ((ClassifierAndWeight) classifierList.get(index)).weight = weight;
+    m_Weights[index] = weight;
+    m_Modifications++;
   }
 
   /**
@@ -123,7 +121,7 @@ public class WeightedClassifierVector implements Serializable{
    * @return The classifier.
    */
   public Classifier get(int index){
-    return ((ClassifierAndWeight) classifierList.get(index)).classifier;
+    return m_Classifiers[index];
   }
 
   /**
@@ -135,7 +133,7 @@ public class WeightedClassifierVector implements Serializable{
    * @return The classifier's vote weight.
    */
   public double getWeight(int index){
-    return ((ClassifierAndWeight) classifierList.get(index)).weight;
+    return m_Weights[index];
   }
 
   /**
@@ -144,6 +142,62 @@ public class WeightedClassifierVector implements Serializable{
    * @return The number of classifiers in the list.
    */
   public int size(){
-    return classifierList.size();
+    return m_Size;
+  }
+
+  /**
+   * Keep only the first "size" classifiers (the rest are released).
+   *
+   * @param size The new number of classifiers; it must not be greater than the actual one.
+   */
+  public void truncate(int size){
+    for (int i = size; i < m_Size; i++)
+      m_Classifiers[i] = null;
+    m_Size = size;
+    m_Modifications++;
+  }
+
+  /**
+   * Get a copy of the vector with its own arrays (the classifiers themselves are shared),
+   * so it doesn't change when this vector is modified.
+   *
+   * @return The copy.
+   */
+  public WeightedClassifierVector copy(){
+    WeightedClassifierVector copy = new WeightedClassifierVector(m_Size);
+    System.arraycopy(m_Classifiers, 0, copy.m_Classifiers, 0, m_Size);
+    System.arraycopy(m_Weights, 0, copy.m_Weights, 0, m_Size);
+    copy.m_Size = m_Size;
+    return copy;
+  }
+
+  /**
+   * Get the number of modifications (additions, truncations and weight changes) made
+   * to the vector; if it hasn't changed, the vector hasn't been modified.
+   *
+   * @return The number of modifications.
+   */
+  public int modifications(){
+    return m_Modifications;
+  }
+
+  /**
+   * Get the classifiers array; only its first size() elements are valid. It's the vector's
+   * one, not a copy, so it must not be modified and it can change when a classifier is added.
+   *
+   * @return The classifiers array.
+   */
+  public Classifier[] classifiers(){
+    return m_Classifiers;
+  }
+
+  /**
+   * Get the weights array; only its first size() elements are valid. It's the vector's
+   * one, not a copy, so it must not be modified and it can change when a classifier is added.
+   *
+   * @return The weights array.
+   */
+  public double[] weights(){
+    return m_Weights;
   }
 }
\ No newline at end of file
@@ -0,0 +1,246 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    WeightedResampler.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.boosters;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+
+/**
+ * Draws the samples used to train the base classifiers when boosting with resampling
+ * without copying the training instances.
+ *
+ * The sample is drawn exactly as Instances.resampleWithWeights does (the same instances for
+ * the same random numbers generator state), reading the weights from a BoostingDataView
+ * (if all of them are equal, the sample is the whole dataset and no random number is used):
+ * numInstances points are placed over the cumulative weights by adding uniform spacings and
+ * each instance is drawn once per point falling in its stretch, so the draws take O(N) and
+ * the sample is sorted by index. Note that the draws are not independent: the points are
+ * more evenly spread than independent draws would be, so the sample never collapses to a
+ * few instances unless their weights really dominate (ie. a decision stump can't be built
+ * when all the instances are equal).
+ *
+ * The sample is a view over the training instances: a dataset whose instances share the
+ * attribute values of the drawn ones (see PseudoClassInstance), each instance drawn more
+ * than once appearing that number of times. The sample and its instances are reused by
+ * the next resampling, so nothing is allocated once the first one has been drawn (unless
+ * the number of instances or the format of the data change).
+ *
+ * So a sample is valid only until the next call to resample; the base classifiers must not
+ * keep the training instances once they are built (the weka ones copy what they keep) nor
+ * modify them in place (weka's Instance copies its attribute values when one is set, so
+ * the training instances are safe anyway).
+ *
+ * The attribute values are shared by reflection; if the security manager doesn't allow it
+ * (or the instances are not dense, ie. SparseInstance), the drawn instances are copied.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class WeightedResampler{
+
+  /** Instance attribute values field, or null if it can't be accessed. */
+  private static Field m_AttValuesField;
+
+  static{
+    try{
+      m_AttValuesField = Instance.class.getDeclaredField("m_AttValues");
+      m_AttValuesField.setAccessible(true);
+    }
+    catch (Exception e){
+      m_AttValuesField = null;
+    }
+  }
+
+  /** The points drawn over the cumulative weights. */
+  private double[] m_Points = new double[0];
+
+  /** Has each training instance been drawn in the last sample? */
+  private boolean[] m_InBag = new boolean[0];
+
+  /** The last sample. */
+  private SampleInstances m_Sample;
+
+  /** The instances of the samples, one for each training instance (created on demand). */
+  private PseudoClassInstance[] m_Instances = new PseudoClassInstance[0];
+
+  /**
+   * Draw a sample of a booster training data.
+   *
+   * @param dataView The data view of the booster (its weights are the ones used).
+   * @param random The random numbers generator.
+   *
+   * @return The sample, valid until the next call.
+   *
+   * @throws Exception If a weight is negative.
+   */
+  public Instances resample(BoostingDataView dataView, Random random) throws Exception{
+
+    Instances data = dataView.getData();
+    double[] weights = dataView.weights();
+    int numInstances = dataView.numInstances();
+
+    if (m_Points.length != numInstances){
+      m_Points = new double[numInstances];
+      m_InBag = new boolean[numInstances];
+      m_Instances = new PseudoClassInstance[numInstances];
+    }
+
+    //Instances can't be reused if the format of the data has changed.
+    if (m_Sample == null || !m_Sample.equalHeaders(data) || m_Sample.classIndex() != data.classIndex()){
+      m_Sample = new SampleInstances(data);
+      java.util.Arrays.fill(m_Instances, null);
+    }
+
+    //As Instances.resampleWithWeights does, if all the weights are equal the sample is
+    //the whole dataset (with those weights).
+    boolean equalWeights = true;
+    for (int i = 1; equalWeights && i < numInstances; i++)
+      equalWeights = Utils.eq(weights[i], weights[0]);
+    if (equalWeights){
+      java.util.Arrays.fill(m_InBag, true);
+      for (int i = 0; i < numInstances; i++)
+        m_Sample.set(i, sampleInstance(data.instance(i), i, weights[i]));
+      m_Sample.truncate(numInstances);
+      return m_Sample;
+    }
+
+    //The same operations, in the same order, than Instances.resampleWithWeights.
+    double sumOfWeights = 0, sum = 0;
+    for (int i = 0; i < numInstances; i++)
+      sumOfWeights += weights[i];
+    for (int i = 0; i < numInstances; i++){
+      sum += random.nextDouble();
+      m_Points[i] = sum;
+    }
+    Utils.normalize(m_Points, sum / sumOfWeights);
+    //Make sure that rounding errors don't mess things up.
+    m_Points[numInstances - 1] = sumOfWeights;
+
+    int size = 0;
+    sum = 0;
+    java.util.Arrays.fill(m_InBag, false);
+    for (int i = 0; i < numInstances && size < numInstances; i++){
+      if (weights[i] < 0)
+        throw new Exception("Weights have to be positive.");
+      sum += weights[i];
+      if (m_Points[size] <= sum){
+        m_InBag[i] = true;
+        //Each instance drawn is bound only once.
+        Instance instance = sampleInstance(data.instance(i), i, 1);
+        do
+          m_Sample.set(size++, instance);
+        while (size < numInstances && m_Points[size] <= sum);
+      }
+    }
+    m_Sample.truncate(size);
+
+    return m_Sample;
+  }
+
+  /**
+   * Has a training instance been drawn in the last sample? (the instances not drawn are
+   * "out of bag": the base classifier built over the sample hasn't seen them).
+   *
+   * @param index The index of the training instance.
+   *
+   * @return True if the instance is in the last sample.
+   */
+  public boolean isInBag(int index){
+    return index < m_InBag.length && m_InBag[index];
+  }
+
+  /**
+   * Get the instance of the sample for a training instance.
+   *
+   * @param instance The training instance.
+   * @param index Its index.
+   * @param weight The weight of the instance in the sample.
+   *
+   * @return An instance with its attribute values and class.
+   */
+  private Instance sampleInstance(Instance instance, int index, double weight){
+
+    Class instanceClass = instance.getClass();
+
+    if (m_AttValuesField != null && (instanceClass == Instance.class || instanceClass == PseudoClassInstance.class)){
+      PseudoClassInstance sampleInstance = m_Instances[index];
+      try{
+        if (sampleInstance == null){
+          m_Instances[index] = sampleInstance
+            = new PseudoClassInstance(instance, m_Sample.classIndex(), instance.classValue());
+          sampleInstance.setDataset(m_Sample);
+        }
+        //The attribute values are rebound each time: they are copied when they are set.
+        sampleInstance.share((double[]) m_AttValuesField.get(instance), instance.classValue(), weight);
+        return sampleInstance;
+      }
+      catch (IllegalAccessException e){
+      }
+    }
+
+    instance = (Instance) instance.copy();
+    instance.setDataset(m_Sample);
+    instance.setWeight(weight);
+    return instance;
+  }
+
+  /** A dataset whose instances are set without copying them. */
+  private static class SampleInstances extends Instances{
+
+    /**
+     * Constructor.
+     *
+     * @param data The dataset whose format is copied.
+     */
+    public SampleInstances(Instances data){
+      super(data, 0);
+    }
+
+    /**
+     * Set an instance (not a copy) which already belongs to this dataset.
+     *
+     * @param index The index of the instance (at most the number of instances, to add it).
+     * @param instance The instance.
+     */
+    public void set(int index, Instance instance){
+      if (index < m_Instances.size())
+        m_Instances.setElementAt(instance, index);
+      else
+        m_Instances.addElement(instance);
+    }
+
+    /**
+     * Remove the last instances.
+     *
+     * @param numInstances The number of instances kept.
+     */
+    public void truncate(int numInstances){
+      while (m_Instances.size() > numInstances)
+        m_Instances.removeElementAt(m_Instances.size() - 1);
+    }
+  }
+}
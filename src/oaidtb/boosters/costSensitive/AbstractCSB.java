@@ -23,7 +23,9 @@
 package oaidtb.boosters.costSensitive;
 
 import oaidtb.boosters.Booster;
+import oaidtb.boosters.IterationProfile;
 import oaidtb.boosters.MulticlassExtensibleBooster;
+import oaidtb.boosters.ScoringContext;
 import oaidtb.boosters.WeightedClassifierVector;
 import oaidtb.misc.CustomOrderDefiner;
 import weka.classifiers.Classifier;
@@ -36,7 +38,6 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.Serializable;
 import java.util.Enumeration;
-import java.util.Random;
 import java.util.Vector;
 
 /**
@@ -281,18 +282,23 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
     for (int i = 0; i < m_NumClasses; i++)
       costs[i] = weka.core.Utils.sum(m_CostMatrix.getRow(i)) - m_CostMatrix.getElement(i, i);
 
+    loadDataView();
+    double[] weights = m_DataView.weights();
+    int[] labels = m_DataView.labels();
+
     double newWeightsSum = 0;
-    for (int i = 0; i < m_TrainData.numInstances(); i++){
-      Instance instance = m_TrainData.instance(i);
-      instance.setWeight(instance.weight() * costs[(int) instance.classValue()]);
-      newWeightsSum += instance.weight();
+    for (int i = 0; i < m_NumInstances; i++){
+      weights[i] *= costs[labels[i]];
+      newWeightsSum += weights[i];
     }
 
     normalizeWeights(newWeightsSum);
+    m_DataView.syncWeights();
   }
 
   /**
    * Calculate the classifier's vote weight according to its training error.
+   * The classifier's distributions are the ones previously stored in m_DataView.
    *
    * @param classifier The base classifier
    * @return The classifier's vote weight
@@ -302,19 +308,22 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
 
     double tmp = 0;
     double sumTmp = 0;
+    double[] weights = m_DataView.weights();
+    int[] labels = m_DataView.labels();
+    double[][] distributions = m_DataView.distributions();
+    int[] predictions = m_DataView.predictions();
 
     for (int i = 0; i < m_NumInstances; i++){
 
-      Instance instance = m_TrainData.instance(i);
-      double[] distributionForInstance = classifier.distributionForInstance(instance);
-      int classifiedAs = oaidtb.misc.Utils.maxIndex(distributionForInstance);
+      double[] distributionForInstance = distributions[i];
+      int classifiedAs = predictions[i];
 
-      if (classifiedAs == instance.classValue())
-        tmp += instance.weight() * distributionForInstance[classifiedAs];
+      if (classifiedAs == labels[i])
+        tmp += weights[i] * distributionForInstance[classifiedAs];
       else
-        tmp -= instance.weight() * distributionForInstance[classifiedAs];
+        tmp -= weights[i] * distributionForInstance[classifiedAs];
 
-      sumTmp += instance.weight();
+      sumTmp += weights[i];
     }
 
     tmp = (tmp + NO_DIVISION_BY_ZERO) / (sumTmp + NO_DIVISION_BY_ZERO);
@@ -350,10 +359,16 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
       m_TrainData.deleteWithMissingClass();
       if (m_TrainData.numInstances() == 0)
         throw new Exception("No train instances without class missing!");
+
+      //Hold out the validation set if the booster must stop early.
+      m_TrainData = initializeEarlyStopping(m_TrainData);
     }
-    else
-    //We entrust to the "caller class" the correctness of the train data instances.
+    else{
+      //We entrust to the "caller class" the correctness of the train data instances
+      //(and the stopping decision).
       m_TrainData = data;
+      m_EarlyStopping = null;
+    }
 
     //Set up the number of instances.
     m_NumInstances = m_TrainData.numInstances();
@@ -364,8 +379,11 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
     //Set up the number of performed iterations.
     m_NumIterations = 0;
 
+    //Restart the resampling random numbers stream.
+    initializeResampleRandom();
+
     //Initialize the classifiers array.
-    m_Classifiers = new WeightedClassifierVector();
+    m_Classifiers = new WeightedClassifierVector(m_InitialIterations);
 
     //Set up the cost matrix
     if (m_MatrixSource == MATRIX_ON_DEMAND){
@@ -421,7 +439,6 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
   protected void buildClassifierWithWeights(int numIterations) throws Exception{
 
     Classifier baseClassifier;
-    SerializedObject serializedClassifier = new SerializedObject(m_Classifier);
 
     if (m_Debug)
       System.err.println("Boosting without resampling.");
@@ -433,20 +450,30 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
         System.err.println("Training classifier " + (m_NumIterations + 1));
 
       //Copy the base classifier.
-      baseClassifier = (Classifier) serializedClassifier.getObject();
+      enterPhase(IterationProfile.CLASSIFIER_CREATION, 0);
+      baseClassifier = m_ClassifierFactory.newClassifier();
 
       // Build the classifier.
+      enterPhase(IterationProfile.TRAINING, m_NumInstances);
+      m_DataView.syncWeights();
       baseClassifier.buildClassifier(m_TrainData);
 
+      //Classify the training instances; the distributions are shared by the next steps.
+      enterPhase(IterationProfile.PREDICTION, m_NumInstances);
+      m_DataView.predictDistributions((DistributionClassifier) baseClassifier);
+
       // Calculate the classifier's vote weight
+      enterPhase(IterationProfile.ERROR, m_NumInstances);
       double alfa = calculateAlfa((DistributionClassifier) baseClassifier);
 
       //Weights redistribution.
+      enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
       reweight((DistributionClassifier) baseClassifier, alfa);
 
       //"Commit".
       m_Classifiers.add(baseClassifier, alfa);
       m_NumIterations++;
+      iterationPerformed();
     }
   }
 
@@ -461,8 +488,6 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
   protected void buildClassifierUsingResampling(int numIterations) throws Exception{
 
     Classifier baseClassifier;
-    SerializedObject serializedClassifier = new SerializedObject(m_Classifier);
-    Random randomInstance = new Random(m_ResampleSeed); //Random number generator for resample.
     Instances sample;                                   //The resampled training dataset.
 
     if (m_Debug)
@@ -476,23 +501,33 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
       }
 
       // Resample.
-      sample = m_TrainData.resampleWithWeights(randomInstance);
+      enterPhase(IterationProfile.RESAMPLING, m_NumInstances);
+      sample = m_Resampler.resample(m_DataView, m_ResampleRandom);
 
       //Copy the base classifier.
-      baseClassifier = (Classifier) serializedClassifier.getObject();
+      enterPhase(IterationProfile.CLASSIFIER_CREATION, 0);
+      baseClassifier = m_ClassifierFactory.newClassifier();
 
       // Build the classifier.
+      enterPhase(IterationProfile.TRAINING, sample.numInstances());
       baseClassifier.buildClassifier(sample);
 
+      //Classify the training instances; the distributions are shared by the next steps.
+      enterPhase(IterationProfile.PREDICTION, m_NumInstances);
+      m_DataView.predictDistributions((DistributionClassifier) baseClassifier);
+
       // Calculate the classifier's vote weight
+      enterPhase(IterationProfile.ERROR, m_NumInstances);
       double alfa = calculateAlfa((DistributionClassifier) baseClassifier);
 
       //Weights redistribution.
+      enterPhase(IterationProfile.REWEIGHTING, m_NumInstances);
       reweight((DistributionClassifier) baseClassifier, alfa);
 
       //"Commit"
       m_Classifiers.add(baseClassifier, alfa);
       m_NumIterations++;
+      iterationPerformed();
     }
   }
 
@@ -507,7 +542,24 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
    * @throws java.lang.Exception if the instance cant be classified succesfully.
    */
   public double confidenceAndSign(Instance instance) throws Exception{
-    double[] distributionForInstance = distributionForInstance(instance);
+    return confidenceAndSign(instance, m_NumIterations, threadContext());
+  }
+
+  /**
+   * Return the class predicted (<0 == class 0 and >0 == class 1) and the
+   * confidence of this prediction (its absolute value) using only the first numIterations
+   * base classifiers, without allocating memory (but what the base classifiers allocate).
+   *
+   * @param instance The instance to be classified
+   * @param numIterations Number of base classifiers to use
+   * @param context The scoring context of the current thread
+   *
+   * @return The class predicted and its confidence.
+   *
+   * @throws java.lang.Exception If numIterations is incorrect or the instance can't be classified.
+   */
+  public double confidenceAndSign(Instance instance, int numIterations, ScoringContext context) throws Exception{
+    double[] distributionForInstance = distributionForInstance(instance, numIterations, context);
 //    return distributionForInstance[1] - distributionForInstance[0];
     return distributionForInstance[0] > distributionForInstance[1] ? -distributionForInstance[0] :
       distributionForInstance[1];
@@ -530,9 +582,30 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
     return distributionForInstance[1] - distributionForInstance[0];
   }
 
+  /**
+   * Compute confidenceAndSign for a batch of instances using only the first numIterations
+   * base classifiers. The combined prediction models classify the instances one by one.
+   *
+   * @param instances The instances to be classified
+   * @param numIterations Number of base classifiers to use
+   * @param out The array where the confidences and signs are written
+   *
+   * @throws Exception if an error happens.
+   */
+  public void confidencesAndSigns(Instance[] instances, int numIterations, double[] out) throws Exception{
+
+    checkNumIterations(numIterations);
+
+    ScoringContext context = new ScoringContext();
+
+    for (int j = 0; j < instances.length; j++)
+      out[j] = confidenceAndSign(instances[j], numIterations, context);
+  }
+
 
   /**
    * Assign new weights for the train instances.
+   * The classifier's distributions are the ones previously stored in m_DataView.
    *
    * @param classifier The classifier to be used to calculate new instances weights.
    * @param alfa The classifier's vote weight
@@ -620,7 +693,25 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
    * @exception java.lang.Exception if instance could not be classified successfully
    */
   public double[] distributionForInstance(Instance instance) throws Exception{
-    return m_HowClassify.distributionForInstance(instance);
+    return (double[]) distributionForInstance(instance, threadContext()).clone();
+  }
+
+  /**
+   * Calculates the class membership probabilities for the given test instance using only
+   * the first numIterations base classifiers, without allocating memory (but what the base
+   * classifiers allocate): the distribution returned belongs to the context.
+   *
+   * @param instance the instance to be classified
+   * @param numIterations number of base classifiers to use
+   * @param context the scoring context of the current thread
+   *
+   * @return predicted class probability distribution
+   *
+   * @exception java.lang.Exception if numIterations is incorrect or instance could not be classified successfully
+   */
+  public double[] distributionForInstance(Instance instance, int numIterations, ScoringContext context) throws Exception{
+    checkNumIterations(numIterations);
+    return m_HowClassify.distributionForInstance(instance, numIterations, context);
   }
 
   /**
@@ -636,6 +727,43 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
     return m_HowClassify.getClassifierVote(instance, classifierIndex);
   }
 
+  /**
+   * The minimum expected cost criteria rank the classes by their summed expected cost, so
+   * the sum of the (ranked) votes of each base classifier isn't their prediction, unless
+   * there are only two classes (the ranking just swaps them).
+   *
+   * @return True for the maximum vote criteria and for two classes problems.
+   */
+  public boolean votesAddUp(){
+    return m_NumClasses == 2
+      || m_HowClassify instanceof MaximumVoteCriterion
+      || m_HowClassify instanceof MaximumVoteCriterionUsingConfidenceLevels;
+  }
+
+  /**
+   * Eliminate the last numIterations performed from the final combined hypothesis,
+   * releasing their base classifiers.
+   *
+   * @param numIterations The number of iterations to get rid of
+   * @throws Exception If numIterations parameter is incorrect
+   */
+  public void purgeIterations(int numIterations) throws Exception{
+    super.purgeIterations(numIterations);
+    m_Classifiers.truncate(m_NumIterations);
+  }
+
+  /**
+   * Give a frozen copy its own base classifiers vector and combined prediction model (the
+   * model is an inner class instance, so it would use the original booster classifiers).
+   *
+   * @throws Exception If the model can't be copied
+   */
+  protected void copyModel() throws Exception{
+    if (m_Classifiers != null)
+      m_Classifiers = m_Classifiers.copy();
+    setCombinedPredictionModel(getCombinedPredictionModel());
+  }
+
   /**
    * Returns description of the boosted classifier.
    *
@@ -682,15 +810,18 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
   private interface CombinedPredictionModel extends Serializable{
 
     /**
-     * Calculates the class membership probabilities for the given test instance.
+     * Calculates the class membership probabilities for the given test instance using only
+     * the first numIterations base classifiers.
      *
      * @param instance the instance to be classified
+     * @param numIterations number of base classifiers to use
+     * @param context the scoring context (the distribution returned is one of its buffers)
      *
      * @return predicted class probability distribution
      *
      * @exception java.lang.Exception if instance could not be classified successfully
      */
-    public double[] distributionForInstance(Instance instance) throws Exception;
+    public double[] distributionForInstance(Instance instance, int numIterations, ScoringContext context) throws Exception;
 
     /**
      * Get the classifier's vote for the instance; the (vectorial) sum of all base classifiers vote vectors must be
@@ -707,14 +838,16 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
   /** Classify using the minimum expected cost criterion. */
   private class MinimumExpectedCostCriterion implements CombinedPredictionModel{
 
-    public double[] distributionForInstance(Instance instance) throws Exception{
+    public double[] distributionForInstance(Instance instance, int numIterations, ScoringContext context) throws Exception{
 
       double[] distributionForInstance;
-      double[] tmp = new double[m_NumClasses];
+      double[] tmp = context.buffer(0, m_NumClasses);
+      Classifier[] classifiers = m_Classifiers.classifiers();
+      double[] weights = m_Classifiers.weights();
 
-      for (int i = 0; i < m_NumIterations; i++){
-        double weight = m_Classifiers.getWeight(i);
-        distributionForInstance = ((DistributionClassifier) m_Classifiers.get(i)).distributionForInstance(instance);
+      for (int i = 0; i < numIterations; i++){
+        double weight = weights[i];
+        distributionForInstance = ((DistributionClassifier) classifiers[i]).distributionForInstance(instance);
         int classifiedAs = oaidtb.misc.Utils.maxIndex(distributionForInstance);
         double confidence = distributionForInstance[classifiedAs];
         for (int j = 0; j < classifiedAs; j++)
@@ -723,9 +856,10 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
           tmp[j] += weight * confidence * m_CostMatrix.getElement(classifiedAs, j);
       }
 
-      int[] sortedArray = weka.core.Utils.sort(tmp);
+      int[] sortedArray = context.indexes(m_NumClasses);
+      oaidtb.misc.Utils.sort(tmp, sortedArray);
 
-      double[] swapTmp = new double[m_NumClasses];
+      double[] swapTmp = context.buffer(1, m_NumClasses);
       int maxIndex = m_NumClasses - 1;
       double sumTmp = 0;
       for (int i = 0; i < m_NumClasses; i++){
@@ -772,14 +906,16 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
   /** Classify using the minimum expected cost criterion and confidence levels of the base classifier predictions. */
   private class MinimumExpectedCostCriterionUsingConfidenceLevels implements CombinedPredictionModel{
 
-    public double[] distributionForInstance(Instance instance) throws Exception{
+    public double[] distributionForInstance(Instance instance, int numIterations, ScoringContext context) throws Exception{
 
       double[] distributionForInstance;
-      double[] tmp = new double[m_NumClasses];
+      double[] tmp = context.buffer(0, m_NumClasses);
+      Classifier[] classifiers = m_Classifiers.classifiers();
+      double[] weights = m_Classifiers.weights();
 
-      for (int i = 0; i < m_NumIterations; i++){
-        double weight = m_Classifiers.getWeight(i);
-        distributionForInstance = ((DistributionClassifier) m_Classifiers.get(i)).distributionForInstance(instance);
+      for (int i = 0; i < numIterations; i++){
+        double weight = weights[i];
+        distributionForInstance = ((DistributionClassifier) classifiers[i]).distributionForInstance(instance);
 
         for (int j = 0; j < m_NumClasses; j++){
           for (int k = 0; k < j; k++)
@@ -789,9 +925,10 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
         }
       }
 
-      int[] sortedArray = weka.core.Utils.sort(tmp);
+      int[] sortedArray = context.indexes(m_NumClasses);
+      oaidtb.misc.Utils.sort(tmp, sortedArray);
 
-      double[] swapTmp = new double[m_NumClasses];
+      double[] swapTmp = context.buffer(1, m_NumClasses);
       int maxIndex = m_NumClasses - 1;
       double sumTmp = 0;
       for (int i = 0; i < m_NumClasses; i++){
@@ -841,14 +978,16 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
   /** Classify using the maximum vote criterion. */
   private class MaximumVoteCriterion implements CombinedPredictionModel{
 
-    public double[] distributionForInstance(Instance instance) throws Exception{
+    public double[] distributionForInstance(Instance instance, int numIterations, ScoringContext context) throws Exception{
       double[] distributionForInstance;
-      double[] tmp = new double[m_NumClasses];
+      double[] tmp = context.buffer(0, m_NumClasses);
+      Classifier[] classifiers = m_Classifiers.classifiers();
+      double[] weights = m_Classifiers.weights();
 
-      for (int i = 0; i < m_NumIterations; i++){
-        distributionForInstance = ((DistributionClassifier) m_Classifiers.get(i)).distributionForInstance(instance);
+      for (int i = 0; i < numIterations; i++){
+        distributionForInstance = ((DistributionClassifier) classifiers[i]).distributionForInstance(instance);
         int classifiedAs = oaidtb.misc.Utils.maxIndex(distributionForInstance);
-        tmp[classifiedAs] += m_Classifiers.getWeight(i) * distributionForInstance[classifiedAs];
+        tmp[classifiedAs] += weights[i] * distributionForInstance[classifiedAs];
       }
 
       weka.core.Utils.normalize(tmp);
@@ -874,13 +1013,15 @@ public abstract class AbstractCSB extends Booster implements MulticlassExtensibl
   /** Classify using the maximum vote criterion and confidence levels of the base classifiers predictions. */
   private class MaximumVoteCriterionUsingConfidenceLevels implements CombinedPredictionModel{
 
-    public double[] distributionForInstance(Instance instance) throws Exception{
+    public double[] distributionForInstance(Instance instance, int numIterations, ScoringContext context) throws Exception{
       double[] distributionForInstance;
-      double[] tmp = new double[m_NumClasses];
+      double[] tmp = context.buffer(0, m_NumClasses);
+      Classifier[] classifiers = m_Classifiers.classifiers();
+      double[] weights = m_Classifiers.weights();
 
-      for (int i = 0; i < m_NumIterations; i++){
-        distributionForInstance = ((DistributionClassifier) m_Classifiers.get(i)).distributionForInstance(instance);
-        double weight = m_Classifiers.getWeight(i);
+      for (int i = 0; i < numIterations; i++){
+        distributionForInstance = ((DistributionClassifier) classifiers[i]).distributionForInstance(instance);
+        double weight = weights[i];
         for (int j = 0; j < m_NumClasses; j++)
           tmp[j] += weight * distributionForInstance[j];
       }
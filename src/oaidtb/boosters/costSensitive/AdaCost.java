@@ -24,7 +24,6 @@ package oaidtb.boosters.costSensitive;
 
 import weka.classifiers.DistributionClassifier;
 import weka.classifiers.Evaluation;
-import weka.core.Instance;
 
 /**
  * An implementation of AdaCost; for more information, see:<p>
@@ -83,20 +82,23 @@ public class AdaCost extends AbstractCSB{
 
     double tmp = 0;
     double sumTmp = 0;
+    double[] weights = m_DataView.weights();
+    int[] labels = m_DataView.labels();
+    double[][] distributions = m_DataView.distributions();
+    int[] predictions = m_DataView.predictions();
 
     for (int i = 0; i < m_NumInstances; i++){
 
-      Instance instance = m_TrainData.instance(i);
-      double[] distributionForInstance = classifier.distributionForInstance(instance);
-      int classifiedAs = oaidtb.misc.Utils.maxIndex(distributionForInstance);
-      int trueClass = (int) instance.classValue();
+      double[] distributionForInstance = distributions[i];
+      int classifiedAs = predictions[i];
+      int trueClass = labels[i];
 
       if (classifiedAs == trueClass)
-        tmp += instance.weight() * distributionForInstance[classifiedAs] * costAdjustmentFunction(trueClass, false);
+        tmp += weights[i] * distributionForInstance[classifiedAs] * costAdjustmentFunction(trueClass, false);
       else
-        tmp -= instance.weight() * distributionForInstance[classifiedAs] * costAdjustmentFunction(trueClass, true);
+        tmp -= weights[i] * distributionForInstance[classifiedAs] * costAdjustmentFunction(trueClass, true);
 
-      sumTmp += instance.weight();
+      sumTmp += weights[i];
     }
 
     tmp = (tmp + NO_DIVISION_BY_ZERO) / (sumTmp + NO_DIVISION_BY_ZERO);
@@ -106,24 +108,25 @@ public class AdaCost extends AbstractCSB{
 
   /** @param classifier The classifier to be used to calculate new instances weights.  */
   protected void reweight(DistributionClassifier classifier, double alfa) throws Exception{
-    Instance instance;
     double newWeightsSum = 0;
+    double[] weights = m_DataView.weights();
+    int[] labels = m_DataView.labels();
+    double[][] distributions = m_DataView.distributions();
+    int[] predictions = m_DataView.predictions();
     for (int i = 0; i < m_NumInstances; i++){
-      instance = m_TrainData.instance(i);
-      int trueClassValue = (int) instance.classValue();
-      double[] distributionForInstance = classifier.distributionForInstance(instance);
-      int classifiedAs = oaidtb.misc.Utils.maxIndex(distributionForInstance);
+      int trueClassValue = labels[i];
+      double[] distributionForInstance = distributions[i];
+      int classifiedAs = predictions[i];
       if (classifiedAs != trueClassValue)
-        instance.setWeight(instance.weight() * m_CostMatrix.getElement(trueClassValue, classifiedAs) *
-                           Math.exp(distributionForInstance[classifiedAs] *
-                                    alfa *
-                                    costAdjustmentFunction(trueClassValue, true)));
+        weights[i] *= m_CostMatrix.getElement(trueClassValue, classifiedAs) *
+          Math.exp(distributionForInstance[classifiedAs] *
+                   alfa *
+                   costAdjustmentFunction(trueClassValue, true));
       else
-        instance.setWeight(instance.weight() *
-                           Math.exp(-distributionForInstance[classifiedAs] *
-                                    alfa *
-                                    costAdjustmentFunction(trueClassValue, false)));
-      newWeightsSum += instance.weight();
+        weights[i] *= Math.exp(-distributionForInstance[classifiedAs] *
+                               alfa *
+                               costAdjustmentFunction(trueClassValue, false));
+      newWeightsSum += weights[i];
     }
 
     normalizeWeights(newWeightsSum);
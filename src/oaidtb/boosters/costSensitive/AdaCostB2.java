@@ -24,7 +24,6 @@ package oaidtb.boosters.costSensitive;
 
 import weka.classifiers.DistributionClassifier;
 import weka.classifiers.Evaluation;
-import weka.core.Instance;
 
 /**
  * One of the small changes proposed for AdaCost in:<p>
@@ -48,19 +47,22 @@ public class AdaCostB2 extends AdaCostB1{
 
     double tmp = 0;
     double sumTmp = 0;
+    double[] weights = m_DataView.weights();
+    int[] labels = m_DataView.labels();
+    double[][] distributions = m_DataView.distributions();
+    int[] predictions = m_DataView.predictions();
 
     for (int i = 0; i < m_NumInstances; i++){
 
-      Instance instance = m_TrainData.instance(i);
-      double[] distributionForInstance = classifier.distributionForInstance(instance);
-      int classifiedAs = oaidtb.misc.Utils.maxIndex(distributionForInstance);
+      double[] distributionForInstance = distributions[i];
+      int classifiedAs = predictions[i];
 
-      if (classifiedAs == instance.classValue())
-        tmp += instance.weight() * distributionForInstance[classifiedAs];
+      if (classifiedAs == labels[i])
+        tmp += weights[i] * distributionForInstance[classifiedAs];
       else
-        tmp -= instance.weight() * distributionForInstance[classifiedAs];
+        tmp -= weights[i] * distributionForInstance[classifiedAs];
 
-      sumTmp += instance.weight();
+      sumTmp += weights[i];
     }
 
     tmp = (tmp + NO_DIVISION_BY_ZERO) / (sumTmp + NO_DIVISION_BY_ZERO);
@@ -225,12 +225,7 @@ public class CSAdaBoostMH extends AdaBoostMH{
     m_TrainData.insertAttributeAt(new Attribute("PseudoClass", my_nominal_values), classIndex);
     m_TrainData.setClassIndex(classIndex);
 
-    m_Boosters = new Booster[m_NumClasses];
-    SerializedObject serializedBooster = new SerializedObject(m_Booster);
-    for (int i = 0; i < m_NumClasses; i++)
-      m_Boosters[i] = (Booster) serializedBooster.getObject();
-
-    m_InstanceWeights = new double[m_NumClasses][m_NumInstances];
+    createBoosters();
 
     boolean showDebugInfo = m_Booster.getDebug();
 
@@ -242,11 +237,10 @@ public class CSAdaBoostMH extends AdaBoostMH{
         System.err.println("Cost of missclassify as class " + i + ": " + tmp.getElement(0, 1));
 //        System.err.println("NOTE: Due to a bug? in Matrix.toString() they can be shown rounded.")
       }
-      relabel(i);
       ((AbstractCSB) m_Boosters[i]).setCostMatrix(tmp);
-      m_Boosters[i].buildClassifier(m_TrainData);
-      saveBoosterWeights(i);
     }
+
+    buildBoosters();
   }
 
   /**
@@ -301,6 +295,9 @@ public class CSAdaBoostMH extends AdaBoostMH{
    * Specify a class (must be an AbstractCSB subclass) for
    * use as the base Booster.
    *
+   * -K num
+   * Number of threads used to train the boosters concurrently (default 1).
+   *
    * </PRE>
    *
    * @param options the list of options as an array of strings
@@ -308,6 +305,12 @@ public class CSAdaBoostMH extends AdaBoostMH{
    */
   public void setOptions(String[] options) throws Exception{
 
+    String numThreads = Utils.getOption('K', options);
+    if (numThreads.length() != 0)
+      setNumThreads(Integer.parseInt(numThreads));
+    else
+      setNumThreads(1);
+
     String boosterName = Utils.getOption('B', options);
     if (boosterName.length() == 0)
       setBooster((Booster) Utils.forName(AbstractCSB.class,
@@ -24,7 +24,6 @@ package oaidtb.boosters.costSensitive;
 
 import weka.classifiers.DistributionClassifier;
 import weka.classifiers.Evaluation;
-import weka.core.Instance;
 import oaidtb.misc.CustomOrderDefiner;
 
 /**
@@ -49,16 +48,17 @@ public class CSB0 extends AbstractCSB{
    */
   protected void reweight(DistributionClassifier classifier, double alfa) throws Exception{
 
-    Instance instance;
     double newWeightsSum = 0;
+    double[] weights = m_DataView.weights();
+    int[] labels = m_DataView.labels();
+    int[] predictions = m_DataView.predictions();
 
     for (int i = 0; i < m_NumInstances; i++){
-      instance = m_TrainData.instance(i);
-      int trueClassValue = (int) instance.classValue();
-      int classifiedAs = (int) classifier.classifyInstance(instance);
+      int trueClassValue = labels[i];
+      int classifiedAs = predictions[i];
       if (classifiedAs != trueClassValue)
-        instance.setWeight(instance.weight() * m_CostMatrix.getElement(trueClassValue, classifiedAs));
-      newWeightsSum += instance.weight();
+        weights[i] *= m_CostMatrix.getElement(trueClassValue, classifiedAs);
+      newWeightsSum += weights[i];
     }
 
     normalizeWeights(newWeightsSum);
@@ -24,7 +24,6 @@ package oaidtb.boosters.costSensitive;
 
 import weka.classifiers.DistributionClassifier;
 import weka.classifiers.Evaluation;
-import weka.core.Instance;
 
 /**
  * One of the variants of CSB proposed in:<p>
@@ -48,22 +47,22 @@ public class CSB1 extends AbstractCSB{
    */
   protected void reweight(DistributionClassifier classifier, double alfa) throws Exception{
 
-    Instance instance;
     double newWeightsSum = 0;
+    double[] weights = m_DataView.weights();
+    int[] labels = m_DataView.labels();
+    double[][] distributions = m_DataView.distributions();
+    int[] predictions = m_DataView.predictions();
 
     for (int i = 0; i < m_NumInstances; i++){
-      instance = m_TrainData.instance(i);
-      int trueClassValue = (int) instance.classValue();
-      double[] distributionForInstance = classifier.distributionForInstance(instance);
-      int classifiedAs = oaidtb.misc.Utils.maxIndex(distributionForInstance);
+      int trueClassValue = labels[i];
+      double[] distributionForInstance = distributions[i];
+      int classifiedAs = predictions[i];
       if (classifiedAs != trueClassValue)
-        instance.setWeight(instance.weight() *
-                           m_CostMatrix.getElement(trueClassValue, classifiedAs) *
-                           Math.exp(distributionForInstance[classifiedAs]));
+        weights[i] *= m_CostMatrix.getElement(trueClassValue, classifiedAs) *
+          Math.exp(distributionForInstance[classifiedAs]);
       else
-        instance.setWeight(instance.weight() *
-                           Math.exp(-distributionForInstance[classifiedAs]));
-      newWeightsSum += instance.weight();
+        weights[i] *= Math.exp(-distributionForInstance[classifiedAs]);
+      newWeightsSum += weights[i];
     }
 
     normalizeWeights(newWeightsSum);
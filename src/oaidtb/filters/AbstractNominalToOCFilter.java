@@ -39,14 +39,13 @@ import java.util.Vector;
  * </a><p>
  *
  * <PRE>
- * How is stored the code?. We use a fixed array of Java's ArrayBits, where:
- *   - Each BitSet correspond to one attribute's value (normally the class). Of course, it must be nominal.
- *   - A bit in the nth position of a BitSet informs about in with subset is a value in the nth partition.
- *   - We call "code word" to each BitSet.
+ * How is stored the code?. Each attribute's value (normally the class; of course, it must be
+ * nominal) is in the subset 0 or 1 of each partition; we call "code word" to the subsets of a
+ * value in all the partitions.
  *
  * Look at this matrix:
  *
- * BitSet (Class Value) -->               0 1 2 3 4 ... numDistinctValues()
+ * Class Value -->                        0 1 2 3 4 ... numDistinctValues()
  *-------------------------------------------------------------------------
  * Partition 0                      |     1 0 1 0 1 ...
  * Partition 1                      |     0 0 1 0 1 ...
@@ -56,6 +55,9 @@ import java.util.Vector;
  *   ** Each row is a partition.
  *   ** Each column is a code word.
  *
+ * It's stored row by row in an array of longs, 64 values per long (see m_OutputCode), so the
+ * subsets of all the values in a partition are read at once (see getPartitionWord, addVote).
+ *
  * Of course, this hold method can be changed by subclasses.
  *
  * Why program them with the appearance of a weka's filter, when obviously it's unnecessary complex?
@@ -71,12 +73,32 @@ public abstract class AbstractNominalToOCFilter extends Filter implements Option
 
   // TO DO: Prepare for string attributes.
 
-  /** Generated code.*/
-  protected BitSet[] m_OutputCode;
+  /** Generated code, partition by partition: the partition p takes the m_WordsPerPartition longs
+   *  from p * m_WordsPerPartition on, and the bit v % 64 of the long v / 64 of them is set if the
+   *  value v is in the subset 1. It grows as partitions are generated (see setCode).
+   */
+  protected long[] m_OutputCode;
+
+  /** Number of values of the processed attribute (ie. number of code words). */
+  protected int m_NumValues;
+
+  /** Number of longs taken by each partition. */
+  protected int m_WordsPerPartition;
 
   /** Number of generated partitions. It must be compact/not fragmented (it doesn't exist not generated partitions).*/
   protected int m_NumGeneratedPartitions;
 
+  /** De Bruijn sequence used to find the index of the lowest bit set in a long (see addVote). */
+  private final static long DE_BRUIJN = 0x03f79d71b4cb0a89L;
+
+  /** The index of the bit b for each value of ((1L << b) * DE_BRUIJN) >>> 58. */
+  private final static int[] DE_BRUIJN_BITS = {
+     0,  1, 48,  2, 57, 49, 28,  3, 61, 58, 50, 42, 38, 29, 17,  4,
+    62, 55, 59, 36, 53, 51, 43, 22, 45, 39, 33, 30, 24, 18, 12,  5,
+    63, 47, 56, 27, 60, 41, 37, 16, 54, 35, 52, 21, 44, 32, 23, 11,
+    46, 26, 40, 15, 34, 20, 31, 10, 25, 14, 19,  9, 13,  8,  7,  6
+  };
+
   /**
    * Index of processed attribute in the input dataset (it will be transformed into a binary one
    * in the output dataset).
@@ -123,9 +145,9 @@ public abstract class AbstractNominalToOCFilter extends Filter implements Option
   public BitSet getPartition(int partitionNumber) throws Exception{
 
     if (partitionNumber < m_NumGeneratedPartitions && partitionNumber > -1){
-      BitSet partition = new BitSet(m_OutputCode.length);
-      for (int i = 0; i < m_OutputCode.length; i++)
-        if (m_OutputCode[i].get(partitionNumber))
+      BitSet partition = new BitSet(m_NumValues);
+      for (int i = 0; i < m_NumValues; i++)
+        if (getCode(partitionNumber, i) == 1)
           partition.set(i);
       return partition;
     }
@@ -133,7 +155,32 @@ public abstract class AbstractNominalToOCFilter extends Filter implements Option
   }
 
   /**
-   * Set the partitionNumber partition.
+   * Copy the partitionNumber'nth partition into an array of m_WordsPerPartition longs (bit
+   * v % 64 of the long v / 64 set if the value v is in the subset 1).
+   *
+   * @param partitionNumber Index of the partition.
+   * @param words Where the partition is copied (if null or too short, a new array is allocated).
+   *
+   * @return The array where the partition has been copied.
+   *
+   * @throws Exception if index is invalid.
+   */
+  public long[] getPartition(int partitionNumber, long[] words) throws Exception{
+
+    if (partitionNumber >= m_NumGeneratedPartitions || partitionNumber < 0)
+      throw new Exception("Partition index incorrect, not computed yet.");
+
+    if (words == null || words.length < m_WordsPerPartition)
+      words = new long[m_WordsPerPartition];
+
+    System.arraycopy(m_OutputCode, partitionNumber * m_WordsPerPartition, words, 0, m_WordsPerPartition);
+
+    return words;
+  }
+
+  /**
+   * Set the partitionNumber partition; if partitionNumber is the number of partitions
+   * generated, the partition is added (as newPartition would do).
    *
    * @param partitionNumber Index of the partition.
    * @param newPartition The new partition to put in the partitionNumber index.
@@ -143,17 +190,94 @@ public abstract class AbstractNominalToOCFilter extends Filter implements Option
   public void setPartition(int partitionNumber, BitSet newPartition) throws Exception{
 
     if (partitionNumber > m_NumGeneratedPartitions || partitionNumber < 0)
-      throw new Exception("Partition number must be between 0 and " + (m_NumGeneratedPartitions - 1));
+      throw new Exception("Partition number must be between 0 and " + m_NumGeneratedPartitions);
+
+    for (int i = 0; i < m_NumValues; i++)
+      setCode(partitionNumber, i, newPartition.get(i));
+
+    if (partitionNumber == m_NumGeneratedPartitions)
+      m_NumGeneratedPartitions++;
+  }
+
+  /**
+   * Set the partitionNumber partition from an array of longs as the ones of
+   * getPartition(int, long[]); if partitionNumber is the number of partitions generated,
+   * the partition is added.
+   *
+   * @param partitionNumber Index of the partition.
+   * @param words The new partition.
+   *
+   * @throws Exception if index is invalid.
+   */
+  public void setPartition(int partitionNumber, long[] words) throws Exception{
+
+    if (partitionNumber > m_NumGeneratedPartitions || partitionNumber < 0)
+      throw new Exception("Partition number must be between 0 and " + m_NumGeneratedPartitions);
+
+    System.arraycopy(words, 0, m_OutputCode, partitionStart(partitionNumber), m_WordsPerPartition);
+
+    //The bits over the last value must be clear (see addVote).
+    if ((m_NumValues & 63) != 0)
+      m_OutputCode[partitionStart(partitionNumber) + m_WordsPerPartition - 1] &= (1L << m_NumValues) - 1;
+
+    if (partitionNumber == m_NumGeneratedPartitions)
+      m_NumGeneratedPartitions++;
+  }
+
+  /**
+   * Get the subsets of 64 values (from 64 * word on) in the partition partitionNumber, ie.
+   * the bit i of the result is getCode(partitionNumber, 64 * word + i). It doesn't make
+   * any parameter error control.
+   *
+   * @param partitionNumber The partition to look at.
+   * @param word The index of the group of 64 values (from 0 to getWordsPerPartition() - 1).
+   *
+   * @return The subsets.
+   */
+  public long getPartitionWord(int partitionNumber, int word){
+    return m_OutputCode[partitionNumber * m_WordsPerPartition + word];
+  }
+
+  /** @return The number of longs taken by each partition (see getPartitionWord). */
+  public int getWordsPerPartition(){
+    return m_WordsPerPartition;
+  }
 
-    for (int i = 0; i < m_OutputCode.length; i++)
-      if (newPartition.get(i))
-        m_OutputCode[i].set(partitionNumber);
-      else
-        m_OutputCode[i].clear(partitionNumber);
+  /** @return The number of values of the processed attribute (ie. the length of the partitions). */
+  public int getNumValues(){
+    return m_NumValues;
   }
 
   /**
-   * Get the i code word.
+   * Add a vote to the values which are in the subset "set" of the partition partitionNumber
+   * (ie. sums[v] += vote for each one of them), reading the partition 64 values at once and
+   * visiting only the values in the subset. It doesn't make any parameter error control.
+   *
+   * @param partitionNumber The partition.
+   * @param set The subset whose values get the vote (0 or 1).
+   * @param vote The vote.
+   * @param sums The votes of the values, indexed by value.
+   */
+  public void addVote(int partitionNumber, int set, double vote, double[] sums){
+
+    int start = partitionNumber * m_WordsPerPartition;
+
+    for (int w = 0; w < m_WordsPerPartition; w++){
+      long bits = m_OutputCode[start + w];
+      if (set == 0){
+        bits = ~bits;
+        if (w == m_WordsPerPartition - 1 && (m_NumValues & 63) != 0)
+          bits &= (1L << m_NumValues) - 1;
+      }
+      while (bits != 0){
+        sums[(w << 6) + DE_BRUIJN_BITS[(int) (((bits & -bits) * DE_BRUIJN) >>> 58)]] += vote;
+        bits &= bits - 1;
+      }
+    }
+  }
+
+  /**
+   * Get the i code word (a copy: changing it doesn't change the code).
    *
    * @param i Index of the code word..
    *
@@ -163,14 +287,19 @@ public abstract class AbstractNominalToOCFilter extends Filter implements Option
    */
   public BitSet getCodeWord(int i) throws Exception{
 
-    if (i >= m_OutputCode.length)
+    if (i >= m_NumValues)
       throw new Exception("Index of code word is incorrect.");
 
-    return m_OutputCode[i];
+    BitSet codeWord = new BitSet(m_NumGeneratedPartitions);
+    for (int p = 0; p < m_NumGeneratedPartitions; p++)
+      if (getCode(p, i) == 1)
+        codeWord.set(p);
+
+    return codeWord;
   }
 
   /**
-   * Set the i code word.
+   * Set the i code word (its bits in the partitions generated).
    *
    * @param i Index of the code word..
    * @param codeWord The code word to put at i.
@@ -179,10 +308,11 @@ public abstract class AbstractNominalToOCFilter extends Filter implements Option
    */
   public void setCodeWord(int i, BitSet codeWord) throws Exception{
 
-    if (i >= m_OutputCode.length)
+    if (i >= m_NumValues)
       throw new Exception("Index of code word is incorrect.");
 
-    m_OutputCode[i] = codeWord;
+    for (int p = 0; p < m_NumGeneratedPartitions; p++)
+      setCode(p, i, codeWord.get(p));
   }
 
   /***
@@ -196,7 +326,57 @@ public abstract class AbstractNominalToOCFilter extends Filter implements Option
    */
   public int getCode(int numPartition, int attValue){
 
-    return m_OutputCode[attValue].get(numPartition) ? 1 : 0;
+    return (int) (m_OutputCode[numPartition * m_WordsPerPartition + (attValue >>> 6)] >>> attValue) & 1;
+  }
+
+  /**
+   * Put the value "attValue" in a subset of the partition "numPartition", making room for
+   * the partition if needed. It doesn't make any parameter error control.
+   *
+   * @param numPartition The partition.
+   * @param attValue The value.
+   * @param inSetOne true to put it in the subset 1, false to put it in the subset 0.
+   */
+  protected void setCode(int numPartition, int attValue, boolean inSetOne){
+
+    int word = partitionStart(numPartition) + (attValue >>> 6);
+
+    if (inSetOne)
+      m_OutputCode[word] |= 1L << attValue;
+    else
+      m_OutputCode[word] &= ~(1L << attValue);
+  }
+
+  /**
+   * Get where the partition "numPartition" starts in m_OutputCode, growing it if it doesn't fit.
+   *
+   * @param numPartition The partition.
+   *
+   * @return The index of its first long.
+   */
+  private int partitionStart(int numPartition){
+
+    int start = numPartition * m_WordsPerPartition;
+
+    if (start + m_WordsPerPartition > m_OutputCode.length){
+      long[] newCode = new long[Math.max(2 * m_OutputCode.length, start + m_WordsPerPartition)];
+      System.arraycopy(m_OutputCode, 0, newCode, 0, m_OutputCode.length);
+      m_OutputCode = newCode;
+    }
+
+    return start;
+  }
+
+  /**
+   * Create an empty code (with room for some partitions) for an attribute with the given
+   * number of values.
+   *
+   * @param numValues The number of values.
+   */
+  protected void initOutputCode(int numValues){
+    m_NumValues = numValues;
+    m_WordsPerPartition = Math.max(1, (numValues + 63) >>> 6);
+    m_OutputCode = new long[16 * m_WordsPerPartition];
   }
 
   /**
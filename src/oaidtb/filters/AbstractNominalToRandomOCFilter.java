@@ -26,6 +26,7 @@ import weka.core.Option;
 import weka.core.Utils;
 import weka.core.Instances;
 
+import java.util.BitSet;
 import java.util.Enumeration;
 import java.util.Random;
 import java.util.Vector;
@@ -47,6 +48,17 @@ public abstract class AbstractNominalToRandomOCFilter extends AbstractNominalToO
   /** The m_Random's seed, unless it's a clock based seed. */
   protected long m_Seed = 0;
 
+  /**
+   * Draw a partition as newPartition does but with the given random number generator,
+   * without changing the filter: it can be called by several threads at once (ie. to
+   * search for a good partition among several candidates, see AdaBoostOC).
+   *
+   * @param random The random number generator to use.
+   *
+   * @return The partition (bit i set if the value i is in the set 1).
+   */
+  public abstract BitSet randomPartition(Random random);
+
   /**
    * Get the random number generator used to get the random behavior of the filter.
    *
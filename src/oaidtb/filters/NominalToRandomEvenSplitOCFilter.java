@@ -71,22 +71,22 @@ public class NominalToRandomEvenSplitOCFilter extends AbstractNominalToRandomOCF
     double probOfZero = 0.5;
 
     //It's very simple.
-    for (int i = 0; i < m_OutputCode.length; i++){
+    for (int i = 0; i < m_NumValues; i++){
       if (m_Random.nextDouble() > probOfZero){
-        m_OutputCode[i].set(partitionNumber);
+        setCode(partitionNumber, i, true);
         if ((probOfZero += m_ProbabilityIncrement) > 1){
           //Remainder values must drop in set 0.
-          while ((++i) < m_OutputCode.length)
-            m_OutputCode[i].clear(partitionNumber);
+          while ((++i) < m_NumValues)
+            setCode(partitionNumber, i, false);
           break;
         }
       }
       else{
-        m_OutputCode[i].clear(partitionNumber);
+        setCode(partitionNumber, i, false);
         if ((probOfZero -= m_ProbabilityIncrement) < 0){
-          while ((++i) < m_OutputCode.length)
+          while ((++i) < m_NumValues)
             //Remainder values must drop in set 1.
-            m_OutputCode[i].set(partitionNumber);
+            setCode(partitionNumber, i, true);
           break;
         }
       }
@@ -107,22 +107,59 @@ public class NominalToRandomEvenSplitOCFilter extends AbstractNominalToRandomOCF
     double probOfZero = 0.5;
 
     //It's very simple.
-    for (int i = 0; i < m_OutputCode.length; i++){
+    for (int i = 0; i < m_NumValues; i++){
       if (m_Random.nextDouble() > probOfZero){
-        m_OutputCode[i].set(m_NumGeneratedPartitions);
+        setCode(m_NumGeneratedPartitions, i, true);
         if ((probOfZero += m_ProbabilityIncrement) > 1){
           //Remainder values must drop in set 0.
-          while ((++i) < m_OutputCode.length)
-            m_OutputCode[i].clear(m_NumGeneratedPartitions);
+          while ((++i) < m_NumValues)
+            setCode(m_NumGeneratedPartitions, i, false);
+          break;
+        }
+      }
+      else{
+        setCode(m_NumGeneratedPartitions, i, false);
+        if ((probOfZero -= m_ProbabilityIncrement) < 0){
+          while ((++i) < m_NumValues)
+            //Remainder values must drop in set 1.
+            setCode(m_NumGeneratedPartitions, i, true);
           break;
         }
       }
-      else if ((probOfZero -= m_ProbabilityIncrement) < 0)
-        break;
     } //for
     m_NumGeneratedPartitions++;
   }
 
+  /**
+   * Draw a random partition in which at most 3/4 of the values are in one set (as both
+   * newPartition methods do, with the same random draws), without changing the filter (it
+   * can be called by several threads at once).
+   *
+   * @param random The random number generator to use.
+   *
+   * @return The partition.
+   */
+  public BitSet randomPartition(Random random){
+
+    BitSet partition = new BitSet(m_NumValues);
+    double probOfZero = 0.5;
+
+    for (int i = 0; i < m_NumValues; i++){
+      if (random.nextDouble() > probOfZero){
+        partition.set(i);
+        if ((probOfZero += m_ProbabilityIncrement) > 1)
+          break; //Remainder values must drop in set 0.
+      }
+      else if ((probOfZero -= m_ProbabilityIncrement) < 0){
+        //Remainder values must drop in set 1.
+        partition.set(i + 1, m_NumValues);
+        break;
+      }
+    }
+
+    return partition;
+  }
+
   /**
    * Sets the format of the input instances.
    *
@@ -133,17 +170,12 @@ public class NominalToRandomEvenSplitOCFilter extends AbstractNominalToRandomOCF
    */
   public boolean setInputFormat(Instances instanceInfo) throws Exception{
 
-    int i;
-
     super.setInputFormat(instanceInfo);
 
-    m_OutputCode = new BitSet[instanceInfo.numDistinctValues(m_ProcessedAttribute)];
-
-    for (i = 0; i < m_OutputCode.length; i++)
-      m_OutputCode[i] = new BitSet();
+    initOutputCode(instanceInfo.numDistinctValues(m_ProcessedAttribute));
 
     //Look at this.
-    m_ProbabilityIncrement = 1.0 / m_OutputCode.length;
+    m_ProbabilityIncrement = 1.0 / m_NumValues;
 
     if (m_Random == null)
       m_Random = new Random(m_Seed);
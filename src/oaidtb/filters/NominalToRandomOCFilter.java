@@ -60,11 +60,11 @@ public class NominalToRandomOCFilter extends AbstractNominalToRandomOCFilter{
       throw new Exception("Partition index must be between 0 and "
                           + String.valueOf(m_NumGeneratedPartitions + 1));
 
-    for (int i = 0; i < m_OutputCode.length; i++)
+    for (int i = 0; i < m_NumValues; i++)
       if (m_Random.nextBoolean())
-        m_OutputCode[i].set(partitionNumber);
+        setCode(partitionNumber, i, true);
       else
-        m_OutputCode[i].clear(partitionNumber);
+        setCode(partitionNumber, i, false);
 
     if (partitionNumber == m_NumGeneratedPartitions)
       m_NumGeneratedPartitions++;
@@ -79,13 +79,31 @@ public class NominalToRandomOCFilter extends AbstractNominalToRandomOCFilter{
    */
   public void newPartition(Instances instances){
 
-    for (int i = 0; i < m_OutputCode.length; i++)
-      if (m_Random.nextBoolean())
-        m_OutputCode[i].set(m_NumGeneratedPartitions);
+    for (int i = 0; i < m_NumValues; i++)
+      setCode(m_NumGeneratedPartitions, i, m_Random.nextBoolean());
 
     m_NumGeneratedPartitions++;
   }
 
+  /**
+   * Draw a partition in which each value drops in either set uniformly and independently
+   * at random, without changing the filter (it can be called by several threads at once).
+   *
+   * @param random The random number generator to use.
+   *
+   * @return The partition.
+   */
+  public BitSet randomPartition(Random random){
+
+    BitSet partition = new BitSet(m_NumValues);
+
+    for (int i = 0; i < m_NumValues; i++)
+      if (random.nextBoolean())
+        partition.set(i);
+
+    return partition;
+  }
+
   /**
    * Sets the format of the input instances.
    *
@@ -98,10 +116,7 @@ public class NominalToRandomOCFilter extends AbstractNominalToRandomOCFilter{
 
     super.setInputFormat(instanceInfo);
 
-    m_OutputCode = new BitSet[instanceInfo.numDistinctValues(m_ProcessedAttribute)];
-
-    for (int i = 0; i < m_OutputCode.length; i++)
-      m_OutputCode[i] = new BitSet();
+    initOutputCode(instanceInfo.numDistinctValues(m_ProcessedAttribute));
 
     if (m_Random == null)
       m_Random = new Random(m_Seed);
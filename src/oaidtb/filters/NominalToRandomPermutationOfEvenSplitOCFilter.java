@@ -66,14 +66,11 @@ public class NominalToRandomPermutationOfEvenSplitOCFilter extends AbstractNomin
                           + String.valueOf(m_NumGeneratedPartitions + 1));
 
     //Generate the random permutation by shuffling.
-    for (int i = 0; i < m_OutputCode.length; i++)
-      swapBits(i, m_Random.nextInt(m_OutputCode.length), m_PartitionToShuffle);
+    for (int i = 0; i < m_NumValues; i++)
+      swapBits(i, m_Random.nextInt(m_NumValues), m_PartitionToShuffle);
 
+    //It increments de index of the "last partition" if needed.
     setPartition(partitionNumber, m_PartitionToShuffle);
-
-    //Increment de index of the "last partition".
-    if (partitionNumber == m_NumGeneratedPartitions)
-      m_NumGeneratedPartitions++;
   }
 
   /**
@@ -88,13 +85,32 @@ public class NominalToRandomPermutationOfEvenSplitOCFilter extends AbstractNomin
   public void newPartition(Instances instances) throws Exception{
 
     //Generate the random permutation by shuffling.
-    for (int i = 0; i < m_OutputCode.length; i++)
-      swapBits(i, m_Random.nextInt(m_OutputCode.length), m_PartitionToShuffle);
+    for (int i = 0; i < m_NumValues; i++)
+      swapBits(i, m_Random.nextInt(m_NumValues), m_PartitionToShuffle);
 
+    //It increments de index of the "last partition".
     setPartition(m_NumGeneratedPartitions, m_PartitionToShuffle);
+  }
 
-    //Increment de index of the "last partition".
-    m_NumGeneratedPartitions++;
+  /**
+   * Draw a random permutation of a partition with a half of the values in each set, without
+   * changing the filter (it can be called by several threads at once).
+   *
+   * @param random The random number generator to use.
+   *
+   * @return The partition.
+   */
+  public BitSet randomPartition(Random random){
+
+    BitSet partition = new BitSet(m_NumValues);
+
+    for (int i = 0; i < m_NumValues / 2; i++)
+      partition.set(i);
+
+    for (int i = 0; i < m_NumValues; i++)
+      swapBits(i, random.nextInt(m_NumValues), partition);
+
+    return partition;
   }
 
   /**
@@ -134,17 +150,14 @@ public class NominalToRandomPermutationOfEvenSplitOCFilter extends AbstractNomin
     super.setInputFormat(instanceInfo);
 
     //Initialize the data structure which will hold the codes.
-    m_OutputCode = new BitSet[instanceInfo.numDistinctValues(m_ProcessedAttribute)];
-
-    for (i = 0; i < m_OutputCode.length; i++)
-      m_OutputCode[i] = new BitSet();
+    initOutputCode(instanceInfo.numDistinctValues(m_ProcessedAttribute));
 
     if (m_Random == null)
       m_Random = new Random(m_Seed);
 
     m_PartitionToShuffle = new BitSet();
 
-    for (i = 0; i < m_OutputCode.length / 2; i++)
+    for (i = 0; i < m_NumValues / 2; i++)
       m_PartitionToShuffle.set(i);
 
     newPartition(null);
@@ -25,6 +25,7 @@ package oaidtb.misc;
 import oaidtb.boosters.AdaBoostMH;
 import oaidtb.boosters.Booster;
 import oaidtb.boosters.IterativeUpdatableClassifier;
+import oaidtb.boosters.MarginTracker;
 import weka.classifiers.Classifier;
 import weka.classifiers.CostMatrix;
 import weka.core.Instance;
@@ -142,8 +143,8 @@ public class BoosterAnalyzer{
   /** Primera iteracin en que se alcanz el menor coste del booster */
   private int m_SmallestBoosterCostAt = -1;
 
-  /** Las predicciones del booster para cada una de las clases de cada instancia */
-  private double[][] m_BC_VotesForInstances;
+  /** Las predicciones del booster para cada una de las clases de cada instancia (se suma slo el voto de cada nueva iteracin) */
+  private MarginTracker m_Tracker;
 
   /** Computar o no los errores del booster */
   private boolean m_SaveBoosterErrors = true;
@@ -219,7 +220,7 @@ public class BoosterAnalyzer{
 //      };
       m_CostMatrix = new CostMatrix(m_Data.numClasses());
 
-    m_BC_VotesForInstances = new double[m_Data.numInstances()][m_Data.numClasses()];
+    m_Tracker = new MarginTracker(m_Data);
 
     if(m_Booster instanceof AdaBoostMH)
       m_TrainDataFormat = new Instances(((AdaBoostMH)m_Booster).getTrainData(), 0);
@@ -270,6 +271,10 @@ public class BoosterAnalyzer{
     //Nos hacemos con el clasificador base correspondiente
     Classifier baseClassifier = ((Booster) m_Booster).getClassifier(itIndex);
 
+    //Aadimos el voto de la iteracin a las predicciones del booster
+    if (m_SaveBoosterErrors || m_SaveBoosterCosts)
+      m_Tracker.next(m_Booster);
+
     for (int i = 0; i < m_Data.numInstances(); i++){
 
       Instance instance = m_Data.instance(i);
@@ -279,9 +284,7 @@ public class BoosterAnalyzer{
       //Calculamos los errores del booster
       if (m_SaveBoosterErrors || m_SaveBoosterCosts){
 
-        Utils.doubleArraysSum(m_BC_VotesForInstances[i],
-                              m_Booster.getClassifierVote(instance, itIndex));
-        classifiedAs = Utils.maxIndex(m_BC_VotesForInstances[i]);
+        classifiedAs = m_Tracker.classifiedAs(i);
 
         if (classifiedAs != trueClassValue){
           boosterFails++;
@@ -327,6 +330,9 @@ public class BoosterAnalyzer{
     for (int j = 0; j < mh.getNumClasses(); j++)
       baseClassifiers[j] = mh.getBooster(j).getClassifier(itIndex);
 
+    if (m_SaveBoosterErrors || m_SaveBoosterCosts)
+      m_Tracker.next(m_Booster);
+
     for (int i = 0; i < m_Data.numInstances(); i++){
 
       Instance instance = m_Data.instance(i);
@@ -334,9 +340,7 @@ public class BoosterAnalyzer{
       int classifiedAs;
 
       if (m_SaveBoosterErrors || m_SaveBoosterCosts){
-        Utils.doubleArraysSum(m_BC_VotesForInstances[i],
-                              m_Booster.getClassifierVote(instance, itIndex));
-        classifiedAs = Utils.maxIndex(m_BC_VotesForInstances[i]);
+        classifiedAs = m_Tracker.classifiedAs(i);
         if (classifiedAs != trueClassValue){
           boosterFails++;
           boosterCost += m_CostMatrix.getElement(trueClassValue, classifiedAs);
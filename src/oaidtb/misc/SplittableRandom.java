@@ -0,0 +1,77 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    SplittableRandom.java
+ *    Copyright (C) 2002 Santiago David Villalba
+ *
+ */
+
+package oaidtb.misc;
+
+import java.util.Random;
+
+/**
+ * A random numbers generator which can be split into independent streams: each call to
+ * split gives a new generator whose numbers don't depend on the ones drawn later by this
+ * generator (nor by the other streams), so every part of a work (ie. the booster of each
+ * class in AdaBoostMH) can draw its random numbers in any order, or from different threads,
+ * and the results are still reproducible from a single seed.
+ *
+ * The stream of a generator created with a seed is the same as java.util.Random's one;
+ * the seed of each split stream is the next long of this generator scrambled with the
+ * SplitMix64 finalizer, so the streams don't start correlated (as the ones of consecutive
+ * seeds do with java.util.Random).
+ *
+ * It's serializable, so a generator saved with a model goes on with its stream when the
+ * model is loaded.
+ *
+ * @author <a href="mailto:sdvb@wanadoo.es">Santiago David Villalba Bartolom&eacute;</a>
+ * @version $Revision: 1.0 $
+ */
+public class SplittableRandom extends Random{
+
+  /**
+   * Constructor.
+   *
+   * @param seed The seed.
+   */
+  public SplittableRandom(long seed){
+    super(seed);
+  }
+
+  /**
+   * Split a new stream from this generator.
+   *
+   * @return The new generator.
+   */
+  public SplittableRandom split(){
+    return new SplittableRandom(mix(nextLong()));
+  }
+
+  /**
+   * Scramble a seed (SplitMix64 finalizer).
+   *
+   * @param z The seed.
+   *
+   * @return The scrambled seed.
+   */
+  private static long mix(long z){
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -299,6 +299,64 @@ public final class Utils{
     weka.core.Utils.normalize(array, sumTmp);
   }
 
+  /**
+   * Sorts an array of doubles as weka.core.Utils.sort does (so the ties are left in the
+   * same order), but the indices of the sorted elements are stored in the supplied array
+   * and nothing is allocated. Missing values (NaN) are taken as the greatest ones.
+   *
+   * @param array The array to be sorted (it's not modified).
+   * @param index The array where the indices of the sorted elements are stored.
+   */
+  public static void sort(double[] array, int[] index){
+
+    for (int i = 0; i < array.length; i++)
+      index[i] = i;
+
+    quickSort(array, index, 0, array.length - 1);
+  }
+
+  /**
+   * The quicksort of weka.core.Utils.
+   *
+   * @param array The array to be sorted.
+   * @param index The indices of the elements.
+   * @param lo0 The first index of the subset to be sorted.
+   * @param hi0 The last index of the subset to be sorted.
+   */
+  private static void quickSort(double[] array, int[] index, int lo0, int hi0){
+
+    int lo = lo0;
+    int hi = hi0;
+
+    if (hi0 > lo0){
+      double mid = sortValue(array[index[(lo0 + hi0) / 2]]);
+
+      while (lo <= hi){
+        while (sortValue(array[index[lo]]) < mid && lo < hi0)
+          lo++;
+        while (sortValue(array[index[hi]]) > mid && hi > lo0)
+          hi--;
+        if (lo <= hi){
+          int swapTmp = index[lo];
+          index[lo] = index[hi];
+          index[hi] = swapTmp;
+          lo++;
+          hi--;
+        }
+      }
+
+      if (lo0 < hi)
+        quickSort(array, index, lo0, hi);
+      if (lo < hi0)
+        quickSort(array, index, lo, hi0);
+    }
+  }
+
+  /** @return The value used to sort a double (missing values are the greatest ones). */
+  private static double sortValue(double value){
+    return Double.isNaN(value) ? Double.MAX_VALUE : value;
+  }
+
   /**
    * Applies Math.round and returns an integer
    *